@@ -285,6 +285,7 @@ CTX.INPUT['indexes'] = """
 """
 
 CTX.INPUT['storage'] = """
+ AntiCacheBlockStore.cpp
  constraintutil.cpp
  CopyOnWriteContext.cpp
  CopyOnWriteIterator.cpp
@@ -396,6 +397,7 @@ if whichtests in ("${eetestsuite}", "indexes"):
 
 if whichtests in ("${eetestsuite}", "storage"):
     CTX.TESTS['storage'] = """
+     AntiCacheBlockStoreTest
      CompactionTest
      CopyOnWriteTest
      constraint_test
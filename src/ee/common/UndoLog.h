@@ -145,6 +145,11 @@ namespace voltdb
             }
         }
 
+        bool hasPendingUndoQuanta() const
+        {
+            return !m_undoQuantums.empty();
+        }
+
         int64_t getSize() const
         {
             int64_t total = 0;
@@ -44,7 +44,8 @@ ExecutorContext::ExecutorContext(int64_t siteId,
     m_lastCommittedSpHandle(0),
     m_siteId(siteId), m_partitionId(partitionId),
     m_hostname(hostname), m_hostId(hostId),
-    m_exportEnabled(exportEnabled), m_epoch(0) // set later
+    m_exportEnabled(exportEnabled), m_coldStorageEnabled(false),
+    m_epoch(0) // set later
 {
     (void)pthread_once(&static_keyOnce, createThreadLocalKey);
     bindToThread();
@@ -60,6 +60,15 @@ class ExecutorContext {
         m_epoch = epoch;
     }
 
+    void setColdStorageEnabled(bool enabled) {
+        m_coldStorageEnabled = enabled;
+    }
+
+    /** Whether executors mark the persistent tuples they access, see TableTuple::getCSI() */
+    bool isColdStorageEnabled() const {
+        return m_coldStorageEnabled;
+    }
+
     // helper to configure the context for a new jni call
     void setupForPlanFragments(UndoQuantum *undoQuantum,
                                int64_t spHandle,
@@ -144,6 +153,7 @@ class ExecutorContext {
     std::string m_hostname;
     CatalogId m_hostId;
     bool m_exportEnabled;
+    bool m_coldStorageEnabled;
 
     /** local epoch for voltdb, somtime around 2008, pulled from catalog */
     int64_t m_epoch;
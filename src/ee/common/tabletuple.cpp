@@ -63,14 +63,7 @@ std::string TableTuple::debug(const std::string& tableName) { // ) const
     } else {
         buffer << "TableTuple(" << tableName << ") ->";
     }
-    
-    
-	//if( isTuple ) {
-    //      setCSI(1);
-    // }
-    
-  	
- 	      
+
     if (isActive() == false) {
         buffer << " <DELETED>";
     } else {
@@ -145,25 +138,4 @@ bool TableTuple::compatibleForCopy(const TableTuple &source) {
     return true;
 }
 
-void TableTuple::setCSI(int newCSI) {
-	if( isTuple ) {
-		m_CSI = newCSI;
-		m_data[1] = static_cast<char>(m_CSI);
-		//std::cout << "Ustawiono nowa wartosc CSI:" << m_CSI << std::endl;
-	} else {
-		std::cout << "To nie tuple, a wolaja setCSI" << std::endl;
-	}
- 
-}
-int TableTuple::getCSI() {
-	return (int) m_data[1];
-}	
-
-void TableTuple::incrementCSI() {
-	int current = (int) m_data[1];
-	setCSI( current + 1 );
-}
-
-
-
 }
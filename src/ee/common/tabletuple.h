@@ -61,13 +61,18 @@ class CopyOnWriteTest_TestTableTupleFlags;
 
 namespace voltdb {
 
-#define TUPLE_HEADER_SIZE 100
+// one byte of flags and the cold storage index
+#define TUPLE_HEADER_SIZE 2
 
 #define ACTIVE_MASK 1
 #define DIRTY_MASK 2
 #define PENDING_DELETE_MASK 4
 #define PENDING_DELETE_ON_UNDO_RELEASE_MASK 8
 
+// cold storage index, see TableTuple::getCSI()
+#define CSI_OFFSET 1
+#define MAX_CSI 127
+
 class TableColumn;
 
 class TableTuple {
@@ -82,20 +87,6 @@ class TableTuple {
 public:
     /** Initialize a tuple unassociated with a table (bad idea... dangerous) */
     explicit TableTuple();
-    
-    
-    // ###
-    int m_CSI; // mamy miejsce bo zmielismy TUPLE_HEADER_SIZE 1->100.
-    void setCSI(int newCSI);
-    int getCSI(); 
-	bool isTuple; // na wypadek jesli tuple to index key 
-	bool checkIfTuple() {
-		return isTuple;
-	}
-	void incrementCSI();
-
-
-
 
     /** Setup the tuple given a table */
     TableTuple(const TableTuple &rhs);
@@ -120,7 +111,6 @@ public:
 
     inline void moveNoHeader(void *address) {
         assert(m_schema);
-        isTuple = false; // ###
         // isActive() and all the other methods expect a header
         m_data = reinterpret_cast<char*> (address) - TUPLE_HEADER_SIZE;
     }
@@ -130,7 +120,6 @@ public:
     inline void moveToReadOnlyTuple(const void *address) {
         assert(m_schema);
         assert(address);
-        isTuple = false; // ###
         //Necessary to move the pointer back TUPLE_HEADER_SIZE
         // artificially because Tuples used as keys for indexes do not
         // have the header.
@@ -256,6 +245,26 @@ public:
         return (*(reinterpret_cast<const char*> (m_data)) & PENDING_DELETE_ON_UNDO_RELEASE_MASK) ? true : false;
     }
 
+    /**
+     * Cold storage index: how often the tuple was read or written lately.
+     * Kept in the header byte after the flags. It saturates at MAX_CSI
+     * and is aged down by the engine, so it never wraps around.
+     */
+    inline int getCSI() const {
+        return static_cast<int>(m_data[CSI_OFFSET]);
+    }
+
+    inline void setCSI(int csi) {
+        m_data[CSI_OFFSET] = static_cast<char>(csi);
+    }
+
+    /** Mark the tuple as accessed. */
+    inline void incrementCSI() {
+        if (m_data[CSI_OFFSET] < MAX_CSI) {
+            ++m_data[CSI_OFFSET];
+        }
+    }
+
     /** Is the column value null? */
     inline bool isNull(const int idx) const {
         return getNValue(idx).isNull();
@@ -404,20 +413,15 @@ private:
 
 inline TableTuple::TableTuple() :
     m_schema(NULL), m_data(NULL) {
-    // ### 
-    m_CSI = 0;
-    isTuple = true;
 }
 
 inline TableTuple::TableTuple(const TableTuple &rhs) :
     m_schema(rhs.m_schema), m_data(rhs.m_data) {
-    isTuple = true; // ###
 }
 
 inline TableTuple::TableTuple(const TupleSchema *schema) :
     m_schema(schema), m_data(NULL) {
     assert (m_schema);
-    isTuple = true; // ###
 }
 
 /** Setup the tuple given the specified data location and schema **/
@@ -426,7 +430,6 @@ inline TableTuple::TableTuple(char *data, const voltdb::TupleSchema *schema) {
     assert(schema);
     m_data = data;
     m_schema = schema;
-    isTuple = true; // ###
 }
 
 inline TableTuple& TableTuple::operator=(const TableTuple &rhs) {
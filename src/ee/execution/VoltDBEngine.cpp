@@ -88,12 +88,14 @@
 #include "storage/streamedtable.h"
 #include "storage/MaterializedViewMetadata.h"
 #include "storage/StreamBlock.h"
+#include "storage/AntiCacheBlockStore.h"
 #include "storage/TableCatalogDelegate.hpp"
 #include "org_voltdb_jni_ExecutionEngine.h" // to use static values
 #include "stats/StatsAgent.h"
 #include "voltdbipc.h"
 #include "common/FailureInjection.h"
 
+#include <algorithm>
 #include <iostream>
 #include <stdio.h>
 #include <fstream>
@@ -110,6 +112,9 @@ namespace voltdb {
 
 const int64_t AD_HOC_FRAG_ID = -1;
 
+// tuple slots whose cold storage index is aged per tick, see ageColdStorageIndexes()
+const size_t CS_AGING_TUPLES_PER_TICK = 100000;
+
 VoltDBEngine::VoltDBEngine(Topend *topend, LogProxy *logProxy, bool coldStorageIsEnabled, float limitMemoryUsage, 
                            float percentageOfDataToMove)
     : m_currentUndoQuantum(NULL),
@@ -125,7 +130,10 @@ VoltDBEngine::VoltDBEngine(Topend *topend, LogProxy *logProxy, bool coldStorageI
       m_topend(topend),
       m_isCSEnabled(coldStorageIsEnabled), //przekazana informacja, czy Cold Storage jest włączony
       m_limitMemoryUsage(limitMemoryUsage), //przekazana liczba procent użycia pamięci, przy którym wyjonywany jest zrzut na dysk
-      m_percentageOfDataToMove(percentageOfDataToMove) //przekazywana liczba procent danych do zrzutu na dysk
+      m_percentageOfDataToMove(percentageOfDataToMove), //przekazywana liczba procent danych do zrzutu na dysk
+      m_numCSCut(1),
+      m_csAgingTableId(0),
+      m_csAgingPosition(NULL)
 {
     // init the number of planfragments executed
     m_pfCount = 0;
@@ -133,8 +141,7 @@ VoltDBEngine::VoltDBEngine(Topend *topend, LogProxy *logProxy, bool coldStorageI
     if (coldStorageIsEnabled) //jeśli Cold Storage jest włączony, dokonaj obliczeń
     {
         m_partOfDataToMove = percentageOfDataToMove * 0.01f; //cześć danych do zrzutu (wyrażona w ułamku dziesiętnym)
-        m_numCSCut = static_cast<int>(round(m_partOfDataToMove * 127)); //wartość, o którą będą obniżane indesy
-        m_maxCutCS = 127 - m_numCSCut; //maksymalna wartość indesu po ucięciu wszystkich indesów
+        m_numCSCut = std::max(1, static_cast<int>(round(m_partOfDataToMove * MAX_CSI))); //wartość, o którą będą obniżane indesy
     }
     
     // require a site id, at least, to inititalize.
@@ -223,6 +230,7 @@ VoltDBEngine::initialize(int32_t clusterIndex,
                                             m_isELEnabled,
                                             hostname,
                                             hostId);
+    m_executorContext->setColdStorageEnabled(m_isCSEnabled);
 
     switch (hashinatorType) {
     case HASHINATOR_LEGACY:
@@ -319,15 +327,6 @@ int VoltDBEngine::executeQuery(int64_t planfragmentId,
 {
     assert(planfragmentId != 0);
     
-    if (m_isCSEnabled) //jeśli Cold Storage jest włączony, wypisuj znaki nowego wiersza
-    {
-	//std::cout << "\n —————————————————————————————————————————————— \n";
-	std::cout << "\n\n";
-	params.debug(); // ###
-	std::cout << "\n\n";
-	//std::cout << "\n —————————————————————————————————————————————— \n";
-    }
-    
     Table *cleanUpTable = NULL;
     m_currentOutputDepId = outputDependencyId;
     m_currentInputDepId = inputDependencyId;
@@ -392,74 +391,6 @@ int VoltDBEngine::executeQuery(int64_t planfragmentId,
     {
         AbstractExecutor *executor = execsForFrag->list[ctr];
         assert (executor);
-        if (m_isCSEnabled) //jeśli Cold Sorage jest włączony, inkrementuj indesy
-        {
-            bool maxIsAchieved = false; //czy przekroczono maksymalną wartość indeksu
-
-                    // ###
-            std::vector<Table*>& dTmp = executor->getPlanNode()->getInputTables();
-            for(int i = 0; i < dTmp.size(); i++)
-            {
-
-                       Table * realtbl = this->getTable( dTmp[i]->name() );
-                               if( realtbl == NULL ) {
-                                            std::cout << "Real Tabele - NULL \n" << std::endl;
-                                            continue; 
-                               }
-                               TableTuple tempTuple = TableTuple(realtbl->schema());
-                               TableIterator iterator = realtbl->iterator();
-                       while (iterator.next(tempTuple)) {
-                                    std::cout << "> Odczytane CSI dla wiersza : " << tempTuple.getCSI() << ". Inkrementujemy!\n";
-                                    tempTuple.incrementCSI();
-                                    if (tempTuple.getCSI() < 0) //jeśli indeks mniejszy od zera, to oznacza, że przekroczono maksimum
-                                    {
-                                        maxIsAchieved = true;
-                                    }
-                   }
-
-            }
-            if (maxIsAchieved) //jeśli przekroczono maksymalną wartość indeksu, to pomniejsz wszystkie indeksy
-            {
-                map<int32_t, Table*>::const_iterator ti; 
-                const map<int32_t, Table*>::const_iterator begin = m_tables.begin();
-                const map<int32_t, Table*>::const_iterator end = m_tables.end();
-                for (ti = begin; ti != end; ti++)
-                {
-                    Table *table = ti->second;
-                    if( table == NULL )
-                    {
-                        continue; 
-                    }
-                    TableTuple tempTuple = TableTuple(table->schema());
-                    TableIterator iterator = table->iterator();
-                    while (iterator.next(tempTuple))
-                    {
-                        int cs =  tempTuple.getCSI();
-                        if (cs >= m_numCSCut)
-                        {
-                            tempTuple.setCSI(cs - m_numCSCut);
-                        }
-                        else
-                        {
-                            if (cs > 0)
-                            {
-                                tempTuple.setCSI(0);
-                            }
-                            else
-                            {
-                                if (cs < 0)
-                                {
-                                    tempTuple.setCSI(m_maxCutCS);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-            // ###  
-        }
-        
-
         if (executor->needsPostExecuteClear())
             cleanUpTable =
                 dynamic_cast<Table*>(executor->getPlanNode()->getOutputTable());
@@ -991,8 +922,12 @@ VoltDBEngine::updateCatalog(const int64_t timestamp, const string &catalogPayloa
 bool
 VoltDBEngine::loadTable(int32_t tableId,
                         ReferenceSerializeInput &serializeIn,
-                        int64_t spHandle, int64_t lastCommittedSpHandle)
+                        int64_t spHandle, int64_t lastCommittedSpHandle,
+                        int64_t undoToken, bool returnConstraintViolations)
 {
+    if (returnConstraintViolations) {
+        setUndoToken(undoToken);
+    }
     //Not going to thread the unique id through.
     //The spHandle and lastCommittedSpHandle aren't really used in load table
     //since their only purpose as of writing this (1/2013) they are only used
@@ -1017,6 +952,13 @@ VoltDBEngine::loadTable(int32_t tableId,
         return false;
     }
 
+    if (returnConstraintViolations) {
+        // a bad header is the caller's mistake, let it surface as an EEException
+        resetReusedResultOutputBuffer();
+        table->loadTuplesForLoadTable(serializeIn, m_resultOutput);
+        return true;
+    }
+
     try {
         table->loadTuplesFrom(serializeIn);
     } catch (const SerializableEEException &e) {
@@ -1301,6 +1243,95 @@ void VoltDBEngine::tick(int64_t timeInMillis, int64_t lastCommittedSpHandle) {
     BOOST_FOREACH (TablePair table, m_exportingTables) {
         table.second->flushOldTuples(timeInMillis);
     }
+    if (m_isCSEnabled) {
+        ageColdStorageIndexes();
+    }
+}
+
+/**
+ * Executors raise the cold storage index (CSI) of the tuples they return;
+ * this lowers them again, CLOCK style. The hand walks the persistent
+ * tables block by block and stops after CS_AGING_TUPLES_PER_TICK tuple
+ * slots, so a tick costs the same however big the tables are. It resumes
+ * by block address, which stays valid when blocks come and go.
+ */
+void VoltDBEngine::ageColdStorageIndexes() {
+    if (m_tables.empty()) {
+        return;
+    }
+    size_t budget = CS_AGING_TUPLES_PER_TICK;
+    map<int32_t, Table*>::const_iterator ti = m_tables.lower_bound(m_csAgingTableId);
+    if (ti == m_tables.end() || ti->first != m_csAgingTableId) {
+        // the table the hand was in is gone
+        m_csAgingPosition = NULL;
+    }
+    for (size_t visited = 0; budget > 0 && visited <= m_tables.size(); ++visited) {
+        if (ti == m_tables.end()) {
+            ti = m_tables.begin();
+        }
+        PersistentTable *table = dynamic_cast<PersistentTable*>(ti->second);
+        if (table != NULL) {
+            m_csAgingPosition = table->ageCSIs(m_csAgingPosition, m_numCSCut, budget);
+        }
+        if (m_csAgingPosition != NULL) {
+            break;
+        }
+        ++ti;
+    }
+    if (ti == m_tables.end()) {
+        ti = m_tables.begin();
+    }
+    m_csAgingTableId = ti->first;
+}
+
+void VoltDBEngine::antiCacheInitialize(const std::string &directory) {
+    m_antiCache.reset(new AntiCacheBlockStore(directory));
+}
+
+namespace {
+struct ColderBlock {
+    bool operator()(const std::pair<double, TBPtr> &a, const std::pair<double, TBPtr> &b) const {
+        return a.first < b.first;
+    }
+};
+}
+
+/**
+ * Evicts whole full tuple blocks, those whose tuples have the lowest
+ * average cold storage index first. Runs between transactions only, with
+ * no undo quanta outstanding, so no undo action is left pointing into an
+ * evicted block. A block comes back as soon as a scan or index lookup
+ * reaches it.
+ */
+int64_t VoltDBEngine::antiCacheEvict() {
+    if (m_antiCache == NULL || m_undoLog.hasPendingUndoQuanta()) {
+        return 0;
+    }
+    std::vector<std::pair<double, TBPtr> > candidates;
+    int64_t residentBytes = 0;
+    typedef pair<int32_t, Table*> TablePair;
+    BOOST_FOREACH (TablePair tablePair, m_tables) {
+        PersistentTable *table = dynamic_cast<PersistentTable*>(tablePair.second);
+        if (table != NULL && table->canEvictBlocks()) {
+            residentBytes += table->collectColdBlocks(candidates);
+        }
+    }
+    std::stable_sort(candidates.begin(), candidates.end(), ColderBlock());
+
+    const int64_t target = static_cast<int64_t>(residentBytes * m_partOfDataToMove);
+    int64_t evictedBytes = 0;
+    for (size_t ii = 0; ii < candidates.size() && evictedBytes < target; ++ii) {
+        const int64_t released = candidates[ii].second->evict(m_antiCache.get());
+        if (released == 0) {
+            char msg[512];
+            snprintf(msg, sizeof(msg), "Failed to write an evicted tuple block to %s",
+                     m_antiCache->directory().c_str());
+            LogManager::getThreadLogger(LOGGERID_HOST)->log(LOGLEVEL_WARN, msg);
+            break;
+        }
+        evictedBytes += released;
+    }
+    return evictedBytes;
 }
 
 /** For now, bring the Export system to a steady state with no buffers with content */
@@ -1312,6 +1343,14 @@ void VoltDBEngine::quiesce(int64_t lastCommittedSpHandle) {
     }
 }
 
+int64_t VoltDBEngine::tempTableMemory() const {
+    int64_t total = 0;
+    BOOST_FOREACH (const boost::shared_ptr<ExecutorVector> &ev, m_plans) {
+        total += ev->limits.getAllocated();
+    }
+    return total;
+}
+
 string VoltDBEngine::debug(void) const {
     stringstream output(stringstream::in | stringstream::out);
     PlanSet::const_iterator iter;
@@ -55,6 +55,7 @@
 #include <boost/ptr_container/ptr_vector.hpp>
 #include "json_spirit/json_spirit.h"
 #include "boost/shared_ptr.hpp"
+#include "boost/scoped_ptr.hpp"
 #include <boost/multi_index_container.hpp>
 #include <boost/multi_index/hashed_index.hpp>
 #include <boost/multi_index/member.hpp>
@@ -76,6 +77,7 @@
 #include "logging/StdoutLogProxy.h"
 #include "plannodes/plannodefragment.h"
 #include "stats/StatsAgent.h"
+#include "storage/AntiCacheBlockStore.h"
 #include "storage/TempTableLimits.h"
 #include "common/ThreadLocalPool.h"
 
@@ -193,10 +195,15 @@ class __attribute__((visibility("default"))) VoltDBEngine {
         /**
         * Load table data into a persistent table specified by the tableId parameter.
         * This must be called at most only once before any data is loaded in to the table.
+        *
+        * If returnConstraintViolations is set, the table may already hold data. The
+        * tuples are inserted with undo under undoToken, and the ones that violate a
+        * constraint are left out and written to the result buffer as a table.
         */
         bool loadTable(int32_t tableId,
                        ReferenceSerializeInput &serializeIn,
-                       int64_t spHandle, int64_t lastCommittedSpHandle);
+                       int64_t spHandle, int64_t lastCommittedSpHandle,
+                       int64_t undoToken, bool returnConstraintViolations);
 
         void resetReusedResultOutputBuffer(const size_t headerSize = 0);
         inline ReferenceSerializeOutput* getResultOutputSerializer() { return &m_resultOutput; }
@@ -237,6 +244,21 @@ class __attribute__((visibility("default"))) VoltDBEngine {
         /** flush active work (like EL buffers) */
         void quiesce(int64_t lastCommittedSpHandle);
 
+        /** Age the cold storage indexes of a bounded slice of tuples. */
+        void ageColdStorageIndexes();
+
+        /** Keep the tuple blocks evicted under cold storage in directory. */
+        void antiCacheInitialize(const std::string &directory);
+
+        /**
+         * Evict the coldest tuple blocks, up to the configured percentage
+         * of the resident tuple memory. Returns the bytes released.
+         */
+        int64_t antiCacheEvict();
+
+        /** Bytes held by the temp tables of the cached plan fragments. */
+        int64_t tempTableMemory() const;
+
         // -------------------------------------------------
         // Save and Restore Table to/from disk functions
         // -------------------------------------------------
@@ -569,7 +591,9 @@ class __attribute__((visibility("default"))) VoltDBEngine {
         double m_percentageOfDataToMove; //Cold Storage: liczba procent danych do zrzutu
         float m_partOfDataToMove; //Cold Storage: część danych do zrzutu
         int m_numCSCut; //Cold Storage: wartość, o którą obniżany jest indeks
-        int m_maxCutCS; //Cold Storage: maksymalna wartość indeksu po obcięciu
+        int32_t m_csAgingTableId; //Cold Storage: table the aging hand is in
+        char *m_csAgingPosition; //Cold Storage: block the aging hand resumes from, NULL for the first
+        boost::scoped_ptr<AntiCacheBlockStore> m_antiCache; //Cold Storage: where evicted blocks go, NULL until initialized
 
     private:
         ThreadLocalPool m_tlPool;
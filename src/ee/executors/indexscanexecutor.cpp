@@ -48,6 +48,7 @@
 #include "common/debuglog.h"
 #include "common/common.h"
 #include "common/tabletuple.h"
+#include "common/executorcontext.hpp"
 #include "common/FatalException.hpp"
 #include "expressions/abstractexpression.h"
 #include "expressions/expressionutil.h"
@@ -384,6 +385,7 @@ bool IndexScanExecutor::p_execute(const NValueArray &params)
     if (limit_node != NULL) {
         limit_node->getLimitAndOffsetByReference(params, limit, offset);
     }
+    const bool trackAccess = ExecutorContext::getExecutorContext()->isColdStorageEnabled();
 
     //
     // We have to different nextValue() methods for different lookup types
@@ -393,6 +395,7 @@ bool IndexScanExecutor::p_execute(const NValueArray &params)
              !(m_tuple = m_index->nextValueAtKey()).isNullTuple()) ||
            ((localLookupType != INDEX_LOOKUP_TYPE_EQ || activeNumOfSearchKeys == 0) &&
             !(m_tuple = m_index->nextValue()).isNullTuple()))) {
+        m_targetTable->fetchEvicted(m_tuple);
         VOLT_TRACE("LOOPING in indexscan: tuple: '%s'\n", m_tuple.debug("tablename").c_str());
         //
         // First check whether the end_expression is now false
@@ -418,6 +421,9 @@ bool IndexScanExecutor::p_execute(const NValueArray &params)
                 continue;
             }
             tuple_ctr++;
+            if (trackAccess) {
+                m_tuple.incrementCSI();
+            }
 
             if (m_projectionNode != NULL)
             {
@@ -49,6 +49,7 @@
 #include "nestloopindexexecutor.h"
 #include "common/debuglog.h"
 #include "common/tabletuple.h"
+#include "common/executorcontext.hpp"
 #include "common/FatalException.hpp"
 #include "execution/VoltDBEngine.h"
 #include "expressions/abstractexpression.h"
@@ -331,6 +332,7 @@ bool NestLoopIndexExecutor::p_execute(const NValueArray &params)
     assert (outer_tuple.sizeInValues() == outer_table->columnCount());
     assert (inner_tuple.sizeInValues() == inner_table->columnCount());
     TableTuple &join_tuple = output_table->tempTuple();
+    const bool trackAccess = ExecutorContext::getExecutorContext()->isColdStorageEnabled();
 
     VOLT_TRACE("<num_of_outer_cols>: %d\n", num_of_outer_cols);
     while (outer_iterator.next(outer_tuple)) {
@@ -473,6 +475,7 @@ bool NestLoopIndexExecutor::p_execute(const NValueArray &params)
                     !(inner_tuple = index->nextValue()).isNullTuple()))
             {
                 match = true;
+                inner_table->fetchEvicted(inner_tuple);
                 VOLT_TRACE("inner_tuple:%s",
                            inner_tuple.debug(inner_table->name()).c_str());
 
@@ -491,6 +494,9 @@ bool NestLoopIndexExecutor::p_execute(const NValueArray &params)
                 if (post_expression == NULL ||
                     post_expression->eval(&outer_tuple, &inner_tuple).isTrue())
                 {
+                    if (trackAccess) {
+                        inner_tuple.incrementCSI();
+                    }
                     //
                     // Try to put the tuple into our output table
                     //
@@ -48,6 +48,7 @@
 #include "common/debuglog.h"
 #include "common/common.h"
 #include "common/tabletuple.h"
+#include "common/executorcontext.hpp"
 #include "common/FatalException.hpp"
 #include "expressions/abstractexpression.h"
 #include "plannodes/seqscannode.h"
@@ -161,6 +162,7 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
         TableTuple tuple(target_table->schema());
         TableIterator iterator = target_table->iterator();
         AbstractExpression *predicate = node->getPredicate();
+        const bool trackAccess = ExecutorContext::getExecutorContext()->isColdStorageEnabled();
         VOLT_TRACE("SCAN PREDICATE A:\n%s\n", predicate->debug(true).c_str());
 
         if (predicate)
@@ -195,6 +197,9 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
                     continue;
                 }
                 ++tuple_ctr;
+                if (trackAccess) {
+                    tuple.incrementCSI();
+                }
 
                 //
                 // Nested Projection
@@ -110,6 +110,8 @@ class CompactingHashMultiMapIndex : public TableIndex
 
     bool keyUsesNonInlinedMemory() { return KeyType::keyUsesNonInlinedMemory(); }
 
+    bool keyDependsOnTupleAddress() { return KeyType::keyDependsOnTupleAddress(); }
+
     bool checkForIndexChange(const TableTuple *lhs, const TableTuple *rhs) {
         return !(m_eq(setKeyFromTuple(lhs), setKeyFromTuple(rhs)));
     }
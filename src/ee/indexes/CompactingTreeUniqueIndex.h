@@ -107,6 +107,8 @@ class CompactingTreeUniqueIndex : public TableIndex
 
     bool keyUsesNonInlinedMemory() { return KeyType::keyUsesNonInlinedMemory(); }
 
+    bool keyDependsOnTupleAddress() { return KeyType::keyDependsOnTupleAddress(); }
+
     bool checkForIndexChange(const TableTuple* lhs, const TableTuple* rhs)
     {
         return  0 != m_cmp(setKeyFromTuple(lhs), setKeyFromTuple(rhs));
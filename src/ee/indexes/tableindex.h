@@ -210,6 +210,12 @@ public:
      */
     virtual bool keyUsesNonInlinedMemory() = 0;
 
+    /**
+     * Does the key read its values from the indexed tuple's storage?
+     * Such an index can't compare keys of tuples in evicted blocks.
+     */
+    virtual bool keyDependsOnTupleAddress() = 0;
+
     /**
      * just returns whether the value is already stored. no
      * modification occurs.
@@ -0,0 +1,281 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include "storage/AntiCacheBlockStore.h"
+
+#include <algorithm>
+#include <cstring>
+#include <sstream>
+#include <vector>
+#include <errno.h>
+#include <fcntl.h>
+#include <unistd.h>
+
+namespace voltdb {
+
+namespace {
+
+// Compressed stream: a control byte below 32 is followed by that many
+// plus one literal bytes. Otherwise its top three bits are the length of
+// a back reference minus two (7 meaning a length byte follows) and its
+// low five bits with the next byte are the distance back minus one.
+const uint32_t MAX_LITERAL_RUN = 32;
+const uint32_t MAX_DISTANCE = 1 << 13;
+const uint32_t MAX_MATCH = 7 + 255 + 2;
+const uint32_t HASH_BITS = 14;
+
+inline uint32_t hashOf(const unsigned char *p) {
+    const uint32_t v = (static_cast<uint32_t>(p[0]) << 16) | (p[1] << 8) | p[2];
+    return (v * 2654435761U) >> (32 - HASH_BITS);
+}
+
+bool appendLiterals(const unsigned char *literals, uint32_t count,
+                    unsigned char *out, uint32_t &outPosition, uint32_t outCapacity) {
+    while (count > 0) {
+        const uint32_t run = std::min(count, MAX_LITERAL_RUN);
+        if (outPosition + 1 + run > outCapacity) {
+            return false;
+        }
+        out[outPosition++] = static_cast<unsigned char>(run - 1);
+        ::memcpy(out + outPosition, literals, run);
+        outPosition += run;
+        literals += run;
+        count -= run;
+    }
+    return true;
+}
+
+struct BlockHeader {
+    uint32_t rawLength;
+    uint32_t storedLength;
+    uint8_t compressed;
+};
+
+bool writeFully(int fd, const char *data, size_t length) {
+    while (length > 0) {
+        const ssize_t written = ::write(fd, data, length);
+        if (written < 0) {
+            if (errno == EINTR) {
+                continue;
+            }
+            return false;
+        }
+        data += written;
+        length -= written;
+    }
+    return true;
+}
+
+bool readFully(int fd, char *data, size_t length) {
+    while (length > 0) {
+        const ssize_t got = ::read(fd, data, length);
+        if (got < 0) {
+            if (errno == EINTR) {
+                continue;
+            }
+            return false;
+        }
+        if (got == 0) {
+            return false;
+        }
+        data += got;
+        length -= got;
+    }
+    return true;
+}
+
+}
+
+AntiCacheBlockStore::AntiCacheBlockStore(const std::string &directory) :
+    m_directory(directory), m_nextBlockId(0), m_diskBytes(0)
+{
+}
+
+AntiCacheBlockStore::~AntiCacheBlockStore() {
+    for (std::map<int32_t, uint32_t>::const_iterator i = m_blocks.begin(); i != m_blocks.end(); ++i) {
+        ::unlink(blockPath(i->first).c_str());
+    }
+}
+
+std::string AntiCacheBlockStore::blockPath(int32_t blockId) const {
+    std::ostringstream path;
+    path << m_directory << "/" << blockId << ".block";
+    return path.str();
+}
+
+int32_t AntiCacheBlockStore::writeBlock(const char *data, uint32_t length) {
+    std::vector<char> compressed(length);
+    BlockHeader header;
+    header.rawLength = length;
+    header.storedLength = length > 0 ? compress(data, length, &compressed[0], length) : 0;
+    header.compressed = header.storedLength != 0;
+    if (!header.compressed) {
+        header.storedLength = length;
+    }
+
+    const int32_t blockId = m_nextBlockId++;
+    const std::string path = blockPath(blockId);
+    const int fd = ::open(path.c_str(), O_WRONLY | O_CREAT | O_TRUNC, 0600);
+    if (fd < 0) {
+        return -1;
+    }
+    bool ok = writeFully(fd, reinterpret_cast<const char*>(&header), sizeof(header)) &&
+              writeFully(fd, header.compressed ? &compressed[0] : data, header.storedLength);
+    ok = (::close(fd) == 0) && ok;
+    if (!ok) {
+        ::unlink(path.c_str());
+        return -1;
+    }
+    m_blocks[blockId] = static_cast<uint32_t>(sizeof(header)) + header.storedLength;
+    m_diskBytes += m_blocks[blockId];
+    return blockId;
+}
+
+bool AntiCacheBlockStore::readBlock(int32_t blockId, char *data, uint32_t length) {
+    std::map<int32_t, uint32_t>::iterator entry = m_blocks.find(blockId);
+    if (entry == m_blocks.end()) {
+        return false;
+    }
+    const std::string path = blockPath(blockId);
+    const int fd = ::open(path.c_str(), O_RDONLY);
+    if (fd < 0) {
+        return false;
+    }
+    BlockHeader header;
+    bool ok = readFully(fd, reinterpret_cast<char*>(&header), sizeof(header)) &&
+              header.rawLength == length;
+    if (ok && header.compressed) {
+        std::vector<char> compressed(header.storedLength);
+        ok = readFully(fd, &compressed[0], header.storedLength) &&
+             decompress(&compressed[0], header.storedLength, data, length);
+    } else if (ok) {
+        ok = header.storedLength == length && readFully(fd, data, length);
+    }
+    ::close(fd);
+    if (ok) {
+        discardBlock(blockId);
+    }
+    return ok;
+}
+
+void AntiCacheBlockStore::discardBlock(int32_t blockId) {
+    std::map<int32_t, uint32_t>::iterator entry = m_blocks.find(blockId);
+    if (entry == m_blocks.end()) {
+        return;
+    }
+    ::unlink(blockPath(blockId).c_str());
+    m_diskBytes -= entry->second;
+    m_blocks.erase(entry);
+}
+
+uint32_t AntiCacheBlockStore::compress(const char *input, uint32_t inLength,
+                                       char *output, uint32_t outCapacity) {
+    const unsigned char *in = reinterpret_cast<const unsigned char*>(input);
+    unsigned char *out = reinterpret_cast<unsigned char*>(output);
+    // last position + 1 at which each hash of three bytes was seen
+    std::vector<uint32_t> seen(1 << HASH_BITS, 0);
+    uint32_t position = 0;
+    uint32_t literalStart = 0;
+    uint32_t outPosition = 0;
+
+    while (position + 2 < inLength) {
+        const uint32_t hash = hashOf(in + position);
+        const uint32_t candidate = seen[hash];
+        seen[hash] = position + 1;
+        if (candidate != 0) {
+            const uint32_t match = candidate - 1;
+            const uint32_t distance = position - match;
+            if (distance <= MAX_DISTANCE &&
+                in[match] == in[position] &&
+                in[match + 1] == in[position + 1] &&
+                in[match + 2] == in[position + 2]) {
+                const uint32_t longest = std::min(MAX_MATCH, inLength - position);
+                uint32_t length = 3;
+                while (length < longest && in[match + length] == in[position + length]) {
+                    ++length;
+                }
+                if (!appendLiterals(in + literalStart, position - literalStart,
+                                    out, outPosition, outCapacity) ||
+                    outPosition + 3 > outCapacity) {
+                    return 0;
+                }
+                const uint32_t lengthCode = length - 2;
+                const uint32_t distanceCode = distance - 1;
+                if (lengthCode < 7) {
+                    out[outPosition++] = static_cast<unsigned char>((lengthCode << 5) | (distanceCode >> 8));
+                } else {
+                    out[outPosition++] = static_cast<unsigned char>((7 << 5) | (distanceCode >> 8));
+                    out[outPosition++] = static_cast<unsigned char>(lengthCode - 7);
+                }
+                out[outPosition++] = static_cast<unsigned char>(distanceCode & 0xff);
+                position += length;
+                literalStart = position;
+                continue;
+            }
+        }
+        ++position;
+    }
+    if (!appendLiterals(in + literalStart, inLength - literalStart, out, outPosition, outCapacity)) {
+        return 0;
+    }
+    return outPosition;
+}
+
+bool AntiCacheBlockStore::decompress(const char *input, uint32_t inLength,
+                                     char *output, uint32_t outLength) {
+    const unsigned char *in = reinterpret_cast<const unsigned char*>(input);
+    unsigned char *out = reinterpret_cast<unsigned char*>(output);
+    uint32_t position = 0;
+    uint32_t outPosition = 0;
+
+    while (position < inLength) {
+        const uint32_t control = in[position++];
+        if (control < MAX_LITERAL_RUN) {
+            const uint32_t run = control + 1;
+            if (position + run > inLength || outPosition + run > outLength) {
+                return false;
+            }
+            ::memcpy(out + outPosition, in + position, run);
+            position += run;
+            outPosition += run;
+            continue;
+        }
+        uint32_t lengthCode = control >> 5;
+        if (lengthCode == 7) {
+            if (position >= inLength) {
+                return false;
+            }
+            lengthCode += in[position++];
+        }
+        if (position >= inLength) {
+            return false;
+        }
+        const uint32_t distance = ((control & 0x1f) << 8) + in[position++] + 1;
+        uint32_t length = lengthCode + 2;
+        if (distance > outPosition || outPosition + length > outLength) {
+            return false;
+        }
+        // byte at a time, a reference may overlap what it produces
+        uint32_t from = outPosition - distance;
+        while (length-- > 0) {
+            out[outPosition++] = out[from++];
+        }
+    }
+    return outPosition == outLength;
+}
+
+}
@@ -0,0 +1,89 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef VOLTDB_ANTICACHEBLOCKSTORE_H_
+#define VOLTDB_ANTICACHEBLOCKSTORE_H_
+
+#include <map>
+#include <string>
+#include <stdint.h>
+
+namespace voltdb {
+
+/**
+ * On-disk home of the tuple blocks a site evicted under cold storage.
+ * Each block is compressed and kept in its own file in the site's
+ * directory until it is read back or discarded. The blocks only make
+ * sense to the process that wrote them, so the files are removed when
+ * the store goes away and nothing is synced.
+ */
+class AntiCacheBlockStore {
+  public:
+    explicit AntiCacheBlockStore(const std::string &directory);
+    ~AntiCacheBlockStore();
+
+    /**
+     * Compress length bytes at data into a new block.
+     * Returns the id of the block, or -1 if it could not be written.
+     */
+    int32_t writeBlock(const char *data, uint32_t length);
+
+    /**
+     * Read a block back into data, which must have room for the length
+     * it was written with, and drop it from the store.
+     * Returns false if the block is missing or damaged.
+     */
+    bool readBlock(int32_t blockId, char *data, uint32_t length);
+
+    /** Drop a block that is no longer needed without reading it. */
+    void discardBlock(int32_t blockId);
+
+    int32_t blockCount() const {
+        return static_cast<int32_t>(m_blocks.size());
+    }
+
+    /** Bytes the blocks take on disk, after compression. */
+    int64_t diskBytes() const {
+        return m_diskBytes;
+    }
+
+    const std::string& directory() const {
+        return m_directory;
+    }
+
+    /**
+     * LZF style compression of inLength bytes into at most outCapacity.
+     * Returns the compressed length, or 0 if it would not fit.
+     */
+    static uint32_t compress(const char *in, uint32_t inLength, char *out, uint32_t outCapacity);
+
+    /** Inverse of compress(); false unless exactly outLength bytes came out. */
+    static bool decompress(const char *in, uint32_t inLength, char *out, uint32_t outLength);
+
+  private:
+    std::string blockPath(int32_t blockId) const;
+
+    const std::string m_directory;
+    int32_t m_nextBlockId;
+    // bytes on disk of each block in the store
+    std::map<int32_t, uint32_t> m_blocks;
+    int64_t m_diskBytes;
+};
+
+}
+
+#endif /* VOLTDB_ANTICACHEBLOCKSTORE_H_ */
@@ -32,6 +32,7 @@ CopyOnWriteIterator::CopyOnWriteIterator(
     m_table->snapshotFinishedScanningBlock(m_currentBlock, m_blockIterator.data());
     m_location = m_blockIterator.key();
     m_currentBlock = m_blockIterator.data();
+    m_currentBlock->ensureResident();
     m_blockIterator.data() = TBPtr();
     m_blockOffset = 0;
     m_blockIterator++;
@@ -53,6 +54,7 @@ bool CopyOnWriteIterator::next(TableTuple &out) {
             m_location = m_blockIterator.key();
             m_currentBlock = m_blockIterator.data();
             assert(m_currentBlock->address() == m_location);
+            m_currentBlock->ensureResident();
             m_blockIterator.data() = TBPtr();
             m_blockOffset = 0;
             m_blockIterator++;
@@ -128,20 +128,20 @@ void MaterializedViewMetadata::freeBackedTuples()
 void MaterializedViewMetadata::allocateBackedTuples()
 {
     m_searchKey = TableTuple(m_index->getKeySchema());
-    m_searchKeyBackingStore = new char[m_index->getKeySchema()->tupleLength() + 1];
-    memset(m_searchKeyBackingStore, 0, m_index->getKeySchema()->tupleLength() + 1);
+    m_searchKeyBackingStore = new char[m_index->getKeySchema()->tupleLength() + TUPLE_HEADER_SIZE];
+    memset(m_searchKeyBackingStore, 0, m_index->getKeySchema()->tupleLength() + TUPLE_HEADER_SIZE);
     m_searchKey.move(m_searchKeyBackingStore);
 
     m_existingTuple = TableTuple(m_target->schema());
 
     m_updatedTuple = TableTuple(m_target->schema());
-    m_updatedTupleBackingStore = new char[m_target->schema()->tupleLength() + 1];
-    memset(m_updatedTupleBackingStore, 0, m_target->schema()->tupleLength() + 1);
+    m_updatedTupleBackingStore = new char[m_target->schema()->tupleLength() + TUPLE_HEADER_SIZE];
+    memset(m_updatedTupleBackingStore, 0, m_target->schema()->tupleLength() + TUPLE_HEADER_SIZE);
     m_updatedTuple.move(m_updatedTupleBackingStore);
 
     m_emptyTuple = TableTuple(m_target->schema());
-    m_emptyTupleBackingStore = new char[m_target->schema()->tupleLength() + 1];
-    memset(m_emptyTupleBackingStore, 0, m_target->schema()->tupleLength() + 1);
+    m_emptyTupleBackingStore = new char[m_target->schema()->tupleLength() + TUPLE_HEADER_SIZE];
+    memset(m_emptyTupleBackingStore, 0, m_target->schema()->tupleLength() + TUPLE_HEADER_SIZE);
     m_emptyTuple.move(m_emptyTupleBackingStore);
 }
 
@@ -176,7 +176,7 @@ void MaterializedViewMetadata::processTupleInsert(TableTuple &newTuple, bool fal
     }
 
     // clear the tuple that will be built to insert or overwrite
-    memset(m_updatedTupleBackingStore, 0, m_target->schema()->tupleLength() + 1);
+    memset(m_updatedTupleBackingStore, 0, m_target->schema()->tupleLength() + TUPLE_HEADER_SIZE);
 
     int colindex = 0;
     // set up the first n columns, based on group-by columns
@@ -240,7 +240,7 @@ void MaterializedViewMetadata::processTupleDelete(TableTuple &oldTuple, bool fal
     findExistingTuple(oldTuple, true);
 
     // clear the tuple that will be built to insert or overwrite
-    memset(m_updatedTupleBackingStore, 0, m_target->schema()->tupleLength() + 1);
+    memset(m_updatedTupleBackingStore, 0, m_target->schema()->tupleLength() + TUPLE_HEADER_SIZE);
 
     //printf("  Existing tuple: %s.\n", m_existingTuple.debugNoHeader().c_str());
     //fflush(stdout);
@@ -303,6 +303,7 @@ bool MaterializedViewMetadata::findExistingTuple(TableTuple &oldTuple, bool expe
     // determine if the row exists (create the empty one if it doesn't)
     m_index->moveToKey(&m_searchKey);
     m_existingTuple = m_index->nextValueAtKey();
+    m_target->fetchEvicted(m_existingTuple);
     if (m_existingTuple.isNullTuple()) {
         if (expected) {
             std::string name = m_target->name();
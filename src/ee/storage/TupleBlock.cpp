@@ -16,9 +16,12 @@
  */
 #include "storage/TupleBlock.h"
 #include "storage/table.h"
+#include "storage/AntiCacheBlockStore.h"
 #include <sys/mman.h>
 #include <errno.h>
+#include <unistd.h>
 #include "common/ThreadLocalPool.h"
+#include "common/FatalException.hpp"
 
 namespace voltdb {
 
@@ -35,7 +38,9 @@ TupleBlock::TupleBlock(Table *table, TBBucketPtr bucket) :
         m_lastCompactionOffset(0),
         m_tuplesPerBlockDivNumBuckets(m_tuplesPerBlock / static_cast<double>(TUPLE_BLOCK_NUM_BUCKETS)),
         m_bucketIndex(0),
-        m_bucket(bucket) {
+        m_bucket(bucket),
+        m_evictedBlockId(-1),
+        m_antiCache(NULL) {
 #ifdef MEMCHECK
     m_storage = new char[table->m_tableAllocationSize];
 #else
@@ -54,6 +59,10 @@ TupleBlock::TupleBlock(Table *table, TBBucketPtr bucket) :
 }
 
 TupleBlock::~TupleBlock() {
+    if (m_evictedBlockId != -1) {
+        m_antiCache->discardBlock(m_evictedBlockId);
+        m_table->m_evictedBlockCount--;
+    }
     /*
       tupleBlocksAllocated--;
       std::cout << "Destructing tuple block " << static_cast<void*>(this)
@@ -73,6 +82,40 @@ TupleBlock::~TupleBlock() {
 #endif
 }
 
+int64_t TupleBlock::evict(AntiCacheBlockStore *store) {
+    assert(m_evictedBlockId == -1);
+    const int32_t blockId = store->writeBlock(m_storage, m_nextFreeTuple * m_tupleLength);
+    if (blockId == -1) {
+        return 0;
+    }
+    m_evictedBlockId = blockId;
+    m_antiCache = store;
+    m_table->m_evictedBlockCount++;
+
+#ifndef MEMCHECK
+    // Hand the whole pages of the storage back to the OS. The range stays
+    // mapped and faults in as zeros, which fetch() then overwrites.
+    const uintptr_t pageSize = static_cast<uintptr_t>(::sysconf(_SC_PAGESIZE));
+    const uintptr_t start = (reinterpret_cast<uintptr_t>(m_storage) + pageSize - 1) & ~(pageSize - 1);
+    const uintptr_t end = (reinterpret_cast<uintptr_t>(m_storage) + m_table->m_tableAllocationSize) & ~(pageSize - 1);
+    if (end > start) {
+        ::madvise(reinterpret_cast<void*>(start), end - start, MADV_DONTNEED);
+    }
+#endif
+    return m_table->m_tableAllocationSize;
+}
+
+void TupleBlock::fetch() {
+    if (!m_antiCache->readBlock(m_evictedBlockId, m_storage, m_nextFreeTuple * m_tupleLength)) {
+        throwFatalException("Failed to read evicted tuple block %d of table %s back from %s",
+                            m_evictedBlockId, m_table->name().c_str(),
+                            m_antiCache->directory().c_str());
+    }
+    m_evictedBlockId = -1;
+    m_antiCache = NULL;
+    m_table->m_evictedBlockCount--;
+}
+
 std::pair<int, int> TupleBlock::merge(Table *table, TBPtr source) {
     assert(source != this);
     /*
@@ -45,6 +45,7 @@ void intrusive_ptr_release(voltdb::TupleBlock * p);
 
 namespace voltdb {
 class Table;
+class AntiCacheBlockStore;
 
 class TruncatedInt {
 public:
@@ -220,7 +221,35 @@ public:
     inline TBBucketPtr currentBucket() {
         return m_bucket;
     }
+
+    /**
+     * Whether the tuples of this block were moved to the anti-cache. The
+     * block keeps its address range and its place in the table, so index
+     * entries and iterators still point into it, but the memory behind
+     * the range was given back and reads as zeros until the block is
+     * fetched.
+     */
+    inline bool isEvicted() const {
+        return m_evictedBlockId != -1;
+    }
+
+    /** Fetch the block back from the anti-cache if it was evicted. */
+    inline void ensureResident() {
+        if (m_evictedBlockId != -1) {
+            fetch();
+        }
+    }
+
+    /**
+     * Write the used part of the block to store and release its memory.
+     * Returns the bytes released, 0 with the block left resident if the
+     * write failed.
+     */
+    int64_t evict(AntiCacheBlockStore *store);
+
 private:
+    void fetch();
+
     uint32_t m_references;
     Table* m_table;
     char*   m_storage;
@@ -242,6 +271,10 @@ private:
 
     int m_bucketIndex;
     TBBucketPtr m_bucket;
+
+    // anti-cache block holding the tuples while evicted, -1 while resident
+    int32_t m_evictedBlockId;
+    AntiCacheBlockStore *m_antiCache;
 };
 
 }
@@ -43,6 +43,7 @@
  * OTHER DEALINGS IN THE SOFTWARE.
  */
 
+#include <algorithm>
 #include <sstream>
 #include <cassert>
 #include <cstdio>
@@ -238,6 +239,8 @@ void PersistentTable::insertPersistentTuple(TableTuple &source, bool fallible)
     // Then copy the source into the target
     //
     target.copyForPersistentInsert(source); // tuple in freelist must be already cleared
+    // a new tuple counts as accessed once, whatever the source's header held
+    target.setCSI(1);
     if (m_schema->getUninlinedObjectColumnCount() != 0) {
         increaseStringMemCount(target.getNonInlinedMemorySize());
     }
@@ -284,6 +287,41 @@ void PersistentTable::insertPersistentTuple(TableTuple &source, bool fallible)
     }
 }
 
+void PersistentTable::loadTuplesForLoadTable(SerializeInput &serialize_io,
+                                             SerializeOutput &violationOutput)
+{
+    readLoadedTableHeader(serialize_io);
+    int tupleCount = serialize_io.readInt();
+    assert(tupleCount >= 0);
+
+    // the rejected tuples go back as a table, filled in as they are found
+    size_t lengthPosition = violationOutput.reserveBytes(sizeof(int32_t));
+    size_t tablePosition = violationOutput.reserveBytes(sizeof(int32_t));
+    serializeColumnHeaderTo(violationOutput);
+    size_t countPosition = violationOutput.reserveBytes(sizeof(int32_t));
+    int32_t violationCount = 0;
+
+    // uninlined values are only held here until insertPersistentTuple copies them
+    Pool stringPool;
+    TableTuple &source = tempTuple();
+    for (int i = 0; i < tupleCount; ++i) {
+        source.deserializeFrom(serialize_io, &stringPool);
+        try {
+            insertPersistentTuple(source, true);
+        } catch (const ConstraintFailureException &e) {
+            source.serializeTo(violationOutput);
+            ++violationCount;
+        }
+        stringPool.purge();
+    }
+
+    violationOutput.writeIntAt(countPosition, violationCount);
+    violationOutput.writeIntAt(tablePosition,
+            static_cast<int32_t>(violationOutput.position() - tablePosition - sizeof(int32_t)));
+    violationOutput.writeIntAt(lengthPosition,
+            static_cast<int32_t>(violationOutput.position() - lengthPosition - sizeof(int32_t)));
+}
+
 /*
  * Insert a tuple but don't allocate a new copy of the uninlineable
  * strings or create an UndoAction or update a materialized view.
@@ -649,7 +687,9 @@ TableTuple PersistentTable::lookupTuple(TableTuple tuple) {
         return nullTuple;
     }
 
-    return pkeyIndex->uniqueMatchingTuple(tuple);
+    TableTuple found = pkeyIndex->uniqueMatchingTuple(tuple);
+    fetchEvicted(found);
+    return found;
 }
 
 void PersistentTable::insertIntoAllIndexes(TableTuple *tuple) {
@@ -1150,6 +1190,61 @@ void PersistentTable::doIdleCompaction() {
     }
 }
 
+char *PersistentTable::ageCSIs(char *position, int cut, size_t &tupleBudget) {
+    TableTuple tuple(m_schema);
+    TBMapI i = m_data.lower_bound(position);
+    while (i != m_data.end() && tupleBudget > 0) {
+        if (i.data()->isEvicted()) {
+            // the tuples stay as cold as they were when they left
+            ++i;
+            continue;
+        }
+        char *address = i.key();
+        const uint32_t boundary = i.data()->unusedTupleBoundry();
+        for (uint32_t ii = 0; ii < boundary; ++ii) {
+            tuple.move(address + ii * m_tupleLength);
+            if (tuple.isActive()) {
+                const int csi = tuple.getCSI();
+                tuple.setCSI(csi > cut ? csi - cut : 0);
+            }
+        }
+        tupleBudget -= std::min(tupleBudget, static_cast<size_t>(boundary));
+        ++i;
+    }
+    return i == m_data.end() ? NULL : i.key();
+}
+
+bool PersistentTable::canEvictBlocks() const {
+    if (m_COWContext != NULL || m_recoveryContext != NULL ||
+        m_tuplesPinnedByUndo != 0 || m_tuplesPendingDeleteCount != 0) {
+        return false;
+    }
+    BOOST_FOREACH(TableIndex *index, m_indexes) {
+        if (index->keyDependsOnTupleAddress()) {
+            return false;
+        }
+    }
+    return true;
+}
+
+int64_t PersistentTable::collectColdBlocks(std::vector<std::pair<double, TBPtr> > &candidates) {
+    TableTuple tuple(m_schema);
+    for (TBMapI i = m_data.begin(); i != m_data.end(); ++i) {
+        TBPtr block = i.data();
+        if (block->isEvicted() || block->hasFreeTuples()) {
+            continue;
+        }
+        int64_t heat = 0;
+        const uint32_t boundary = block->unusedTupleBoundry();
+        for (uint32_t ii = 0; ii < boundary; ++ii) {
+            tuple.move(i.key() + ii * m_tupleLength);
+            heat += tuple.getCSI();
+        }
+        candidates.push_back(std::make_pair(static_cast<double>(heat) / boundary, block));
+    }
+    return allocatedTupleMemory();
+}
+
 void PersistentTable::doForcedCompaction() {
     if (m_recoveryContext != NULL)
     {
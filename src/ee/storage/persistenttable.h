@@ -47,6 +47,7 @@
 #define HSTOREPERSISTENTTABLE_H
 
 #include <string>
+#include <utility>
 #include <vector>
 #include <cassert>
 #include "boost/shared_ptr.hpp"
@@ -191,6 +192,15 @@ class PersistentTable : public Table, public UndoQuantumReleaseInterest {
 
     void insertPersistentTuple(TableTuple &source, bool fallible);
 
+    /*
+     * Insert the tuples of a serialized table one at a time with undo,
+     * the way an insert statement would. Tuples that violate a constraint
+     * are skipped and written to the output as a table with this table's
+     * schema, preceded by its length.
+     */
+    void loadTuplesForLoadTable(SerializeInput &serialize_in,
+                                SerializeOutput &violationOutput);
+
     /*
      * Lookup the address of the tuple that is identical to the specified tuple.
      * Does a primary key lookup or table scan if necessary.
@@ -261,6 +271,39 @@ class PersistentTable : public Table, public UndoQuantumReleaseInterest {
     void doIdleCompaction();
     void printBucketInfo();
 
+    /**
+     * One slice of cold storage aging: lower the CSI of every tuple in the
+     * blocks from position on by cut, a whole block at a time, until
+     * tupleBudget tuple slots have been visited. Pass NULL to start at the
+     * first block. Returns the block to resume from, or NULL when the last
+     * block was aged.
+     */
+    char *ageCSIs(char *position, int cut, size_t &tupleBudget);
+
+    /**
+     * Fetch the block holding a tuple found through an index back from
+     * the anti-cache, so the tuple can be read.
+     */
+    inline void fetchEvicted(const TableTuple &tuple) {
+        if (m_evictedBlockCount != 0 && tuple.address() != NULL) {
+            findBlock(tuple.address())->ensureResident();
+        }
+    }
+
+    /**
+     * Whether blocks of this table may be evicted right now. Not while a
+     * snapshot or recovery scan owns the blocks, while undo or a pending
+     * delete still references tuples, or if an index keys on the tuple
+     * storage itself and would have to read evicted tuples to compare.
+     */
+    bool canEvictBlocks() const;
+
+    /**
+     * Add the resident full blocks of this table to candidates with the
+     * average CSI of their tuples. Returns the resident tuple memory.
+     */
+    int64_t collectColdBlocks(std::vector<std::pair<double, TBPtr> > &candidates);
+
     void increaseStringMemCount(size_t bytes)
     {
         m_nonInlinedMemorySize += bytes;
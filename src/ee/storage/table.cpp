@@ -72,6 +72,7 @@ Table::Table(int tableAllocationTargetSize) :
     m_columnHeaderSize(-1),
     m_tupleCount(0),
     m_tuplesPinnedByUndo(0),
+    m_evictedBlockCount(0),
     m_columnCount(0),
     m_tuplesPerBlock(0),
     m_nonInlinedMemorySize(0),
@@ -404,6 +405,11 @@ void Table::loadTuplesFromNoHeader(SerializeInput &serialize_io,
 
 void Table::loadTuplesFrom(SerializeInput &serialize_io,
                            Pool *stringPool) {
+    readLoadedTableHeader(serialize_io);
+    loadTuplesFromNoHeader(serialize_io, stringPool);
+}
+
+void Table::readLoadedTableHeader(SerializeInput &serialize_io) {
     /*
      * directly receives a VoltTable buffer.
      * [00 01]   [02 03]   [04 .. 0x]
@@ -459,8 +465,6 @@ void Table::loadTuplesFrom(SerializeInput &serialize_io,
         throw SerializableEEException(VOLT_EE_EXCEPTION_TYPE_EEEXCEPTION,
                                       message.str().c_str());
     }
-
-    loadTuplesFromNoHeader(serialize_io, stringPool);
 }
 
 bool isExistingTableIndex(std::vector<TableIndex*> &indexes, TableIndex* index) {
@@ -194,14 +194,25 @@ class Table {
         return m_tupleCount;
     }
 
+    /** Memory held by resident tuple blocks; evicted blocks gave theirs back. */
     virtual int64_t allocatedTupleMemory() const {
-        return allocatedBlockCount() * m_tableAllocationSize;
+        return (allocatedBlockCount() - m_evictedBlockCount) * static_cast<int64_t>(m_tableAllocationSize);
+    }
+
+    /** Tuple blocks currently evicted to the anti-cache. */
+    uint32_t evictedBlockCount() const {
+        return m_evictedBlockCount;
     }
 
     int64_t occupiedTupleMemory() const {
         return m_tupleCount * m_tempTuple.tupleLength();
     }
 
+    /** Part of occupiedTupleMemory() taken by the tuple headers. */
+    int64_t tupleHeaderMemory() const {
+        return m_tupleCount * static_cast<int64_t>(TUPLE_HEADER_SIZE);
+    }
+
     // Only counts persistent table usage, currently
     int64_t nonInlinedMemorySize() const {
         return m_nonInlinedMemorySize;
@@ -362,6 +373,12 @@ protected:
     virtual void processLoadedTuple(TableTuple &tuple) {
     };
 
+    /*
+     * Reads the schema of a serialized table up to its tuple count and
+     * checks that it has as many columns as this table.
+     */
+    void readLoadedTableHeader(SerializeInput &serialize_in);
+
     virtual void swapTuples(TableTuple &sourceTupleWithNewValues, TableTuple &destinationTuple) {
         throwFatalException("Unsupported operation");
     }
@@ -412,6 +429,7 @@ protected:
 
     uint32_t m_tupleCount;
     uint32_t m_tuplesPinnedByUndo;
+    uint32_t m_evictedBlockCount;
     uint32_t m_columnCount;
     uint32_t m_tuplesPerBlock;
     uint32_t m_tupleLength;
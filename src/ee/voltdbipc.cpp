@@ -93,6 +93,8 @@ typedef struct {
     int32_t tableId;
     int64_t spHandle;
     int64_t lastCommittedSpHandle;
+    int64_t undoToken;
+    int8_t returnConstraintViolations;
     char data[0];
 }__attribute__((packed)) load_table_cmd;
 
@@ -278,6 +280,7 @@ bool VoltDBIPC::execute(struct ipc_command *cmd) {
         result = kErrorCode_None;
         break;
       case 9:
+        // writes the constraint violations directly when asked for them
         result = loadTable(cmd);
         break;
       case 10:
@@ -325,6 +328,17 @@ bool VoltDBIPC::execute(struct ipc_command *cmd) {
           updateHashinator(cmd);
           result = kErrorCode_None;
           break;
+      case 28:
+          result = antiCacheInitialize(cmd);
+          break;
+      case 29:
+          antiCacheEvict(cmd);
+          result = kErrorCode_None;
+          break;
+      case 30:
+          tempTableMemory();
+          result = kErrorCode_None;
+          break;
       default:
         result = stub(cmd);
     }
@@ -544,6 +558,37 @@ int8_t VoltDBIPC::quiesce(struct ipc_command *cmd) {
     return kErrorCode_Success;
 }
 
+int8_t VoltDBIPC::antiCacheInitialize(struct ipc_command *cmd) {
+    struct anticache_initialize {
+        struct ipc_command cmd;
+        int32_t directoryLength;
+        char directory[0];
+    }__attribute__((packed));
+
+    struct anticache_initialize *cs = (struct anticache_initialize*)cmd;
+
+    try {
+        m_engine->antiCacheInitialize(std::string(cs->directory, ntohl(cs->directoryLength)));
+    } catch (const FatalException &e) {
+        crashVoltDB(e);
+    }
+
+    return kErrorCode_Success;
+}
+
+void VoltDBIPC::antiCacheEvict(struct ipc_command *cmd) {
+    int64_t evictedBytes = 0;
+    try {
+        evictedBytes = m_engine->antiCacheEvict();
+    } catch (const FatalException &e) {
+        crashVoltDB(e);
+    }
+    char response[9];
+    response[0] = kErrorCode_Success;
+    *reinterpret_cast<int64_t*>(&response[1]) = htonll(evictedBytes);
+    writeOrDie(m_fd, (unsigned char*)response, 9);
+}
+
 void VoltDBIPC::executePlanFragments(struct ipc_command *cmd) {
     int errors = 0;
     NValueArray &params = m_engine->getParameterContainer();
@@ -635,18 +680,33 @@ int8_t VoltDBIPC::loadTable(struct ipc_command *cmd) {
     const int32_t tableId = ntohl(loadTableCommand->tableId);
     const int64_t spHandle = ntohll(loadTableCommand->spHandle);
     const int64_t lastCommittedSpHandle = ntohll(loadTableCommand->lastCommittedSpHandle);
+    const int64_t undoToken = ntohll(loadTableCommand->undoToken);
+    const bool returnConstraintViolations = loadTableCommand->returnConstraintViolations != 0;
     // ...and fast serialized table last.
     void* offset = loadTableCommand->data;
     int sz = static_cast<int> (ntohl(cmd->msgsize) - sizeof(load_table_cmd));
     try {
         ReferenceSerializeInput serialize_in(offset, sz);
 
-        bool success = m_engine->loadTable(tableId, serialize_in, spHandle, lastCommittedSpHandle);
-        if (success) {
-            return kErrorCode_Success;
-        } else {
+        bool success = m_engine->loadTable(tableId, serialize_in, spHandle, lastCommittedSpHandle,
+                                           undoToken, returnConstraintViolations);
+        if (!success) {
             return kErrorCode_Error;
         }
+        if (!returnConstraintViolations) {
+            return kErrorCode_Success;
+        }
+        // the violations table includes its total serialization size
+        const int8_t successResult = kErrorCode_Success;
+        writeOrDie(m_fd, (const unsigned char*)&successResult, sizeof(int8_t));
+        const int32_t size = m_engine->getResultsSize();
+        writeOrDie(m_fd, (unsigned char*)(m_engine->getReusedResultBuffer()), size);
+        return kErrorCode_None;
+    } catch (const SerializableEEException &e) {
+        m_engine->resetReusedResultOutputBuffer();
+        e.serialize(m_engine->getExceptionOutputSerializer());
+        sendException(kErrorCode_Error);
+        return kErrorCode_None;
     } catch (const FatalException &e) {
         crashVoltDB(e);
     }
@@ -1092,6 +1152,14 @@ void VoltDBIPC::threadLocalPoolAllocations() {
     writeOrDie(m_fd, (unsigned char*)response, 9);
 }
 
+void VoltDBIPC::tempTableMemory() {
+    int64_t tempTableMemory = m_engine->tempTableMemory();
+    char response[9];
+    response[0] = kErrorCode_Success;
+    *reinterpret_cast<int64_t*>(&response[1]) = htonll(tempTableMemory);
+    writeOrDie(m_fd, (unsigned char*)response, 9);
+}
+
 int64_t VoltDBIPC::getQueuedExportBytes(int32_t partitionId, std::string signature) {
     m_reusedResultBuffer[0] = kErrorCode_getQueuedExportBytes;
     *reinterpret_cast<int32_t*>(&m_reusedResultBuffer[1]) = htonl(partitionId);
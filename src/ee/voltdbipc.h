@@ -116,6 +116,10 @@ private:
 
     int8_t quiesce(struct ipc_command *cmd);
 
+    int8_t antiCacheInitialize(struct ipc_command *cmd);
+
+    void antiCacheEvict(struct ipc_command *cmd);
+
     int8_t setLogLevels(struct ipc_command *cmd);
 
     void executePlanFragments(struct ipc_command *cmd);
@@ -134,6 +138,8 @@ private:
 
     void threadLocalPoolAllocations();
 
+    void tempTableMemory();
+
     void sendException( int8_t errorCode);
 
     int8_t activateTableStream(struct ipc_command *cmd);
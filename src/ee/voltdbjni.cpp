@@ -404,11 +404,14 @@ Java_org_voltdb_jni_ExecutionEngine_nativeUpdateCatalog(
  * @param pointer the VoltDBEngine pointer
  * @param table_id catalog ID of the table
  * @param serialized_table the table data to be loaded
+ * @param undoToken token to undo the load with if returnConstraintViolations is set
+ * @param returnConstraintViolations insert with undo and write the rejected rows to the result buffer
 */
 SHAREDLIB_JNIEXPORT jint JNICALL
 Java_org_voltdb_jni_ExecutionEngine_nativeLoadTable (
     JNIEnv *env, jobject obj, jlong engine_ptr, jint table_id,
-    jbyteArray serialized_table, jlong spHandle, jlong lastCommittedSpHandle)
+    jbyteArray serialized_table, jlong spHandle, jlong lastCommittedSpHandle,
+    jlong undoToken, jboolean returnConstraintViolations)
 {
     VoltDBEngine *engine = castToEngine(engine_ptr);
     Topend *topend = static_cast<JNITopend*>(engine->getTopend())->updateJNIEnv(env);
@@ -428,13 +431,15 @@ Java_org_voltdb_jni_ExecutionEngine_nativeLoadTable (
     try {
         try {
             bool success = engine->loadTable(table_id, serialize_in,
-                                             spHandle, lastCommittedSpHandle);
+                                             spHandle, lastCommittedSpHandle,
+                                             undoToken, returnConstraintViolations);
             env->ReleaseByteArrayElements(serialized_table, bytes, JNI_ABORT);
             VOLT_DEBUG("deserialized table");
 
             if (success)
                 return org_voltdb_jni_ExecutionEngine_ERRORCODE_SUCCESS;
         } catch (const SerializableEEException &e) {
+            env->ReleaseByteArrayElements(serialized_table, bytes, JNI_ABORT);
             engine->resetReusedResultOutputBuffer();
             e.serialize(engine->getExceptionOutputSerializer());
         }
@@ -801,6 +806,50 @@ SHAREDLIB_JNIEXPORT void JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeQuies
     }
 }
 
+/*
+ * Class:     org_voltdb_jni_ExecutionEngine
+ * Method:    nativeAntiCacheInitialize
+ * Signature: (J[B)V
+ *
+ * Sets the directory the site keeps its evicted tuple blocks in.
+ */
+SHAREDLIB_JNIEXPORT void JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeAntiCacheInitialize
+  (JNIEnv *env, jobject obj, jlong engine_ptr, jbyteArray directory)
+{
+    VoltDBEngine *engine = castToEngine(engine_ptr);
+    Topend *topend = static_cast<JNITopend*>(engine->getTopend())->updateJNIEnv(env);
+    jbyte *directoryChars = env->GetByteArrayElements(directory, NULL);
+    std::string directoryString(reinterpret_cast<char *>(directoryChars), env->GetArrayLength(directory));
+    env->ReleaseByteArrayElements(directory, directoryChars, JNI_ABORT);
+    try {
+        updateJNILogProxy(engine); //JNIEnv pointer can change between calls, must be updated
+        engine->antiCacheInitialize(directoryString);
+    } catch (const FatalException &e) {
+        topend->crashVoltDB(e);
+    }
+}
+
+/*
+ * Class:     org_voltdb_jni_ExecutionEngine
+ * Method:    nativeAntiCacheEvict
+ * Signature: (J)J
+ *
+ * Evicts the coldest tuple blocks and returns the bytes released.
+ */
+SHAREDLIB_JNIEXPORT jlong JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeAntiCacheEvict
+  (JNIEnv *env, jobject obj, jlong engine_ptr)
+{
+    VoltDBEngine *engine = castToEngine(engine_ptr);
+    Topend *topend = static_cast<JNITopend*>(engine->getTopend())->updateJNIEnv(env);
+    try {
+        updateJNILogProxy(engine); //JNIEnv pointer can change between calls, must be updated
+        return engine->antiCacheEvict();
+    } catch (const FatalException &e) {
+        topend->crashVoltDB(e);
+    }
+    return 0;
+}
+
 /**
  * Class:     org_voltdb_jni_ExecutionEngine
  * Method:    nativeGetStats
@@ -1205,6 +1254,17 @@ SHAREDLIB_JNIEXPORT jlong JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeGetT
     return ThreadLocalPool::getPoolAllocationSize();
 }
 
+/*
+ * Class:     org_voltdb_jni_ExecutionEngine
+ * Method:    nativeGetTempTableMemory
+ * Signature: (J)J
+ */
+SHAREDLIB_JNIEXPORT jlong JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeGetTempTableMemory
+  (JNIEnv *, jobject, jlong engine_ptr) {
+    VoltDBEngine *engine = castToEngine(engine_ptr);
+    return engine->tempTableMemory();
+}
+
 /*
  * Class:     org_voltdb_jni_ExecutionEngine
  * Method:    nativeGetRSS
@@ -23,6 +23,7 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltcore.logging.Level;
@@ -30,18 +31,42 @@ import org.voltcore.logging.VoltLogger;
 import org.voltcore.network.Connection;
 import org.voltcore.network.QueueMonitor;
 import org.voltcore.network.VoltProtocolHandler;
+import org.voltcore.utils.ContainerDeferredSerialization;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.DeferredSerialization;
 import org.voltcore.utils.EstTime;
+import org.voltcore.utils.Pair;
 import org.voltcore.utils.RateLimitedLogger;
 import org.voltdb.VoltDB;
+import org.voltdb.utils.CompressionService;
 
 public class ForeignHost {
     private static final VoltLogger hostLog = new VoltLogger("HOST");
     private static final RateLimitedLogger rateLimitedLogger = new RateLimitedLogger(10 * 1000, hostLog, Level.WARN);
 
-    private Connection m_connection;
-    final FHInputHandler m_handler;
+    /*
+     * Destination counts that mark frames which aren't a message for local sites
+     */
+    private static final int POISON_PILL = -1;
+    private static final int HELLO = -2;
+    private static final int COMPRESSED = -3;
+
+    // bits of the flags in a hello frame
+    private static final int HELLO_COMPRESSION = 1;
+
+    /*
+     * Messages at least this large are compressed once the foreign host has said
+     * it compresses too, 0 if this host doesn't compress
+     */
+    private final int m_compressionThreshold;
+    private volatile boolean m_compress = false;
+
+    /*
+     * Connections to the host, messages to a site always use the same one,
+     * see connectionIndex
+     */
+    private final FHConnection m_connections[];
     private final HostMessenger m_hostMessenger;
     private final Integer m_hostId;
     final InetSocketAddress m_listeningAddress;
@@ -49,9 +74,8 @@ public class ForeignHost {
     private boolean m_closing;
     boolean m_isUp;
 
-    // hold onto the socket so we can kill it
+    // hold onto the first socket for its address
     private final Socket m_socket;
-    private final SocketChannel m_sc;
 
     // Set the default here for TestMessaging, which currently has no VoltDB instance
     private long m_deadHostTimeout;
@@ -104,28 +128,268 @@ public class ForeignHost {
         }
     }
 
+    /**
+     * One socket to the foreign host. Messages are serialized straight into a pooled
+     * direct buffer that is handed to the write stream as a unit. Senders keep appending
+     * framed messages to the open buffer until the network thread picks it up, so small
+     * messages such as fragments and their responses go out together in one write
+     * without a heap allocation or an extra copy.
+     */
+    private class FHConnection {
+        private final SocketChannel m_sc;
+        private final FHInputHandler m_handler = new FHInputHandler();
+        private Connection m_connection;
+
+        private MessageBatch m_openBatch = null;
+
+        // outgoing counters, guarded by this
+        private long m_messagesSent = 0;
+        private long m_bytesSent = 0;
+        private long m_buffersQueued = 0;
+        private long m_messagesCompressed = 0;
+        private long m_bytesBeforeCompression = 0;
+        private long m_bytesAfterCompression = 0;
+
+        private FHConnection(SocketChannel sc) {
+            m_sc = sc;
+        }
+
+        /**
+         * A pooled buffer of framed messages queued to the write stream. Messages can
+         * be appended until the network thread seals it or the write stream cancels it.
+         * Appending and sealing synchronize on the batch rather than the FHConnection,
+         * because the write stream cancels queued batches while holding its own lock.
+         */
+        private class MessageBatch implements ContainerDeferredSerialization {
+            private final BBContainer m_cont;
+            private boolean m_sealed = false;
+
+            private MessageBatch(BBContainer cont) {
+                m_cont = cont;
+            }
+
+            /*
+             * Frame a message into the batch, false if it is sealed or doesn't have room
+             */
+            private synchronized boolean append(long destinations[], VoltMessage message, int len)
+            throws IOException {
+                final ByteBuffer buf = m_cont.b;
+                if (m_sealed || buf.remaining() < len) {
+                    return false;
+                }
+                /*
+                 * Messages expect to fill the buffer they are flattened into,
+                 * so give each one a slice that is exactly its size
+                 */
+                final int position = buf.position();
+                ByteBuffer slice = buf.duplicate();
+                slice.limit(position + len);
+                slice = slice.slice();
+                frame(slice, destinations, message);
+                buf.position(position + len);
+                return true;
+            }
+
+            private synchronized void seal() {
+                m_sealed = true;
+            }
+
+            @Override
+            public BBContainer serializeToContainer() {
+                seal();
+                if (m_cont.b.position() == 0) {
+                    m_cont.discard();
+                    return null;
+                }
+                return m_cont;
+            }
+
+            @Override
+            public ByteBuffer[] serialize() {
+                seal();
+                m_cont.b.flip();
+                ByteBuffer copy = ByteBuffer.allocate(m_cont.b.remaining());
+                copy.put(m_cont.b);
+                m_cont.discard();
+                return new ByteBuffer[] { copy };
+            }
+
+            @Override
+            public void cancel() {
+                seal();
+                m_cont.discard();
+            }
+        }
+
+        /**
+         * Serializes and compresses a large message when the network thread gets to it,
+         * so neither cost lands on the sender. Stays uncompressed if that doesn't save much.
+         */
+        private class CompressedMessage implements DeferredSerialization {
+            // length prefix, source hsid, COMPRESSED, uncompressed and compressed lengths
+            private static final int HEADER = 24;
+
+            private final long m_destinations[];
+            private final VoltMessage m_message;
+            private final int m_len;
+
+            private CompressedMessage(long destinations[], VoltMessage message, int len) {
+                m_destinations = destinations;
+                m_message = message;
+                m_len = len;
+            }
+
+            @Override
+            public ByteBuffer[] serialize() throws IOException {
+                ByteBuffer buf = ByteBuffer.allocate(m_len);
+                frame(buf, m_destinations, m_message);
+
+                // everything after the length prefix and source hsid is compressed
+                final int bodyLength = m_len - 12;
+                byte compressed[] = new byte[HEADER + CompressionService.maxCompressedLength(bodyLength)];
+                final int compressedLength =
+                    CompressionService.compressBytes(buf.array(), 12, bodyLength, compressed, HEADER);
+                if (compressedLength > bodyLength - bodyLength / 8) {
+                    buf.flip();
+                    return new ByteBuffer[] { buf };
+                }
+
+                ByteBuffer out = ByteBuffer.wrap(compressed, 0, HEADER + compressedLength).slice();
+                out.putInt(out.capacity() - 4);
+                out.putLong(m_message.m_sourceHSId);
+                out.putInt(COMPRESSED);
+                out.putInt(bodyLength);
+                out.putInt(compressedLength);
+                out.position(out.capacity());
+                out.flip();
+                synchronized (FHConnection.this) {
+                    m_messagesCompressed++;
+                    m_bytesBeforeCompression += m_len;
+                    m_bytesAfterCompression += out.capacity();
+                }
+                return new ByteBuffer[] { out };
+            }
+
+            @Override
+            public void cancel() {}
+        }
+
+        void send(final long destinations[], final VoltMessage message) throws IOException {
+            final int len = 4            /* length prefix */
+                    + 8            /* source hsid */
+                    + 4            /* destinationCount */
+                    + 8 * destinations.length  /* destination list */
+                    + message.getSerializedSize();
+
+            if (m_compress && len >= m_compressionThreshold) {
+                synchronized (this) {
+                    m_openBatch = null;
+                    m_connection.writeStream().enqueue(new CompressedMessage(destinations, message, len));
+                    m_buffersQueued++;
+                    m_messagesSent++;
+                    m_bytesSent += len;
+                }
+                return;
+            }
+
+            //Messages that don't fit in a batch buffer are serialized to the heap up front
+            ByteBuffer largeMessage = null;
+            if (len > HostMessenger.SEND_BUFFER_SIZE) {
+                largeMessage = ByteBuffer.allocate(len);
+                frame(largeMessage, destinations, message);
+                largeMessage.flip();
+            }
+
+            synchronized (this) {
+                /*
+                 * Enqueue while holding the lock so messages go out in the order they were
+                 * sent. A large message closes the open batch, otherwise messages appended
+                 * to that batch after it would be written before it.
+                 */
+                if (largeMessage != null) {
+                    m_openBatch = null;
+                    m_connection.writeStream().enqueue(largeMessage);
+                    m_buffersQueued++;
+                } else if (m_openBatch == null || !m_openBatch.append(destinations, message, len)) {
+                    /*
+                     * Frame the message before the batch is queued, if the write stream
+                     * is already shut down enqueue cancels the batch and returns its buffer
+                     */
+                    MessageBatch batch = new MessageBatch(m_hostMessenger.acquireSendBuffer());
+                    final boolean appended = batch.append(destinations, message, len);
+                    assert(appended);
+                    m_openBatch = batch;
+                    m_connection.writeStream().enqueue(batch);
+                    m_buffersQueued++;
+                }
+                m_messagesSent++;
+                m_bytesSent += len;
+            }
+        }
+
+        synchronized void enqueue(ByteBuffer buf) {
+            m_openBatch = null;
+            m_connection.writeStream().enqueue(buf);
+            m_buffersQueued++;
+        }
+
+        synchronized long[] getStats() {
+            return new long[] { m_messagesSent, m_bytesSent, m_buffersQueued,
+                                m_messagesCompressed, m_bytesBeforeCompression, m_bytesAfterCompression };
+        }
+    }
+
+    private static void frame(ByteBuffer buf, long destinations[], VoltMessage message) throws IOException {
+        buf.putInt(buf.capacity() - 4);
+        buf.putLong(message.m_sourceHSId);
+        buf.putInt(destinations.length);
+        for (int ii = 0; ii < destinations.length; ii++) {
+            buf.putLong(destinations[ii]);
+        }
+        message.flattenToBuffer(buf);
+    }
+
     /** Create a ForeignHost and install in VoltNetwork */
-    ForeignHost(HostMessenger host, int hostId, SocketChannel socket, int deadHostTimeout,
+    ForeignHost(HostMessenger host, int hostId, SocketChannel sockets[], int deadHostTimeout,
             InetSocketAddress listeningAddress)
     throws IOException
     {
         m_hostMessenger = host;
-        m_handler = new FHInputHandler();
         m_hostId = hostId;
         m_closing = false;
         m_isUp = true;
-        m_sc = socket;
-        m_socket = socket.socket();
+        m_connections = new FHConnection[sockets.length];
+        for (int ii = 0; ii < sockets.length; ii++) {
+            m_connections[ii] = new FHConnection(sockets[ii]);
+        }
+        m_socket = sockets[0].socket();
         m_deadHostTimeout = deadHostTimeout;
         m_listeningAddress = listeningAddress;
+        m_compressionThreshold = host.getCompressionThreshold();
     }
 
     public void register(HostMessenger host) throws IOException {
-        m_connection = host.getNetwork().registerChannel( m_sc, m_handler, 0);
+        for (FHConnection c : m_connections) {
+            c.m_connection = host.getNetwork().registerChannel( c.m_sc, c.m_handler, 0);
+        }
+
+        /*
+         * Tell the foreign host what this host supports before anything else is sent.
+         * Compression is only used if both hosts turned it on.
+         */
+        ByteBuffer hello = ByteBuffer.allocate(20);
+        hello.putInt(hello.capacity() - 4);
+        hello.putLong(-1);
+        hello.putInt(HELLO);
+        hello.putInt(m_compressionThreshold > 0 ? HELLO_COMPRESSION : 0);
+        hello.flip();
+        m_connections[0].enqueue(hello);
     }
 
     public void enableRead() {
-        m_connection.enableReadSelection();
+        for (FHConnection c : m_connections) {
+            c.m_connection.enableReadSelection();
+        }
     }
 
     synchronized void close()
@@ -133,8 +397,10 @@ public class ForeignHost {
         m_isUp = false;
         if (m_closing) return;
         m_closing = true;
-        if (m_connection != null)
-            m_connection.unregister();
+        for (FHConnection c : m_connections) {
+            if (c.m_connection != null)
+                c.m_connection.unregister();
+        }
     }
 
     /**
@@ -143,10 +409,14 @@ public class ForeignHost {
     void killSocket() {
         try {
             m_closing = true;
-            m_socket.setKeepAlive(false);
-            m_socket.setSoLinger(false, 0);
+            for (FHConnection c : m_connections) {
+                c.m_sc.socket().setKeepAlive(false);
+                c.m_sc.socket().setSoLinger(false, 0);
+            }
             Thread.sleep(25);
-            m_socket.close();
+            for (FHConnection c : m_connections) {
+                c.m_sc.socket().close();
+            }
             Thread.sleep(25);
             System.gc();
             Thread.sleep(25);
@@ -183,34 +453,42 @@ public class ForeignHost {
             return;
         }
 
-        m_connection.writeStream().enqueue(
-            new DeferredSerialization() {
-                @Override
-                public final ByteBuffer[] serialize() throws IOException{
-                    int len = 4            /* length prefix */
-                            + 8            /* source hsid */
-                            + 4            /* destinationCount */
-                            + 8 * destinations.length  /* destination list */
-                            + message.getSerializedSize();
-                    ByteBuffer buf = ByteBuffer.allocate(len);
-                    buf.putInt(len - 4);
-                    buf.putLong(message.m_sourceHSId);
-                    buf.putInt(destinations.length);
-                    for (int ii = 0; ii < destinations.length; ii++) {
-                        buf.putLong(destinations[ii]);
-                    }
-                    message.flattenToBuffer(buf);
-                    buf.flip();
-                    return new ByteBuffer[] { buf };
+        try {
+            if (m_connections.length == 1) {
+                m_connections[0].send(destinations, message);
+            } else if (destinations.length == 1) {
+                m_connections[connectionIndex(destinations[0])].send(destinations, message);
+            } else {
+                /*
+                 * Split the destinations by connection and send each connection
+                 * its own copy of the message
+                 */
+                final int indexes[] = new int[destinations.length];
+                final int counts[] = new int[m_connections.length];
+                for (int ii = 0; ii < destinations.length; ii++) {
+                    indexes[ii] = connectionIndex(destinations[ii]);
+                    counts[indexes[ii]]++;
                 }
-
-                @Override
-                public final void cancel() {
-                    /*
-                     * Can this be removed?
-                     */
+                for (int c = 0; c < m_connections.length; c++) {
+                    if (counts[c] == destinations.length) {
+                        m_connections[c].send(destinations, message);
+                        break;
+                    } else if (counts[c] > 0) {
+                        long connectionDestinations[] = new long[counts[c]];
+                        int count = 0;
+                        for (int ii = 0; ii < destinations.length; ii++) {
+                            if (indexes[ii] == c) {
+                                connectionDestinations[count++] = destinations[ii];
+                            }
+                        }
+                        m_connections[c].send(connectionDestinations, message);
+                    }
                 }
-            });
+            }
+        } catch (IOException e) {
+            VoltDB.crashLocalVoltDB("Failed to serialize " + message.getClass().getSimpleName() +
+                    " for host " + m_hostId, true, e);
+        }
 
         long current_time = EstTime.currentTimeMillis();
         long current_delta = current_time - m_lastMessageMillis.get();
@@ -241,8 +519,39 @@ public class ForeignHost {
     }
 
 
+    /*
+     * Pick the connection for a site from the site half of its HSId, the host
+     * half is the same for every destination on this host
+     */
+    private int connectionIndex(long hsId) {
+        return (CoreUtils.getSiteIdFromHSId(hsId) & Integer.MAX_VALUE) % m_connections.length;
+    }
+
+    int getConnectionCount() {
+        return m_connections.length;
+    }
+
+    /*
+     * True once both hosts have said they compress large messages
+     */
+    boolean isCompressing() {
+        return m_compress;
+    }
+
+    /*
+     * Add the foreign hostname and outgoing counters of each connection, keyed by connection id
+     */
+    void getConnectionStats(Map<Long, Pair<String, long[]>> stats) {
+        for (FHConnection c : m_connections) {
+            if (c.m_connection != null) {
+                stats.put(c.m_connection.connectionId(),
+                          Pair.of(c.m_connection.getHostnameOrIP(), c.getStats()));
+            }
+        }
+    }
+
     String hostname() {
-        return m_connection.getHostnameOrIP();
+        return m_connections[0].m_connection.getHostnameOrIP();
     }
 
     /** Deliver a deserialized message from the network to a local mailbox */
@@ -288,8 +597,29 @@ public class ForeignHost {
         long recvDests[] = null;
 
         final long sourceHSId = in.getLong();
-        final int destCount = in.getInt();
-        if (destCount == -1) {//This is a poison pill
+        int destCount = in.getInt();
+        if (destCount == HELLO) {
+            final int flags = in.getInt();
+            m_compress = m_compressionThreshold > 0 && (flags & HELLO_COMPRESSION) != 0;
+            if (m_compress) {
+                hostLog.info("Compressing messages of at least " + m_compressionThreshold +
+                        " bytes sent to host " + m_hostId);
+            }
+            return;
+        }
+        if (destCount == COMPRESSED) {
+            final int bodyLength = in.getInt();
+            final int compressedLength = in.getInt();
+            byte body[] = CompressionService.decompressBytes(
+                    in.array(), in.arrayOffset() + in.position(), compressedLength);
+            if (body.length != bodyLength) {
+                throw new IOException("Compressed message from host " + m_hostId + " expanded to " +
+                        body.length + " bytes instead of " + bodyLength);
+            }
+            in = ByteBuffer.wrap(body);
+            destCount = in.getInt();
+        }
+        if (destCount == POISON_PILL) {//This is a poison pill
             byte messageBytes[] = new byte[in.getInt()];
             in.get(messageBytes);
             String message = new String(messageBytes, "UTF-8");
@@ -335,11 +665,11 @@ public class ForeignHost {
         ByteBuffer message = ByteBuffer.allocate( 20 + errBytes.length);
         message.putInt(message.capacity() - 4);
         message.putLong(-1);
-        message.putInt(-1);
+        message.putInt(POISON_PILL);
         message.putInt(errBytes.length);
         message.put(errBytes);
         message.flip();
-        m_connection.writeStream().enqueue(message);
+        m_connections[0].enqueue(message);
     }
 
     public void updateDeadHostTimeout(int timeout) {
@@ -28,6 +28,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -45,7 +46,10 @@ import org.voltcore.network.VoltNetworkPool;
 import org.voltcore.utils.COWMap;
 import org.voltcore.utils.COWNavigableSet;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.InstanceId;
+import org.voltcore.utils.Pair;
 import org.voltcore.utils.PortGenerator;
 import org.voltcore.zk.CoreZK;
 import org.voltcore.zk.ZKUtil;
@@ -83,6 +87,16 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         public long backwardsTimeForgivenessWindow = 1000 * 60 * 60 * 24 * 7;
         public VoltMessageFactory factory = new VoltMessageFactory();
         public int networkThreads =  Math.max(2, CoreUtils.availableProcessors() / 4);
+        /*
+         * Number of sockets between each pair of hosts. Messages to a site always use
+         * the same socket so they stay in order.
+         */
+        public int connectionsPerHost = 1;
+        /*
+         * Messages to other hosts of at least this many bytes are compressed,
+         * if those hosts compress too. 0 turns compression off.
+         */
+        public int compressionThreshold = 0;
         public Queue<String> coreBindIds;;
 
         public Config(String coordIp, int coordPort) {
@@ -116,6 +130,16 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                     this.networkThreads = networkThreadConfig;
                     logger.info("Overridden network thread count: " + this.networkThreads);
                 }
+                Integer connectionsConfig = Integer.getInteger("connectionsPerHost");
+                if ( connectionsConfig != null && connectionsConfig > 0 ) {
+                    this.connectionsPerHost = connectionsConfig;
+                    logger.info("Overridden connections per host: " + this.connectionsPerHost);
+                }
+                Integer compressionConfig = Integer.getInteger("compressionThreshold");
+                if ( compressionConfig != null && compressionConfig >= 0 ) {
+                    this.compressionThreshold = compressionConfig;
+                    logger.info("Overridden compression threshold: " + this.compressionThreshold);
+                }
 
             } catch (Exception e) {
                 logger.error("Error setting network thread count", e);
@@ -134,6 +158,8 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                 js.key("deadhosttimeout").value(deadHostTimeout);
                 js.key("backwardstimeforgivenesswindow").value(backwardsTimeForgivenessWindow);
                 js.key("networkThreads").value(networkThreads);
+                js.key("connectionsPerHost").value(connectionsPerHost);
+                js.key("compressionThreshold").value(compressionThreshold);
                 js.endObject();
 
                 return js.toString();
@@ -182,6 +208,15 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
      */
     private final COWNavigableSet<Integer> m_knownFailedHosts = new COWNavigableSet<Integer>();
 
+    /*
+     * Direct buffers that messages to foreign hosts are serialized into, see ForeignHost.send.
+     * Bounded so a burst of traffic doesn't pin memory forever.
+     */
+    static final int SEND_BUFFER_SIZE = 1024 * 32;
+    private static final int MAX_POOLED_SEND_BUFFERS = 256;
+    private final ConcurrentLinkedQueue<BBContainer> m_sendBuffers = new ConcurrentLinkedQueue<BBContainer>();
+    private final AtomicInteger m_pooledSendBuffers = new AtomicInteger(0);
+
     private AgreementSite m_agreementSite;
     private ZooKeeper m_zk;
     private final AtomicInteger m_nextSiteId = new AtomicInteger(0);
@@ -207,6 +242,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                 m_config.coordinatorIp,
                 m_config.internalInterface,
                 m_config.internalPort,
+                m_config.connectionsPerHost,
                 this);
     }
 
@@ -362,12 +398,14 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
      * and put it in the map of foreign hosts
      */
     @Override
-    public void notifyOfJoin(int hostId, SocketChannel socket, InetSocketAddress listeningAddress) {
+    public void notifyOfJoin(int hostId, SocketChannel sockets[], InetSocketAddress listeningAddress) {
         System.out.println(getHostId() + " notified of " + hostId);
-        prepSocketChannel(socket);
+        for (SocketChannel socket : sockets) {
+            prepSocketChannel(socket);
+        }
         ForeignHost fhost = null;
         try {
-            fhost = new ForeignHost(this, hostId, socket, m_config.deadHostTimeout, listeningAddress);
+            fhost = new ForeignHost(this, hostId, sockets, m_config.deadHostTimeout, listeningAddress);
             fhost.register(this);
             putForeignHost(hostId, fhost);
             fhost.enableRead();
@@ -410,7 +448,8 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
      * is done via ZK
      */
     @Override
-    public void requestJoin(SocketChannel socket, InetSocketAddress listeningAddress) throws Exception {
+    public void requestJoin(SocketChannel socket, InetSocketAddress listeningAddress, int connections)
+    throws Exception {
         /*
          * Generate the host id via creating an ephemeral sequential node
          */
@@ -424,6 +463,17 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                  */
                 writeRequestJoinResponse( hostId, socket);
 
+                /*
+                 * Now that it knows its host id the new node opens the rest of its connections
+                 */
+                List<SocketChannel> extraSockets = m_joiner.acceptConnections(hostId, connections - 1);
+                SocketChannel sockets[] = new SocketChannel[connections];
+                sockets[0] = socket;
+                for (int ii = 1; ii < connections; ii++) {
+                    sockets[ii] = extraSockets.get(ii - 1);
+                    prepSocketChannel(sockets[ii]);
+                }
+
                 /*
                  * Wait for the a response from the joining node saying that it connected
                  * to all the nodes we just advertised. Use a timeout so that the cluster can't be stuck
@@ -445,7 +495,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                 /*
                  * Now add the host to the mailbox system
                  */
-                fhost = new ForeignHost(this, hostId, socket, m_config.deadHostTimeout, listeningAddress);
+                fhost = new ForeignHost(this, hostId, sockets, m_config.deadHostTimeout, listeningAddress);
                 fhost.register(this);
                 putForeignHost(hostId, fhost);
                 fhost.enableRead();
@@ -539,7 +589,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
     public void notifyOfHosts(
             int yourHostId,
             int[] hosts,
-            SocketChannel[] sockets,
+            SocketChannel[][] sockets,
             InetSocketAddress listeningAddresses[]) throws Exception {
         m_localHostId = yourHostId;
         long agreementHSId = getHSIdForLocalSite(AGREEMENT_SITE_ID);
@@ -555,7 +605,9 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         for (int ii = 0; ii < hosts.length; ii++) {
             System.out.println(yourHostId + " Notified of host " + hosts[ii]);
             agreementSites.add(CoreUtils.getHSIdFromHostAndSite(hosts[ii], AGREEMENT_SITE_ID));
-            prepSocketChannel(sockets[ii]);
+            for (SocketChannel socket : sockets[ii]) {
+                prepSocketChannel(socket);
+            }
             ForeignHost fhost = null;
             try {
                 fhost = new ForeignHost(this, hosts[ii], sockets[ii], m_config.deadHostTimeout, listeningAddresses[ii]);
@@ -837,6 +889,53 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         }
     }
 
+    /**
+     * Get a direct buffer to serialize messages to a foreign host into. Buffers go back to a
+     * bounded pool shared by all foreign hosts once the network has written them.
+     */
+    BBContainer acquireSendBuffer() {
+        BBContainer pooled = m_sendBuffers.poll();
+        if (pooled == null) {
+            pooled = DBBPool.allocateDirect(SEND_BUFFER_SIZE);
+        } else {
+            m_pooledSendBuffers.decrementAndGet();
+        }
+        final BBContainer origin = pooled;
+        origin.b.clear();
+        return new BBContainer(origin.b, 0) {
+            @Override
+            public void discard() {
+                if (m_pooledSendBuffers.incrementAndGet() <= MAX_POOLED_SEND_BUFFERS) {
+                    m_sendBuffers.offer(origin);
+                } else {
+                    m_pooledSendBuffers.decrementAndGet();
+                    origin.discard();
+                }
+            }
+        };
+    }
+
+    int getCompressionThreshold() {
+        return m_config.compressionThreshold;
+    }
+
+    /**
+     * Get the foreign hostname and outgoing counters of every connection to a foreign
+     * host, keyed by connection id (the same ids the network uses for IO stats). The counters are
+     * messages sent, bytes sent, and buffers handed to the network, then messages
+     * compressed with their size before and after. When messages are coalesced
+     * there are fewer buffers than messages.
+     */
+    public Map<Long, Pair<String, long[]>> getForeignHostConnectionStats() {
+        Map<Long, Pair<String, long[]>> retval = new HashMap<Long, Pair<String, long[]>>();
+        for (ForeignHost fh : m_foreignHosts.values()) {
+            if (fh != null) {
+                fh.getConnectionStats(retval);
+            }
+        }
+        return retval;
+    }
+
     /**
      * Block on this call until the number of ready hosts is
      * equal to the number of expected hosts.
@@ -27,6 +27,7 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -44,6 +45,7 @@ import org.json_voltpatches.JSONObject;
 import org.voltcore.logging.Level;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.Pair;
 import org.voltdb.VoltDB;
 
 /**
@@ -66,22 +68,25 @@ public class SocketJoiner {
     public interface JoinHandler {
         /*
          * Notify that a specific host has joined with the specified host id.
+         * Every connection it opened to this host is passed in.
          */
-        public void notifyOfJoin(int hostId, SocketChannel socket, InetSocketAddress listeningAddress);
+        public void notifyOfJoin(int hostId, SocketChannel sockets[], InetSocketAddress listeningAddress);
 
         /*
-         * A node wants to join the socket mesh
+         * A node wants to join the socket mesh. Once it is told its host id it will open
+         * connections - 1 more connections, see acceptConnections.
          */
-        public void requestJoin(SocketChannel socket, InetSocketAddress listeningAddress ) throws Exception;
+        public void requestJoin(SocketChannel socket, InetSocketAddress listeningAddress, int connections)
+        throws Exception;
 
         /*
          * A connection has been made to all of the specified hosts. Invoked by
-         * nodes connected to the cluster
+         * nodes connected to the cluster. sockets[ii] holds every connection to hosts[ii].
          */
         public void notifyOfHosts(
                 int yourLocalHostId,
                 int hosts[],
-                SocketChannel sockets[],
+                SocketChannel sockets[][],
                 InetSocketAddress listeningAddresses[]) throws Exception;
     }
 
@@ -95,12 +100,20 @@ public class SocketJoiner {
     int m_localHostId = 0;
     Map<Integer, SocketChannel> m_sockets = new HashMap<Integer, SocketChannel>();
     private final List<ServerSocketChannel> m_listenerSockets = new ArrayList<ServerSocketChannel>();
+
+    /*
+     * Connections accepted while waiting for a specific host's extra connections,
+     * with the JSON they sent. They are handled once that host is done.
+     */
+    private final ArrayDeque<Pair<SocketChannel, JSONObject>> m_deferredConnections =
+            new ArrayDeque<Pair<SocketChannel, JSONObject>>();
     private Selector m_selector;
     private final JoinHandler m_joinHandler;
 
     // from configuration data
     int m_internalPort = 3021;
     String m_internalInterface = "";
+    int m_connectionsPerHost = 1;
     /*
      * The interface we connected to the leader on
      */
@@ -206,14 +219,16 @@ public class SocketJoiner {
             InetSocketAddress coordIp,
             String internalInterface,
             int internalPort,
+            int connectionsPerHost,
             JoinHandler jh) {
-        if (internalInterface == null || coordIp == null || jh == null) {
+        if (internalInterface == null || coordIp == null || jh == null || connectionsPerHost < 1) {
             throw new IllegalArgumentException();
         }
         m_coordIp = coordIp;
         m_joinHandler = jh;
         m_internalInterface = internalInterface;
         m_internalPort = internalPort;
+        m_connectionsPerHost = connectionsPerHost;
     }
 
     /*
@@ -267,77 +282,200 @@ public class SocketJoiner {
     private void processSSC(ServerSocketChannel ssc) throws Exception {
         SocketChannel sc = null;
         while ((sc = ssc.accept()) != null) {
-            sc.socket().setTcpNoDelay(true);
-            sc.socket().setPerformancePreferences(0, 2, 1);
-            final String remoteAddress = sc.socket().getRemoteSocketAddress().toString();
+            processConnection(sc, readHandshake(sc));
+            processDeferredConnections();
+        }
+    }
 
-            /*
-             * Send the current time over the new connection for a clock skew check
-             */
-            ByteBuffer currentTime = ByteBuffer.allocate(8);
-            currentTime.putLong(System.currentTimeMillis());
-            currentTime.flip();
-            while (currentTime.hasRemaining()) {
-                sc.write(currentTime);
+    /*
+     * Send the clock skew check over a newly accepted connection and read back
+     * the length prefixed JSON message describing what it is for
+     */
+    private JSONObject readHandshake(SocketChannel sc) throws Exception {
+        sc.socket().setTcpNoDelay(true);
+        sc.socket().setPerformancePreferences(0, 2, 1);
+        final String remoteAddress = sc.socket().getRemoteSocketAddress().toString();
+
+        /*
+         * Send the current time over the new connection for a clock skew check
+         */
+        ByteBuffer currentTime = ByteBuffer.allocate(8);
+        currentTime.putLong(System.currentTimeMillis());
+        currentTime.flip();
+        while (currentTime.hasRemaining()) {
+            sc.write(currentTime);
+        }
+
+        /*
+         * Read a length prefixed JSON message
+         */
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+
+        while (lengthBuffer.remaining() > 0) {
+            int read = sc.read(lengthBuffer);
+            if (read == -1) {
+                throw new EOFException(remoteAddress);
             }
+        }
+        lengthBuffer.flip();
 
-            /*
-             * Read a length prefixed JSON message
-             */
-            ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        ByteBuffer messageBytes = ByteBuffer.allocate(lengthBuffer.getInt());
+        while (messageBytes.hasRemaining()) {
+            int read = sc.read(messageBytes);
+            if (read == -1) {
+                throw new EOFException(remoteAddress);
+            }
+        }
+        messageBytes.flip();
 
-            while (lengthBuffer.remaining() > 0) {
-                int read = sc.read(lengthBuffer);
-                if (read == -1) {
-                    throw new EOFException(remoteAddress);
+        return new JSONObject(new String(messageBytes.array(), "UTF-8"));
+    }
+
+    private void processConnection(SocketChannel sc, JSONObject jsObj) throws Exception {
+        final String remoteAddress = sc.socket().getRemoteSocketAddress().toString();
+
+        /*
+         * The type of connection, it can be a new request to join the cluster
+         * or a node that is connecting to the rest of the cluster and publishing its
+         * host id and such
+         */
+        String type = jsObj.getString("type");
+
+        /*
+         * Nodes that don't say how many connections they open use one
+         */
+        int connections = jsObj.optInt("connections", 1);
+
+        hostLog.info("Received request type " + type);
+        if (type.equals("ADD_CONNECTION")) {
+            // only valid while acceptConnections is waiting for this host
+            throw new RuntimeException("Unexpected extra connection from " + remoteAddress);
+        }
+
+        /*
+         * The new connection may specify the address it is listening on,
+         * or it can be derived from the connection itself
+         */
+        InetSocketAddress listeningAddress;
+        if (jsObj.has("address")) {
+            listeningAddress = new InetSocketAddress(
+                    InetAddress.getByName(jsObj.getString("address")),
+                    jsObj.getInt("port"));
+        } else {
+            listeningAddress =
+                new InetSocketAddress(
+                        ((InetSocketAddress)sc.socket().
+                                getRemoteSocketAddress()).getAddress().getHostAddress(),
+                                jsObj.getInt("port"));
+        }
+
+        if (type.equals("REQUEST_HOSTID")) {
+            m_joinHandler.requestJoin( sc, listeningAddress, connections);
+        } else if (type.equals("PUBLISH_HOSTID")){
+            final int hostId = jsObj.getInt("hostId");
+            List<SocketChannel> sockets = new ArrayList<SocketChannel>();
+            sockets.add(sc);
+            sockets.addAll(acceptConnections(hostId, connections - 1));
+            m_joinHandler.notifyOfJoin(hostId, sockets.toArray(new SocketChannel[sockets.size()]), listeningAddress);
+        } else {
+            throw new RuntimeException("Unexpected message type " + type + " from " + remoteAddress);
+        }
+    }
+
+    private void processDeferredConnections() throws Exception {
+        Pair<SocketChannel, JSONObject> deferred = null;
+        while ((deferred = m_deferredConnections.poll()) != null) {
+            processConnection(deferred.getFirst(), deferred.getSecond());
+        }
+    }
+
+    /**
+     * Accept the extra connections a host opens after its first one. A host that
+     * uses more than one connection identifies each extra one with an ADD_CONNECTION
+     * message. This runs on the joiner thread in the middle of handling the first
+     * connection, so anything else that connects meanwhile is put aside and handled
+     * afterwards, in order.
+     *
+     * @param hostId   host opening the connections
+     * @param count    number of extra connections to wait for
+     * @return the accepted connections, in the order they were accepted
+     */
+    List<SocketChannel> acceptConnections(int hostId, int count) throws Exception {
+        List<SocketChannel> retval = new ArrayList<SocketChannel>();
+        final long start = System.currentTimeMillis();
+        while (retval.size() < count) {
+            if (System.currentTimeMillis() - start > 120000) {
+                for (SocketChannel sc : retval) {
+                    sc.close();
                 }
+                throw new IOException("Timed out waiting for " + count +
+                        " connections from host " + hostId + ", received " + retval.size());
             }
-            lengthBuffer.flip();
 
-            ByteBuffer messageBytes = ByteBuffer.allocate(lengthBuffer.getInt());
-            while (messageBytes.hasRemaining()) {
-                int read = sc.read(messageBytes);
-                if (read == -1) {
-                    throw new EOFException(remoteAddress);
+            SocketChannel sc = null;
+            for (ServerSocketChannel ssc : m_listenerSockets) {
+                sc = ssc.accept();
+                if (sc != null) {
+                    break;
                 }
             }
-            messageBytes.flip();
+            if (sc == null) {
+                Thread.sleep(5);
+                continue;
+            }
 
-            JSONObject jsObj = new JSONObject(new String(messageBytes.array(), "UTF-8"));
+            JSONObject jsObj = readHandshake(sc);
+            if (jsObj.getString("type").equals("ADD_CONNECTION") && jsObj.getInt("hostId") == hostId) {
+                retval.add(sc);
+            } else {
+                m_deferredConnections.offer(Pair.of(sc, jsObj));
+            }
+        }
+        return retval;
+    }
 
-            /*
-             * The type of connection, it can be a new request to join the cluster
-             * or a node that is connecting to the rest of the cluster and publishing its
-             * host id and such
-             */
-            String type = jsObj.getString("type");
+    /*
+     * Open the rest of the connections to a host after the first one has told it
+     * this node's host id. Each is identified by an ADD_CONNECTION message.
+     */
+    private SocketChannel[] addConnections(SocketChannel first, InetSocketAddress hostAddr) throws Exception {
+        SocketChannel sockets[] = new SocketChannel[m_connectionsPerHost];
+        sockets[0] = first;
+        for (int ii = 1; ii < sockets.length; ii++) {
+            SocketChannel socket = null;
+            while (socket == null) {
+                try {
+                    socket = SocketChannel.open(hostAddr);
+                }
+                catch (java.net.ConnectException e) {
+                    LOG.warn("Connecting to host failed: " + e.getMessage() + " retrying..");
+                    Thread.sleep(250);
+                }
+            }
+            socket.socket().setTcpNoDelay(true);
+            socket.socket().setPerformancePreferences(0, 2, 1);
 
-            /*
-             * The new connection may specify the address it is listening on,
-             * or it can be derived from the connection itself
-             */
-            InetSocketAddress listeningAddress;
-            if (jsObj.has("address")) {
-                listeningAddress = new InetSocketAddress(
-                        InetAddress.getByName(jsObj.getString("address")),
-                        jsObj.getInt("port"));
-            } else {
-                listeningAddress =
-                    new InetSocketAddress(
-                            ((InetSocketAddress)sc.socket().
-                                    getRemoteSocketAddress()).getAddress().getHostAddress(),
-                                    jsObj.getInt("port"));
+            // the clock skew was already checked on the first connection
+            ByteBuffer currentTime = ByteBuffer.allocate(8);
+            while (currentTime.hasRemaining()) {
+                if (socket.read(currentTime) == -1) {
+                    throw new EOFException();
+                }
             }
 
-            hostLog.info("Received request type " + type);
-            if (type.equals("REQUEST_HOSTID")) {
-                m_joinHandler.requestJoin( sc, listeningAddress);
-            } else if (type.equals("PUBLISH_HOSTID")){
-                m_joinHandler.notifyOfJoin(jsObj.getInt("hostId"), sc, listeningAddress);
-            } else {
-                throw new RuntimeException("Unexpected message type " + type + " from " + remoteAddress);
+            JSONObject jsObj = new JSONObject();
+            jsObj.put("type", "ADD_CONNECTION");
+            jsObj.put("hostId", m_localHostId);
+            byte jsBytes[] = jsObj.toString(4).getBytes("UTF-8");
+            ByteBuffer addConnection = ByteBuffer.allocate(4 + jsBytes.length);
+            addConnection.putInt(jsBytes.length);
+            addConnection.put(jsBytes).flip();
+            while (addConnection.hasRemaining()) {
+                socket.write(addConnection);
             }
+            sockets[ii] = socket;
         }
+        return sockets;
     }
 
     /*
@@ -426,6 +564,7 @@ public class SocketJoiner {
 
             JSONObject jsObj = new JSONObject();
             jsObj.put("type", "REQUEST_HOSTID");
+            jsObj.put("connections", m_connectionsPerHost);
 
             /*
              * Advertise the port we are going to listen on based on
@@ -482,7 +621,7 @@ public class SocketJoiner {
              */
             JSONArray otherHosts = jsonObj.getJSONArray("hosts");
             int hostIds[] = new int[otherHosts.length()];
-            SocketChannel hostSockets[] = new SocketChannel[hostIds.length];
+            SocketChannel hostSockets[][] = new SocketChannel[hostIds.length][];
             InetSocketAddress listeningAddresses[] = new InetSocketAddress[hostIds.length];
 
             for (int ii = 0; ii < otherHosts.length(); ii++) {
@@ -497,7 +636,7 @@ public class SocketJoiner {
                     //Leader already has a socket
                     hostIds[ii] = hostId;
                     listeningAddresses[ii] = hostAddr;
-                    hostSockets[ii] = socket;
+                    hostSockets[ii] = addConnections(socket, m_coordIp);
                     continue;
                 }
 
@@ -531,6 +670,7 @@ public class SocketJoiner {
                 jsObj = new JSONObject();
                 jsObj.put("type", "PUBLISH_HOSTID");
                 jsObj.put("hostId", m_localHostId);
+                jsObj.put("connections", m_connectionsPerHost);
                 jsObj.put("port", m_internalPort);
                 jsObj.put(
                         "address",
@@ -544,7 +684,7 @@ public class SocketJoiner {
                     hostSocket.write(pushHostId);
                 }
                 hostIds[ii] = hostId;
-                hostSockets[ii] = hostSocket;
+                hostSockets[ii] = addConnections(hostSocket, hostAddr);
                 listeningAddresses[ii] = hostAddr;
             }
 
@@ -574,7 +714,7 @@ public class SocketJoiner {
              */
             ByteBuffer joinCompleteBuffer = ByteBuffer.allocate(1);
             while (joinCompleteBuffer.hasRemaining()) {
-                hostSockets[0].write(joinCompleteBuffer);
+                hostSockets[0][0].write(joinCompleteBuffer);
             }
 
             /*
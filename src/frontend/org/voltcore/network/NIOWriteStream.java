@@ -24,6 +24,7 @@ import java.nio.channels.SelectionKey;
 import java.util.ArrayDeque;
 
 import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.ContainerDeferredSerialization;
 import org.voltcore.utils.DeferredSerialization;
 import org.voltcore.utils.EstTime;
 import org.voltcore.utils.DBBPool.BBContainer;
@@ -55,7 +56,18 @@ public class NIOWriteStream implements WriteStream {
 
     private boolean m_isShutdown = false;
 
-    private BBContainer m_currentWriteBuffer = null;
+    /**
+     * Maximum number of buffers handed to the channel in a single gathering write
+     */
+    private static final int MAX_GATHERED_BUFFERS = 64;
+
+    /**
+     * Buffers that have been flipped and are being written to the channel. Anything in here
+     * has been partially written or was part of a gathering write that didn't complete.
+     */
+    private final ArrayDeque<BBContainer> m_writeBatch = new ArrayDeque<BBContainer>();
+
+    private final ByteBuffer m_gatherBuffers[] = new ByteBuffer[MAX_GATHERED_BUFFERS];
 
     /**
      * Contains serialized buffers ready to write to the socket
@@ -140,7 +152,7 @@ public class NIOWriteStream implements WriteStream {
     @Override
     synchronized public boolean isEmpty()
     {
-        return m_queuedBuffers.isEmpty() && m_queuedWrites.isEmpty() && m_currentWriteBuffer == null;
+        return m_queuedBuffers.isEmpty() && m_queuedWrites.isEmpty() && m_writeBatch.isEmpty();
     }
 
     /**
@@ -191,7 +203,8 @@ public class NIOWriteStream implements WriteStream {
 
     /**
      * Does the work of queueing addititional buffers that have been serialized
-     * and choosing between gathering and regular writes to the channel. Also splits up very large
+     * and choosing between gathering and regular writes to the channel. Up to MAX_GATHERED_BUFFERS
+     * queued buffers are handed to the channel in a single gathering write. Also splits up very large
      * writes of HeapByteBuffers into many smaller writes so Java doesn't allocate a monster DirectByteBuffer
      * that will never be freed
      * @param channel
@@ -206,7 +219,7 @@ public class NIOWriteStream implements WriteStream {
             /*
              * Nothing to write
              */
-            if (m_currentWriteBuffer == null && m_queuedBuffers.isEmpty()) {
+            if (m_writeBatch.isEmpty() && m_queuedBuffers.isEmpty()) {
                 if (m_hadBackPressure && m_queuedWrites.size() <= m_maxQueuedWritesBeforeBackpressure) {
                     backpressureEnded();
                 }
@@ -216,26 +229,33 @@ public class NIOWriteStream implements WriteStream {
                 return bytesWritten;
             }
 
-            ByteBuffer buffer = null;
-            if (m_currentWriteBuffer == null) {
-                m_currentWriteBuffer = m_queuedBuffers.poll();
-                buffer = (ByteBuffer) m_currentWriteBuffer.b.flip();
-            } else {
-                buffer = m_currentWriteBuffer.b;
+            BBContainer queued = null;
+            while (m_writeBatch.size() < MAX_GATHERED_BUFFERS && (queued = m_queuedBuffers.poll()) != null) {
+                queued.b.flip();
+                m_writeBatch.offer(queued);
+            }
+
+            int count = 0;
+            for (BBContainer c : m_writeBatch) {
+                m_gatherBuffers[count++] = c.b;
             }
 
             rc = 0;
-            rc = channel.write(buffer);
+            if (count == 1) {
+                rc = channel.write(m_gatherBuffers[0]);
+            } else {
+                rc = channel.write(m_gatherBuffers, 0, count);
+            }
 
-            //Discard the buffer back to a pool if no data remains
-            if (buffer.hasRemaining()) {
+            //Discard buffers back to a pool once no data remains
+            while (!m_writeBatch.isEmpty() && !m_writeBatch.peek().b.hasRemaining()) {
+                m_writeBatch.poll().discard();
+                m_messagesWritten++;
+            }
+            if (!m_writeBatch.isEmpty()) {
                 if (!m_hadBackPressure) {
                     backpressureStarted();
                 }
-            } else {
-                m_currentWriteBuffer.discard();
-                m_currentWriteBuffer = null;
-                m_messagesWritten++;
             }
             bytesWritten += rc;
 
@@ -353,6 +373,15 @@ public class NIOWriteStream implements WriteStream {
         DeferredSerialization ds = null;
         int bytesQueued = 0;
         while ((ds = oldlist.poll()) != null) {
+            if (ds instanceof ContainerDeferredSerialization) {
+                //Already serialized into a pooled buffer, queue it without copying
+                BBContainer cont = ((ContainerDeferredSerialization)ds).serializeToContainer();
+                if (cont != null) {
+                    bytesQueued += cont.b.position();
+                    m_queuedBuffers.offer(cont);
+                }
+                continue;
+            }
             ByteBuffer data[] = ds.serialize();
             for (ByteBuffer buf : data) {
                 assert(buf.limit() == buf.capacity());//No sloppy serialization, we can allow it later if necessary
@@ -387,6 +416,10 @@ public class NIOWriteStream implements WriteStream {
         int bytesReleased = 0;
         m_isShutdown = true;
         BBContainer c = null;
+        while ((c = m_writeBatch.poll()) != null) {
+            bytesReleased += c.b.remaining();
+            c.discard();
+        }
         while ((c = m_queuedBuffers.poll()) != null) {
             bytesReleased += c.b.remaining();
             c.discard();
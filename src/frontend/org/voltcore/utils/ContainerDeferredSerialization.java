@@ -0,0 +1,37 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltcore.utils;
+
+import java.io.IOException;
+
+import org.voltcore.utils.DBBPool.BBContainer;
+
+/**
+ * A DeferredSerialization whose output is already in a pooled direct buffer. Instead of copying
+ * the result of serialize() into network buffers the write stream queues the container as is and
+ * discards it once it has been written to the channel.
+ */
+public interface ContainerDeferredSerialization extends DeferredSerialization {
+    /**
+     * Produce the container to write. The buffer's contents are the bytes from zero
+     * up to its position, the same state network pool buffers are in before they are flipped.
+     * @return The container to write or null if there is nothing to write
+     * @throws IOException
+     */
+    BBContainer serializeToContainer() throws IOException;
+}
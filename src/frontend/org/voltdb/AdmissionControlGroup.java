@@ -72,6 +72,7 @@ public class AdmissionControlGroup implements org.voltcore.network.QueueMonitor
      * thread using assertions.
      */
     private final long m_expectedThreadId = Thread.currentThread().getId();
+    private final boolean m_isThreadSafe;
 
     /*
      * Members of the admission control group implement this interface and are expected
@@ -101,6 +102,12 @@ public class AdmissionControlGroup implements org.voltcore.network.QueueMonitor
 
     public AdmissionControlGroup(int maxBytes, int maxRequests)
     {
+        this(maxBytes, maxRequests, false);
+    }
+
+    private AdmissionControlGroup(int maxBytes, int maxRequests, boolean isThreadSafe)
+    {
+        m_isThreadSafe = isThreadSafe;
         MAX_DESIRED_PENDING_BYTES = maxBytes;
         LESS_THAN_MAX_DESIRED_PENDING_BYTES = (int)(MAX_DESIRED_PENDING_BYTES * .8);
         MAX_DESIRED_PENDING_TXNS = maxRequests;
@@ -122,15 +129,57 @@ public class AdmissionControlGroup implements org.voltcore.network.QueueMonitor
         };
     }
 
+    /*
+     * A group that can be used from any thread, for connection adapters that
+     * aren't owned by a network thread.
+     */
+    public static AdmissionControlGroup makeThreadSafe(int maxBytes, int maxRequests) {
+        return new AdmissionControlGroup(maxBytes, maxRequests, true) {
+            @Override
+            public synchronized void addMember(ACGMember member) {
+                super.addMember(member);
+            }
+            @Override
+            public synchronized void removeMember(ACGMember member) {
+                super.removeMember(member);
+            }
+            @Override
+            public synchronized void increaseBackpressure(int messageSize) {
+                super.increaseBackpressure(messageSize);
+            }
+            @Override
+            public synchronized void reduceBackpressure(int messageSize) {
+                super.reduceBackpressure(messageSize);
+            }
+            @Override
+            public synchronized boolean hasBackPressure() {
+                return super.hasBackPressure();
+            }
+            @Override
+            public synchronized boolean queue(int bytes) {
+                return super.queue(bytes);
+            }
+            @Override
+            public synchronized void logTransactionCompleted(
+                    long connectionId,
+                    String connectionHostname,
+                    String procedureName,
+                    int delta,
+                    byte status) {
+                super.logTransactionCompleted(connectionId, connectionHostname, procedureName, delta, status);
+            }
+        };
+    }
+
     public void addMember(ACGMember member)
     {
-        assert(m_expectedThreadId == Thread.currentThread().getId());
+        assert(m_isThreadSafe || m_expectedThreadId == Thread.currentThread().getId());
         m_members.add(member);
     }
 
     public void removeMember(ACGMember member)
     {
-        assert(m_expectedThreadId == Thread.currentThread().getId());
+        assert(m_isThreadSafe || m_expectedThreadId == Thread.currentThread().getId());
         m_members.remove(member);
         ImmutableMap.Builder<String, InitiatorStats.InvocationInfo> builder =
                 ImmutableMap.builder();
@@ -151,7 +200,7 @@ public class AdmissionControlGroup implements org.voltcore.network.QueueMonitor
      */
     public void increaseBackpressure(int messageSize)
     {
-        assert(m_expectedThreadId == Thread.currentThread().getId());
+        assert(m_isThreadSafe || m_expectedThreadId == Thread.currentThread().getId());
         if (messageSize < 1) {
             throw new IllegalArgumentException("Message size must be > 0 but was " + messageSize);
         }
@@ -212,7 +261,7 @@ public class AdmissionControlGroup implements org.voltcore.network.QueueMonitor
      */
     public void reduceBackpressure(int messageSize)
     {
-        assert(m_expectedThreadId == Thread.currentThread().getId());
+        assert(m_isThreadSafe || m_expectedThreadId == Thread.currentThread().getId());
         if (messageSize < 1) {
             throw new IllegalArgumentException("Message size must be > 0 but was " + messageSize);
         }
@@ -27,11 +27,14 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -77,6 +80,8 @@ import org.voltdb.catalog.SnapshotSchedule;
 import org.voltdb.catalog.Statement;
 import org.voltdb.catalog.Table;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ConnectionUtil;
+import org.voltdb.client.ProcedureCallback;
 import org.voltdb.client.ProcedureInvocationType;
 import org.voltdb.compiler.AdHocPlannedStatement;
 import org.voltdb.compiler.AdHocPlannedStmtBatch;
@@ -86,6 +91,7 @@ import org.voltdb.compiler.AsyncCompilerWork.AsyncCompilerWorkCompletionHandler;
 import org.voltdb.compiler.CatalogChangeResult;
 import org.voltdb.compiler.CatalogChangeWork;
 import org.voltdb.dtxn.InitiatorStats.InvocationInfo;
+import org.voltdb.dtxn.LatencyStats;
 import org.voltdb.export.ExportManager;
 import org.voltdb.iv2.Cartographer;
 import org.voltdb.iv2.Iv2Trace;
@@ -99,6 +105,7 @@ import org.voltdb.messaging.LocalMailbox;
 import org.voltdb.messaging.MultiPartitionParticipantMessage;
 import org.voltdb.plannodes.PlanNodeTree;
 import org.voltdb.plannodes.SendPlanNode;
+import org.voltdb.sysprocs.LoadPartitionedTable;
 import org.voltdb.sysprocs.LoadSinglepartitionTable;
 import org.voltdb.utils.Encoder;
 import org.voltdb.utils.LogKeys;
@@ -141,6 +148,32 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
     private final SnapshotDaemon m_snapshotDaemon = new SnapshotDaemon();
     private final SnapshotDaemonAdapter m_snapshotDaemonAdapter = new SnapshotDaemonAdapter();
 
+    /*
+     * Callers inside this process, like the HTTP/JSON interface, invoke procedures through this
+     * adapter. It gets an admission control group of its own so that they can be pushed back on.
+     */
+    private final InternalClientAdapter m_internalAdapter = new InternalClientAdapter(Long.MIN_VALUE + 4);
+    private final AdmissionControlGroup m_internalACG = AdmissionControlGroup.makeThreadSafe(1024 * 1024 * 8, 1000);
+
+    // round trip latency of every transaction this client interface answers, @Statistics LATENCY
+    private final LatencyStats m_latencyStats = new LatencyStats();
+
+    /*
+     * Credentials that passed authentication for in process invocations along with the auth
+     * system they were checked against, so a catalog update drops them. Authenticating every
+     * invocation would hash the password each time.
+     */
+    private static class InternalCredentials {
+        private final AuthSystem m_authSystem;
+        private final Set<String> m_authenticated =
+                Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        private InternalCredentials(AuthSystem authSystem) {
+            m_authSystem = authSystem;
+        }
+    }
+    private volatile InternalCredentials m_internalCredentials = new InternalCredentials(null);
+
     // Atomically allows the catalog reference to change between access
     private final AtomicReference<CatalogContext> m_catalogContext = new AtomicReference<CatalogContext>(null);
 
@@ -1091,6 +1124,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         m_adminAcceptor = null;
         m_adminAcceptor = new ClientAcceptor(adminPort, messenger.getNetwork(), true);
         registerPolicies(replicationRole);
+        VoltDB.instance().getStatsAgent().registerStatsSource(SysProcSelector.LATENCY, 0, m_latencyStats);
 
         m_mailbox = new LocalMailbox(messenger,  messenger.getHSIdForLocalSite(HostMessenger.CLIENT_INTERFACE_SITE_ID)) {
             LinkedBlockingQueue<VoltMessage> m_d = new LinkedBlockingQueue<VoltMessage>();
@@ -1130,6 +1164,8 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                                             }
                                             final long now = System.currentTimeMillis();
                                             final int delta = (int)(now - clientData.m_creationTime);
+                                            m_latencyStats.logTransactionCompleted(
+                                                    (System.nanoTime() - clientData.m_creationNanos) / 1000);
 
                                             /*
                                              * Log initiator stats
@@ -1196,6 +1232,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                 });
             }
             failOverConnection(partitionId, initiatorHSId, m_snapshotDaemonAdapter);
+            failOverConnection(partitionId, initiatorHSId, m_internalAdapter);
         } catch (Exception e) {
             hostLog.warn("Error handling partition fail over at ClientInterface, continuing anyways", e);
         }
@@ -1314,6 +1351,106 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         gse);
     }
 
+    /**
+     * Input handler for invocations made from inside this process. It identifies
+     * itself by the connection id of the internal adapter the responses go to.
+     */
+    private class InternalClientInputHandler extends ClientInputHandler {
+        InternalClientInputHandler(String username, boolean isAdmin) {
+            super(username, m_internalAdapter.getHostnameOrIP(), isAdmin);
+        }
+
+        @Override
+        public long connectionId() {
+            return m_internalAdapter.connectionId();
+        }
+    }
+
+    private boolean authenticateInternal(AuthSystem authSystem, String username, byte[] hashedPassword) {
+        InternalCredentials credentials = m_internalCredentials;
+        if (credentials.m_authSystem != authSystem) {
+            credentials = new InternalCredentials(authSystem);
+            m_internalCredentials = credentials;
+        }
+        final String key = username + ":" + Encoder.hexEncode(hashedPassword);
+        if (credentials.m_authenticated.contains(key)) {
+            return true;
+        }
+        if (!authSystem.authenticate(username, hashedPassword)) {
+            return false;
+        }
+        credentials.m_authenticated.add(key);
+        return true;
+    }
+
+    /**
+     * Invoke a procedure on behalf of a caller inside this process, such as the HTTP/JSON
+     * interface, without a round trip through the client library and a loopback connection.
+     * The user is authenticated and the invocation is dispatched exactly like one read from
+     * a client connection, so the same permission checks and admission control apply.
+     * The response is passed to the callback, possibly before this method returns.
+     * @param username User to invoke the procedure as, null or empty for none
+     * @param hashedPassword SHA-1 hash of the user's password, null for none
+     * @return false if the invocation was not accepted because of backpressure
+     */
+    public boolean invokeInternal(
+            String username,
+            byte[] hashedPassword,
+            boolean isAdmin,
+            String procName,
+            Object[] params,
+            ProcedureCallback callback) throws Exception {
+        final String user = username == null ? "" : username;
+        final byte password[] =
+            hashedPassword == null ? ConnectionUtil.getHashedPassword("") : hashedPassword;
+
+        final CatalogContext context = m_catalogContext.get();
+        if (VoltDB.instance().rejoining() || !authenticateInternal(context.authSystem, user, password)) {
+            authLog.warn("Failure to authenticate internal invocation of " + procName +
+                         ": user " + user + " failed authentication.");
+            callback.clientCallback(new ClientResponseImpl(ClientResponseImpl.UNEXPECTED_FAILURE,
+                    new VoltTable[0], "Authentication rejected"));
+            return true;
+        }
+
+        /*
+         * A client is only an admin by connecting to the admin port, which the internal
+         * caller never does. Admin invocations get past a paused cluster, so they are
+         * limited to users who could pause and resume it, the ones with system
+         * procedure permission.
+         */
+        if (isAdmin) {
+            final AuthSystem.AuthUser authUser = context.authSystem.getUser(user);
+            if (authUser == null || !authUser.hasSystemProcPermission()) {
+                authLog.warn("Internal invocation of " + procName + ": user " + user +
+                             " doesn't have system procedure permission and can't use admin mode.");
+                callback.clientCallback(new ClientResponseImpl(ClientResponseImpl.UNEXPECTED_FAILURE,
+                        new VoltTable[0], "Admin mode requires system procedure permission"));
+                return true;
+            }
+        }
+
+        if (m_internalACG.hasBackPressure()) {
+            return false;
+        }
+
+        final StoredProcedureInvocation task = new StoredProcedureInvocation();
+        task.setProcName(procName);
+        task.setParams(params);
+        task.clientHandle = m_internalAdapter.registerCallback(callback);
+
+        // dispatch reads the invocation the way it arrives on the wire
+        final ByteBuffer buf = ByteBuffer.allocate(task.getSerializedSize());
+        task.flattenToBuffer(buf);
+        buf.flip();
+
+        final ClientResponseImpl error = handleRead(buf, new InternalClientInputHandler(user, isAdmin), m_internalAdapter);
+        if (error != null && m_internalAdapter.removeCallback(task.clientHandle) != null) {
+            callback.clientCallback(error);
+        }
+        return true;
+    }
+
     /**
      * Tell the clientInterface about a connection adapter.
      */
@@ -1378,6 +1515,17 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                 new VoltTable[0], realReason, handle);
     }
 
+    /**
+     * Append the cost model's account of the chosen plan, when the planner left one.
+     */
+    private static String withCostExplanation(String explainPlan, AdHocPlannedStatement plannedStatement) {
+        String costExplanation = plannedStatement.core.costExplanation;
+        if (costExplanation == null) {
+            return explainPlan;
+        }
+        return explainPlan + "\n" + costExplanation;
+    }
+
     private void processExplainPlannedStmtBatch(  AdHocPlannedStmtBatch planBatch ) {
             final Connection c = (Connection)planBatch.clientData;
             Database db = m_catalogContext.get().database;
@@ -1407,6 +1555,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                         JSONArray jarray =  jobj.getJSONArray(PlanNodeTree.Members.PLAN_NODES.name());
                         pnt.loadFromJSONArray(jarray, db);
                         String str = pnt.getRootPlanNode().toExplainPlanString();
+                        str = withCostExplanation(str, planBatch.plannedStatements.get(i));
                         vt[i] = new VoltTable(new VoltTable.ColumnInfo( "EXECUTION_PLAN", VoltType.STRING));
                         vt[i].addRow(str);
                     } catch (JSONException e) {
@@ -1431,6 +1580,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                         pnt.getRootPlanNode().reattachFragment( (SendPlanNode) collpnt.getRootPlanNode() );
 
                         String str = pnt.getRootPlanNode().toExplainPlanString();
+                        str = withCostExplanation(str, planBatch.plannedStatements.get(i));
                         vt[i] = new VoltTable(new VoltTable.ColumnInfo( "EXECUTION_PLAN", VoltType.STRING));
                         vt[i].addRow(str);
                     } catch (JSONException e) {
@@ -1605,6 +1755,128 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         return null;
     }
 
+    /**
+     * Collects the responses of the single partition transactions a @LoadPartitionedTable
+     * invocation was split into, and answers the client once all of them are in with the
+     * rows that violated a constraint.
+     */
+    private static class LoadPartitionedTableCallback implements ProcedureCallback {
+        private final Connection m_ccxn;
+        private final long m_clientHandle;
+        private final VoltTable m_violations;
+        private final int m_partitions;
+        private int m_outstanding;
+        private int m_failedPartitions = 0;
+        private ClientResponse m_failure = null;
+
+        LoadPartitionedTableCallback(Connection ccxn, long clientHandle, VoltTable violations, int partitions) {
+            m_ccxn = ccxn;
+            m_clientHandle = clientHandle;
+            m_violations = violations;
+            m_partitions = partitions;
+            m_outstanding = partitions;
+        }
+
+        @Override
+        public synchronized void clientCallback(ClientResponse response) {
+            if (response.getStatus() == ClientResponse.SUCCESS) {
+                final VoltTable partitionViolations = response.getResults()[0];
+                while (partitionViolations.advanceRow()) {
+                    PrivateVoltTableFactory.copyRow(partitionViolations, m_violations);
+                }
+            } else {
+                m_failedPartitions++;
+                if (m_failure == null) {
+                    m_failure = response;
+                }
+            }
+            if (--m_outstanding > 0) {
+                return;
+            }
+
+            final ClientResponseImpl clientResponse;
+            if (m_failure == null) {
+                clientResponse = new ClientResponseImpl(ClientResponseImpl.SUCCESS,
+                        new VoltTable[] { m_violations }, null, m_clientHandle);
+            } else {
+                // the partitions that succeeded have committed their rows
+                clientResponse = new ClientResponseImpl(m_failure.getStatus(),
+                        new VoltTable[] { m_violations },
+                        "Rows for " + m_failedPartitions + " of " + m_partitions +
+                        " partitions were not loaded: " + m_failure.getStatusString(),
+                        m_clientHandle);
+            }
+            final ByteBuffer buf = ByteBuffer.allocate(clientResponse.getSerializedSize() + 4);
+            buf.putInt(buf.capacity() - 4);
+            clientResponse.flattenToBuffer(buf).flip();
+            m_ccxn.writeStream().enqueue(buf);
+        }
+    }
+
+    /**
+     * Split the rows of a @LoadPartitionedTable invocation by partition and insert each
+     * partition's rows in a single partition transaction of its own, so bulk loads don't
+     * need a multi-partition transaction. The transactions are initiated through the
+     * internal adapter and the client gets a single response once they have all finished.
+     */
+    ClientResponseImpl dispatchLoadPartitionedTable(StoredProcedureInvocation task,
+            ClientInputHandler handler, Connection ccxn)
+    {
+        final Object[] params = task.getParams().toArray();
+        final Map<Integer, VoltTable> partitioned;
+        try {
+            if (params.length != 2 || !(params[0] instanceof String) || !(params[1] instanceof VoltTable)) {
+                throw new Exception("@LoadPartitionedTable expects a String and a VoltTable for parameters (in order).");
+            }
+            partitioned = LoadPartitionedTable.partitionRows(
+                    m_catalogContext.get().database.getTables(), (String) params[0], (VoltTable) params[1]);
+        }
+        catch (Exception e) {
+            authLog.warn(e.getMessage());
+            return new ClientResponseImpl(ClientResponseImpl.UNEXPECTED_FAILURE,
+                    new VoltTable[0], e.getMessage(), task.clientHandle);
+        }
+
+        final VoltTable violations = ((VoltTable) params[1]).clone(0);
+        if (partitioned.isEmpty()) {
+            return new ClientResponseImpl(ClientResponseImpl.SUCCESS,
+                    new VoltTable[] { violations }, null, task.clientHandle);
+        }
+        // the client connection isn't charged for the partition transactions, the internal one is
+        if (m_internalACG.hasBackPressure()) {
+            return new ClientResponseImpl(ClientResponseImpl.SERVER_UNAVAILABLE,
+                    new VoltTable[0], "Server is busy loading tables; try again later",
+                    task.clientHandle);
+        }
+
+        final LoadPartitionedTableCallback callback =
+            new LoadPartitionedTableCallback(ccxn, task.clientHandle, violations, partitioned.size());
+        final long now = System.currentTimeMillis();
+        for (Map.Entry<Integer, VoltTable> e : partitioned.entrySet()) {
+            final StoredProcedureInvocation partitionTask = new StoredProcedureInvocation();
+            partitionTask.setProcName(task.procName);
+            partitionTask.setParams(params[0], e.getValue());
+            partitionTask.clientHandle = m_internalAdapter.registerCallback(callback);
+            final boolean initiated = createTransaction(m_internalAdapter.connectionId(),
+                    handler.m_hostname,
+                    handler.isAdmin(),
+                    partitionTask,
+                    false,      // read only
+                    true,       // single partition
+                    false,      // every site
+                    new int[] { e.getKey() },
+                    m_internalAdapter, partitionTask.getSerializedSize(),
+                    now);
+            if (!initiated) {
+                m_internalAdapter.removeCallback(partitionTask.clientHandle);
+                callback.clientCallback(new ClientResponseImpl(ClientResponseImpl.UNEXPECTED_FAILURE,
+                        new VoltTable[0], "Failed to find master initiator for partition " + e.getKey(),
+                        partitionTask.clientHandle));
+            }
+        }
+        return null;
+    }
+
     /**
      * Send a multipart sentinel to all partitions. This is only used when the
      * multipart didn't generate any sentinels for partitions, e.g. DR
@@ -1709,17 +1981,91 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         return null;
     }
 
+    /**
+     * Dispatch each of the invocations a client shipped in a single @Batch message as if it had
+     * arrived in a message of its own. The parameters of the batch are the count of invocations
+     * followed by each length prefixed invocation. Error responses for the invocations are
+     * queued to the connection together once the whole batch has been dispatched.
+     * @return An error for the batch's own handle if the batch is malformed, with the index
+     * of the first invocation that was dropped
+     */
+    ClientResponseImpl dispatchBatch(StoredProcedureInvocation task, ClientInputHandler handler, Connection ccxn)
+    throws IOException {
+        final ByteBuffer batch = task.getSerializedParams();
+        final int count = batch.remaining() >= 4 ? batch.getInt() : -1;
+        if (count < 0) {
+            return malformedBatchResponse(task, 0);
+        }
+
+        ArrayList<ByteBuffer> errors = null;
+        ClientResponseImpl malformed = null;
+        for (int ii = 0; ii < count; ii++) {
+            final int length = batch.remaining() >= 4 ? batch.getInt() : -1;
+            if (length < 0 || length > batch.remaining()) {
+                hostLog.warn("Received a malformed invocation batch from " + handler.m_hostname +
+                        ", " + (count - ii) + " of " + count + " invocations were dropped");
+                malformed = malformedBatchResponse(task, ii);
+                break;
+            }
+            // bound the slice before taking it so its capacity, which admission
+            // control charges for, is the invocation's own length
+            final int limit = batch.limit();
+            batch.limit(batch.position() + length);
+            final ByteBuffer invocation = batch.slice();
+            batch.limit(limit);
+            batch.position(batch.position() + length);
+
+            final ClientResponseImpl error = handleRead(invocation, handler, ccxn, true);
+            if (error != null) {
+                ByteBuffer buf = ByteBuffer.allocate(error.getSerializedSize() + 4);
+                buf.putInt(buf.capacity() - 4);
+                error.flattenToBuffer(buf).flip();
+                if (errors == null) {
+                    errors = new ArrayList<ByteBuffer>();
+                }
+                errors.add(buf);
+            }
+        }
+
+        if (errors != null) {
+            ccxn.writeStream().enqueue(errors.toArray(new ByteBuffer[errors.size()]));
+        }
+        return malformed;
+    }
+
+    private static ClientResponseImpl malformedBatchResponse(StoredProcedureInvocation task, int firstDropped) {
+        final VoltTable dropped = new VoltTable(new VoltTable.ColumnInfo("FIRST_DROPPED", VoltType.INTEGER));
+        dropped.addRow(firstDropped);
+        return new ClientResponseImpl(ClientResponseImpl.UNEXPECTED_FAILURE,
+                new VoltTable[] { dropped }, "Malformed invocation batch", task.clientHandle);
+    }
+
     /**
      *
      * @param port
      * * return True if an error was generated and needs to be returned to the client
      */
     final ClientResponseImpl handleRead(ByteBuffer buf, ClientInputHandler handler, Connection ccxn) throws IOException {
+        return handleRead(buf, handler, ccxn, false);
+    }
+
+    private ClientResponseImpl handleRead(ByteBuffer buf, ClientInputHandler handler, Connection ccxn,
+            boolean inBatch) throws IOException {
         final long now = System.currentTimeMillis();
         final FastDeserializer fds = new FastDeserializer(buf);
         final StoredProcedureInvocation task = fds.readObject(StoredProcedureInvocation.class);
         ClientResponseImpl error = null;
 
+        // a batch carries many invocations that each get their own response, unpack it
+        // before any checks that would reject the batch as a whole
+        if (task.procName.equals("@Batch")) {
+            if (inBatch) {
+                return new ClientResponseImpl(ClientResponseImpl.UNEXPECTED_FAILURE,
+                        new VoltTable[0], "Invocation batches can not be nested", task.clientHandle);
+            }
+            return dispatchBatch(task, handler, ccxn);
+        }
+
         // Check for admin mode restrictions before proceeding any further
         VoltDBInterface instance = VoltDB.instance();
         if (instance.getMode() == OperationMode.PAUSED && !handler.isAdmin())
@@ -1797,6 +2143,8 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                 return dispatchUpdateApplicationCatalog(task, handler, ccxn);
             } else if (task.procName.equals("@LoadSinglepartitionTable")) {
                 return dispatchLoadSinglepartitionTable(buf, task, handler, ccxn);
+            } else if (task.procName.equals("@LoadPartitionedTable")) {
+                return dispatchLoadPartitionedTable(task, handler, ccxn);
             } else if (task.procName.equals("@LoadMultipartitionTable")) {
                 /*
                  * For IV2 DR: This will generate a sentinel for each partition,
@@ -2233,6 +2581,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         if (m_snapshotDaemon != null) {
             m_snapshotDaemon.shutdown();
         }
+        m_internalAdapter.shutdown();
         if (m_localReplicasBuilder != null) {
             m_localReplicasBuilder.join(10000);
             if (m_localReplicasBuilder.isAlive()) {
@@ -2245,6 +2594,10 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
     private volatile Thread m_localReplicasBuilder = null;
     public void startAcceptingConnections() throws IOException {
         if (m_isIV2Enabled) {
+            m_cihm.put(m_internalAdapter.connectionId(),
+                    ClientInterfaceHandleManager.makeThreadSafeCIHM(false, m_internalAdapter, m_internalACG));
+            m_allACGs.add(m_internalACG);
+
             /*
              * This does a ZK lookup which apparently is full of fail
              * if you run TestRejoinEndToEnd. Kind of lame, but initializing this data
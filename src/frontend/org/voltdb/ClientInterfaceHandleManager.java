@@ -104,6 +104,8 @@ public class ClientInterfaceHandleManager
         final long m_clientHandle;
         final int m_messageSize;
         final long m_creationTime;
+        // for latency statistics, finer than m_creationTime
+        final long m_creationNanos = System.nanoTime();
         final String m_procName;
         final long m_initiatorHSId;
         Iv2InFlight(long ciHandle, long clientHandle,
@@ -0,0 +1,246 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop_voltpatches.util.PureJavaCrc32;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.InstanceId;
+
+/**
+ * On-disk format of one command log segment written by {@link GroupCommitCommandLog}.
+ *
+ * A segment starts with a header recording the cluster instance that wrote it and,
+ * for every partition, the last txnId that was already durable (covered by a snapshot
+ * or an earlier segment) when the segment was opened. The header is followed by
+ * records of the form <code>[int length][int crc][byte type][payload]</code>, where
+ * length and crc cover the type byte and the payload. A torn write at the tail of
+ * a segment shows up as a short or CRC-mismatched record and ends the segment.
+ */
+public class CommandLogSegment {
+    private static final VoltLogger LOG = new VoltLogger("LOGGING");
+
+    public static final String SEGMENT_SUFFIX = ".vcl";
+    public static final String SEGMENT_PREFIX = "commandlog_";
+
+    static final int SEGMENT_MAGIC = 0x56434c47; // "VCLG"
+    static final int SEGMENT_VERSION = 1;
+
+    /** Record carrying a serialized Iv2InitiateTaskMessage */
+    public static final byte INITIATE_TASK_RECORD = 0;
+    /** Record carrying an IV2 fault (viable replay set) entry */
+    public static final byte IV2_FAULT_RECORD = 1;
+
+    /** Bytes of record framing in front of every payload: length, crc and type */
+    public static final int RECORD_HEADER_SIZE = 4 + 4 + 1;
+
+    public static final FileFilter SEGMENT_FILTER = new FileFilter() {
+        @Override
+        public boolean accept(File pathname) {
+            final String name = pathname.getName();
+            return pathname.isFile() &&
+                   name.startsWith(SEGMENT_PREFIX) &&
+                   name.endsWith(SEGMENT_SUFFIX);
+        }
+    };
+
+    public final File m_file;
+    public final long m_index;
+
+    public CommandLogSegment(File file, long index) {
+        m_file = file;
+        m_index = index;
+    }
+
+    /**
+     * Header of a segment, see the class comment.
+     */
+    public static class Header {
+        public final InstanceId instanceId;
+        public final Map<Integer, Long> lastDurableTxnIds;
+
+        public Header(InstanceId instanceId, Map<Integer, Long> lastDurableTxnIds) {
+            this.instanceId = instanceId;
+            this.lastDurableTxnIds = Collections.unmodifiableMap(new TreeMap<Integer, Long>(lastDurableTxnIds));
+        }
+
+        int getSerializedSize() {
+            return 4 + 4 + 4 + 8 + 4 + lastDurableTxnIds.size() * (4 + 8);
+        }
+
+        ByteBuffer serialize() {
+            ByteBuffer buf = ByteBuffer.allocate(getSerializedSize());
+            buf.putInt(SEGMENT_MAGIC);
+            buf.putInt(SEGMENT_VERSION);
+            buf.putInt(instanceId == null ? -1 : instanceId.getCoord());
+            buf.putLong(instanceId == null ? -1 : instanceId.getTimestamp());
+            buf.putInt(lastDurableTxnIds.size());
+            for (Map.Entry<Integer, Long> e : lastDurableTxnIds.entrySet()) {
+                buf.putInt(e.getKey());
+                buf.putLong(e.getValue());
+            }
+            buf.flip();
+            return buf;
+        }
+    }
+
+    /**
+     * A single record read back from a segment.
+     */
+    public static class Record {
+        public final byte type;
+        public final ByteBuffer payload;
+
+        Record(byte type, ByteBuffer payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+
+    public static String segmentName(long index) {
+        return String.format("%s%019d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * List the segments in the given directory, ordered by segment index.
+     */
+    public static List<CommandLogSegment> listSegments(File dir) {
+        List<CommandLogSegment> segments = new ArrayList<CommandLogSegment>();
+        File files[] = dir.listFiles(SEGMENT_FILTER);
+        if (files == null) {
+            return segments;
+        }
+        Arrays.sort(files);
+        for (File f : files) {
+            final String name = f.getName();
+            try {
+                long index = Long.parseLong(
+                        name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                segments.add(new CommandLogSegment(f, index));
+            } catch (NumberFormatException e) {
+                LOG.warn("Ignoring unrecognized command log file " + f);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Frame a record for appending to a segment. The returned buffer is ready to be written.
+     */
+    public static ByteBuffer frameRecord(byte type, ByteBuffer payload) {
+        final int payloadLength = payload.remaining();
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_HEADER_SIZE + payloadLength);
+        buf.position(8);
+        buf.put(type);
+        buf.put(payload);
+        PureJavaCrc32 crc = new PureJavaCrc32();
+        crc.update(buf.array(), 8, 1 + payloadLength);
+        buf.putInt(0, 1 + payloadLength);
+        buf.putInt(4, (int)crc.getValue());
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Read the header and every intact record of this segment. Reading stops at
+     * the first short or corrupt record, which is what a crash in the middle of
+     * a group commit leaves behind.
+     */
+    public Header read(List<Record> records) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(m_file, "r");
+        try {
+            FileChannel fc = raf.getChannel();
+            ByteBuffer contents = ByteBuffer.allocate((int)fc.size());
+            while (contents.hasRemaining()) {
+                if (fc.read(contents) == -1) {
+                    break;
+                }
+            }
+            contents.flip();
+
+            Header header = readHeader(contents);
+            if (records == null) {
+                return header;
+            }
+
+            PureJavaCrc32 crc = new PureJavaCrc32();
+            while (contents.remaining() >= RECORD_HEADER_SIZE) {
+                final int start = contents.position();
+                final int length = contents.getInt();
+                final int expectedCrc = contents.getInt();
+                if (length < 1 || length > contents.remaining()) {
+                    LOG.warn("Truncated record at offset " + start + " of command log segment " +
+                             m_file + ", ignoring the rest of the segment");
+                    break;
+                }
+                crc.reset();
+                crc.update(contents.array(), contents.position(), length);
+                if ((int)crc.getValue() != expectedCrc) {
+                    LOG.warn("CRC mismatch at offset " + start + " of command log segment " +
+                             m_file + ", ignoring the rest of the segment");
+                    break;
+                }
+                final byte type = contents.get();
+                ByteBuffer payload = contents.slice();
+                payload.limit(length - 1);
+                contents.position(contents.position() + length - 1);
+                records.add(new Record(type, payload));
+            }
+            return header;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private Header readHeader(ByteBuffer buf) throws IOException {
+        if (buf.remaining() < 4 + 4 + 4 + 8 + 4) {
+            throw new IOException("Command log segment " + m_file + " is too short to contain a header");
+        }
+        if (buf.getInt() != SEGMENT_MAGIC) {
+            throw new IOException("Command log segment " + m_file + " has an invalid header");
+        }
+        final int version = buf.getInt();
+        if (version != SEGMENT_VERSION) {
+            throw new IOException("Command log segment " + m_file + " has unsupported version " + version);
+        }
+        final int coord = buf.getInt();
+        final long timestamp = buf.getLong();
+        final InstanceId instanceId = coord == -1 && timestamp == -1 ? null : new InstanceId(coord, timestamp);
+        final int count = buf.getInt();
+        if (count < 0 || buf.remaining() < count * (4 + 8)) {
+            throw new IOException("Command log segment " + m_file + " has a truncated header");
+        }
+        Map<Integer, Long> lastDurable = new TreeMap<Integer, Long>();
+        for (int ii = 0; ii < count; ii++) {
+            lastDurable.put(buf.getInt(), buf.getLong());
+        }
+        return new Header(instanceId, lastDurable);
+    }
+}
@@ -28,7 +28,6 @@ import org.apache.cassandra_voltpatches.MurmurHash3;
 import org.voltcore.utils.Pair;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableSortedMap;
 
 /**
  * A hashinator that uses Murmur3_x64_128 to hash values and a consistent hash ring
@@ -37,10 +36,27 @@ import com.google.common.collect.ImmutableSortedMap;
 public class ElasticHashinator extends TheHashinator {
 
     /**
-     * Tokens on the ring. A value hashes to a token if the token is the first value <=
-     * the value's hash
+     * Rings with more tokens than this get a bucket index in front of the
+     * binary search.
      */
-    private final ImmutableSortedMap<Long, Integer> tokens;
+    static final int MIN_TOKENS_FOR_BUCKETS = 16;
+    private static final int MAX_BUCKET_BITS = 16;
+
+    /**
+     * Tokens on the ring, sorted, and the partition of each. A value hashes to a
+     * token if the token is the first value <= the value's hash.
+     */
+    private final long m_tokens[];
+    private final int m_partitions[];
+
+    /**
+     * Optional index over the top m_bucketBits bits of the (unsigned) hash.
+     * The tokens in bucket b are m_tokens[m_bucketFirst[b]] up to but not
+     * including m_tokens[m_bucketFirst[b + 1]]. Null for small rings.
+     */
+    private final int m_bucketBits;
+    private final int m_bucketFirst[];
+
     private final byte m_configBytes[];
 
     /**
@@ -64,11 +80,41 @@ public class ElasticHashinator extends TheHashinator {
             }
             buildMap.put( token, partitionId);
         }
-        ImmutableSortedMap.Builder<Long, Integer> builder = ImmutableSortedMap.naturalOrder();
+        if (buildMap.isEmpty()) {
+            throw new RuntimeException("Hashinator ring has no tokens");
+        }
+        m_tokens = new long[buildMap.size()];
+        m_partitions = new int[buildMap.size()];
+        int ii = 0;
         for (Map.Entry<Long, Integer> e : buildMap.entrySet()) {
-            builder.put(e.getKey(), e.getValue());
+            m_tokens[ii] = e.getKey();
+            m_partitions[ii] = e.getValue();
+            ii++;
+        }
+
+        if (m_tokens.length > MIN_TOKENS_FOR_BUCKETS) {
+            // about one token per bucket
+            m_bucketBits = Math.min(MAX_BUCKET_BITS, 32 - Integer.numberOfLeadingZeros(m_tokens.length - 1));
+            m_bucketFirst = new int[(1 << m_bucketBits) + 1];
+            int token = 0;
+            for (int bucket = 0; bucket <= (1 << m_bucketBits); bucket++) {
+                while (token < m_tokens.length && bucketOf(m_tokens[token]) < bucket) {
+                    token++;
+                }
+                m_bucketFirst[bucket] = token;
+            }
+        } else {
+            m_bucketBits = 0;
+            m_bucketFirst = null;
         }
-        tokens = builder.build();
+    }
+
+    /**
+     * The bucket of a hash is its top bits, taken in unsigned order so that
+     * bucket order matches signed token order.
+     */
+    private int bucketOf(long hash) {
+        return (int)((hash ^ Long.MIN_VALUE) >>> (64 - m_bucketBits));
     }
 
     /**
@@ -113,20 +159,41 @@ public class ElasticHashinator extends TheHashinator {
      * it wraps around to the last token in the ring closest to Long.MAX_VALUE
      */
     int partitionForToken(long hash) {
-        Map.Entry<Long, Integer> entry = tokens.floorEntry(hash);
-        //System.out.println("Finding partition for token " + token);
+        int from = 0;
+        int to = m_tokens.length;
+        if (m_bucketFirst != null) {
+            final int bucket = bucketOf(hash);
+            from = m_bucketFirst[bucket];
+            to = m_bucketFirst[bucket + 1];
+        }
         /*
-         * Because the tokens are randomly distributed it is likely there is a range
-         * near Long.MIN_VALUE that isn't covered by a token. Conceptually this is a ring
-         * so the correct token is the one near Long.MAX_VALUE.
+         * The floor token is the one before the first token > hash. If that's
+         * before the first token in the ring, it's because the tokens are randomly
+         * distributed and it is likely there is a range near Long.MIN_VALUE that
+         * isn't covered by a token. Conceptually this is a ring so the correct token
+         * is the one near Long.MAX_VALUE.
          */
-        if (entry != null) {
-            //System.out.println("Floor token was " + entry.getKey());
-            return entry.getValue();
-        } else {
-            //System.out.println("Last entry token " + tokens.lastEntry().getKey());
-            return tokens.lastEntry().getValue();
+        final int floor = from + countAtOrBelow(hash, from, to) - 1;
+        return m_partitions[floor < 0 ? m_tokens.length - 1 : floor];
+    }
+
+    /**
+     * Count the tokens in m_tokens[from, to) that are <= hash. The loop only
+     * moves the base of the search, which the JIT turns into a conditional
+     * move, so there is no branch to mispredict on the (random) hash.
+     */
+    private int countAtOrBelow(long hash, int from, int to) {
+        int n = to - from;
+        if (n == 0) {
+            return 0;
+        }
+        int base = from;
+        while (n > 1) {
+            final int half = n >>> 1;
+            base = (m_tokens[base + half] <= hash) ? base + half : base;
+            n -= half;
         }
+        return base - from + ((m_tokens[base] <= hash) ? 1 : 0);
     }
 
     @Override
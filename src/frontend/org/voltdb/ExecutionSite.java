@@ -63,6 +63,7 @@ import org.voltdb.catalog.Database;
 import org.voltdb.catalog.SnapshotSchedule;
 import org.voltdb.catalog.Table;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.compiler.LiveDatabaseEstimates;
 import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.dtxn.TransactionState;
 import org.voltdb.exceptions.EEException;
@@ -653,10 +654,13 @@ implements Runnable, SiteProcedureConnection, SiteSnapshotConnection
                 assert(stats != null);
 
                 // rollup the table memory stats for this site
+                final Map<String, Long> rowCounts = new HashMap<String, Long>();
                 while (stats.advanceRow()) {
                     //Assert column index matches name for ENG-4092
+                    assert(stats.getColumnName(5).equals("TABLE_NAME"));
                     assert(stats.getColumnName(7).equals("TUPLE_COUNT"));
                     tupleCount += stats.getLong(7);
+                    rowCounts.put(stats.getString(5), stats.getLong(7));
                     assert(stats.getColumnName(8).equals("TUPLE_ALLOCATED_MEMORY"));
                     tupleAllocatedMem += (int) stats.getLong(8);
                     assert(stats.getColumnName(9).equals("TUPLE_DATA_MEMORY"));
@@ -665,6 +669,8 @@ implements Runnable, SiteProcedureConnection, SiteSnapshotConnection
                     stringMem += (int) stats.getLong(10);
                 }
                 stats.resetRowPosition();
+                // let the ad hoc planner cost plans with these row counts
+                LiveDatabaseEstimates.updateSiteRowCounts(m_siteId, rowCounts);
 
                 m_tableStats.setStatsTable(stats);
 
@@ -697,7 +703,8 @@ implements Runnable, SiteProcedureConnection, SiteSnapshotConnection
                                              tupleAllocatedMem,
                                              indexMem,
                                              stringMem,
-                                             ee.getThreadLocalPoolAllocations());
+                                             ee.getThreadLocalPoolAllocations(),
+                                             (int) (ee.getTempTableMemory() / 1024));
             }
         }
     }
@@ -1978,12 +1985,13 @@ implements Runnable, SiteProcedureConnection, SiteSnapshotConnection
 
 
     @Override
-    public void loadTable(
+    public VoltTable loadTable(
             long txnId,
             String clusterName,
             String databaseName,
             String tableName,
-            VoltTable data)
+            VoltTable data,
+            boolean returnConstraintViolations)
     throws VoltAbortException
     {
         Cluster cluster = m_context.cluster;
@@ -1999,7 +2007,15 @@ implements Runnable, SiteProcedureConnection, SiteSnapshotConnection
             throw new VoltAbortException("table '" + tableName + "' does not exist in database " + clusterName + "." + databaseName);
         }
 
+        if (returnConstraintViolations) {
+            return ee.loadTable(table.getRelativeIndex(), data,
+                                txnId,
+                                lastCommittedTxnId,
+                                getNextUndoToken(),
+                                true);
+        }
         loadTable(txnId, table.getRelativeIndex(), data);
+        return null;
     }
 
     /**
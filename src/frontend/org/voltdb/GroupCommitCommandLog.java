@@ -0,0 +1,542 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.zookeeper_voltpatches.CreateMode;
+import org.apache.zookeeper_voltpatches.KeeperException;
+import org.apache.zookeeper_voltpatches.ZooDefs.Ids;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.InstanceId;
+import org.voltdb.iv2.MpInitiator;
+import org.voltdb.iv2.TxnEgo;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+
+/**
+ * Command log for the community edition. Initiate task messages from all the
+ * local initiators are appended to a per-node log made of fixed size segments
+ * (see {@link CommandLogSegment}). Appends are grouped: a dedicated writer thread
+ * collects everything logged since the previous fsync and commits the batch with a
+ * single gathering write and fsync once the batch is old enough (the deployment
+ * fsync interval), large enough in bytes, or contains enough transactions.
+ *
+ * In synchronous mode {@link #log} returns true and the durability listener is
+ * handed the durability handles of each batch once it is on disk, so the
+ * initiators hold responses until the invocation can be replayed. In asynchronous
+ * mode the same batching is done but the caller proceeds without waiting.
+ *
+ * Segments are reclaimed by truncation snapshots: once the log exceeds the
+ * configured size a truncation snapshot is requested, and when it completes
+ * every segment whose transactions are all covered by the snapshot is deleted.
+ */
+public class GroupCommitCommandLog implements CommandLog, SnapshotCompletionInterest {
+    private static final VoltLogger LOG = new VoltLogger("LOGGING");
+
+    /** Size at which the current segment is closed and a new one started */
+    public static final long SEGMENT_SIZE = Long.getLong("CL_SEGMENT_SIZE", 64 * 1024 * 1024);
+    /** Upper bound on the bytes written by a single group commit */
+    public static final int MAX_BATCH_BYTES = Integer.getInteger("CL_MAX_BATCH_BYTES", 4 * 1024 * 1024);
+
+    private File m_logDir;
+    private boolean m_synchronous;
+    private long m_fsyncIntervalNanos;
+    private int m_maxTxnsPerBatch;
+    private long m_logSizeLimit;
+    private InstanceId m_instanceId;
+    private boolean m_requestTruncation;
+
+    private volatile boolean m_initialized = false;
+    private volatile boolean m_shutdown = false;
+    private Thread m_writerThread;
+
+    /*
+     * The batch being accumulated, guarded by m_lock
+     */
+    private final ReentrantLock m_lock = new ReentrantLock();
+    private final Condition m_batchReady = m_lock.newCondition();
+    private ArrayList<ByteBuffer> m_pendingRecords = new ArrayList<ByteBuffer>();
+    private ArrayList<DurabilityListener> m_pendingListeners = new ArrayList<DurabilityListener>();
+    private ArrayList<Object> m_pendingHandles = new ArrayList<Object>();
+    private Map<Integer, Long> m_pendingMaxTxnIds = new HashMap<Integer, Long>();
+    private int m_pendingBytes = 0;
+    private int m_pendingTxns = 0;
+    private long m_batchStartNanos = 0;
+
+    /*
+     * Segment state, only touched by the writer thread after init (and by
+     * snapshot completion callbacks under m_segmentLock)
+     */
+    private final Object m_segmentLock = new Object();
+    private FileChannel m_currentChannel;
+    private long m_currentSegmentIndex = -1;
+    private long m_currentSegmentSize = 0;
+    private Map<Integer, Long> m_currentSegmentMaxTxnIds = new HashMap<Integer, Long>();
+    private Map<Integer, Long> m_lastDurableTxnIds = new TreeMap<Integer, Long>();
+    private final TreeMap<Long, ClosedSegment> m_closedSegments = new TreeMap<Long, ClosedSegment>();
+    private long m_totalLogSize = 0;
+    private boolean m_truncationRequested = false;
+
+    /*
+     * Statistics
+     */
+    private long m_batchCount = 0;
+    private long m_bytesWritten = 0;
+
+    private static class ClosedSegment {
+        final File file;
+        final long size;
+        final Map<Integer, Long> maxTxnIds;
+
+        ClosedSegment(File file, long size, Map<Integer, Long> maxTxnIds) {
+            this.file = file;
+            this.size = size;
+            this.maxTxnIds = maxTxnIds;
+        }
+    }
+
+    @Override
+    public void init(CatalogContext context, long txnId, Map<Integer, Long> perPartitionTxnId, String coreBinding) {
+        org.voltdb.catalog.CommandLog config = context.cluster.getLogconfig().get("log");
+        configure(new File(config.getLogpath()),
+                  config.getSynchronous(),
+                  config.getFsyncinterval(),
+                  config.getMaxtxns(),
+                  config.getLogsize() * 1024L * 1024L,
+                  VoltDB.instance().getHostMessenger().getInstanceId(),
+                  true);
+        start(perPartitionTxnId, coreBinding);
+    }
+
+    @Override
+    public void initForRejoin(CatalogContext context, long txnId, Map<Integer, Long> perPartitionTxnId,
+                              boolean isRejoin, String coreBinding) {
+        init(context, txnId, perPartitionTxnId, coreBinding);
+    }
+
+    /**
+     * Set the log parameters. Separate from {@link #start} so the log can be
+     * driven without a catalog.
+     */
+    void configure(File logDir, boolean synchronous, int fsyncIntervalMs, int maxTxnsPerBatch,
+                   long logSizeLimit, InstanceId instanceId, boolean requestTruncation) {
+        m_logDir = logDir;
+        m_synchronous = synchronous;
+        m_fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs);
+        m_maxTxnsPerBatch = maxTxnsPerBatch;
+        m_logSizeLimit = logSizeLimit;
+        m_instanceId = instanceId;
+        m_requestTruncation = requestTruncation;
+    }
+
+    /**
+     * Open the first segment and start the writer thread.
+     *
+     * @param lastDurableTxnIds The per-partition txnIds already covered by the
+     * snapshot the log starts from, recorded in the header of the first segment.
+     */
+    void start(Map<Integer, Long> lastDurableTxnIds, String coreBinding) {
+        if (!m_logDir.exists() && !m_logDir.mkdirs()) {
+            VoltDB.crashLocalVoltDB("Unable to create command log directory " + m_logDir, false, null);
+        }
+        long nextIndex = 0;
+        for (CommandLogSegment segment : CommandLogSegment.listSegments(m_logDir)) {
+            nextIndex = Math.max(nextIndex, segment.m_index + 1);
+        }
+        if (lastDurableTxnIds != null) {
+            m_lastDurableTxnIds.putAll(lastDurableTxnIds);
+        }
+        try {
+            synchronized (m_segmentLock) {
+                openSegment(nextIndex);
+            }
+        } catch (IOException e) {
+            VoltDB.crashLocalVoltDB("Unable to open command log segment in " + m_logDir, true, e);
+        }
+
+        LinkedList<String> coreList = null;
+        if (coreBinding != null) {
+            coreList = new LinkedList<String>();
+            coreList.add(coreBinding);
+        }
+        m_writerThread = CoreUtils.getThreadFactory(null, "Command log writer",
+                CoreUtils.SMALL_STACK_SIZE, false, coreList).newThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        writerLoop();
+                    }
+                });
+        m_writerThread.start();
+
+        if (m_requestTruncation) {
+            VoltDB.instance().getSnapshotCompletionMonitor().addInterest(this);
+        }
+        m_initialized = true;
+        LOG.info("Command log started in " + m_logDir + " in " +
+                 (m_synchronous ? "synchronous" : "asynchronous") + " mode with a " +
+                 TimeUnit.NANOSECONDS.toMillis(m_fsyncIntervalNanos) + "ms group commit interval");
+    }
+
+    @Override
+    public boolean needsInitialization() {
+        return !m_initialized;
+    }
+
+    @Override
+    public boolean log(Iv2InitiateTaskMessage message, long spHandle,
+                       DurabilityListener listener, Object durabilityHandle) {
+        /*
+         * Before the log is initialized (during command log replay and the
+         * truncation snapshot that follows it) there is nothing to append to,
+         * the replayed transactions are made durable by that snapshot.
+         */
+        if (!m_initialized || m_shutdown) {
+            return false;
+        }
+
+        final ByteBuffer record;
+        try {
+            ByteBuffer payload = ByteBuffer.allocate(8 + message.getSerializedSize());
+            payload.putLong(spHandle);
+            message.flattenToBuffer(payload);
+            payload.position(0);
+            payload.limit(payload.capacity());
+            record = CommandLogSegment.frameRecord(CommandLogSegment.INITIATE_TASK_RECORD, payload);
+        } catch (IOException e) {
+            VoltDB.crashLocalVoltDB("Unable to serialize command log entry", true, e);
+            return false;
+        }
+
+        m_lock.lock();
+        try {
+            appendPending(record);
+            trackTxnId(m_pendingMaxTxnIds, TxnEgo.getPartitionId(spHandle), spHandle);
+            if (!message.isSinglePartition()) {
+                trackTxnId(m_pendingMaxTxnIds, MpInitiator.MP_INIT_PID, message.getTxnId());
+            }
+            if (m_synchronous) {
+                m_pendingListeners.add(listener);
+                m_pendingHandles.add(durabilityHandle);
+            }
+            m_pendingTxns++;
+            if (m_pendingBytes >= MAX_BATCH_BYTES || m_pendingTxns >= m_maxTxnsPerBatch) {
+                m_batchReady.signal();
+            }
+        } finally {
+            m_lock.unlock();
+        }
+        return m_synchronous;
+    }
+
+    @Override
+    public void logIv2Fault(long writerHSId, Set<Long> survivorHSId, int partitionId, long spHandle) {
+        if (!m_initialized || m_shutdown) {
+            return;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(8 + 4 + 8 + 4 + survivorHSId.size() * 8);
+        payload.putLong(writerHSId);
+        payload.putInt(partitionId);
+        payload.putLong(spHandle);
+        payload.putInt(survivorHSId.size());
+        for (Long hsId : survivorHSId) {
+            payload.putLong(hsId);
+        }
+        payload.flip();
+        ByteBuffer record = CommandLogSegment.frameRecord(CommandLogSegment.IV2_FAULT_RECORD, payload);
+
+        m_lock.lock();
+        try {
+            appendPending(record);
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    private void appendPending(ByteBuffer record) {
+        if (m_pendingRecords.isEmpty()) {
+            // Wake the writer so it starts timing the new batch
+            m_batchStartNanos = System.nanoTime();
+            m_batchReady.signal();
+        }
+        m_pendingRecords.add(record);
+        m_pendingBytes += record.remaining();
+    }
+
+    private static void trackTxnId(Map<Integer, Long> maxTxnIds, int partitionId, long txnId) {
+        Long current = maxTxnIds.get(partitionId);
+        if (current == null || current < txnId) {
+            maxTxnIds.put(partitionId, txnId);
+        }
+    }
+
+    private void writerLoop() {
+        while (true) {
+            ArrayList<ByteBuffer> records;
+            ArrayList<DurabilityListener> listeners;
+            ArrayList<Object> handles;
+            Map<Integer, Long> maxTxnIds;
+
+            m_lock.lock();
+            try {
+                while (true) {
+                    if (m_shutdown && m_pendingRecords.isEmpty()) {
+                        return;
+                    }
+                    if (m_pendingRecords.isEmpty()) {
+                        m_batchReady.await();
+                        continue;
+                    }
+                    final long waited = System.nanoTime() - m_batchStartNanos;
+                    if (m_shutdown ||
+                        waited >= m_fsyncIntervalNanos ||
+                        m_pendingBytes >= MAX_BATCH_BYTES ||
+                        m_pendingTxns >= m_maxTxnsPerBatch) {
+                        break;
+                    }
+                    m_batchReady.awaitNanos(m_fsyncIntervalNanos - waited);
+                }
+
+                records = m_pendingRecords;
+                listeners = m_pendingListeners;
+                handles = m_pendingHandles;
+                maxTxnIds = m_pendingMaxTxnIds;
+                m_pendingRecords = new ArrayList<ByteBuffer>(records.size());
+                m_pendingListeners = new ArrayList<DurabilityListener>(listeners.size());
+                m_pendingHandles = new ArrayList<Object>(handles.size());
+                m_pendingMaxTxnIds = new HashMap<Integer, Long>();
+                m_pendingBytes = 0;
+                m_pendingTxns = 0;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                m_lock.unlock();
+            }
+
+            try {
+                commitBatch(records, maxTxnIds);
+            } catch (IOException e) {
+                VoltDB.crashLocalVoltDB("Unable to write to the command log", true, e);
+                return;
+            }
+
+            if (!listeners.isEmpty()) {
+                notifyListeners(listeners, handles);
+            }
+        }
+    }
+
+    /**
+     * Append the batch to the current segment with one gathering write per
+     * segment and make it durable with a single fsync.
+     */
+    private void commitBatch(List<ByteBuffer> records, Map<Integer, Long> maxTxnIds) throws IOException {
+        synchronized (m_segmentLock) {
+            int batchBytes = 0;
+            for (ByteBuffer record : records) {
+                batchBytes += record.remaining();
+            }
+            if (m_currentSegmentSize > 0 && m_currentSegmentSize + batchBytes > SEGMENT_SIZE) {
+                rollSegment();
+            }
+
+            ByteBuffer toWrite[] = records.toArray(new ByteBuffer[records.size()]);
+            long remaining = batchBytes;
+            while (remaining > 0) {
+                remaining -= m_currentChannel.write(toWrite);
+            }
+            m_currentChannel.force(false);
+
+            m_currentSegmentSize += batchBytes;
+            m_totalLogSize += batchBytes;
+            for (Map.Entry<Integer, Long> e : maxTxnIds.entrySet()) {
+                trackTxnId(m_currentSegmentMaxTxnIds, e.getKey(), e.getValue());
+            }
+            m_batchCount++;
+            m_bytesWritten += batchBytes;
+
+            if (m_requestTruncation && !m_truncationRequested && m_totalLogSize > m_logSizeLimit) {
+                requestTruncationSnapshot();
+            }
+        }
+    }
+
+    /**
+     * Group the durability handles by listener (one per local initiator) so each
+     * initiator is notified once per batch, preserving log order within it.
+     */
+    private static void notifyListeners(List<DurabilityListener> listeners, List<Object> handles) {
+        Map<DurabilityListener, ArrayList<Object>> byListener =
+            new IdentityHashMap<DurabilityListener, ArrayList<Object>>();
+        for (int ii = 0; ii < listeners.size(); ii++) {
+            ArrayList<Object> durable = byListener.get(listeners.get(ii));
+            if (durable == null) {
+                durable = new ArrayList<Object>();
+                byListener.put(listeners.get(ii), durable);
+            }
+            durable.add(handles.get(ii));
+        }
+        for (Map.Entry<DurabilityListener, ArrayList<Object>> e : byListener.entrySet()) {
+            e.getKey().onDurability(e.getValue());
+        }
+    }
+
+    private void openSegment(long index) throws IOException {
+        File file = new File(m_logDir, CommandLogSegment.segmentName(index));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        m_currentChannel = raf.getChannel();
+        ByteBuffer header = new CommandLogSegment.Header(m_instanceId, m_lastDurableTxnIds).serialize();
+        final int headerSize = header.remaining();
+        while (header.hasRemaining()) {
+            m_currentChannel.write(header);
+        }
+        m_currentChannel.force(true);
+        m_currentSegmentIndex = index;
+        m_currentSegmentSize = headerSize;
+        m_totalLogSize += headerSize;
+        m_currentSegmentMaxTxnIds = new HashMap<Integer, Long>();
+    }
+
+    private void rollSegment() throws IOException {
+        m_currentChannel.close();
+        m_closedSegments.put(m_currentSegmentIndex,
+                new ClosedSegment(new File(m_logDir, CommandLogSegment.segmentName(m_currentSegmentIndex)),
+                                  m_currentSegmentSize, m_currentSegmentMaxTxnIds));
+        openSegment(m_currentSegmentIndex + 1);
+    }
+
+    private void requestTruncationSnapshot() {
+        m_truncationRequested = true;
+        LOG.info("Command log size " + m_totalLogSize + " exceeds the configured limit of " +
+                 m_logSizeLimit + " bytes, requesting a truncation snapshot");
+        try {
+            VoltDB.instance().getHostMessenger().getZK().create(VoltZK.request_truncation_snapshot, null,
+                    Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        } catch (KeeperException.NodeExistsException e) {
+            // Someone else already asked for one
+        } catch (Exception e) {
+            LOG.error("Unable to request a command log truncation snapshot", e);
+            m_truncationRequested = false;
+        }
+    }
+
+    /**
+     * Reclaim segments once a truncation snapshot covers them. The current
+     * segment is closed first so that the next segment's header records the
+     * snapshot as its starting point.
+     */
+    @Override
+    public CountDownLatch snapshotCompleted(SnapshotCompletionEvent event) {
+        if (!event.truncationSnapshot || !m_initialized) {
+            return new CountDownLatch(0);
+        }
+        synchronized (m_segmentLock) {
+            try {
+                m_lastDurableTxnIds = new TreeMap<Integer, Long>(event.partitionTxnIds);
+                if (!m_lastDurableTxnIds.containsKey(MpInitiator.MP_INIT_PID)) {
+                    m_lastDurableTxnIds.put(MpInitiator.MP_INIT_PID, event.multipartTxnId);
+                }
+                rollSegment();
+            } catch (IOException e) {
+                VoltDB.crashLocalVoltDB("Unable to roll command log segment", true, e);
+            }
+
+            Iterator<ClosedSegment> iter = m_closedSegments.values().iterator();
+            while (iter.hasNext()) {
+                ClosedSegment segment = iter.next();
+                if (!isCoveredBy(segment.maxTxnIds, m_lastDurableTxnIds)) {
+                    // Keep this and every later segment to preserve a contiguous log
+                    break;
+                }
+                if (!segment.file.delete()) {
+                    LOG.warn("Unable to delete truncated command log segment " + segment.file);
+                }
+                m_totalLogSize -= segment.size;
+                iter.remove();
+            }
+            m_truncationRequested = false;
+        }
+        return new CountDownLatch(0);
+    }
+
+    static boolean isCoveredBy(Map<Integer, Long> segmentMaxTxnIds, Map<Integer, Long> snapshotTxnIds) {
+        for (Map.Entry<Integer, Long> e : segmentMaxTxnIds.entrySet()) {
+            Long covered = snapshotTxnIds.get(e.getKey());
+            if (covered == null || covered < e.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void shutdown() throws InterruptedException {
+        if (!m_initialized) {
+            return;
+        }
+        if (m_requestTruncation) {
+            VoltDB.instance().getSnapshotCompletionMonitor().removeInterest(this);
+        }
+        m_lock.lock();
+        try {
+            m_shutdown = true;
+            m_batchReady.signal();
+        } finally {
+            m_lock.unlock();
+        }
+        m_writerThread.join();
+        synchronized (m_segmentLock) {
+            try {
+                m_currentChannel.close();
+            } catch (IOException e) {
+                LOG.warn("Error closing command log segment", e);
+            }
+        }
+        LOG.info("Command log shut down after " + m_batchCount + " group commits writing " +
+                 m_bytesWritten + " bytes");
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    long getBatchCount() {
+        synchronized (m_segmentLock) {
+            return m_batchCount;
+        }
+    }
+}
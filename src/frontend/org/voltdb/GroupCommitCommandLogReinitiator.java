@@ -0,0 +1,480 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.zookeeper_voltpatches.CreateMode;
+import org.apache.zookeeper_voltpatches.KeeperException;
+import org.apache.zookeeper_voltpatches.ZooDefs.Ids;
+import org.apache.zookeeper_voltpatches.ZooKeeper;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.EstTime;
+import org.voltcore.utils.InstanceId;
+import org.voltcore.zk.ZKUtil;
+import org.voltdb.VoltDB.START_ACTION;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.dtxn.TransactionCreator;
+import org.voltdb.iv2.MpInitiator;
+import org.voltdb.iv2.TxnEgo;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+import org.voltdb.messaging.VoltDbMessageFactory;
+
+/**
+ * Replays the segments written by {@link GroupCommitCommandLog}.
+ *
+ * Every replica of a partition logs the same transactions, so each partition is
+ * replayed by exactly one host: while generating the replay plan every host
+ * claims, through ZooKeeper, the partitions it has log entries for, and the MP
+ * stream is claimed the same way. The claimant replays its partition's entries
+ * in log order, sending a sentinel at the position of each multi-partition
+ * transaction, and the MP claimant reinitiates the multi-partition
+ * transactions themselves; the ReplaySequencer on each partition stitches the
+ * two streams back together. Partitions nobody claimed still get their end of
+ * log message so blocked multi-partition work can drain.
+ */
+public class GroupCommitCommandLogReinitiator implements CommandLogReinitiator {
+    private static final VoltLogger LOG = new VoltLogger("LOGGING");
+
+    static final String REPLAY_ZK_PATH = VoltZK.command_log_replay;
+    /** Bound on reinitiated transactions waiting for a response, per replay stream */
+    static final int MAX_OUTSTANDING = Integer.getInteger("CL_REPLAY_WINDOW", 5000);
+
+    private final int m_hostId;
+    private final START_ACTION m_action;
+    private final ZooKeeper m_zk;
+    private final int m_partitionCount;
+    private final int m_allPartitions[];
+    private final Set<Integer> m_liveHosts;
+    private final List<CommandLogSegment> m_segments;
+
+    private Callback m_callback;
+    private CatalogContext m_context;
+    private TransactionCreator m_initiator;
+    private RestoreAgent.SnapshotInfo m_snapshotInfo;
+
+    private InstanceId m_instanceId = null;
+    private Map<Integer, Long> m_firstSegmentLastDurable = null;
+    // Entries per partition in log order and the distinct MP invocations by txnId
+    private final Map<Integer, List<ReplayEntry>> m_partitionEntries = new TreeMap<Integer, List<ReplayEntry>>();
+    private final TreeMap<Long, ReplayEntry> m_mpEntries = new TreeMap<Long, ReplayEntry>();
+
+    private final List<Integer> m_claimedPartitions = new ArrayList<Integer>();
+    private boolean m_claimedMP = false;
+    private boolean m_planned = false;
+    private volatile boolean m_started = false;
+    private final AtomicLong m_replayedTxns = new AtomicLong(0);
+    private Thread m_spReplayThread;
+    private Thread m_mpReplayThread;
+
+    private final Semaphore m_spPermits = new Semaphore(MAX_OUTSTANDING);
+    private final Semaphore m_mpPermits = new Semaphore(MAX_OUTSTANDING);
+    // Long.MIN_VALUE, + 1, + 2 and + 4 are taken by the snapshot daemon, RestoreAdapter,
+    // SnapshotUtil's dummy connection and InternalClientAdapter
+    private final ReplayAdapter m_spAdapter = new ReplayAdapter(Long.MIN_VALUE + 5, m_spPermits);
+    private final ReplayAdapter m_mpAdapter = new ReplayAdapter(Long.MIN_VALUE + 6, m_mpPermits);
+
+    private static class ReplayEntry {
+        final long spHandle;
+        final Iv2InitiateTaskMessage msg;
+
+        ReplayEntry(long spHandle, Iv2InitiateTaskMessage msg) {
+            this.spHandle = spHandle;
+            this.msg = msg;
+        }
+    }
+
+    /**
+     * Receives the responses to reinitiated transactions. Failed transactions
+     * are expected (they failed the first time around too), so responses only
+     * release a slot in the replay window.
+     */
+    private static class ReplayAdapter extends RestoreAdapter {
+        private final long m_connectionId;
+        private final Semaphore m_permits;
+
+        ReplayAdapter(long connectionId, Semaphore permits) {
+            super(null);
+            m_connectionId = connectionId;
+            m_permits = permits;
+        }
+
+        @Override
+        public void enqueue(ByteBuffer b) {
+            m_permits.release();
+        }
+
+        @Override
+        public long connectionId() {
+            return m_connectionId;
+        }
+    }
+
+    public GroupCommitCommandLogReinitiator(int hostId, START_ACTION action, ZooKeeper zk,
+                                            int partitionCount, String clPath, int allPartitions[],
+                                            Set<Integer> liveHosts) {
+        m_hostId = hostId;
+        m_action = action;
+        m_zk = zk;
+        m_partitionCount = partitionCount;
+        m_allPartitions = allPartitions;
+        m_liveHosts = liveHosts;
+        m_segments = CommandLogSegment.listSegments(new File(clPath));
+        if (m_action == START_ACTION.RECOVER) {
+            readSegments();
+        }
+    }
+
+    private void readSegments() {
+        VoltDbMessageFactory factory = new VoltDbMessageFactory();
+        for (CommandLogSegment segment : m_segments) {
+            List<CommandLogSegment.Record> records = new ArrayList<CommandLogSegment.Record>();
+            CommandLogSegment.Header header;
+            try {
+                header = segment.read(records);
+                for (CommandLogSegment.Record record : records) {
+                    if (record.type != CommandLogSegment.INITIATE_TASK_RECORD) {
+                        continue;
+                    }
+                    final long spHandle = record.payload.getLong();
+                    Iv2InitiateTaskMessage msg =
+                        (Iv2InitiateTaskMessage)factory.createMessageFromBuffer(record.payload, -1);
+                    addEntry(new ReplayEntry(spHandle, msg));
+                }
+            } catch (IOException e) {
+                VoltDB.crashLocalVoltDB("Unable to read command log segment " + segment.m_file, true, e);
+                return;
+            }
+            if (m_instanceId == null) {
+                m_instanceId = header.instanceId;
+            }
+            if (m_firstSegmentLastDurable == null && !header.lastDurableTxnIds.isEmpty()) {
+                m_firstSegmentLastDurable = header.lastDurableTxnIds;
+            }
+        }
+        LOG.info("Read " + m_segments.size() + " command log segments containing entries for " +
+                 m_partitionEntries.size() + " partitions and " + m_mpEntries.size() +
+                 " multi-partition transactions");
+    }
+
+    private void addEntry(ReplayEntry entry) {
+        final int partitionId = TxnEgo.getPartitionId(entry.spHandle);
+        List<ReplayEntry> entries = m_partitionEntries.get(partitionId);
+        if (entries == null) {
+            entries = new ArrayList<ReplayEntry>();
+            m_partitionEntries.put(partitionId, entries);
+        }
+        entries.add(entry);
+        if (!entry.msg.isSinglePartition()) {
+            m_mpEntries.put(entry.msg.getTxnId(), entry);
+        }
+    }
+
+    @Override
+    public void setSnapshotTxnId(RestoreAgent.SnapshotInfo info) {
+        m_snapshotInfo = info;
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        m_callback = callback;
+    }
+
+    @Override
+    public void setCatalogContext(CatalogContext context) {
+        m_context = context;
+    }
+
+    @Override
+    public void setInitiator(TransactionCreator initiator) {
+        m_initiator = initiator;
+    }
+
+    /**
+     * The connection replayed transactions are initiated on, to be bound to the
+     * client interface before replay starts.
+     */
+    public List<RestoreAdapter> getAdapters() {
+        List<RestoreAdapter> adapters = new ArrayList<RestoreAdapter>();
+        adapters.add(m_spAdapter);
+        adapters.add(m_mpAdapter);
+        return adapters;
+    }
+
+    @Override
+    public void generateReplayPlan() {
+        ZKUtil.mkdirs(m_zk, REPLAY_ZK_PATH);
+        if (!m_segments.isEmpty()) {
+            createNode(ZKUtil.joinZKPath(REPLAY_ZK_PATH, "segments_" + m_hostId));
+        }
+        for (Map.Entry<Integer, List<ReplayEntry>> e : m_partitionEntries.entrySet()) {
+            if (claim("partition_" + e.getKey())) {
+                m_claimedPartitions.add(e.getKey());
+            }
+        }
+        if (!m_mpEntries.isEmpty()) {
+            m_claimedMP = claim("partition_" + MpInitiator.MP_INIT_PID);
+        }
+        LOG.info("Host " + m_hostId + " will replay the command log for partitions " + m_claimedPartitions +
+                 (m_claimedMP ? " and the multi-partition initiator" : ""));
+        m_planned = true;
+    }
+
+    private boolean claim(String name) {
+        return createNode(ZKUtil.joinZKPath(REPLAY_ZK_PATH, name));
+    }
+
+    private boolean createNode(String path) {
+        try {
+            m_zk.create(path, null, Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+            return true;
+        } catch (KeeperException.NodeExistsException e) {
+            return false;
+        } catch (Exception e) {
+            VoltDB.crashGlobalVoltDB("Unable to coordinate command log replay through ZooKeeper", true, e);
+            return false;
+        }
+    }
+
+    @Override
+    public void replay() {
+        m_started = true;
+        if (!m_planned) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    if (m_callback != null) {
+                        m_callback.onReplayCompletion();
+                    }
+                }
+            }).start();
+            return;
+        }
+
+        m_mpReplayThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                replayMP();
+            }
+        }, "Command log MP replay");
+        m_spReplayThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                replaySP();
+                try {
+                    m_mpReplayThread.join();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // Wait for every reinitiated transaction to respond
+                m_spPermits.acquireUninterruptibly(MAX_OUTSTANDING);
+                m_mpPermits.acquireUninterruptibly(MAX_OUTSTANDING);
+                sendUnclaimedEOLs();
+                waitForAllHosts();
+                LOG.info("Finished replaying " + m_replayedTxns.get() + " transactions from the command log");
+                if (m_callback != null) {
+                    m_callback.onReplayCompletion();
+                }
+            }
+        }, "Command log SP replay");
+        m_mpReplayThread.start();
+        m_spReplayThread.start();
+    }
+
+    private void replaySP() {
+        for (int partitionId : m_claimedPartitions) {
+            final long snapshotTxnId = snapshotTxnId(partitionId);
+            for (ReplayEntry entry : m_partitionEntries.get(partitionId)) {
+                if (entry.spHandle <= snapshotTxnId) {
+                    continue;
+                }
+                if (entry.msg.isSinglePartition()) {
+                    m_spPermits.acquireUninterruptibly();
+                    reinitiate(m_spAdapter, entry.msg, new int[] {partitionId});
+                } else {
+                    m_initiator.sendSentinel(entry.msg.getTxnId(), partitionId);
+                }
+            }
+            m_initiator.sendEOLMessage(partitionId);
+        }
+    }
+
+    private void replayMP() {
+        if (!m_claimedMP) {
+            return;
+        }
+        final long snapshotTxnId = snapshotTxnId(MpInitiator.MP_INIT_PID);
+        for (ReplayEntry entry : m_mpEntries.values()) {
+            if (entry.msg.getTxnId() <= snapshotTxnId) {
+                continue;
+            }
+            m_mpPermits.acquireUninterruptibly();
+            reinitiate(m_mpAdapter, entry.msg, m_allPartitions);
+        }
+        m_initiator.sendEOLMessage(MpInitiator.MP_INIT_PID);
+    }
+
+    private long snapshotTxnId(int partitionId) {
+        if (m_snapshotInfo == null) {
+            return Long.MIN_VALUE;
+        }
+        Long txnId = m_snapshotInfo.partitionToTxnId.get(partitionId);
+        if (txnId == null) {
+            return partitionId == MpInitiator.MP_INIT_PID ? m_snapshotInfo.txnId : Long.MIN_VALUE;
+        }
+        return txnId;
+    }
+
+    private void reinitiate(ReplayAdapter adapter, Iv2InitiateTaskMessage msg, int partitions[]) {
+        StoredProcedureInvocation invocation = msg.getStoredProcedureInvocation();
+        Procedure proc = m_context.procedures.get(invocation.getProcName());
+        final boolean isEverySite = proc != null && proc.getEverysite();
+        m_initiator.createTransaction(adapter.connectionId(), "CommandLog", true,
+                                      msg.getTxnId(), msg.getUniqueId(), invocation,
+                                      false, msg.isSinglePartition(), isEverySite,
+                                      partitions, adapter, 0, EstTime.currentTimeMillis());
+        m_replayedTxns.incrementAndGet();
+    }
+
+    /**
+     * Send the end of log message for every partition that no host claimed, so
+     * each partition gets exactly one.
+     */
+    private void sendUnclaimedEOLs() {
+        List<Integer> partitions = new ArrayList<Integer>();
+        for (int ii = 0; ii < m_partitionCount; ii++) {
+            partitions.add(ii);
+        }
+        partitions.add(MpInitiator.MP_INIT_PID);
+        for (int partitionId : partitions) {
+            try {
+                if (m_zk.exists(ZKUtil.joinZKPath(REPLAY_ZK_PATH, "partition_" + partitionId), false) == null &&
+                    claim("eol_" + partitionId)) {
+                    m_initiator.sendEOLMessage(partitionId);
+                }
+            } catch (Exception e) {
+                VoltDB.crashGlobalVoltDB("Unable to coordinate command log replay through ZooKeeper", true, e);
+            }
+        }
+    }
+
+    private void waitForAllHosts() {
+        createNode(ZKUtil.joinZKPath(REPLAY_ZK_PATH, "done_" + m_hostId));
+        try {
+            while (true) {
+                int done = 0;
+                for (String child : m_zk.getChildren(REPLAY_ZK_PATH, false)) {
+                    if (child.startsWith("done_")) {
+                        done++;
+                    }
+                }
+                if (done >= m_liveHosts.size()) {
+                    return;
+                }
+                Thread.sleep(50);
+            }
+        } catch (Exception e) {
+            VoltDB.crashGlobalVoltDB("Unable to coordinate command log replay through ZooKeeper", true, e);
+        }
+    }
+
+    @Override
+    public boolean started() {
+        return m_started;
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        if (m_spReplayThread != null) {
+            m_spReplayThread.join();
+        }
+    }
+
+    @Override
+    public boolean hasReplayedSegments() {
+        if (!m_segments.isEmpty()) {
+            return true;
+        }
+        return hasReplayChild("segments_");
+    }
+
+    @Override
+    public boolean hasReplayedTxns() {
+        if (m_replayedTxns.get() > 0) {
+            return true;
+        }
+        return hasReplayChild("partition_");
+    }
+
+    private boolean hasReplayChild(String prefix) {
+        if (!m_planned) {
+            return false;
+        }
+        try {
+            for (String child : m_zk.getChildren(REPLAY_ZK_PATH, false)) {
+                if (child.startsWith(prefix)) {
+                    return true;
+                }
+            }
+        } catch (Exception e) {
+            VoltDB.crashGlobalVoltDB("Unable to coordinate command log replay through ZooKeeper", true, e);
+        }
+        return false;
+    }
+
+    @Override
+    public Long getMaxLastSeenTxn() {
+        // Only used by the legacy (non-IV2) restore planning
+        return null;
+    }
+
+    @Override
+    public Map<Integer, Long> getMaxLastSeenTxnByPartition() {
+        if (m_firstSegmentLastDurable == null) {
+            return null;
+        }
+        return new HashMap<Integer, Long>(m_firstSegmentLastDurable);
+    }
+
+    @Override
+    public InstanceId getInstanceId() {
+        return m_instanceId;
+    }
+
+    @Override
+    public void returnAllSegments() {
+        for (CommandLogSegment segment : m_segments) {
+            if (!segment.m_file.delete()) {
+                LOG.warn("Unable to delete replayed command log segment " + segment.m_file);
+            }
+        }
+        m_segments.clear();
+        m_partitionEntries.clear();
+        m_mpEntries.clear();
+    }
+}
@@ -18,37 +18,50 @@
 package org.voltdb;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.continuation.Continuation;
 import org.eclipse.jetty.continuation.ContinuationSupport;
 import org.eclipse.jetty.server.Request;
-import org.voltdb.client.AuthenticatedConnectionCache;
-import org.voltdb.client.Client;
+import org.json_voltpatches.JSONWriter;
+import org.voltcore.logging.VoltLogger;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcedureCallback;
-import org.voltcore.logging.VoltLogger;
 import org.voltdb.utils.Encoder;
 
+/**
+ * Serves JSON procedure invocations from the HTTP interface. Invocations are handed
+ * straight to the local ClientInterface rather than going through a client connection
+ * back into this process, and responses are streamed to the HTTP response as JSON.
+ */
 public class HTTPClientInterface {
 
-    AuthenticatedConnectionCache m_connections = null;
-    MessageDigest m_md = null;
-    static final int CACHE_TARGET_SIZE = 10;
-    private final AtomicBoolean m_shouldUpdateCatalog = new AtomicBoolean(false);
+    private static final VoltLogger log = new VoltLogger("HOST");
+
+    /*
+     * MessageDigest isn't thread safe and Jetty serves requests from many threads
+     */
+    private final ThreadLocal<MessageDigest> m_md = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("JVM doesn't support SHA-1 hashing. Please use a supported JVM", e);
+            }
+        }
+    };
 
     class JSONProcCallback implements ProcedureCallback {
 
         final Request m_request;
         final Continuation m_continuation;
         final String m_jsonp;
-        final CountDownLatch m_latch = new CountDownLatch(1);
 
         public JSONProcCallback(Request request, Continuation continuation, String jsonp) {
             assert(request != null);
@@ -62,61 +75,37 @@ public class HTTPClientInterface {
         @Override
         public void clientCallback(ClientResponse clientResponse) throws Exception {
             ClientResponseImpl rimpl = (ClientResponseImpl) clientResponse;
-            String msg = rimpl.toJSONString();
-
-            // handle jsonp pattern
-            // http://en.wikipedia.org/wiki/JSON#The_Basic_Idea:_Retrieving_JSON_via_Script_Tags
-            if (m_jsonp != null)
-                msg = String.format("%s( %s )", m_jsonp, msg);
-
-            // send the response back through jetty
-            HttpServletResponse response = (HttpServletResponse) m_continuation.getServletResponse();
-            response.setStatus(HttpServletResponse.SC_OK);
-            m_request.setHandled(true);
-            response.getWriter().print(msg);
-            m_continuation.complete();
-            m_latch.countDown();
-        }
-
-        public void waitForResponse() throws InterruptedException {
-            m_latch.await();
-        }
-    }
 
-    public HTTPClientInterface() {
-        try {
-            m_md = MessageDigest.getInstance("SHA-1");
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("JVM doesn't support SHA-1 hashing. Please use a supported JVM", e);
+            // send the response back through jetty, the request hangs until it is completed
+            try {
+                HttpServletResponse response = (HttpServletResponse) m_continuation.getServletResponse();
+                response.setStatus(HttpServletResponse.SC_OK);
+                m_request.setHandled(true);
+                PrintWriter writer = response.getWriter();
+
+                // handle jsonp pattern
+                // http://en.wikipedia.org/wiki/JSON#The_Basic_Idea:_Retrieving_JSON_via_Script_Tags
+                if (m_jsonp != null) {
+                    writer.print(m_jsonp);
+                    writer.print("( ");
+                }
+                rimpl.writeJSON(new JSONWriter(writer));
+                if (m_jsonp != null) {
+                    writer.print(" )");
+                }
+            } finally {
+                m_continuation.complete();
+            }
         }
     }
 
     public void process(Request request, HttpServletResponse response) {
         String msg;
 
-        Client client = null;
-        boolean adminMode = false;
-
         Continuation continuation = ContinuationSupport.getContinuation(request);
         continuation.suspend(response);
 
         try {
-            // first check for a catalog update and purge the cached connections
-            // if one has happened since we were here last
-            if (m_shouldUpdateCatalog.compareAndSet(true, false))
-            {
-                m_connections.closeAll();
-                // Just null the old object so we'll create a new one with
-                // updated state below
-                m_connections = null;
-            }
-
-            if (m_connections == null) {
-                int port = VoltDB.instance().getConfig().m_port;
-                int adminPort = VoltDB.instance().getConfig().m_adminPort;
-                m_connections = new AuthenticatedConnectionCache(10, "localhost", port, adminPort);
-            }
-
             String username = request.getParameter("User");
             String password = request.getParameter("Password");
             String hashedPassword = request.getParameter("Hashedpassword");
@@ -126,6 +115,7 @@ public class HTTPClientInterface {
             String admin = request.getParameter("admin");
 
             // check for admin mode
+            boolean adminMode = false;
             if (admin != null) {
                 if (admin.compareToIgnoreCase("true") == 0)
                     adminMode = true;
@@ -143,7 +133,7 @@ public class HTTPClientInterface {
 
             if (password != null) {
                 try {
-                    hashedPasswordBytes = m_md.digest(password.getBytes("UTF-8"));
+                    hashedPasswordBytes = m_md.get().digest(password.getBytes("UTF-8"));
                 } catch (UnsupportedEncodingException e) {
                     throw new RuntimeException("JVM doesn't support UTF-8. Please use a supported JVM", e);
                 }
@@ -164,12 +154,13 @@ public class HTTPClientInterface {
 
             assert((hashedPasswordBytes == null) || (hashedPasswordBytes.length == 20));
 
-            // get a connection to localhost from the pool
-            client = m_connections.getClient(username, hashedPasswordBytes, adminMode);
-
-            JSONProcCallback cb = new JSONProcCallback(request, continuation, jsonp);
-            boolean success;
+            if ((username == null) || username.equals("")) {
+                if ((hashedPasswordBytes != null) && (hashedPasswordBytes.length > 0)) {
+                    throw new IOException("Username was null but password was not.");
+                }
+            }
 
+            Object paramArray[] = new Object[0];
             if (params != null) {
                 ParameterSet paramSet = null;
                 try {
@@ -187,21 +178,17 @@ public class HTTPClientInterface {
                     continuation.complete();
                     return;
                 }
-                success = client.callProcedure(cb, procName, paramSet.toArray());
-            }
-            else {
-                success = client.callProcedure(cb, procName);
+                paramArray = paramSet.toArray();
             }
-            if (!success) {
+
+            ClientInterface ci = VoltDB.instance().getClientInterfaces().get(0);
+            JSONProcCallback cb = new JSONProcCallback(request, continuation, jsonp);
+            if (!ci.invokeInternal(username, hashedPasswordBytes, adminMode, procName, paramArray, cb)) {
                 throw new Exception("Server is not accepting work at this time.");
             }
-            if (adminMode) {
-                cb.waitForResponse();
-            }
         }
         catch (Exception e) {
             msg = e.getMessage();
-            VoltLogger log = new VoltLogger("HOST");
             log.warn("JSON interface: " + msg);
             ClientResponseImpl rimpl = new ClientResponseImpl(ClientResponse.UNEXPECTED_FAILURE, new VoltTable[0], msg);
             msg = rimpl.toJSONString();
@@ -212,30 +199,5 @@ public class HTTPClientInterface {
                 continuation.complete();
             } catch (IOException e1) {}
         }
-        finally {
-            if (client != null) {
-                assert(m_connections != null);
-                // admin connections aren't cached
-                if (adminMode) {
-                    if (client != null) {
-                        try {
-                            client.close();
-                        } catch (InterruptedException e) {
-                            VoltLogger log = new VoltLogger("HOST");
-                            log.warn("JSON interface was interrupted while closing an internal admin client connection.");
-                        }
-                    }
-                }
-                // other connections are cached
-                else {
-                    m_connections.releaseClient(client);
-                }
-            }
-        }
-    }
-
-    public void notifyOfCatalogUpdate()
-    {
-        m_shouldUpdateCatalog.set(true);
     }
 }
@@ -0,0 +1,95 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.voltcore.utils.Pair;
+import org.voltdb.VoltTable.ColumnInfo;
+
+/**
+ * Outgoing traffic on each connection to another host in the cluster. Messages
+ * are coalesced into shared buffers before they are written, so comparing
+ * MESSAGES_SENT with BUFFERS_SENT shows how well that is working. Large messages
+ * are compressed when both hosts support it, the COMPRESSED columns count those
+ * messages and their size before and after. Connection ids are the same ones
+ * IOSTATS reports.
+ */
+public class HostMessagingStats extends StatsSource {
+    private Map<Long, Pair<String, long[]>> m_stats =
+        new HashMap<Long, Pair<String, long[]>>();
+    // counters as of the last interval, by connection id
+    private final Map<Long, long[]> m_lastCounters = new HashMap<Long, long[]>();
+
+    public HostMessagingStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("CONNECTION_ID", VoltType.BIGINT));
+        columns.add(new ColumnInfo("CONNECTION_HOSTNAME", VoltType.STRING));
+        columns.add(new ColumnInfo("MESSAGES_SENT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BYTES_SENT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BUFFERS_SENT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MESSAGES_COMPRESSED", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BYTES_BEFORE_COMPRESSION", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BYTES_AFTER_COMPRESSION", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        final Pair<String, long[]> info = m_stats.get(rowKey);
+        final long[] counters = info.getSecond();
+
+        rowValues[columnNameToIndex.get("CONNECTION_ID")] = rowKey;
+        rowValues[columnNameToIndex.get("CONNECTION_HOSTNAME")] = info.getFirst();
+        rowValues[columnNameToIndex.get("MESSAGES_SENT")] = counters[0];
+        rowValues[columnNameToIndex.get("BYTES_SENT")] = counters[1];
+        rowValues[columnNameToIndex.get("BUFFERS_SENT")] = counters[2];
+        rowValues[columnNameToIndex.get("MESSAGES_COMPRESSED")] = counters[3];
+        rowValues[columnNameToIndex.get("BYTES_BEFORE_COMPRESSION")] = counters[4];
+        rowValues[columnNameToIndex.get("BYTES_AFTER_COMPRESSION")] = counters[5];
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected synchronized Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        m_stats = VoltDB.instance().getHostMessenger().getForeignHostConnectionStats();
+        if (interval) {
+            Map<Long, long[]> current = new HashMap<Long, long[]>();
+            for (Map.Entry<Long, Pair<String, long[]>> e : m_stats.entrySet()) {
+                final long[] counters = e.getValue().getSecond();
+                final long[] last = m_lastCounters.get(e.getKey());
+                current.put(e.getKey(), counters.clone());
+                if (last != null) {
+                    for (int ii = 0; ii < counters.length; ii++) {
+                        counters[ii] -= last[ii];
+                    }
+                }
+            }
+            // forget connections that have gone away
+            m_lastCounters.clear();
+            m_lastCounters.putAll(current);
+        }
+        return new ArrayList<Object>(m_stats.keySet()).iterator();
+    }
+}
@@ -419,22 +419,22 @@ public class Inits {
             }
 
             if (logEnabled) {
-                if (!m_config.m_isEnterprise) {
-                    hostLog.warn(
-                            "Command logging requested in deployment file but can't be enabled in Community Edition.");
+                Class<?> loggerClass = null;
+                if (m_config.m_isEnterprise) {
+                    loggerClass = MiscUtils.loadProClass("org.voltdb.CommandLogImpl",
+                                                         "Command logging", true);
                 }
-                else {
-                    try {
-                        Class<?> loggerClass = MiscUtils.loadProClass("org.voltdb.CommandLogImpl",
-                                                                   "Command logging", false);
-                        if (loggerClass != null) {
-                            m_rvdb.m_commandLog = (CommandLog)loggerClass.newInstance();
-                        }
-                    } catch (InstantiationException e) {
-                        VoltDB.crashLocalVoltDB("Unable to instantiate command log", true, e);
-                    } catch (IllegalAccessException e) {
-                        VoltDB.crashLocalVoltDB("Unable to instantiate command log", true, e);
+                try {
+                    if (loggerClass != null) {
+                        m_rvdb.m_commandLog = (CommandLog)loggerClass.newInstance();
+                    }
+                    else {
+                        m_rvdb.m_commandLog = new GroupCommitCommandLog();
                     }
+                } catch (InstantiationException e) {
+                    VoltDB.crashLocalVoltDB("Unable to instantiate command log", true, e);
+                } catch (IllegalAccessException e) {
+                    VoltDB.crashLocalVoltDB("Unable to instantiate command log", true, e);
                 }
             }
         }
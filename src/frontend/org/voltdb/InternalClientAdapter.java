@@ -0,0 +1,210 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.network.Connection;
+import org.voltcore.network.NIOReadStream;
+import org.voltcore.network.WriteStream;
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DeferredSerialization;
+import org.voltdb.client.ProcedureCallback;
+
+/**
+ * A dummy connection to provide to the DTXN for invocations made from inside
+ * this process, such as the ones from the HTTP/JSON interface. Each invocation
+ * is given a handle that routes its ClientResponse back to the callback it was
+ * invoked with. Responses are decoded and callbacks are run on the adapter's
+ * pool of threads so the initiator mailbox isn't held up by them. The pool also
+ * runs the tasks, such as finished ad hoc planning, that the client interface
+ * queues for the connection.
+ */
+public class InternalClientAdapter implements Connection, WriteStream {
+    private final static VoltLogger LOG = new VoltLogger("HOST");
+
+    private final long m_connectionId;
+    private final AtomicLong m_nextHandle = new AtomicLong(0);
+    private final ConcurrentHashMap<Long, ProcedureCallback> m_callbacks =
+            new ConcurrentHashMap<Long, ProcedureCallback>();
+    // responses queued to the pool that haven't been handed to their callbacks yet
+    private final AtomicInteger m_pendingResponses = new AtomicInteger(0);
+    // nothing is ever read from the adapter, this just answers the queries of generic code
+    private final NIOReadStream m_readStream = new NIOReadStream();
+    private final ExecutorService m_es =
+            CoreUtils.getListeningExecutorService("Internal client responses",
+                    Math.max(2, CoreUtils.availableProcessors() / 4));
+
+    public InternalClientAdapter(long connectionId) {
+        m_connectionId = connectionId;
+    }
+
+    /**
+     * Register the callback for an invocation
+     * @return The client handle to give the invocation
+     */
+    long registerCallback(ProcedureCallback callback) {
+        final long handle = m_nextHandle.incrementAndGet();
+        m_callbacks.put(handle, callback);
+        return handle;
+    }
+
+    /**
+     * Forget about an invocation that was answered without being initiated
+     */
+    ProcedureCallback removeCallback(long handle) {
+        return m_callbacks.remove(handle);
+    }
+
+    void shutdown() throws InterruptedException {
+        m_es.shutdown();
+    }
+
+    private void handleResponse(ByteBuffer b) {
+        ClientResponseImpl resp = new ClientResponseImpl();
+        try {
+            b.position(4);
+            resp.initFromBuffer(b);
+        } catch (IOException ioe) {
+            LOG.error("Unable to deserialize ClientResponse for an internal invocation", ioe);
+            return;
+        }
+        ProcedureCallback callback = m_callbacks.remove(resp.getClientHandle());
+        if (callback == null) {
+            LOG.warn("Received a response for an unknown internal invocation " + resp.getClientHandle());
+            return;
+        }
+        try {
+            callback.clientCallback(resp);
+        } catch (Exception e) {
+            LOG.warn("Internal invocation callback threw an exception", e);
+        }
+    }
+
+    @Override
+    public void enqueue(final DeferredSerialization ds) {
+        m_pendingResponses.incrementAndGet();
+        m_es.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (ByteBuffer b : ds.serialize()) {
+                        handleResponse(b);
+                    }
+                } catch (IOException e) {
+                    LOG.error("Unable to serialize ClientResponse for an internal invocation", e);
+                } finally {
+                    m_pendingResponses.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void enqueue(final ByteBuffer b) {
+        m_pendingResponses.incrementAndGet();
+        m_es.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    handleResponse(b);
+                } finally {
+                    m_pendingResponses.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void enqueue(ByteBuffer[] b) {
+        for (ByteBuffer buf : b) {
+            enqueue(buf);
+        }
+    }
+
+    /*
+     * Responses are handed to callbacks, not written to a socket, so there is never
+     * backpressure. Internal invocations are admission controlled by the client interface.
+     */
+    @Override
+    public boolean hadBackPressure() {
+        return false;
+    }
+
+    @Override
+    public int calculatePendingWriteDelta(long now) {
+        return 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return m_pendingResponses.get() == 0;
+    }
+
+    @Override
+    public int getOutstandingMessageCount() {
+        return m_callbacks.size();
+    }
+
+    @Override
+    public WriteStream writeStream() {
+        return this;
+    }
+
+    @Override
+    public NIOReadStream readStream() {
+        return m_readStream;
+    }
+
+    @Override
+    public void disableReadSelection() {
+        // invocations are made by calls, not read, so there is nothing to stop
+    }
+
+    @Override
+    public void enableReadSelection() {
+        // invocations are made by calls, not read, so there is nothing to resume
+    }
+
+    @Override
+    public String getHostnameOrIP() {
+        return "";
+    }
+
+    @Override
+    public long connectionId() {
+        return m_connectionId;
+    }
+
+    @Override
+    public Future<?> unregister() {
+        return null;
+    }
+
+    @Override
+    public void queueTask(Runnable r) {
+        m_es.execute(r);
+    }
+}
@@ -0,0 +1,202 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.voltdb;
+
+import java.util.Arrays;
+
+/**
+ * <p>A fixed-memory latency histogram with bounded relative error, in the
+ * style of HdrHistogram. Values below 64 get a bucket each. Above that, every
+ * power of two range is split into 32 equal buckets, so a recorded value
+ * is reported within about 3% of its true value no matter how small or
+ * large it is. Values above the highest trackable value are counted in
+ * the last bucket.</p>
+ *
+ * <p>Histograms covering the same range can be added and subtracted, which
+ * is how interval and aggregate statistics are derived. Units are up to the
+ * caller. The server and client both record microseconds.</p>
+ *
+ * <p>Not thread safe.</p>
+ */
+public class LatencyHistogram {
+    // log2 of the number of buckets each power of two range is split into
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** Default highest trackable value, a bit over an hour in microseconds. */
+    public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = (1L << 32) - 1;
+
+    private final long m_highestTrackableValue;
+    private final long m_counts[];
+    private long m_totalCount = 0;
+    private long m_totalValue = 0;
+    private long m_minValue = Long.MAX_VALUE;
+    private long m_maxValue = 0;
+
+    public LatencyHistogram() {
+        this(DEFAULT_HIGHEST_TRACKABLE_VALUE);
+    }
+
+    public LatencyHistogram(long highestTrackableValue) {
+        if (highestTrackableValue < 2 * SUB_BUCKET_COUNT) {
+            throw new IllegalArgumentException("Highest trackable value must be at least " +
+                    (2 * SUB_BUCKET_COUNT));
+        }
+        m_highestTrackableValue = highestTrackableValue;
+        m_counts = new long[bucketIndex(highestTrackableValue) + 1];
+    }
+
+    static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int)value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift * SUB_BUCKET_COUNT) + (int)(value >>> shift);
+    }
+
+    /** Highest value that falls into the same bucket as <tt>index</tt>. */
+    static long highestEquivalentValue(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = (index / SUB_BUCKET_COUNT) - 1;
+        final long subBucket = index - (shift * SUB_BUCKET_COUNT);
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public void recordValue(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        m_counts[bucketIndex(Math.min(value, m_highestTrackableValue))]++;
+        m_totalCount++;
+        m_totalValue += value;
+        m_minValue = Math.min(m_minValue, value);
+        m_maxValue = Math.max(m_maxValue, value);
+    }
+
+    public long getTotalCount() {
+        return m_totalCount;
+    }
+
+    public long getHighestTrackableValue() {
+        return m_highestTrackableValue;
+    }
+
+    /** @return The smallest recorded value, or 0 if nothing was recorded. */
+    public long getMinValue() {
+        return m_totalCount == 0 ? 0 : m_minValue;
+    }
+
+    /**
+     * @return The largest recorded value. After {@link #subtract(LatencyHistogram)}
+     * this is only an upper bound.
+     */
+    public long getMaxValue() {
+        return m_maxValue;
+    }
+
+    public double getMean() {
+        return m_totalCount == 0 ? 0.0 : m_totalValue / (double)m_totalCount;
+    }
+
+    /**
+     * @param percentile A number in [0.0, 100.0].
+     * @return The value at or below which <tt>percentile</tt> percent of the
+     * recorded values fall, to within the histogram's resolution, or 0 if
+     * nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if ((percentile > 100.0) || (percentile < 0.0)) {
+            throw new IllegalArgumentException(
+                    "Percentiles must be greater or equal to 0.0 and less than or equal to 100.0");
+        }
+        if (m_totalCount == 0) {
+            return 0;
+        }
+        // round rather than take the ceiling so 99.9% of 1000 is 999 despite FP error
+        final long target = Math.max(1, (long)((percentile / 100.0) * m_totalCount + 0.5));
+        long seen = 0;
+        for (int i = 0; i < m_counts.length; i++) {
+            seen += m_counts[i];
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), m_maxValue);
+            }
+        }
+        return m_maxValue;
+    }
+
+    private void checkCompatible(LatencyHistogram other) {
+        if (m_highestTrackableValue != other.m_highestTrackableValue) {
+            throw new IllegalArgumentException(
+                    "Combining LatencyHistogram instances requires both cover the same range.");
+        }
+    }
+
+    public void add(LatencyHistogram other) {
+        checkCompatible(other);
+        for (int i = 0; i < m_counts.length; i++) {
+            m_counts[i] += other.m_counts[i];
+        }
+        m_totalCount += other.m_totalCount;
+        m_totalValue += other.m_totalValue;
+        m_minValue = Math.min(m_minValue, other.m_minValue);
+        m_maxValue = Math.max(m_maxValue, other.m_maxValue);
+    }
+
+    /**
+     * Remove the values recorded in an older copy of this histogram. The
+     * minimum and maximum can't be recovered and are kept from this histogram.
+     */
+    public void subtract(LatencyHistogram older) {
+        checkCompatible(older);
+        for (int i = 0; i < m_counts.length; i++) {
+            m_counts[i] -= older.m_counts[i];
+        }
+        m_totalCount -= older.m_totalCount;
+        m_totalValue -= older.m_totalValue;
+    }
+
+    public static LatencyHistogram diff(LatencyHistogram newer, LatencyHistogram older) {
+        LatencyHistogram retval = newer.copy();
+        retval.subtract(older);
+        return retval;
+    }
+
+    public void reset() {
+        Arrays.fill(m_counts, 0);
+        m_totalCount = 0;
+        m_totalValue = 0;
+        m_minValue = Long.MAX_VALUE;
+        m_maxValue = 0;
+    }
+
+    public LatencyHistogram copy() {
+        LatencyHistogram retval = new LatencyHistogram(m_highestTrackableValue);
+        retval.add(this);
+        return retval;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count %d, min %d, p50 %d, p95 %d, p99 %d, p99.9 %d, max %d",
+                m_totalCount, getMinValue(),
+                getValueAtPercentile(50.0), getValueAtPercentile(95.0),
+                getValueAtPercentile(99.0), getValueAtPercentile(99.9),
+                m_maxValue);
+    }
+}
@@ -11,25 +11,81 @@ public abstract class Memory
     private static float percentageOfDataToMove = 0;
     private static boolean coldStorageIsEnabled = false;
     /**
-     * Gets the percentage of used random access memory
+     * Gets the size of the physical memory of the machine
      *
-     * @return the number of percentages of used RAM
+     * @return the number of kilobytes of RAM
      */
-    public static double getUsage()
+    public static long getTotalPhysicalMemoryKB()
     {
         OperatingSystemMXBean os = (OperatingSystemMXBean) java.lang.management.ManagementFactory.getOperatingSystemMXBean();
-        double total = os.getTotalPhysicalMemorySize();
-        return 100 * (total - (double) os.getFreePhysicalMemorySize()) / total;
+        return os.getTotalPhysicalMemorySize() / 1024;
     }
     /**
-     * Checks if the used memory reached the limit
+     * Gets the memory the execution engines may use before eviction starts:
+     * the limit percentage of the physical memory
      *
-     * @return true if the memory used is equal to or greater than the limit
+     * @return the number of kilobytes
      */
-    public static boolean shouldBeMoveOnDisk()
+    public static long getHighWatermarkKB()
     {
-        
-        return (limitUsagePercentage <= getUsage());
+        return (long) (getTotalPhysicalMemoryKB() * (limitUsagePercentage / 100.0));
+    }
+    /**
+     * Gets the memory the execution engines are brought down to once
+     * eviction has started: the high watermark less the percentage of data to move
+     *
+     * @return the number of kilobytes
+     */
+    public static long getLowWatermarkKB()
+    {
+        return (long) (getHighWatermarkKB() * (1 - percentageOfDataToMove / 100.0));
+    }
+    /**
+     * The eviction state of one site. Each site evicts from its own tables,
+     * so each keeps its own state, while the memory it decides from is what
+     * the execution engines of the whole host use for tuples, indexes,
+     * strings and temp tables.
+     */
+    public static class Eviction
+    {
+        private boolean evicting = false;
+        private long stalledAtKB = -1;
+        /**
+         * Checks if data should be moved on disk. Eviction starts when the
+         * memory used reaches the high watermark and goes on until it falls to
+         * the low watermark, so it neither fires on every small fluctuation
+         * around the limit nor stops halfway. Since that memory also holds
+         * what can't be evicted, eviction also stops once a round frees
+         * nothing, and only starts again when the memory used has grown
+         * since then or has been under the limit in between.
+         *
+         * @param eeMemoryKB the number of kilobytes used by the execution engines
+         * @return true while eviction should go on
+         */
+        public boolean shouldBeMoveOnDisk(final long eeMemoryKB)
+        {
+            if (evicting) {
+                evicting = eeMemoryKB > getLowWatermarkKB();
+            } else if (eeMemoryKB >= getHighWatermarkKB()) {
+                evicting = eeMemoryKB > stalledAtKB;
+            } else {
+                stalledAtKB = -1;
+            }
+            return evicting;
+        }
+        /**
+         * Records the outcome of an eviction round
+         *
+         * @param evictedBytes the number of bytes the round moved on disk
+         * @param eeMemoryKB the number of kilobytes used by the execution engines before the round
+         */
+        public void evicted(final long evictedBytes, final long eeMemoryKB)
+        {
+            if (evictedBytes <= 0) {
+                evicting = false;
+                stalledAtKB = eeMemoryKB;
+            }
+        }
     }
     /**
      * Sets the limit percentage of used RAM
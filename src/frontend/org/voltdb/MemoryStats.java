@@ -33,6 +33,7 @@ public class MemoryStats extends StatsSource {
         int indexMem = 0;
         int stringMem = 0;
         long pooledMem = 0;
+        int tempTableMem = 0;
     }
     Map<Long, PartitionMemRow> m_memoryStats = new TreeMap<Long, PartitionMemRow>();
 
@@ -79,6 +80,7 @@ public class MemoryStats extends StatsSource {
         columns.add(new VoltTable.ColumnInfo("STRINGMEMORY", VoltType.INTEGER));
         columns.add(new VoltTable.ColumnInfo("TUPLECOUNT", VoltType.BIGINT));
         columns.add(new VoltTable.ColumnInfo("POOLEDMEMORY", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("TEMPTABLEMEMORY", VoltType.INTEGER));
     }
 
     @Override
@@ -92,6 +94,7 @@ public class MemoryStats extends StatsSource {
             totals.indexMem += pmr.indexMem;
             totals.stringMem += pmr.stringMem;
             totals.pooledMem += pmr.pooledMem;
+            totals.tempTableMem += pmr.tempTableMem;
         }
 
         // get system statistics
@@ -113,6 +116,7 @@ public class MemoryStats extends StatsSource {
         rowValues[columnNameToIndex.get("STRINGMEMORY")] = totals.stringMem;
         rowValues[columnNameToIndex.get("TUPLECOUNT")] = totals.tupleCount;
         rowValues[columnNameToIndex.get("POOLEDMEMORY")] = totals.pooledMem / 1024;
+        rowValues[columnNameToIndex.get("TEMPTABLEMEMORY")] = totals.tempTableMem;
         super.updateStatsRow(rowKey, rowValues);
     }
 
@@ -122,7 +126,8 @@ public class MemoryStats extends StatsSource {
                                               int tupleAllocatedMem,
                                               int indexMem,
                                               int stringMem,
-                                              long pooledMemory) {
+                                              long pooledMemory,
+                                              int tempTableMem) {
         PartitionMemRow pmr = new PartitionMemRow();
         pmr.tupleCount = tupleCount;
         pmr.tupleDataMem = tupleDataMem;
@@ -130,6 +135,23 @@ public class MemoryStats extends StatsSource {
         pmr.indexMem = indexMem;
         pmr.stringMem = stringMem;
         pmr.pooledMem = pooledMemory;
+        pmr.tempTableMem = tempTableMem;
         m_memoryStats.put(siteId, pmr);
     }
+
+    /**
+     * Kilobytes the execution engines of this host hold in tuples, indexes,
+     * strings and temp tables, as of the last update from each site.
+     * Evicted tuple blocks are not counted.
+     */
+    public synchronized long getEEMemoryKB() {
+        long total = 0;
+        for (PartitionMemRow pmr : m_memoryStats.values()) {
+            total += pmr.tupleAllocatedMem;
+            total += pmr.indexMem;
+            total += pmr.stringMem;
+            total += pmr.tempTableMem;
+        }
+        return total;
+    }
 }
@@ -161,7 +161,7 @@ public class PlannerStatsCollector extends StatsSource {
     /**
      * Used to update EE cache stats without changing tracked time
      */
-    public void updateEECacheStats(long eeCacheSize, long hits, long misses, int partitionId) {
+    public synchronized void updateEECacheStats(long eeCacheSize, long hits, long misses, int partitionId) {
         m_cache1Level = eeCacheSize;
         m_cache1Hits += hits;
         m_cacheMisses += misses;
@@ -170,24 +170,46 @@ public class PlannerStatsCollector extends StatsSource {
 
     /**
      * Called before doing planning. Starts timer.
+     *
+     * @return  the start time if this invocation is being timed, otherwise null.
+     *          Callers planning on more than one thread pass it back to
+     *          {@link #endStatsCollection(Long, long, long, CacheUse, long)}.
      */
-    public void startStatsCollection() {
+    public synchronized Long startStatsCollection() {
         if (getInvocations() % m_collectionFrequency == 0) {
             m_currentStartTime = System.nanoTime();
         }
+        else {
+            m_currentStartTime = null;
+        }
+        return m_currentStartTime;
+    }
+
+    /**
+     * Called after planning or failing to plan. Records timer and cache stats.
+     *
+     * @param cache1Size   number of entries in level 1 cache
+     * @param cache2Size   number of entries in level 2 cache
+     * @param cacheUse     where the planned statement came from
+     * @param partitionId  partition id
+     */
+    public synchronized void endStatsCollection(long cache1Size, long cache2Size, CacheUse cacheUse, long partitionId) {
+        endStatsCollection(m_currentStartTime, cache1Size, cache2Size, cacheUse, partitionId);
     }
 
     /**
      * Called after planning or failing to plan. Records timer and cache stats.
      *
+     * @param startTime    value returned by the matching startStatsCollection()
      * @param cache1Size   number of entries in level 1 cache
      * @param cache2Size   number of entries in level 2 cache
      * @param cacheUse     where the planned statement came from
      * @param partitionId  partition id
      */
-    public void endStatsCollection(long cache1Size, long cache2Size, CacheUse cacheUse, long partitionId) {
-        if (m_currentStartTime != null) {
-            long delta = System.nanoTime() - m_currentStartTime;
+    public synchronized void endStatsCollection(Long startTime, long cache1Size, long cache2Size,
+                                                CacheUse cacheUse, long partitionId) {
+        if (startTime != null) {
+            long delta = System.nanoTime() - startTime;
             if (delta < 0) {
                 if (Math.abs(delta) > 1000000000) {
                     log.info("Planner statistics recorded a negative planning time larger than one second: " +
@@ -232,7 +254,7 @@ public class PlannerStatsCollector extends StatsSource {
      * @param values Values of each column of the row of stats. Used as output.
      */
     @Override
-    protected void updateStatsRow(Object rowKey, Object rowValues[]) {
+    protected synchronized void updateStatsRow(Object rowKey, Object rowValues[]) {
         super.updateStatsRow(rowKey, rowValues);
 
         rowValues[columnNameToIndex.get("PARTITION_ID")] = m_partitionId;
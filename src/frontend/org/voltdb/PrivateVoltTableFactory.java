@@ -41,4 +41,12 @@ public abstract class PrivateVoltTableFactory {
         vt.initFromBuffer(shared);
         return vt;
     }
+
+    /**
+     * Copy the row source is positioned on to the end of dest without
+     * decoding it. The tables must have the same column types.
+     */
+    public static void copyRow(VoltTable source, VoltTable dest) {
+        dest.addRowBytes(source);
+    }
 }
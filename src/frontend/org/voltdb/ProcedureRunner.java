@@ -614,14 +614,30 @@ public class ProcedureRunner {
     public void voltLoadTable(String clusterName, String databaseName,
                               String tableName, VoltTable data)
     throws VoltAbortException
+    {
+        voltLoadTable(clusterName, databaseName, tableName, data, false);
+    }
+
+    /**
+     * Load rows into a table. If returnConstraintViolations is set, the rows
+     * that violate a constraint are skipped and returned, and the others roll
+     * back with the transaction.
+     * @return The skipped rows, or null if returnConstraintViolations is false
+     *         or there was nothing to load
+     */
+    public VoltTable voltLoadTable(String clusterName, String databaseName,
+                                   String tableName, VoltTable data,
+                                   boolean returnConstraintViolations)
+    throws VoltAbortException
     {
         if (data == null || data.getRowCount() == 0) {
-            return;
+            return null;
         }
         try {
-            m_site.loadTable(m_txnState.txnId,
-                             clusterName, databaseName,
-                             tableName, data);
+            return m_site.loadTable(m_txnState.txnId,
+                                    clusterName, databaseName,
+                                    tableName, data,
+                                    returnConstraintViolations);
         }
         catch (EEException e) {
             throw new VoltAbortException("Failed to load table: " + tableName);
@@ -66,6 +66,13 @@ class ProcedureStatsCollector extends SiteStatsSource {
     private long m_maxExecutionTime = Long.MIN_VALUE;
     private long m_lastMaxExecutionTime = Long.MIN_VALUE;
 
+    /**
+     * Distribution of timed execution times in microseconds, since the beginning
+     * and since the last interval poll
+     */
+    private final LatencyHistogram m_executionTimes = new LatencyHistogram();
+    private final LatencyHistogram m_lastExecutionTimes = new LatencyHistogram();
+
     /**
      * Time the procedure was last started
      */
@@ -178,6 +185,8 @@ class ProcedureStatsCollector extends SiteStatsSource {
                 m_maxExecutionTime = Math.max( delta, m_maxExecutionTime);
                 m_lastMinExecutionTime = Math.min( delta, m_lastMinExecutionTime);
                 m_lastMaxExecutionTime = Math.max( delta, m_lastMaxExecutionTime);
+                m_executionTimes.recordValue(delta / 1000);
+                m_lastExecutionTimes.recordValue(delta / 1000);
 
                 // sampled size statistics
                 int resultSize = 0;
@@ -234,6 +243,7 @@ class ProcedureStatsCollector extends SiteStatsSource {
         long minParameterSetSize = m_minParameterSetSize;
         long maxParameterSetSize = m_maxParameterSetSize;
         long totalParameterSetSize = m_totalParameterSetSize;
+        LatencyHistogram executionTimes = m_executionTimes;
 
         if (m_interval) {
             invocations = m_invocations - m_lastInvocations;
@@ -266,6 +276,8 @@ class ProcedureStatsCollector extends SiteStatsSource {
 
             totalParameterSetSize = m_totalParameterSetSize - m_lastTotalParameterSetSize;
             m_lastTotalParameterSetSize = m_totalParameterSetSize;
+
+            executionTimes = m_lastExecutionTimes;
         }
 
         rowValues[columnNameToIndex.get("INVOCATIONS")] = invocations;
@@ -290,6 +302,19 @@ class ProcedureStatsCollector extends SiteStatsSource {
         rowValues[columnNameToIndex.get("MAX_RESULT_SIZE")] = maxResultSize;
         rowValues[columnNameToIndex.get("MIN_PARAMETER_SET_SIZE")] = minParameterSetSize;
         rowValues[columnNameToIndex.get("MAX_PARAMETER_SET_SIZE")] = maxParameterSetSize;
+        // percentiles are tracked in microseconds, report nanoseconds like the other timings
+        rowValues[columnNameToIndex.get("P50_EXECUTION_TIME")] =
+                executionTimes.getValueAtPercentile(50.0) * 1000;
+        rowValues[columnNameToIndex.get("P95_EXECUTION_TIME")] =
+                executionTimes.getValueAtPercentile(95.0) * 1000;
+        rowValues[columnNameToIndex.get("P99_EXECUTION_TIME")] =
+                executionTimes.getValueAtPercentile(99.0) * 1000;
+        rowValues[columnNameToIndex.get("P999_EXECUTION_TIME")] =
+                executionTimes.getValueAtPercentile(99.9) * 1000;
+        if (m_interval) {
+            // start the next interval in the same histogram rather than a new one
+            m_lastExecutionTimes.reset();
+        }
     }
 
     /**
@@ -314,6 +339,10 @@ class ProcedureStatsCollector extends SiteStatsSource {
         columns.add(new VoltTable.ColumnInfo("AVG_PARAMETER_SET_SIZE", VoltType.INTEGER));
         columns.add(new VoltTable.ColumnInfo("ABORTS", VoltType.BIGINT));
         columns.add(new VoltTable.ColumnInfo("FAILURES", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("P50_EXECUTION_TIME", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("P95_EXECUTION_TIME", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("P99_EXECUTION_TIME", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("P999_EXECUTION_TIME", VoltType.BIGINT));
     }
 
     @Override
@@ -77,12 +77,12 @@ import org.voltdb.catalog.Database;
 import org.voltdb.compiler.AdHocCompilerCache;
 import org.voltdb.compiler.AsyncCompilerAgent;
 import org.voltdb.compiler.ClusterConfig;
+import org.voltdb.compiler.LiveDatabaseEstimates;
 import org.voltdb.compiler.deploymentfile.DeploymentType;
 import org.voltdb.compiler.deploymentfile.HeartbeatType;
 import org.voltdb.compiler.deploymentfile.SecurityType;
 import org.voltdb.compiler.deploymentfile.UsersType;
 import org.voltdb.dtxn.InitiatorStats;
-import org.voltdb.dtxn.LatencyStats;
 import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.export.ExportManager;
 import org.voltdb.fault.FaultDistributor;
@@ -99,6 +99,7 @@ import org.voltdb.licensetool.LicenseApi;
 import org.voltdb.messaging.VoltDbMessageFactory;
 import org.voltdb.rejoin.Iv2RejoinCoordinator;
 import org.voltdb.rejoin.RejoinCoordinator;
+import org.voltdb.rejoin.RejoinStats;
 import org.voltdb.utils.CatalogUtil;
 import org.voltdb.utils.Encoder;
 import org.voltdb.utils.HTTPAdminListener;
@@ -159,6 +160,7 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
     private PartitionCountStats m_partitionCountStats = null;
     private IOStats m_ioStats = null;
     private MemoryStats m_memoryStats = null;
+    private RejoinStats m_rejoinStats = null;
     private StatsManager m_statsManager = null;
     private SnapshotCompletionMonitor m_snapshotCompletionMonitor;
     private InitiatorStats m_initiatorStats;
@@ -268,7 +270,6 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
 
     // The configured license api: use to decide enterprise/community edition feature enablement
     LicenseApi m_licenseApi;
-    private LatencyStats m_latencyStats;
 
     @Override
     public LicenseApi getLicenseApi() {
@@ -326,6 +327,7 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
             m_partitionCountStats = null;
             m_ioStats = null;
             m_memoryStats = null;
+            m_rejoinStats = null;
             m_statsManager = null;
             m_restoreAgent = null;
             m_recoveryStartTime = System.currentTimeMillis();
@@ -380,12 +382,14 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
             {
                 percentageOfDataToMove = coldStorageInfo.getDatapercentage();
                 limitMemoryUsagePercentage = coldStorageInfo.getMemoryusagepercentage();
-                consoleLog.info("Cold storage is enabled. " + percentageOfDataToMove + 
-                                "% of the least recently used data will be moved on disk when the memory usage reaches " + 
-                                limitMemoryUsagePercentage + "%.");
                 coldStorageIsEnabled = true;
                 Memory.setPercentageOfDataToMove(percentageOfDataToMove);
                 Memory.setLimitUsagePercentage(limitMemoryUsagePercentage);
+                consoleLog.info("Cold storage is enabled. The least recently used data will be moved on disk " +
+                                "when the tables, indexes and temp tables of this host reach " +
+                                limitMemoryUsagePercentage + "% of physical memory (" +
+                                (Memory.getHighWatermarkKB() / 1024) + "MB), until they are down to " +
+                                (Memory.getLowWatermarkKB() / 1024) + "MB.");
             }
             else // w przciwnym wypadku, wyświetl, że Cold Storage jest wyłączony
             {
@@ -566,15 +570,19 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
             m_ioStats = new IOStats();
             m_statsAgent.registerStatsSource(SysProcSelector.IOSTATS,
                     0, m_ioStats);
+            m_statsAgent.registerStatsSource(SysProcSelector.HOSTMESSAGING,
+                    0, new HostMessagingStats());
             m_memoryStats = new MemoryStats();
             m_statsAgent.registerStatsSource(SysProcSelector.MEMORY,
                     0, m_memoryStats);
             m_statsAgent.registerStatsSource(SysProcSelector.TOPO, 0, m_cartographer);
+            m_rejoinStats = new RejoinStats();
+            m_statsAgent.registerStatsSource(SysProcSelector.REJOIN,
+                    0, m_rejoinStats);
             m_partitionCountStats = new PartitionCountStats(m_cartographer);
             m_statsAgent.registerStatsSource(SysProcSelector.PARTITIONCOUNT,
                     0, m_partitionCountStats);
             m_initiatorStats = new InitiatorStats(m_myHostId);
-            m_latencyStats = new LatencyStats(m_myHostId);
 
             /*
              * Initialize the command log on rejoin before configuring the IV2
@@ -756,6 +764,9 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
             // set additional restore agent stuff
             if (m_restoreAgent != null) {
                 ci.bindAdapter(m_restoreAgent.getAdapter());
+                for (RestoreAdapter adapter : m_restoreAgent.getReplayAdapters()) {
+                    ci.bindAdapter(adapter);
+                }
                 m_restoreAgent.setCatalogContext(m_catalogContext);
                 m_restoreAgent.setInitiator(new Iv2TransactionCreator(m_clientInterfaces.get(0)));
             }
@@ -1509,9 +1520,9 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
                 m_computationService = null;
                 m_catalogContext = null;
                 m_initiatorStats = null;
-                m_latencyStats = null;
 
                 AdHocCompilerCache.clearVersionCache();
+                LiveDatabaseEstimates.clear();
                 org.voltdb.iv2.InitiatorMailbox.m_allInitiatorMailboxes.clear();
 
                 // probably unnecessary
@@ -1652,20 +1663,12 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
                 ci.notifyOfCatalogUpdate();
             }
 
-            // 3. update HTTPClientInterface (asynchronously)
-            // This purges cached connection state so that access with
-            // stale auth info is prevented.
-            if (m_adminListener != null)
-            {
-                m_adminListener.notifyOfCatalogUpdate();
-            }
-
-            // 4. Flush StatisticsAgent old catalog statistics.
+            // 3. Flush StatisticsAgent old catalog statistics.
             // Otherwise, the stats agent will hold all old catalogs
             // in memory.
             m_statsAgent.notifyOfCatalogUpdate();
 
-            // 5. MPIs don't run fragments. Update them here. Do
+            // 4. MPIs don't run fragments. Update them here. Do
             // this after flushing the stats -- this will re-register
             // the MPI statistics.
             if (m_MPI != null) {
@@ -1811,7 +1814,7 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
         try {
             final ZooKeeper zk = m_messenger.getZK();
             boolean logRecoveryCompleted = false;
-            if (getCommandLog().getClass().getName().equals("org.voltdb.CommandLogImpl")) {
+            if (getCommandLog().isEnabled()) {
                 try {
                     if (m_rejoinTruncationReqId == null) {
                         m_rejoinTruncationReqId = java.util.UUID.randomUUID().toString();
@@ -115,6 +115,17 @@ SnapshotCompletionInterest
         return m_restoreAdapter;
     }
 
+    /**
+     * Connections the command log replay agent initiates transactions on, if
+     * it needs its own.
+     */
+    List<RestoreAdapter> getReplayAdapters() {
+        if (m_replayAgent instanceof GroupCommitCommandLogReinitiator) {
+            return ((GroupCommitCommandLogReinitiator) m_replayAgent).getAdapters();
+        }
+        return new ArrayList<RestoreAdapter>();
+    }
+
     private final ZooKeeper m_zk;
     private final SnapshotCompletionMonitor m_snapshotMonitor;
     private final Callback m_callback;
@@ -384,7 +395,7 @@ SnapshotCompletionInterest
         m_callback = callback;
         m_action = action;
         m_zk = zk;
-        m_clEnabled = VoltDB.instance().getConfig().m_isEnterprise ? clEnabled : false;
+        m_clEnabled = clEnabled;
         m_clPath = clPath;
         m_clSnapshotPath = clSnapshotPath;
         m_snapshotPath = snapshotPath;
@@ -420,6 +431,15 @@ SnapshotCompletionInterest
                                                                     m_liveHosts,
                                                                     RESTORE_TXNID + 1);
             }
+            else if (m_clEnabled) {
+                m_replayAgent = new GroupCommitCommandLogReinitiator(m_hostId,
+                                                                     m_action,
+                                                                     m_zk,
+                                                                     m_allPartitions.length,
+                                                                     m_clPath,
+                                                                     m_allPartitions,
+                                                                     m_liveHosts);
+            }
         } catch (Exception e) {
             VoltDB.crashGlobalVoltDB("Unable to instantiate command log reinitiator",
                                      true, e);
@@ -1209,10 +1229,8 @@ SnapshotCompletionInterest
          * they can be set individually
          */
         List<String> paths = new ArrayList<String>();
-        if (VoltDB.instance().getConfig().m_isEnterprise) {
-            if (m_clSnapshotPath != null) {
-                paths.add(m_clSnapshotPath);
-            }
+        if (m_clEnabled && m_clSnapshotPath != null) {
+            paths.add(m_clSnapshotPath);
         }
         if (m_snapshotPath != null) {
             paths.add(m_snapshotPath);
@@ -64,13 +64,17 @@ public interface SiteProcedureConnection {
 
     /**
      * loadTable method used by user-facing voltLoadTable() call in ProcedureRunner
+     * @param returnConstraintViolations If true, the rows are inserted with undo, and
+     * the ones that violate a constraint are skipped rather than failing the load
+     * @return The skipped rows, or null if returnConstraintViolations is false
      */
-    public void loadTable(
+    public VoltTable loadTable(
             long txnId,
             String clusterName,
             String databaseName,
             String tableName,
-            VoltTable data)
+            VoltTable data,
+            boolean returnConstraintViolations)
     throws VoltAbortException;
 
     /**
@@ -0,0 +1,192 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.voltdb.VoltTable.ColumnInfo;
+
+/**
+ * Statistics for a site's task queue: how many tasks the site finds waiting
+ * each time it drains the queue, how long tasks wait between being offered
+ * and being run, and whether an idle site found new work while spinning or
+ * had to park. Updated and read only by the site thread.
+ */
+public class SiteQueueStats extends SiteStatsSource {
+
+    /**
+     * One set of accumulators. Task wait times are kept in power-of-two
+     * nanosecond buckets so percentiles can be estimated without keeping samples.
+     */
+    static class Window {
+        long m_tasks = 0;
+        long m_drains = 0;
+        long m_drained = 0;
+        long m_depthSum = 0;
+        long m_depthMax = 0;
+        long m_waitSum = 0;
+        long m_waitMax = 0;
+        long m_spinWakeups = 0;
+        long m_parks = 0;
+        final long m_waitBuckets[] = new long[64];
+
+        void recordDrain(int drained, int depth) {
+            m_drains++;
+            m_drained += drained;
+            m_depthSum += depth;
+            m_depthMax = Math.max(m_depthMax, depth);
+        }
+
+        void recordWait(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            m_tasks++;
+            m_waitSum += nanos;
+            m_waitMax = Math.max(m_waitMax, nanos);
+            m_waitBuckets[nanos == 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos)]++;
+        }
+
+        /**
+         * Upper bound, in nanoseconds, of the bucket holding the given
+         * percentile of task wait times, clamped to the observed maximum.
+         */
+        long waitPercentile(double percentile) {
+            if (m_tasks == 0) {
+                return 0;
+            }
+            final long target = Math.max(1, (long)Math.ceil(m_tasks * percentile / 100.0));
+            long seen = 0;
+            for (int ii = 0; ii < m_waitBuckets.length; ii++) {
+                seen += m_waitBuckets[ii];
+                if (seen >= target) {
+                    return ii >= 62 ? m_waitMax : Math.min(m_waitMax, (2L << ii) - 1);
+                }
+            }
+            return m_waitMax;
+        }
+    }
+
+    private final Window m_total = new Window();
+    private Window m_interval = new Window();
+
+    private boolean m_useInterval;
+
+    public SiteQueueStats(long siteId) {
+        super(siteId, false);
+    }
+
+    /**
+     * The site moved <tt>drained</tt> tasks out of the shared queue while
+     * <tt>depth</tt> tasks were waiting in it.
+     */
+    public void recordDrain(int drained, int depth) {
+        m_total.recordDrain(drained, depth);
+        m_interval.recordDrain(drained, depth);
+    }
+
+    /** A task waited <tt>nanos</tt> between being offered and being run. */
+    public void recordWait(long nanos) {
+        m_total.recordWait(nanos);
+        m_interval.recordWait(nanos);
+    }
+
+    /** An idle site found work while spinning instead of parking. */
+    public void recordSpinWakeup() {
+        m_total.m_spinWakeups++;
+        m_interval.m_spinWakeups++;
+    }
+
+    /** An idle site parked waiting for work. */
+    public void recordPark() {
+        m_total.m_parks++;
+        m_interval.m_parks++;
+    }
+
+    Window getTotal() {
+        return m_total;
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("TASKS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("DRAINS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("AVG_BATCH", VoltType.FLOAT));
+        columns.add(new ColumnInfo("AVG_DEPTH", VoltType.FLOAT));
+        columns.add(new ColumnInfo("MAX_DEPTH", VoltType.BIGINT));
+        columns.add(new ColumnInfo("AVG_WAIT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P50_WAIT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P99_WAIT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MAX_WAIT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("SPIN_WAKEUPS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("PARKS", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object rowValues[]) {
+        final Window w = m_useInterval ? m_interval : m_total;
+        // wait times are reported in microseconds, like the starvation stats
+        rowValues[columnNameToIndex.get("TASKS")] = w.m_tasks;
+        rowValues[columnNameToIndex.get("DRAINS")] = w.m_drains;
+        rowValues[columnNameToIndex.get("AVG_BATCH")] =
+            w.m_drains == 0 ? 0.0 : w.m_drained / (double)w.m_drains;
+        rowValues[columnNameToIndex.get("AVG_DEPTH")] =
+            w.m_drains == 0 ? 0.0 : w.m_depthSum / (double)w.m_drains;
+        rowValues[columnNameToIndex.get("MAX_DEPTH")] = w.m_depthMax;
+        rowValues[columnNameToIndex.get("AVG_WAIT")] =
+            w.m_tasks == 0 ? 0L : (w.m_waitSum / w.m_tasks) / 1000;
+        rowValues[columnNameToIndex.get("P50_WAIT")] = w.waitPercentile(50.0) / 1000;
+        rowValues[columnNameToIndex.get("P99_WAIT")] = w.waitPercentile(99.0) / 1000;
+        rowValues[columnNameToIndex.get("MAX_WAIT")] = w.m_waitMax / 1000;
+        rowValues[columnNameToIndex.get("SPIN_WAKEUPS")] = w.m_spinWakeups;
+        rowValues[columnNameToIndex.get("PARKS")] = w.m_parks;
+        if (m_useInterval) {
+            m_interval = new Window();
+        }
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(final boolean interval) {
+        m_useInterval = interval;
+        return new Iterator<Object>() {
+            boolean returnRow = true;
+            @Override
+            public boolean hasNext() {
+                return returnRow;
+            }
+
+            @Override
+            public Object next() {
+                if (returnRow) {
+                    returnRow = false;
+                    return new Object();
+                } else {
+                    return null;
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+        };
+    }
+}
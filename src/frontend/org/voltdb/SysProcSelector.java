@@ -21,13 +21,17 @@ public enum SysProcSelector {
     INDEX,            // invoked as @stat index
     PROCEDURE,        // invoked as @stat procedure
     STARVATION,
+    QUEUE,            // site task queue depth and wait times
     INITIATOR,        // invoked as @stat initiator
     LATENCY,          // invoked as @stat latency
     PARTITIONCOUNT,
     IOSTATS,
+    HOSTMESSAGING,    // messages and buffers sent on each connection to another host
     MEMORY,           // info about node's memory usage
     LIVECLIENTS,      // info about the currently connected clients
     PLANNER,          // info about planner and EE performance and cache usage
+    PLANNERPOOL,      // ad hoc planner worker queue depth and latency
+    REJOIN,           // progress of rejoin data streams sent from this node
     MANAGEMENT,       //Returns pretty much everything
 
     SNAPSHOTSTATUS,
@@ -24,6 +24,7 @@ import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.Pair;
 
 import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 
 /**
@@ -93,6 +94,16 @@ public abstract class TheHashinator {
     abstract protected int pHashinateBytes(byte[] bytes);
     abstract protected Pair<HashinatorType, byte[]> pGetCurrentConfig();
 
+    /**
+     * Hashinate many longs at once. The default hashinates one at a time,
+     * implementations can override it to do better.
+     */
+    protected void pHashinateLongs(long[] values, int[] partitions) {
+        for (int ii = 0; ii < values.length; ii++) {
+            partitions[ii] = pHashinateLong(values[ii]);
+        }
+    }
+
     /**
      * Given a long value, pick a partition to store the data.
      *
@@ -135,29 +146,52 @@ public abstract class TheHashinator {
      * @return The id of the partition desired.
      */
     public static int hashToPartition(Object obj) {
-        int index = 0;
-        if (obj == null || VoltType.isNullVoltType(obj))
-        {
-            index = 0;
+        if (obj == null) {
+            return 0;
         }
-        else if (obj instanceof Long) {
+        // All of the hashable types are final, so compare classes rather than
+        // walking instanceof checks. Null values of each type go to partition 0.
+        final Class<?> clazz = obj.getClass();
+        if (clazz == Long.class) {
             long value = ((Long) obj).longValue();
-            index = hashinateLong(value);
-        } else if (obj instanceof String ) {
-            index = hashinateString((String) obj);
-        } else if (obj instanceof Integer) {
-            long value = ((Integer)obj).intValue();
-            index = hashinateLong(value);
-        } else if (obj instanceof Short) {
-            long value = ((Short)obj).shortValue();
-            index = hashinateLong(value);
-        } else if (obj instanceof Byte) {
-            long value = ((Byte)obj).byteValue();
-            index = hashinateLong(value);
-        } else if (obj instanceof byte[]) {
-            index = hashinateBytes((byte[]) obj );
+            return (value == VoltType.NULL_BIGINT) ? 0 : hashinateLong(value);
+        } else if (clazz == String.class) {
+            return hashinateString((String) obj);
+        } else if (clazz == Integer.class) {
+            int value = ((Integer) obj).intValue();
+            return (value == VoltType.NULL_INTEGER) ? 0 : hashinateLong(value);
+        } else if (clazz == Short.class) {
+            short value = ((Short) obj).shortValue();
+            return (value == VoltType.NULL_SMALLINT) ? 0 : hashinateLong(value);
+        } else if (clazz == Byte.class) {
+            byte value = ((Byte) obj).byteValue();
+            return (value == VoltType.NULL_TINYINT) ? 0 : hashinateLong(value);
+        } else if (clazz == byte[].class) {
+            return hashinateBytes((byte[]) obj);
+        }
+        // Other VoltType values, including the null sigils, aren't hashed and go to
+        // partition 0. This throws a VoltTypeException for anything else.
+        VoltType.isNullVoltType(obj);
+        return 0;
+    }
+
+    /**
+     * Map many long keys to partitions with one read of the current
+     * hashinator, for loaders that route rows in bulk. Null BIGINT
+     * values map to partition 0, as with {@link #hashToPartition(Object)}.
+     *
+     * @param keys The values to hash.
+     * @param out Receives the partition of each key, must be at least as long.
+     */
+    public static void hashinate(long[] keys, int[] out) {
+        Preconditions.checkArgument(out.length >= keys.length);
+        final TheHashinator hashinator = instance.get().getSecond();
+        hashinator.pHashinateLongs(keys, out);
+        for (int ii = 0; ii < keys.length; ii++) {
+            if (keys[ii] == VoltType.NULL_BIGINT) {
+                out[ii] = 0;
+            }
         }
-        return index;
     }
 
     /**
@@ -31,6 +31,7 @@ import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONObject;
 import org.json_voltpatches.JSONString;
 import org.json_voltpatches.JSONStringer;
+import org.json_voltpatches.JSONWriter;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.messaging.FastSerializable;
 import org.voltdb.messaging.FastSerializer;
@@ -612,6 +613,33 @@ public final class VoltTable extends VoltTableRow implements FastSerializable, J
         addRow(values);
     }
 
+    /**
+     * Append the row another table is positioned on by copying its bytes
+     * rather than its values. The tables must have the same column types.
+     * @param source Table positioned on the row to add.
+     */
+    final void addRowBytes(VoltTable source) {
+        assert(verifyTableInvariants());
+        if (m_readOnly) {
+            throw new IllegalStateException("Table is read-only. Make a copy before changing.");
+        }
+        final int rowPos = source.m_position - ROW_HEADER_SIZE;
+        final int length = source.m_buffer.getInt(rowPos) + ROW_HEADER_SIZE;
+
+        m_buffer.limit(m_buffer.capacity());
+        while (m_buffer.remaining() < length) {
+            expandBuffer();
+        }
+        final ByteBuffer row = source.m_buffer.duplicate();
+        row.limit(rowPos + length);
+        row.position(rowPos);
+        m_buffer.put(row);
+        m_rowCount++;
+        m_buffer.putInt(m_rowStart, m_rowCount);
+        m_buffer.limit(m_buffer.position());
+        assert(verifyTableInvariants());
+    }
+
     /**
      * Append a new row to the table using the supplied column values.
      * @param values Values of each column in the row.
@@ -1219,42 +1247,51 @@ public final class VoltTable extends VoltTableRow implements FastSerializable, J
     public String toJSONString() {
         JSONStringer js = new JSONStringer();
         try {
+            writeJSON(js);
+        }
+        catch (JSONException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Failed to serialized a table to JSON.", e);
+        }
+        return js.toString();
+    }
 
-            js.object();
+    /**
+     * Write the JSON representation of this table to a writer that may already be
+     * part way through a larger document, without building it as a string first.
+     * @param js Writer positioned where a value is expected.
+     * @throws JSONException
+     */
+    public void writeJSON(JSONWriter js) throws JSONException {
+        js.object();
 
-            // status code (1 byte)
-            js.key(JSON_STATUS_KEY).value(getStatusCode());
+        // status code (1 byte)
+        js.key(JSON_STATUS_KEY).value(getStatusCode());
 
-            // column schema
-            js.key(JSON_SCHEMA_KEY).array();
+        // column schema
+        js.key(JSON_SCHEMA_KEY).array();
+        for (int i = 0; i < getColumnCount(); i++) {
+            js.object();
+            js.key(JSON_NAME_KEY).value(getColumnName(i));
+            js.key(JSON_TYPE_KEY).value(getColumnType(i).getValue());
+            js.endObject();
+        }
+        js.endArray();
+
+        // row data
+        js.key(JSON_DATA_KEY).array();
+        VoltTableRow row = cloneRow();
+        row.resetRowPosition();
+        while (row.advanceRow()) {
+            js.array();
             for (int i = 0; i < getColumnCount(); i++) {
-                js.object();
-                js.key(JSON_NAME_KEY).value(getColumnName(i));
-                js.key(JSON_TYPE_KEY).value(getColumnType(i).getValue());
-                js.endObject();
+                row.putJSONRep(i, js);
             }
             js.endArray();
-
-            // row data
-            js.key(JSON_DATA_KEY).array();
-            VoltTableRow row = cloneRow();
-            row.resetRowPosition();
-            while (row.advanceRow()) {
-                js.array();
-                for (int i = 0; i < getColumnCount(); i++) {
-                    row.putJSONRep(i, js);
-                }
-                js.endArray();
-            }
-            js.endArray();
-
-            js.endObject();
         }
-        catch (JSONException e) {
-            e.printStackTrace();
-            throw new RuntimeException("Failed to serialized a table to JSON.", e);
-        }
-        return js.toString();
+        js.endArray();
+
+        js.endObject();
     }
 
     /**
@@ -22,7 +22,7 @@ import java.math.BigDecimal;
 import java.nio.ByteBuffer;
 
 import org.json_voltpatches.JSONException;
-import org.json_voltpatches.JSONStringer;
+import org.json_voltpatches.JSONWriter;
 import org.voltdb.types.TimestampType;
 import org.voltdb.types.VoltDecimalHelper;
 import org.voltdb.utils.Encoder;
@@ -674,7 +674,7 @@ public abstract class VoltTableRow {
      * @param js
      * @throws JSONException
      */
-    void putJSONRep(int columnIndex, JSONStringer js) throws JSONException {
+    void putJSONRep(int columnIndex, JSONWriter js) throws JSONException {
         long value; double dvalue;
 
         VoltType columnType = getColumnType(columnIndex);
@@ -121,6 +121,35 @@ public interface Client {
     public boolean callProcedure(ProcedureCallback callback, String procName, Object... parameters)
     throws IOException, NoConnectionsException;
 
+    /**
+     * Synchronously invoke a procedure once for each of the supplied parameter sets. Blocks until
+     * every invocation has a result. Invocations are routed to the partitions they hash to and the
+     * ones headed for the same server are shipped to it as a single message, which is much cheaper
+     * than calling the procedure once per parameter set when loading data.
+     * Unlike {@link #callProcedure(String, Object...)} failures are not thrown as a
+     * {@link ProcCallException}, check the status of each response instead.
+     * @param procName class name (not qualified by package) of the procedure to execute.
+     * @param parameterSets list of procedure parameter values, one entry per invocation.
+     * @return One response per parameter set in the same order as the parameter sets.
+     * @throws NoConnectionsException
+     */
+    public ClientResponse[] callProcedureBatch(String procName, List<Object[]> parameterSets)
+    throws IOException, NoConnectionsException;
+
+    /**
+     * Asynchronously invoke a procedure once for each of the supplied parameter sets. Invocations
+     * are routed and shipped like {@link #callProcedureBatch(String, List)}. If there is backpressure
+     * this call will block until the batch is queued. If configureBlocking(false) is invoked
+     * then it will return immediately without queuing any part of the batch.
+     * @param callbacks ProcedureCallbacks that will be invoked with the results of the invocation
+     *                  with the same index. A null callback ignores the result.
+     * @param procName class name (not qualified by package) of the procedure to execute.
+     * @param parameterSets list of procedure parameter values, one entry per invocation.
+     * @return <code>true</code> if the batch was queued and <code>false</code> otherwise
+     */
+    public boolean callProcedureBatch(ProcedureCallback callbacks[], String procName, List<Object[]> parameterSets)
+    throws IOException, NoConnectionsException;
+
     /**
      * Deprecated because hinting at the serialized size no longer has any effect
      *
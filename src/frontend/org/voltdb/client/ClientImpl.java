@@ -345,6 +345,104 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
         }
     }
 
+    @Override
+    public ClientResponse[] callProcedureBatch(String procName, List<Object[]> parameterSets)
+        throws IOException, NoConnectionsException
+    {
+        if (m_isShutdown) {
+            throw new NoConnectionsException("Client instance is shutdown");
+        }
+
+        if (m_blessedThreadIds.contains(Thread.currentThread().getId())) {
+            throw new IOException("Can't invoke a procedure synchronously from with the client callback thread " +
+                    " without deadlocking the client library");
+        }
+
+        final SyncCallback callbacks[] = new SyncCallback[parameterSets.size()];
+        for (int i = 0; i < callbacks.length; i++) {
+            callbacks[i] = new SyncCallback();
+        }
+        final ClientResponse responses[] = new ClientResponse[callbacks.length];
+        if (callbacks.length == 0) {
+            return responses;
+        }
+
+        m_distributer.queueBatch(
+                createBatchInvocations(callbacks, procName, parameterSets),
+                callbacks,
+                true);
+
+        try {
+            for (int i = 0; i < callbacks.length; i++) {
+                callbacks[i].waitForResponse();
+                responses[i] = callbacks[i].getResponse();
+            }
+        } catch (final InterruptedException e) {
+            throw new java.io.InterruptedIOException("Interrupted while waiting for response");
+        }
+        return responses;
+    }
+
+    @Override
+    public boolean callProcedureBatch(ProcedureCallback callbacks[], String procName, List<Object[]> parameterSets)
+        throws IOException, NoConnectionsException
+    {
+        if (m_isShutdown) {
+            return false;
+        }
+        if (callbacks.length != parameterSets.size()) {
+            throw new IllegalArgumentException("Batch has " + parameterSets.size() +
+                    " parameter sets but " + callbacks.length + " callbacks");
+        }
+        if (callbacks.length == 0) {
+            return true;
+        }
+
+        final ProcedureCallback batchCallbacks[] = new ProcedureCallback[callbacks.length];
+        for (int i = 0; i < callbacks.length; i++) {
+            batchCallbacks[i] = callbacks[i] == null ? new NullCallback() : callbacks[i];
+        }
+        final ProcedureInvocation invocations[] =
+            createBatchInvocations(batchCallbacks, procName, parameterSets);
+
+        //Blessed threads (the ones that invoke callbacks) are not subject to backpressure
+        boolean isBlessed = m_blessedThreadIds.contains(Thread.currentThread().getId());
+        if (m_blockingQueue) {
+            while (!m_distributer.queueBatch(
+                    invocations,
+                    batchCallbacks,
+                    isBlessed)) {
+                try {
+                    backpressureBarrier();
+                } catch (InterruptedException e) {
+                    throw new java.io.InterruptedIOException("Interrupted while invoking procedure asynchronously");
+                }
+            }
+            return true;
+        } else {
+            return m_distributer.queueBatch(
+                    invocations,
+                    batchCallbacks,
+                    isBlessed);
+        }
+    }
+
+    private ProcedureInvocation[] createBatchInvocations(
+            ProcedureCallback callbacks[],
+            String procName,
+            List<Object[]> parameterSets) {
+        final ProcedureInvocation invocations[] = new ProcedureInvocation[callbacks.length];
+        int i = 0;
+        for (Object parameters[] : parameterSets) {
+            if (callbacks[i] instanceof ProcedureArgumentCacher) {
+                ((ProcedureArgumentCacher)callbacks[i]).setArgs(parameters);
+            }
+            invocations[i] = new ProcedureInvocation(m_handle.getAndIncrement(), procName, parameters);
+            i++;
+        }
+        return invocations;
+    }
+
     /**
      * Serializes catalog and deployment file for UpdateApplicationCatalog.
      * Catalog is serialized into byte array, deployment file is serialized into
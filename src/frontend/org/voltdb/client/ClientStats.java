@@ -21,6 +21,7 @@ import java.util.Date;
 import java.util.Iterator;
 
 import org.voltdb.LatencyBucketSet;
+import org.voltdb.LatencyHistogram;
 
 /**
  * <p>Essentially a set of counters for a specific context with helper
@@ -64,6 +65,8 @@ public class ClientStats {
     LatencyBucketSet m_latencyBy1ms;
     LatencyBucketSet m_latencyBy10ms;
     LatencyBucketSet m_latencyBy100ms;
+    // round trip latency in microseconds
+    LatencyHistogram m_latencyHistogram;
 
     long m_bytesSent;
     long m_bytesReceived;
@@ -80,6 +83,7 @@ public class ClientStats {
         m_latencyBy1ms = new LatencyBucketSet(1, ONE_MS_BUCKET_COUNT);
         m_latencyBy10ms = new LatencyBucketSet(10, TEN_MS_BUCKET_COUNT);
         m_latencyBy100ms = new LatencyBucketSet(100, HUNDRED_MS_BUCKET_COUNT);
+        m_latencyHistogram = new LatencyHistogram();
         m_bytesSent = m_bytesReceived = 0;
     }
 
@@ -98,6 +102,7 @@ public class ClientStats {
         m_latencyBy1ms = (LatencyBucketSet) other.m_latencyBy1ms.clone();
         m_latencyBy10ms = (LatencyBucketSet) other.m_latencyBy10ms.clone();
         m_latencyBy100ms = (LatencyBucketSet) other.m_latencyBy100ms.clone();
+        m_latencyHistogram = other.m_latencyHistogram.copy();
         m_bytesSent = other.m_bytesSent;
         m_bytesReceived = other.m_bytesReceived;
     }
@@ -128,6 +133,7 @@ public class ClientStats {
         retval.m_latencyBy1ms = LatencyBucketSet.diff(newer.m_latencyBy1ms, older.m_latencyBy1ms);
         retval.m_latencyBy10ms = LatencyBucketSet.diff(newer.m_latencyBy10ms, older.m_latencyBy10ms);
         retval.m_latencyBy100ms = LatencyBucketSet.diff(newer.m_latencyBy100ms, older.m_latencyBy100ms);
+        retval.m_latencyHistogram = LatencyHistogram.diff(newer.m_latencyHistogram, older.m_latencyHistogram);
 
         retval.m_bytesSent = newer.m_bytesSent - older.m_bytesSent;
         retval.m_bytesReceived = newer.m_bytesReceived - older.m_bytesReceived;
@@ -177,12 +183,18 @@ public class ClientStats {
         m_latencyBy1ms.add(other.m_latencyBy1ms);
         m_latencyBy10ms.add(other.m_latencyBy10ms);
         m_latencyBy100ms.add(other.m_latencyBy100ms);
+        m_latencyHistogram.add(other.m_latencyHistogram);
 
         m_bytesSent += other.m_bytesSent;
         m_bytesReceived += other.m_bytesReceived;
     }
 
     void update(int roundTripTime, int clusterRoundTripTime, boolean abort, boolean error) {
+        update(roundTripTime, roundTripTime * 1000L, clusterRoundTripTime, abort, error);
+    }
+
+    void update(int roundTripTime, long roundTripMicros, int clusterRoundTripTime,
+                boolean abort, boolean error) {
         m_invocationsCompleted++;
         if (abort) m_invocationAborts++;
         if (error) m_invocationErrors++;
@@ -193,6 +205,7 @@ public class ClientStats {
         m_latencyBy1ms.update(roundTripTime);
         m_latencyBy10ms.update(roundTripTime);
         m_latencyBy100ms.update(roundTripTime);
+        m_latencyHistogram.recordValue(roundTripMicros);
     }
 
     /**
@@ -443,6 +456,37 @@ public class ClientStats {
         return m_latencyBy100ms.msPerBucket * m_latencyBy100ms.numberOfBuckets * 2;
     }
 
+    /**
+     * <p>Estimate the k-percentile round trip latency in microseconds for the
+     * time period covered by this stats instance.</p>
+     *
+     * <p>Unlike {@link #kPercentileLatency(double)} this is backed by a histogram
+     * with roughly 3% relative error at any latency, so sub-millisecond latencies
+     * and far tail percentiles such as k=.999 are meaningful.</p>
+     *
+     * @param percentile A floating point number between 0.0 and 1.0.
+     * @return An estimate of k-percentile latency in microseconds.
+     */
+    public long kPercentileLatencyMicros(double percentile) {
+        if ((percentile > 1.0) || (percentile < 0.0)) {
+            throw new IllegalArgumentException(
+                    "kPercentileLatencyMicros accepts values greater or equal to 0.0 " +
+                    "and less than or equal to 1.0");
+        }
+        return m_latencyHistogram.getValueAtPercentile(percentile * 100.0);
+    }
+
+    /**
+     * <p>Get a copy of the round trip latency histogram, in microseconds, for the
+     * time period covered by this stats instance. Histograms from different
+     * stats instances can be added together.</p>
+     *
+     * @return A copy of the latency histogram.
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return m_latencyHistogram.copy();
+    }
+
     /**
      * <p>Return an average throughput of transactions acknowledged per
      * second for the duration covered by this stats instance.</p>
@@ -529,6 +573,7 @@ public class ClientStats {
             sb.append(m_latencyBy1ms).append("\n");
             sb.append(m_latencyBy10ms).append("\n");
             sb.append(m_latencyBy100ms).append("\n");
+            sb.append("    latency us: ").append(m_latencyHistogram).append("\n");
         }
 
         return sb.toString();
@@ -22,14 +22,17 @@ import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -46,7 +49,10 @@ import org.voltcore.network.Connection;
 import org.voltcore.network.QueueMonitor;
 import org.voltcore.network.VoltNetworkPool;
 import org.voltcore.network.VoltProtocolHandler;
+import org.voltcore.utils.ContainerDeferredSerialization;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.Pair;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.JdbcDatabaseMetaDataGenerator;
@@ -67,6 +73,12 @@ class Distributer {
 
     static final long PING_HANDLE = Long.MAX_VALUE;
 
+    // Name of the pseudo procedure that carries a batch of invocations
+    static final byte BATCH_PROCEDURE_NAME_BYTES[] = "@Batch".getBytes(Charset.forName("UTF-8"));
+
+    // Batches are split into @Batch messages no longer than this, tests lower it
+    static int MAX_BATCH_MESSAGE_LENGTH = VoltProtocolHandler.MAX_MESSAGE_LENGTH;
+
     // handles used internally are negative and decrement for each call
     public final AtomicLong m_sysHandle = new AtomicLong(-1);
 
@@ -80,7 +92,7 @@ class Distributer {
     private final VoltNetworkPool m_network;
 
     // Temporary until a distribution/affinity algorithm is written
-    private int m_nextConnection = 0;
+    private final AtomicInteger m_nextConnection = new AtomicInteger(0);
 
     private final boolean m_useMultipleThreads;
     private final boolean m_useClientAffinity;
@@ -97,12 +109,60 @@ class Distributer {
         }
     }
 
-    private final Map<Integer, NodeConnection> m_partitionMasters = new HashMap<Integer, NodeConnection>();
-    private final Map<Integer, NodeConnection[]> m_partitionReplicas = new HashMap<Integer, NodeConnection[]>();
-    private final Map<Integer, NodeConnection> m_hostIdToConnection = new HashMap<Integer, NodeConnection>();
-    private final Map<String, Procedure> m_procedureInfo = new HashMap<String, Procedure>();
+    /**
+     * Everything queue() needs to pick a connection. Instances are never modified, a new one is
+     * built and published under the Distributer lock whenever connections, topology or procedures
+     * change so that queue() can route without synchronizing.
+     */
+    private static final class RoutingTable {
+        private final NodeConnection m_connections[];
+        private final Map<Integer, NodeConnection> m_partitionMasters;
+        private final Map<Integer, NodeConnection[]> m_partitionReplicas;
+        private final Map<String, Procedure> m_procedureInfo;
+        private final boolean m_hashinatorInitialized;
+
+        private RoutingTable(
+                NodeConnection connections[],
+                Map<Integer, NodeConnection> partitionMasters,
+                Map<Integer, NodeConnection[]> partitionReplicas,
+                Map<String, Procedure> procedureInfo,
+                boolean hashinatorInitialized) {
+            m_connections = connections;
+            m_partitionMasters = partitionMasters;
+            m_partitionReplicas = partitionReplicas;
+            m_procedureInfo = procedureInfo;
+            m_hashinatorInitialized = hashinatorInitialized;
+        }
+
+        private RoutingTable withConnections(List<NodeConnection> connections) {
+            return new RoutingTable(
+                    connections.toArray(new NodeConnection[connections.size()]),
+                    m_partitionMasters, m_partitionReplicas, m_procedureInfo, m_hashinatorInitialized);
+        }
 
-    private boolean m_hashinatorInitialized = false;
+        private RoutingTable withTopology(
+                Map<Integer, NodeConnection> partitionMasters,
+                Map<Integer, NodeConnection[]> partitionReplicas,
+                boolean hashinatorInitialized) {
+            return new RoutingTable(
+                    m_connections, partitionMasters, partitionReplicas, m_procedureInfo, hashinatorInitialized);
+        }
+
+        private RoutingTable withProcedures(Map<String, Procedure> procedureInfo) {
+            return new RoutingTable(
+                    m_connections, m_partitionMasters, m_partitionReplicas, procedureInfo, m_hashinatorInitialized);
+        }
+    }
+
+    private volatile RoutingTable m_routing = new RoutingTable(
+            new NodeConnection[0],
+            new HashMap<Integer, NodeConnection>(),
+            new HashMap<Integer, NodeConnection[]>(),
+            new HashMap<String, Procedure>(),
+            false);
+
+    // Only used to build routing tables, guarded by the Distributer lock
+    private final Map<Integer, NodeConnection> m_hostIdToConnection = new HashMap<Integer, NodeConnection>();
 
     // timeout for individual procedure calls
     private final long m_procedureCallTimeoutMS;
@@ -111,6 +171,12 @@ class Distributer {
 
     public final RateLimiter m_rateLimiter = new RateLimiter();
 
+    // Invocations are serialized into pooled direct buffers of this size, larger ones go on the heap
+    static final int BATCH_BUFFER_SIZE = 1024 * 32;
+    private static final int MAX_POOLED_BATCH_BUFFERS = 64;
+    private final ConcurrentLinkedQueue<BBContainer> m_batchBuffers = new ConcurrentLinkedQueue<BBContainer>();
+    private final AtomicInteger m_pooledBatchBuffers = new AtomicInteger(0);
+
     //private final Timer m_timer;
     private final ScheduledExecutorService m_ex =
         Executors.newSingleThreadScheduledExecutor(
@@ -237,6 +303,7 @@ class Distributer {
                                     e1.printStackTrace();
                                 }
                                 iter.remove();
+                                c.batchMemberAnswered(cb);
                                 m_rateLimiter.transactionResponseReceived(now, -1);
                                 int callbacksToInvoke = c.m_callbacksToInvoke.decrementAndGet();
                                 assert(callbacksToInvoke >= 0);
@@ -254,17 +321,40 @@ class Distributer {
         public CallbackBookeeping(long timestamp, ProcedureCallback callback, String name) {
             assert(callback != null);
             this.timestamp = timestamp;
+            this.nanoTimestamp = System.nanoTime();
             this.callback = callback;
             this.name = name;
         }
         long timestamp;
+        // for microsecond resolution latency stats
+        long nanoTimestamp;
         ProcedureCallback callback;
         String name;
+        // the @Batch message the invocation was sent in, if any
+        BatchBookkeeping batch = null;
+    }
+
+    /**
+     * The invocations sent in one @Batch message, in order. The server only answers
+     * the message's own handle when it can't read the batch.
+     */
+    class BatchBookkeeping {
+        public BatchBookkeeping(long handle, long memberHandles[]) {
+            this.handle = handle;
+            this.memberHandles = memberHandles;
+            this.outstanding = memberHandles.length;
+        }
+        final long handle;
+        final long memberHandles[];
+        // members that haven't been answered yet
+        int outstanding;
     }
 
     class NodeConnection extends VoltProtocolHandler implements org.voltcore.network.QueueMonitor {
         private final AtomicInteger m_callbacksToInvoke = new AtomicInteger(0);
         private final HashMap<Long, CallbackBookeeping> m_callbacks;
+        // @Batch messages with members still outstanding, by the message's handle
+        private final HashMap<Long, BatchBookkeeping> m_batches = new HashMap<Long, BatchBookkeeping>();
         private final HashMap<String, ClientStats> m_stats = new HashMap<String, ClientStats>();
         private Connection m_connection;
         private final InetSocketAddress m_socketAddress;
@@ -283,33 +373,260 @@ class Distributer {
             m_socketAddress = socketAddress;
         }
 
-        public void createWork(long handle, String name, ByteBuffer c,
+        /*
+         * Invocations are serialized straight into a pooled direct buffer that is handed to the
+         * write stream as a unit. Callers keep appending to the open batch until the network thread
+         * picks it up, so small invocations are coalesced without a heap allocation or an extra copy.
+         */
+        private InvocationBatch m_openBatch = null;
+
+        /**
+         * A pooled buffer of serialized invocations queued to the write stream. Invocations can
+         * be appended until the network thread seals it. The batch only synchronizes on itself,
+         * the write stream seals it while holding its own lock.
+         */
+        private class InvocationBatch implements ContainerDeferredSerialization {
+            private final BBContainer m_cont;
+            private boolean m_sealed = false;
+
+            private InvocationBatch(BBContainer cont) {
+                m_cont = cont;
+            }
+
+            /*
+             * Serialize an invocation into the batch, false if it is sealed or doesn't have room
+             */
+            private synchronized boolean append(ProcedureInvocation invocation, int size) {
+                final ByteBuffer buf = m_cont.b;
+                if (m_sealed || buf.remaining() < size) {
+                    return false;
+                }
+                final int position = buf.position();
+                try {
+                    serializeInvocation(invocation, buf);
+                } catch (RuntimeException e) {
+                    buf.position(position);
+                    throw e;
+                }
+                return true;
+            }
+
+            private synchronized void seal() {
+                m_sealed = true;
+            }
+
+            @Override
+            public BBContainer serializeToContainer() {
+                seal();
+                if (m_cont.b.position() == 0) {
+                    m_cont.discard();
+                    return null;
+                }
+                return m_cont;
+            }
+
+            @Override
+            public ByteBuffer[] serialize() {
+                seal();
+                m_cont.b.flip();
+                ByteBuffer copy = ByteBuffer.allocate(m_cont.b.remaining());
+                copy.put(m_cont.b);
+                m_cont.discard();
+                return new ByteBuffer[] { copy };
+            }
+
+            @Override
+            public void cancel() {
+                seal();
+                m_cont.discard();
+            }
+        }
+
+        public void createWork(ProcedureInvocation invocation,
                 ProcedureCallback callback, boolean ignoreBackpressure) {
             assert(callback != null);
+            final long handle = invocation.getHandle();
+            final int size = 4 + invocation.getSerializedSize();
+
+            //Invocations that don't fit in a batch buffer are serialized to the heap up front
+            ByteBuffer largeInvocation = null;
+            if (size > BATCH_BUFFER_SIZE) {
+                largeInvocation = ByteBuffer.allocate(size);
+                serializeInvocation(invocation, largeInvocation);
+                largeInvocation.flip();
+            }
+
             long now = System.currentTimeMillis();
             now = m_rateLimiter.sendTxnWithOptionalBlockAndReturnCurrentTime(
                     now, ignoreBackpressure);
             synchronized (this) {
                 if (!m_isConnected) {
-                    final ClientResponse r = new ClientResponseImpl(
-                            ClientResponse.CONNECTION_LOST, new VoltTable[0],
-                            "Connection to database host (" + m_hostname +
-                    ") was lost before a response was received");
-                    try {
-                        callback.clientCallback(r);
-                    } catch (Exception e) {
-                        uncaughtException(callback, r, e);
-                    }
-                    // for bookkeeping, but it feels dishonest to call this here
-                    m_rateLimiter.transactionResponseReceived(now, -1);
+                    connectionLost(callback, now);
                     return;
                 }
 
+                /*
+                 * Enqueue while holding the lock so invocations go out in the order they were
+                 * queued. A large invocation closes the open batch, otherwise invocations appended
+                 * to that batch after it would be written before it.
+                 */
+                if (largeInvocation != null) {
+                    m_openBatch = null;
+                    m_connection.writeStream().enqueue(largeInvocation);
+                } else if (m_openBatch == null || !m_openBatch.append(invocation, size)) {
+                    /*
+                     * Serialize into the new batch before queueing it, if the write stream
+                     * is already shut down enqueue cancels the batch and returns its buffer
+                     */
+                    InvocationBatch batch = new InvocationBatch(acquireBatchBuffer());
+                    final boolean appended = batch.append(invocation, size);
+                    assert(appended);
+                    m_openBatch = batch;
+                    m_connection.writeStream().enqueue(batch);
+                }
+
                 assert(m_callbacks.containsKey(handle) == false);
-                m_callbacks.put(handle, new CallbackBookeeping(now, callback, name));
+                m_callbacks.put(handle, new CallbackBookeeping(now, callback, invocation.getProcName()));
                 m_callbacksToInvoke.incrementAndGet();
             }
-            m_connection.writeStream().enqueue(c);
+        }
+
+        /**
+         * Queue a batch of invocations that were all routed to this connection. Each message
+         * is a pseudo invocation of @Batch whose parameters are the count of invocations
+         * followed by each length prefixed invocation. The batch is split into as many
+         * messages as it takes to keep each one under the length the server accepts.
+         */
+        public void createBatchWork(ProcedureInvocation invocations[],
+                ProcedureCallback callbacks[], boolean ignoreBackpressure) {
+            final int headerSize = 1 + 4 + BATCH_PROCEDURE_NAME_BYTES.length + 8 + 4;
+            final int sizes[] = new int[invocations.length];
+            for (int i = 0; i < invocations.length; i++) {
+                sizes[i] = 4 + invocations[i].getSerializedSize();
+            }
+
+            final List<ByteBuffer> messages = new ArrayList<ByteBuffer>();
+            final List<BatchBookkeeping> batches = new ArrayList<BatchBookkeeping>();
+            int start = 0;
+            while (start < invocations.length) {
+                //A message always takes at least one invocation
+                int size = headerSize + sizes[start];
+                int end = start + 1;
+                while (end < invocations.length && size + sizes[end] <= MAX_BATCH_MESSAGE_LENGTH) {
+                    size += sizes[end++];
+                }
+
+                final long batchHandle = m_sysHandle.getAndDecrement();
+                final ByteBuffer buf = ByteBuffer.allocate(4 + size);
+                buf.putInt(size);
+                buf.put(ProcedureInvocationType.ORIGINAL.getValue());
+                buf.putInt(BATCH_PROCEDURE_NAME_BYTES.length);
+                buf.put(BATCH_PROCEDURE_NAME_BYTES);
+                buf.putLong(batchHandle);
+                buf.putInt(end - start);
+                final long memberHandles[] = new long[end - start];
+                for (int i = start; i < end; i++) {
+                    serializeInvocation(invocations[i], buf);
+                    memberHandles[i - start] = invocations[i].getHandle();
+                }
+                buf.flip();
+                messages.add(buf);
+                batches.add(new BatchBookkeeping(batchHandle, memberHandles));
+                start = end;
+            }
+
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < invocations.length; i++) {
+                now = m_rateLimiter.sendTxnWithOptionalBlockAndReturnCurrentTime(
+                        now, ignoreBackpressure);
+            }
+            synchronized (this) {
+                if (!m_isConnected) {
+                    for (ProcedureCallback callback : callbacks) {
+                        connectionLost(callback, now);
+                    }
+                    return;
+                }
+
+                //Close the open batch so invocations queued after these messages aren't written before them
+                m_openBatch = null;
+                m_connection.writeStream().enqueue(messages.toArray(new ByteBuffer[messages.size()]));
+
+                int i = 0;
+                for (BatchBookkeeping batch : batches) {
+                    m_batches.put(batch.handle, batch);
+                    for (long handle : batch.memberHandles) {
+                        assert(m_callbacks.containsKey(handle) == false);
+                        final CallbackBookeeping cb =
+                            new CallbackBookeeping(now, callbacks[i], invocations[i].getProcName());
+                        cb.batch = batch;
+                        m_callbacks.put(handle, cb);
+                        m_callbacksToInvoke.incrementAndGet();
+                        i++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Forget the @Batch message an answered invocation was sent in once all of its
+         * members are answered. Must be called while holding the connection lock.
+         */
+        void batchMemberAnswered(CallbackBookeeping cb) {
+            if (cb.batch != null && --cb.batch.outstanding == 0) {
+                m_batches.remove(cb.batch.handle);
+            }
+        }
+
+        /**
+         * The server couldn't read a @Batch message and answered its handle instead. The
+         * invocations from the first one it dropped on never get responses of their own,
+         * so they get this one. The first dropped invocation is in the response's table,
+         * without one all of them were dropped. Must be called while holding the connection lock.
+         * @return The callbacks to invoke and their responses
+         */
+        private List<Pair<CallbackBookeeping, ClientResponseImpl>> failBatchMembers(
+                BatchBookkeeping batch, ClientResponseImpl response, long now) {
+            int firstDropped = 0;
+            final VoltTable results[] = response.getResults();
+            if (results != null && results.length > 0 && results[0].advanceRow()) {
+                firstDropped = (int) results[0].getLong(0);
+            }
+
+            final List<Pair<CallbackBookeeping, ClientResponseImpl>> failed =
+                new ArrayList<Pair<CallbackBookeeping, ClientResponseImpl>>();
+            for (int i = firstDropped; i < batch.memberHandles.length; i++) {
+                final CallbackBookeeping cb = m_callbacks.remove(batch.memberHandles[i]);
+                if (cb == null) {
+                    continue;
+                }
+                final ClientResponseImpl r = new ClientResponseImpl(response.getStatus(),
+                        new VoltTable[0], response.getStatusString(), batch.memberHandles[i]);
+                final int delta = (int) (now - cb.timestamp);
+                r.setClientRoundtrip(delta);
+                m_rateLimiter.transactionResponseReceived(now, -1);
+                updateStats(cb.name, delta, (System.nanoTime() - cb.nanoTimestamp) / 1000, 0, false, true);
+                failed.add(Pair.of(cb, r));
+            }
+            return failed;
+        }
+
+        /**
+         * Fail an invocation that was queued after the connection was lost.
+         * Must be called while holding the connection lock.
+         */
+        private void connectionLost(ProcedureCallback callback, long now) {
+            final ClientResponse r = new ClientResponseImpl(
+                    ClientResponse.CONNECTION_LOST, new VoltTable[0],
+                    "Connection to database host (" + m_hostname +
+            ") was lost before a response was received");
+            try {
+                callback.clientCallback(r);
+            } catch (Exception e) {
+                uncaughtException(callback, r, e);
+            }
+            // for bookkeeping, but it feels dishonest to call this here
+            m_rateLimiter.transactionResponseReceived(now, -1);
         }
 
         void sendPing() {
@@ -330,6 +647,7 @@ class Distributer {
          * Update the procedures statistics
          * @param procName Name of procedure being updated
          * @param roundTrip round trip from client queued to client response callback invocation
+         * @param roundTripMicros the same round trip in microseconds
          * @param clusterRoundTrip round trip measured within the VoltDB cluster
          * @param abort true of the procedure was aborted
          * @param failure true if the procedure failed
@@ -337,6 +655,7 @@ class Distributer {
         private void updateStats(
                 String procName,
                 int roundTrip,
+                long roundTripMicros,
                 int clusterRoundTrip,
                 boolean abort,
                 boolean failure) {
@@ -351,7 +670,7 @@ class Distributer {
                 stats.m_endTS = Long.MIN_VALUE;
                 m_stats.put(procName, stats);
             }
-            stats.update(roundTrip, clusterRoundTrip, abort, failure);
+            stats.update(roundTrip, roundTripMicros, clusterRoundTrip, abort, failure);
         }
 
         @Override
@@ -365,6 +684,7 @@ class Distributer {
                 e1.printStackTrace();
             }
             ProcedureCallback cb = null;
+            List<Pair<CallbackBookeeping, ClientResponseImpl>> failedBatchMembers = null;
             long callTime = 0;
             int delta = 0;
             long handle = response.getClientHandle();
@@ -381,8 +701,12 @@ class Distributer {
                 CallbackBookeeping stuff = m_callbacks.remove(response.getClientHandle());
                 // presumably (hopefully) this is a response for a timed-out message
                 if (stuff == null) {
+                    final BatchBookkeeping batch = m_batches.remove(handle);
+                    if (batch != null) {
+                        failedBatchMembers = failBatchMembers(batch, response, now);
+                    }
                     // also ignore internal (topology and procedure) calls
-                    if (handle >= 0) {
+                    else if (handle >= 0) {
                         // notify any listeners of the late response
                         for (ClientStatusListenerExt listener : m_listeners) {
                             listener.lateProcedureResponse(response, m_hostname, m_port);
@@ -391,6 +715,7 @@ class Distributer {
                 }
                 // handle a proper callback
                 else {
+                    batchMemberAnswered(stuff);
                     callTime = stuff.timestamp;
                     delta = (int)(now - callTime);
                     cb = stuff.callback;
@@ -405,7 +730,8 @@ class Distributer {
                     }
                     int clusterRoundTrip = response.getClusterRoundtrip();
                     m_rateLimiter.transactionResponseReceived(now, clusterRoundTrip);
-                    updateStats(stuff.name, delta, clusterRoundTrip, abort, error);
+                    final long deltaMicros = (System.nanoTime() - stuff.nanoTimestamp) / 1000;
+                    updateStats(stuff.name, delta, deltaMicros, clusterRoundTrip, abort, error);
                 }
             }
 
@@ -421,6 +747,18 @@ class Distributer {
                 int callbacksToInvoke = m_callbacksToInvoke.decrementAndGet();
                 assert(callbacksToInvoke >= 0);
             }
+
+            if (failedBatchMembers != null) {
+                for (Pair<CallbackBookeeping, ClientResponseImpl> failed : failedBatchMembers) {
+                    try {
+                        failed.getFirst().callback.clientCallback(failed.getSecond());
+                    } catch (Exception e) {
+                        uncaughtException(failed.getFirst().callback, failed.getSecond(), e);
+                    }
+                    int callbacksToInvoke = m_callbacksToInvoke.decrementAndGet();
+                    assert(callbacksToInvoke >= 0);
+                }
+            }
         }
 
         @Override
@@ -442,7 +780,12 @@ class Distributer {
                     /*
                      * Repair all cluster topology data with the node connection removed
                      */
-                    Iterator<Map.Entry<Integer, NodeConnection>> i = m_partitionMasters.entrySet().iterator();
+                    final RoutingTable routing = m_routing;
+                    Map<Integer, NodeConnection> partitionMasters =
+                        new HashMap<Integer, NodeConnection>(routing.m_partitionMasters);
+                    Map<Integer, NodeConnection[]> partitionReplicas =
+                        new HashMap<Integer, NodeConnection[]>(routing.m_partitionReplicas);
+                    Iterator<Map.Entry<Integer, NodeConnection>> i = partitionMasters.entrySet().iterator();
                     while (i.hasNext()) {
                         Map.Entry<Integer, NodeConnection> entry = i.next();
                         if (entry.getValue() == this) {
@@ -458,7 +801,7 @@ class Distributer {
                         }
                     }
 
-                    Iterator<Map.Entry<Integer, NodeConnection[]>> i2 = m_partitionReplicas.entrySet().iterator();
+                    Iterator<Map.Entry<Integer, NodeConnection[]>> i2 = partitionReplicas.entrySet().iterator();
                     List<Pair<Integer, NodeConnection[]>> entriesToRewrite = new ArrayList<Pair<Integer, NodeConnection[]>>();
                     while (i2.hasNext()) {
                         Map.Entry<Integer, NodeConnection[]> entry = i2.next();
@@ -470,7 +813,7 @@ class Distributer {
                     }
 
                     for (Pair<Integer, NodeConnection[]> entry : entriesToRewrite) {
-                        m_partitionReplicas.remove(entry.getFirst());
+                        partitionReplicas.remove(entry.getFirst());
                         NodeConnection survivors[] = new NodeConnection[entry.getSecond().length - 1];
                         if (survivors.length == 0) break;
                         int zz = 0;
@@ -479,10 +822,13 @@ class Distributer {
                                 survivors[zz++] = entry.getSecond()[ii];
                             }
                         }
-                        m_partitionReplicas.put(entry.getFirst(), survivors);
+                        partitionReplicas.put(entry.getFirst(), survivors);
                     }
 
                     m_connections.remove(this);
+                    m_routing = routing.withTopology(
+                            partitionMasters, partitionReplicas, routing.m_hashinatorInitialized)
+                            .withConnections(m_connections);
                     //Notify listeners that a connection has been lost
                     for (ClientStatusListenerExt s : m_listeners) {
                         s.connectionLost(m_hostname, m_port, m_connections.size(), m_closeCause);
@@ -507,6 +853,7 @@ class Distributer {
                     m_callbacksToInvoke.decrementAndGet();
                 }
                 m_callbacks.clear();
+                m_batches.clear();
             }
         }
 
@@ -639,12 +986,16 @@ class Distributer {
         cxn.m_hostname = c.getHostnameOrIP();
         cxn.m_port = port;
         cxn.m_connection = c;
-        m_connections.add(cxn);
 
-        if (m_useClientAffinity) {
-            synchronized (this) {
+        synchronized (this) {
+            m_connections.add(cxn);
+            m_routing = m_routing.withConnections(m_connections);
+            if (m_useClientAffinity) {
                 m_hostIdToConnection.put(hostId, cxn);
             }
+        }
+
+        if (m_useClientAffinity) {
 
             ProcedureInvocation spi = new ProcedureInvocation(m_sysHandle.getAndDecrement(), "@Statistics", "TOPO", 0);
             //The handle is specific to topology updates and has special cased handling
@@ -673,99 +1024,222 @@ class Distributer {
         assert(invocation != null);
         assert(cb != null);
 
-        NodeConnection cxn = null;
-        boolean backpressure = true;
+        NodeConnection cxn = routeInvocation(m_routing, invocation, ignoreBackpressure);
+
+        if (cxn == null) {
+            /*
+             * Backpressure is reported while holding the lock so that it can't be reported
+             * AFTER offBackPressure reports that it has ended, which would be a lost wakeup.
+             * Route again under the lock in case the backpressure ended in the meantime.
+             */
+            synchronized (this) {
+                cxn = routeInvocation(m_routing, invocation, ignoreBackpressure);
+                if (cxn == null) {
+                    for (ClientStatusListenerExt s : m_listeners) {
+                        s.backpressure(true);
+                    }
+                }
+            }
+        }
+        final boolean backpressure = cxn == null;
 
         /*
-         * Synchronization is necessary to ensure that m_connections is not modified
-         * as well as to ensure that backpressure is reported correctly
+         * createWork serializes under the lock of the individual connection rather than
+         * the distributer which allows for more concurrency
          */
-        synchronized (this) {
-            final int totalConnections = m_connections.size();
+        if (cxn != null) {
+            cxn.createWork(invocation, cb, ignoreBackpressure);
+        }
 
-            if (totalConnections == 0) {
-                throw new NoConnectionsException("No connections.");
-            }
+        return !backpressure;
+    }
 
-            /*
-             * Check if the master for the partition is known. No back pressure check to ensure correct
-             * routing, but backpressure will be managed anyways.
-             */
-            if (m_useClientAffinity && m_hashinatorInitialized) {
-                final Procedure procedureInfo = m_procedureInfo.get(invocation.getProcName());
+    /**
+     * Queue a batch of invocations. Each invocation is routed on its own, so with client affinity
+     * it goes to the master (or a replica) of the partition it hashes to, and the invocations
+     * routed to the same connection are shipped to it as a single message. Nothing is queued
+     * if there is backpressure on any of the connections.
+     * @return true if the batch was queued and false if there was backpressure
+     */
+    boolean queueBatch(
+            ProcedureInvocation invocations[],
+            ProcedureCallback callbacks[],
+            final boolean ignoreBackpressure)
+    throws NoConnectionsException {
+        assert(invocations.length == callbacks.length);
 
-                if (procedureInfo != null) {
-                    Integer hashedPartition = MpInitiator.MP_INIT_PID;
-                    if (!procedureInfo.multiPart) {
-                        hashedPartition = invocation.getHashinatedParam(procedureInfo.partitionParameter);
+        NodeConnection routes[] = routeBatch(m_routing, invocations, ignoreBackpressure);
+        if (routes == null) {
+            //Same as queue(), report backpressure under the lock to avoid a lost wakeup
+            synchronized (this) {
+                routes = routeBatch(m_routing, invocations, ignoreBackpressure);
+                if (routes == null) {
+                    for (ClientStatusListenerExt s : m_listeners) {
+                        s.backpressure(true);
                     }
-                    /*
-                     * If the procedure is read only and single part, load balance across replicas
-                     */
-                    if (!procedureInfo.multiPart && procedureInfo.readOnly) {
-                        NodeConnection partitionReplicas[] = m_partitionReplicas.get(hashedPartition);
-                        if (partitionReplicas != null && partitionReplicas.length > 0) {
-                            cxn = partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
-                            if (cxn.hadBackPressure()) {
-                                //See if there is one without backpressure
-                                for (NodeConnection nc : partitionReplicas) {
-                                    if (!nc.hadBackPressure()) {
-                                        cxn = nc;
-                                        break;
-                                    }
+                    return false;
+                }
+            }
+        }
+
+        final Map<NodeConnection, List<Integer>> groups = new LinkedHashMap<NodeConnection, List<Integer>>();
+        for (int i = 0; i < routes.length; i++) {
+            List<Integer> group = groups.get(routes[i]);
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                groups.put(routes[i], group);
+            }
+            group.add(i);
+        }
+
+        for (Map.Entry<NodeConnection, List<Integer>> e : groups.entrySet()) {
+            final List<Integer> group = e.getValue();
+            final ProcedureInvocation groupInvocations[] = new ProcedureInvocation[group.size()];
+            final ProcedureCallback groupCallbacks[] = new ProcedureCallback[group.size()];
+            for (int i = 0; i < groupInvocations.length; i++) {
+                groupInvocations[i] = invocations[group.get(i)];
+                groupCallbacks[i] = callbacks[group.get(i)];
+            }
+            e.getKey().createBatchWork(groupInvocations, groupCallbacks, ignoreBackpressure);
+        }
+        return true;
+    }
+
+    /**
+     * Route every invocation of a batch from the same routing table snapshot.
+     * @return The connection to use for each invocation or null if there is backpressure
+     */
+    private NodeConnection[] routeBatch(
+            RoutingTable routing,
+            ProcedureInvocation invocations[],
+            boolean ignoreBackpressure)
+    throws NoConnectionsException {
+        final NodeConnection routes[] = new NodeConnection[invocations.length];
+        for (int i = 0; i < invocations.length; i++) {
+            routes[i] = routeInvocation(routing, invocations[i], ignoreBackpressure);
+            if (routes[i] == null) {
+                return null;
+            }
+        }
+        return routes;
+    }
+
+    /**
+     * Pick the connection for an invocation from a routing table snapshot.
+     * @return The connection to use or null if there is backpressure
+     * @throws NoConnectionsException
+     */
+    private NodeConnection routeInvocation(
+            RoutingTable routing,
+            ProcedureInvocation invocation,
+            boolean ignoreBackpressure)
+    throws NoConnectionsException {
+        final NodeConnection connections[] = routing.m_connections;
+        final int totalConnections = connections.length;
+
+        if (totalConnections == 0) {
+            throw new NoConnectionsException("No connections.");
+        }
+
+        NodeConnection cxn = null;
+        boolean backpressure = true;
+
+        /*
+         * Check if the master for the partition is known. No back pressure check to ensure correct
+         * routing, but backpressure will be managed anyways.
+         */
+        if (m_useClientAffinity && routing.m_hashinatorInitialized) {
+            final Procedure procedureInfo = routing.m_procedureInfo.get(invocation.getProcName());
+
+            if (procedureInfo != null) {
+                Integer hashedPartition = MpInitiator.MP_INIT_PID;
+                if (!procedureInfo.multiPart) {
+                    hashedPartition = invocation.getHashinatedParam(procedureInfo.partitionParameter);
+                }
+                /*
+                 * If the procedure is read only and single part, load balance across replicas
+                 */
+                if (!procedureInfo.multiPart && procedureInfo.readOnly) {
+                    NodeConnection partitionReplicas[] = routing.m_partitionReplicas.get(hashedPartition);
+                    if (partitionReplicas != null && partitionReplicas.length > 0) {
+                        cxn = partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
+                        if (cxn.hadBackPressure()) {
+                            //See if there is one without backpressure
+                            for (NodeConnection nc : partitionReplicas) {
+                                if (!nc.hadBackPressure()) {
+                                    cxn = nc;
+                                    break;
                                 }
                             }
-                            if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                                backpressure = false;
-                            }
                         }
-                    } else {
-                        /*
-                         * Writes have to go to the master
-                         */
-                        cxn = m_partitionMasters.get(hashedPartition);
-                        if (cxn != null && !cxn.hadBackPressure() || ignoreBackpressure) {
+                        if (!cxn.hadBackPressure() || ignoreBackpressure) {
                             backpressure = false;
                         }
                     }
-                }
-            }
-            if (cxn == null) {
-                for (int i=0; i < totalConnections; ++i) {
-                    cxn = m_connections.get(Math.abs(++m_nextConnection % totalConnections));
-                    if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                        // serialize and queue the invocation
+                } else {
+                    /*
+                     * Writes have to go to the master
+                     */
+                    cxn = routing.m_partitionMasters.get(hashedPartition);
+                    if (cxn != null && !cxn.hadBackPressure() || ignoreBackpressure) {
                         backpressure = false;
-                        break;
                     }
                 }
             }
-
-            if (backpressure) {
-                cxn = null;
-                for (ClientStatusListenerExt s : m_listeners) {
-                    s.backpressure(true);
+        }
+        if (cxn == null) {
+            for (int i=0; i < totalConnections; ++i) {
+                cxn = connections[Math.abs(m_nextConnection.incrementAndGet() % totalConnections)];
+                if (!cxn.hadBackPressure() || ignoreBackpressure) {
+                    // serialize and queue the invocation
+                    backpressure = false;
+                    break;
                 }
             }
         }
 
-        /*
-         * Do the heavy weight serialization outside the synchronized block.
-         * createWork synchronizes on an individual connection which allows for more concurrency
-         */
-        if (cxn != null) {
-            ByteBuffer buf = ByteBuffer.allocate(4 + invocation.getSerializedSize());
-            buf.putInt(buf.capacity() - 4);
-            try {
-                invocation.flattenToBuffer(buf);
-                buf.flip();
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-            cxn.createWork(invocation.getHandle(), invocation.getProcName(), buf, cb, ignoreBackpressure);
+        return backpressure ? null : cxn;
+    }
+
+    /**
+     * Serialize a length prefixed invocation at the buffer's position. getSerializedSize()
+     * must have been called on the invocation first.
+     */
+    private static void serializeInvocation(ProcedureInvocation invocation, ByteBuffer buf) {
+        final int lengthPosition = buf.position();
+        buf.putInt(0);
+        try {
+            invocation.flattenToBuffer(buf);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
         }
+        buf.putInt(lengthPosition, buf.position() - lengthPosition - 4);
+    }
 
-        return !backpressure;
+    /**
+     * Get a direct buffer to serialize invocations into. Buffers go back to a bounded pool
+     * shared by all connections once the network has written them.
+     */
+    private BBContainer acquireBatchBuffer() {
+        BBContainer pooled = m_batchBuffers.poll();
+        if (pooled == null) {
+            pooled = DBBPool.allocateDirect(BATCH_BUFFER_SIZE);
+        } else {
+            m_pooledBatchBuffers.decrementAndGet();
+        }
+        final BBContainer origin = pooled;
+        origin.b.clear();
+        return new BBContainer(origin.b, 0) {
+            @Override
+            public void discard() {
+                if (m_pooledBatchBuffers.incrementAndGet() <= MAX_POOLED_BATCH_BUFFERS) {
+                    m_batchBuffers.offer(origin);
+                } else {
+                    m_pooledBatchBuffers.decrementAndGet();
+                    origin.discard();
+                }
+            }
+        };
     }
 
     /**
@@ -780,6 +1254,11 @@ class Distributer {
         m_ex.awaitTermination(1, TimeUnit.SECONDS);
 
         m_network.shutdown();
+
+        BBContainer pooled;
+        while ((pooled = m_batchBuffers.poll()) != null) {
+            pooled.discard();
+        }
     }
 
     private void uncaughtException(ProcedureCallback cb, ClientResponse r, Throwable t) {
@@ -903,9 +1382,8 @@ class Distributer {
                     HashinatorType.valueOf(tables[1].getString("HASHTYPE")).hashinatorClass,
                     tables[1].getVarbinary("HASHCONFIG"));
         }
-        m_hashinatorInitialized = true;
-        m_partitionMasters.clear();
-        m_partitionReplicas.clear();
+        Map<Integer, NodeConnection> partitionMasters = new HashMap<Integer, NodeConnection>();
+        Map<Integer, NodeConnection[]> partitionReplicas = new HashMap<Integer, NodeConnection[]>();
         // The MPI's partition ID is 16383 (MpInitiator.MP_INIT_PID), so we shouldn't inadvertently
         // hash to it.  Go ahead and include it in the maps, we can use it at some point to
         // route MP transactions directly to the MPI node.
@@ -920,17 +1398,18 @@ class Distributer {
                     connections.add(m_hostIdToConnection.get(hostId));
                 }
             }
-            m_partitionReplicas.put(partition, connections.toArray(new NodeConnection[0]));
+            partitionReplicas.put(partition, connections.toArray(new NodeConnection[0]));
 
             Integer leaderHostId = Integer.valueOf(vt.getString("Leader").split(":")[0]);
             if (m_hostIdToConnection.containsKey(leaderHostId)) {
-                m_partitionMasters.put(partition, m_hostIdToConnection.get(leaderHostId));
+                partitionMasters.put(partition, m_hostIdToConnection.get(leaderHostId));
             }
         }
+        m_routing = m_routing.withTopology(partitionMasters, partitionReplicas, true);
     }
 
     private void updateProcedurePartitioning(VoltTable vt) {
-        m_procedureInfo.clear();
+        Map<String, Procedure> procedureInfo = new HashMap<String, Procedure>();
         while (vt.advanceRow()) {
             try {
                 //Data embedded in JSON object in remarks column
@@ -940,15 +1419,16 @@ class Distributer {
                 boolean readOnly = jsObj.getBoolean(JdbcDatabaseMetaDataGenerator.JSON_READ_ONLY);
                 if (jsObj.getBoolean(JdbcDatabaseMetaDataGenerator.JSON_SINGLE_PARTITION)) {
                     int partitionParameter = jsObj.getInt(JdbcDatabaseMetaDataGenerator.JSON_PARTITION_PARAMETER);
-                    m_procedureInfo.put(procedureName, new Procedure(false,readOnly, partitionParameter));
+                    procedureInfo.put(procedureName, new Procedure(false,readOnly, partitionParameter));
                 } else {
                     // Multi Part procedure JSON descriptors omit the partitionParameter
-                    m_procedureInfo.put(procedureName, new Procedure(true, readOnly, Procedure.PARAMETER_NONE));
+                    procedureInfo.put(procedureName, new Procedure(true, readOnly, Procedure.PARAMETER_NONE));
                 }
 
             } catch (JSONException e) {
                 e.printStackTrace();
             }
         }
+        m_routing = m_routing.withProcedures(procedureInfo);
     }
 }
@@ -0,0 +1,266 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTableRow;
+import org.voltdb.types.TimestampType;
+
+/**
+ * <p>Reads a table that may be far larger than the maximum size of a single result in
+ * bounded pages so that it can be consumed incrementally. Each page is an ad hoc query
+ * that resumes after the key of the last row of the previous page, ordered by the key,
+ * so neither the execution engine, the site, nor the client ever has to hold more than a
+ * page of the table.</p>
+ *
+ * <p>The query for the next page is queued as soon as a page is returned, so the next page
+ * is usually ready by the time the caller has processed the current one. At most one page
+ * is requested ahead of the caller, which keeps a slow consumer from being flooded.</p>
+ *
+ * <p>The key columns must uniquely identify a row, the primary key is a good choice, and
+ * must be of an integer, float, decimal, string or timestamp type. Float keys must be finite.
+ * Each page is a separate read, so the
+ * scan as a whole does not see a consistent snapshot of a table that is being modified.</p>
+ *
+ * <p>A scan reads the rows of one table, optionally only some of its columns and only the
+ * rows that match a predicate. Joins, grouping and aggregates aren't paged; run those as
+ * queries of their own.</p>
+ */
+public class TableScanCursor {
+
+    private final Client m_client;
+    private final String m_table;
+    private final String m_columns[];
+    private final String m_predicate;
+    private final String m_keyColumns[];
+    private final int m_pageRows;
+
+    // Key of the last row returned, null before the first page
+    private Object m_lastKey[] = null;
+    private SyncCallback m_pending = null;
+    private boolean m_done = false;
+
+    /**
+     * @param client Client connected to the database.
+     * @param table Name of the table to scan.
+     * @param pageRows Maximum number of rows in a page.
+     * @param keyColumns Columns that uniquely identify a row, in the order to scan by.
+     */
+    public TableScanCursor(Client client, String table, int pageRows, String... keyColumns) {
+        this(client, table, null, null, pageRows, keyColumns);
+    }
+
+    /**
+     * @param client Client connected to the database.
+     * @param table Name of the table to scan.
+     * @param columns Columns to return, which must include the key columns, or null for all of them.
+     * @param predicate SQL condition the rows must meet, used as written, or null for every row.
+     * @param pageRows Maximum number of rows in a page.
+     * @param keyColumns Columns that uniquely identify a row, in the order to scan by.
+     */
+    public TableScanCursor(Client client, String table, String columns[], String predicate,
+            int pageRows, String... keyColumns) {
+        if (keyColumns.length == 0) {
+            throw new IllegalArgumentException("At least one key column is required to page through a table");
+        }
+        if (pageRows < 1) {
+            throw new IllegalArgumentException("Pages must have at least one row, not " + pageRows);
+        }
+        if (columns != null) {
+            for (String key : keyColumns) {
+                boolean found = false;
+                for (String column : columns) {
+                    found |= column.equalsIgnoreCase(key);
+                }
+                if (!found) {
+                    throw new IllegalArgumentException("Key column " + key +
+                            " must be one of the columns returned to page through " + table);
+                }
+            }
+        }
+        m_client = client;
+        m_table = table;
+        m_columns = columns == null ? null : columns.clone();
+        m_predicate = predicate;
+        m_keyColumns = keyColumns.clone();
+        m_pageRows = pageRows;
+    }
+
+    /**
+     * Get the next page of the table, blocking until it is available.
+     * @return The next page or null once every row has been returned.
+     * @throws ProcCallException If the query for the page failed.
+     */
+    public VoltTable nextPage() throws IOException, ProcCallException, InterruptedException {
+        if (m_done) {
+            return null;
+        }
+        if (m_pending == null) {
+            requestPage();
+        }
+
+        m_pending.waitForResponse();
+        final ClientResponse response = m_pending.getResponse();
+        m_pending = null;
+        if (response.getStatus() != ClientResponse.SUCCESS) {
+            m_done = true;
+            throw new ProcCallException(response, response.getStatusString(), response.getException());
+        }
+
+        final VoltTable page = response.getResults()[0];
+        final int rowCount = page.getRowCount();
+        if (rowCount < m_pageRows) {
+            m_done = true;
+        }
+        if (rowCount == 0) {
+            return null;
+        }
+
+        if (!m_done) {
+            final VoltTableRow last = page.fetchRow(rowCount - 1);
+            final Object lastKey[] = new Object[m_keyColumns.length];
+            for (int ii = 0; ii < m_keyColumns.length; ii++) {
+                final int index = page.getColumnIndex(m_keyColumns[ii]);
+                lastKey[ii] = last.get(index, page.getColumnType(index));
+                if (last.wasNull()) {
+                    m_done = true;
+                    throw new IllegalArgumentException("Key column " + m_keyColumns[ii] +
+                            " used to page through " + m_table + " can't be null");
+                }
+            }
+            m_lastKey = lastKey;
+            requestPage();
+        }
+        return page;
+    }
+
+    private void requestPage() throws IOException {
+        final SyncCallback callback = new SyncCallback();
+        if (!m_client.callProcedure(callback, "@AdHoc", pageQuery(m_table, m_columns, m_predicate,
+                m_keyColumns, m_lastKey, m_pageRows))) {
+            throw new IOException("Unable to queue the query for the next page of " + m_table);
+        }
+        m_pending = callback;
+    }
+
+    /**
+     * Build the query for the page of rows that comes after the given key.
+     * @param columns Columns to return or null for all of them.
+     * @param predicate Condition the rows must meet or null.
+     * @param lastKey Key of the last row already returned or null for the first page.
+     */
+    static String pageQuery(String table, String columns[], String predicate,
+            String keyColumns[], Object lastKey[], int pageRows) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("SELECT ");
+        if (columns == null) {
+            sb.append('*');
+        } else {
+            for (int ii = 0; ii < columns.length; ii++) {
+                if (ii > 0) {
+                    sb.append(", ");
+                }
+                sb.append(quoteIdentifier(columns[ii]));
+            }
+        }
+        sb.append(" FROM ").append(quoteIdentifier(table));
+        if (predicate != null) {
+            sb.append(" WHERE (").append(predicate).append(')');
+        }
+        if (lastKey != null) {
+            /*
+             * Rows after the key in key order, so for (a, b) that is
+             * (a > x) OR (a = x AND b > y)
+             */
+            sb.append(predicate == null ? " WHERE (" : " AND (");
+            for (int ii = 0; ii < keyColumns.length; ii++) {
+                if (ii > 0) {
+                    sb.append(" OR ");
+                }
+                sb.append('(');
+                for (int jj = 0; jj < ii; jj++) {
+                    sb.append(quoteIdentifier(keyColumns[jj])).append(" = ");
+                    sb.append(sqlLiteral(lastKey[jj])).append(" AND ");
+                }
+                sb.append(quoteIdentifier(keyColumns[ii])).append(" > ").append(sqlLiteral(lastKey[ii]));
+                sb.append(')');
+            }
+            sb.append(')');
+        }
+        sb.append(" ORDER BY ");
+        for (int ii = 0; ii < keyColumns.length; ii++) {
+            if (ii > 0) {
+                sb.append(", ");
+            }
+            sb.append(quoteIdentifier(keyColumns[ii]));
+        }
+        sb.append(" LIMIT ").append(pageRows).append(';');
+        return sb.toString();
+    }
+
+    /**
+     * Quote a table or column name so it can't be read as anything but a name. Unquoted
+     * names are folded to upper case, so fold before quoting to name the same object.
+     */
+    static String quoteIdentifier(String name) {
+        return '"' + name.toUpperCase(Locale.ENGLISH).replace("\"", "\"\"") + '"';
+    }
+
+    private static String sqlLiteral(Object value) {
+        if (value instanceof String) {
+            return "'" + ((String)value).replace("'", "''") + "'";
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal)value).toPlainString();
+        }
+        if (value instanceof Double) {
+            final double d = (Double)value;
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                throw new IllegalArgumentException("Key column value " + value +
+                        " has no SQL literal and can't be used to page through a table");
+            }
+            return value.toString();
+        }
+        if (value instanceof Byte || value instanceof Short || value instanceof Integer ||
+                value instanceof Long) {
+            return value.toString();
+        }
+        if (value instanceof TimestampType) {
+            // the server reads timestamp strings in GMT, whatever this client's time zone is
+            final long micros = ((TimestampType)value).getTime();
+            long millis = micros / 1000;
+            long usecs = micros % 1000;
+            if (usecs < 0) {
+                millis--;
+                usecs += 1000;
+            }
+            final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+            format.setTimeZone(TimeZone.getTimeZone("GMT+0"));
+            return "'" + format.format(new Date(millis)) + String.format("%03d", usecs) + "'";
+        }
+        throw new IllegalArgumentException("Key column values of type " + value.getClass().getSimpleName() +
+                " can't be used to page through a table");
+    }
+}
@@ -18,17 +18,23 @@
 package org.voltdb.compiler;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltdb.VoltDB;
 import org.voltdb.planner.BoundPlan;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
 /**
  * Keep a cache two level cache of plans generated by the Ad Hoc
  * planner.
@@ -50,7 +56,7 @@ public class AdHocCompilerCache implements Serializable {
 
     private static WeakHashMap<Integer, AdHocCompilerCache> m_catalogVersionMatch = new WeakHashMap<Integer, AdHocCompilerCache>();
 
-    public static void clearVersionCache() {
+    public synchronized static void clearVersionCache() {
         m_catalogVersionMatch.clear();
     }
 
@@ -76,21 +82,24 @@ public class AdHocCompilerCache implements Serializable {
     final int MAX_CORE_ENTRIES;
 
     /** cache of literals to full plans */
-    final Map<String, AdHocPlannedStatement> m_literalCache;
+    final Cache<String, AdHocPlannedStatement> m_literalCache;
     /** cache of parameterized plan descriptions to one or more core parameterized plans,
      *  each plan optionally has its own requirements for which parameters need to be bound
      *  to what values to enable its specialized (expression-indexed) plan. */
-    final Map<String, List<BoundPlan> > m_coreCache;
+    final Cache<String, List<BoundPlan> > m_coreCache;
 
     // placeholder stats used during development that may/may not survive
-    long m_literalHits = 0;
-    long m_literalQueries = 0;
-    long m_literalInsertions = 0;
-    long m_literalEvictions = 0;
-    long m_planHits = 0;
-    long m_planQueries = 0;
-    long m_planInsertions = 0;
-    long m_planEvictions = 0;
+    final AtomicLong m_literalHits = new AtomicLong();
+    final AtomicLong m_literalQueries = new AtomicLong();
+    final AtomicLong m_literalInsertions = new AtomicLong();
+    final AtomicLong m_literalEvictions = new AtomicLong();
+    final AtomicLong m_planHits = new AtomicLong();
+    final AtomicLong m_planQueries = new AtomicLong();
+    final AtomicLong m_planInsertions = new AtomicLong();
+    final AtomicLong m_planEvictions = new AtomicLong();
+
+    /** The estimates the cached plans were costed with. */
+    private DatabaseEstimates m_estimates = null;
 
     /** {@see this#startPeriodicStatsPrinting() } */
     Timer m_statsTimer = null;
@@ -106,6 +115,10 @@ public class AdHocCompilerCache implements Serializable {
     /**
      * Constructor with specific cache sizes is only called directly for testing.
      *
+     * Both levels are shared by every ad hoc planner thread, so they are
+     * concurrent maps with approximate LRU eviction rather than
+     * synchronized LinkedHashMaps.
+     *
      * @param maxLiteralEntries cache size for literals
      * @param maxCoreEntries cache size for parameterized plans
      */
@@ -113,72 +126,79 @@ public class AdHocCompilerCache implements Serializable {
         MAX_LITERAL_ENTRIES = maxLiteralEntries;
         MAX_CORE_ENTRIES = maxCoreEntries;
 
-        // an LRU cache map
-        m_literalCache = new LinkedHashMap<String, AdHocPlannedStatement>(MAX_LITERAL_ENTRIES * 2, .75f, true) {
-            private static final long serialVersionUID = 1L;
-
-            // This method is called just after a new entry has been added
-            @Override
-            public boolean removeEldestEntry(Map.Entry<String, AdHocPlannedStatement> eldest) {
-                if (size() > MAX_LITERAL_ENTRIES) {
-                    ++m_literalEvictions;
-                    return true;
-                }
-                return false;
-            }
-        };
-
-        // an LRU cache map
-        m_coreCache = new LinkedHashMap<String, List<BoundPlan> >(MAX_CORE_ENTRIES * 2, .75f, true) {
-            private static final long serialVersionUID = 1L;
-
-            // This method is called just after a new entry has been added
-            @Override
-            public boolean removeEldestEntry(Map.Entry<String, List<BoundPlan> > eldest) {
-                if (size() > MAX_CORE_ENTRIES) {
-                    ++m_planEvictions;
-                    return true;
-                }
-                return false;
-            }
-        };
+        m_literalCache = CacheBuilder.newBuilder()
+                .maximumSize(MAX_LITERAL_ENTRIES)
+                .removalListener(new RemovalListener<String, AdHocPlannedStatement>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, AdHocPlannedStatement> notification) {
+                        if (notification.getCause() == RemovalCause.SIZE) {
+                            m_literalEvictions.incrementAndGet();
+                        }
+                    }
+                })
+                .build();
+
+        m_coreCache = CacheBuilder.newBuilder()
+                .maximumSize(MAX_CORE_ENTRIES)
+                .removalListener(new RemovalListener<String, List<BoundPlan> >() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, List<BoundPlan> > notification) {
+                        if (notification.getCause() == RemovalCause.SIZE) {
+                            m_planEvictions.incrementAndGet();
+                        }
+                    }
+                })
+                .build();
     }
 
     /**
      * Stats printing method used during development.
      * Probably shouldn't live past real stats integration.
      */
-    synchronized void printStats() {
+    void printStats() {
+        // read and reset these
+        final long literalHits = m_literalHits.getAndSet(0);
+        final long literalQueries = m_literalQueries.getAndSet(0);
+        final long planHits = m_planHits.getAndSet(0);
+        final long planQueries = m_planQueries.getAndSet(0);
         String line1 = String.format("CACHE STATS - Literals: Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_literalHits, m_literalQueries, (m_literalHits * 100.0) / m_literalQueries,
-                m_literalInsertions, m_literalEvictions);
+                literalHits, literalQueries, (literalHits * 100.0) / literalQueries,
+                m_literalInsertions.getAndSet(0), m_literalEvictions.getAndSet(0));
         String line2 = String.format("CACHE STATS - Plans:    Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_planHits, m_planQueries, (m_planHits * 100.0) /m_planQueries,
-                m_planInsertions, m_planEvictions);
+                planHits, planQueries, (planHits * 100.0) / planQueries,
+                m_planInsertions.getAndSet(0), m_planEvictions.getAndSet(0));
 
         System.out.print(line1 + line2);
         System.out.flush();
+    }
 
-        // reset these
-        m_literalHits = 0;
-        m_literalQueries = 0;
-        m_literalInsertions = 0;
-        m_literalEvictions = 0;
-        m_planHits = 0;
-        m_planQueries = 0;
-        m_planInsertions = 0;
-        m_planEvictions = 0;
+    /**
+     * Drop every cached plan if the row counts the planner costs plans with
+     * have moved since they were cached, so a plan picked while a table was
+     * small is not reused once it has grown. LiveDatabaseEstimates hands out
+     * a new instance only when a rounded row count changes, so this is an
+     * identity check.
+     */
+    public synchronized void invalidateIfEstimatesChanged(DatabaseEstimates estimates) {
+        if (estimates == m_estimates) {
+            return;
+        }
+        if (m_estimates != null) {
+            m_literalCache.invalidateAll();
+            m_coreCache.invalidateAll();
+        }
+        m_estimates = estimates;
     }
 
     /**
      * @param sql SQL literal
      * @return full, ready-to-go plan
      */
-    public synchronized AdHocPlannedStatement getWithSQL(String sql) {
-        ++m_literalQueries;
-        AdHocPlannedStatement retval = m_literalCache.get(sql);
+    public AdHocPlannedStatement getWithSQL(String sql) {
+        m_literalQueries.incrementAndGet();
+        AdHocPlannedStatement retval = m_literalCache.getIfPresent(sql);
         if (retval != null) {
-            ++m_literalHits;
+            m_literalHits.incrementAndGet();
         }
         return retval;
     }
@@ -186,13 +206,14 @@ public class AdHocCompilerCache implements Serializable {
     /**
      * @param parsedToken String representing a parameterized and parsed
      * SQL statement
-     * @return A CorePlan that needs parameter values to run.
+     * @return A CorePlan that needs parameter values to run. The list is
+     * never empty and is safe to iterate while other planners add to it.
      */
-    public synchronized List<BoundPlan> getWithParsedToken(String parsedToken) {
-        ++m_planQueries;
-        List<BoundPlan> retval = m_coreCache.get(parsedToken);
+    public List<BoundPlan> getWithParsedToken(String parsedToken) {
+        m_planQueries.incrementAndGet();
+        List<BoundPlan> retval = m_coreCache.getIfPresent(parsedToken);
         if (retval != null) {
-            ++m_planHits;
+            m_planHits.incrementAndGet();
         }
         return retval;
     }
@@ -205,9 +226,9 @@ public class AdHocCompilerCache implements Serializable {
      * separate plan instances with the same value are input for the
      * same SQL literal.
      */
-    public synchronized void put(String sql,
-                                 String parsedToken,
-                                 AdHocPlannedStatement planIn)
+    public void put(String sql,
+                    String parsedToken,
+                    AdHocPlannedStatement planIn)
     {
         assert(sql != null);
         assert(parsedToken != null);
@@ -221,22 +242,34 @@ public class AdHocCompilerCache implements Serializable {
         BoundPlan matched = null;
         BoundPlan unmatched = new BoundPlan(planIn.core, planIn.parameterBindings());
         // deal with the parameterized plan cache first
-        List<BoundPlan> boundVariants = m_coreCache.get(parsedToken);
+        List<BoundPlan> boundVariants = m_coreCache.getIfPresent(parsedToken);
         if (boundVariants == null) {
-            boundVariants = new ArrayList<BoundPlan>();
-            m_coreCache.put(parsedToken, boundVariants);
-            // Note that there is an edge case in which more than one plan is getting counted as one
-            // "plan insertion". This only happens when two different plans arose from the same parameterized
-            // query (token) because one invocation used the correct constants to trigger an expression index and
-            // another invocation did not.  These are not counted separately (which would have to happen below
-            // after each call to boundVariants.add) because they are not evicted separately.
-            // It seems saner to use consistent units when counting insertions vs. evictions.
-            ++m_planInsertions;
-        } else {
-            for (BoundPlan boundPlan : boundVariants) {
-                if (boundPlan.equals(unmatched)) {
-                    matched = boundPlan;
-                    break;
+            // publish the list with its first plan already in it so readers never see it empty
+            List<BoundPlan> newVariants = new CopyOnWriteArrayList<BoundPlan>(Collections.singletonList(unmatched));
+            boundVariants = m_coreCache.asMap().putIfAbsent(parsedToken, newVariants);
+            if (boundVariants == null) {
+                // Note that there is an edge case in which more than one plan is getting counted as one
+                // "plan insertion". This only happens when two different plans arose from the same parameterized
+                // query (token) because one invocation used the correct constants to trigger an expression index and
+                // another invocation did not.  These are not counted separately (which would have to happen below
+                // after each call to boundVariants.add) because they are not evicted separately.
+                // It seems saner to use consistent units when counting insertions vs. evictions.
+                m_planInsertions.incrementAndGet();
+            }
+        }
+        if (boundVariants != null) {
+            // serialize check-then-add against other planners putting the same token
+            synchronized (boundVariants) {
+                for (BoundPlan boundPlan : boundVariants) {
+                    if (boundPlan.equals(unmatched)) {
+                        matched = boundPlan;
+                        break;
+                    }
+                }
+                if (matched == null) {
+                    // Don't count insertions (of possibly repeated tokens) here
+                    //  -- see the comment above where only UNIQUE token insertions are being counted, instead.
+                    boundVariants.add(unmatched);
                 }
             }
             if (matched != null) {
@@ -250,17 +283,11 @@ public class AdHocCompilerCache implements Serializable {
                 }
             }
         }
-        if (matched == null) {
-            // Don't count insertions (of possibly repeated tokens) here
-            //  -- see the comment above where only UNIQUE token insertions are being counted, instead.
-            boundVariants.add(unmatched);
-        }
 
-        // then deal with the
-        AdHocPlannedStatement cachedPlan = m_literalCache.get(sql);
+        // then deal with the literal cache
+        AdHocPlannedStatement cachedPlan = m_literalCache.asMap().putIfAbsent(sql, plan);
         if (cachedPlan == null) {
-            m_literalCache.put(sql, plan);
-            ++m_literalInsertions;
+            m_literalInsertions.incrementAndGet();
         }
         else {
             assert(cachedPlan.equals(plan));
@@ -288,7 +315,7 @@ public class AdHocCompilerCache implements Serializable {
      * @return  literal cache size as a count
      */
     public int getLiteralCacheSize() {
-        return m_literalCache.size();
+        return (int) m_literalCache.size();
     }
 
     /**
@@ -296,6 +323,6 @@ public class AdHocCompilerCache implements Serializable {
      * @return  core cache size as a count
      */
     public int getCoreCacheSize() {
-        return m_coreCache.size();
+        return (int) m_coreCache.size();
     }
 }
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.StringUtils;
 import org.voltcore.logging.VoltLogger;
@@ -31,6 +32,9 @@ import org.voltcore.messaging.Mailbox;
 import org.voltcore.messaging.VoltMessage;
 import org.voltcore.utils.CoreUtils;
 import org.voltdb.CatalogContext;
+import org.voltdb.LatencyHistogram;
+import org.voltdb.StatsAgent;
+import org.voltdb.SysProcSelector;
 import org.voltdb.VoltDB;
 import org.voltdb.messaging.LocalMailbox;
 
@@ -44,12 +48,39 @@ public class AsyncCompilerAgent {
     // if more than this amount of work is queued, reject new work
     static public final int MAX_QUEUE_DEPTH = 250;
 
+    // number of ad hoc planner threads, each planning against its own HSQL instance
+    static public final int PLANNER_THREADS = Integer.getInteger("AD_HOC_PLANNER_THREADS",
+            Math.max(1, Math.min(8, CoreUtils.availableProcessors() / 4)));
+
     // accept work via this mailbox
     Mailbox m_mailbox;
 
-    // do work in this executor service
+    // prepare catalog changes in this executor service, one at a time
     final ListeningExecutorService m_es =
-        CoreUtils.getBoundedSingleThreadExecutor("Ad Hoc Planner", MAX_QUEUE_DEPTH);
+        CoreUtils.getBoundedSingleThreadExecutor("Catalog Change Planner", MAX_QUEUE_DEPTH);
+
+    // plan ad hoc sql on these workers
+    final PlannerWorker m_workers[];
+
+    // ad hoc work accepted by any worker and not yet finished
+    final AtomicInteger m_outstanding = new AtomicInteger();
+
+    // where the search for the least loaded worker starts, so ties rotate
+    final AtomicInteger m_nextWorker = new AtomicInteger();
+
+    // created with the mailbox, once the host id is known
+    PlannerPoolStats m_stats = null;
+
+    public AsyncCompilerAgent() {
+        this(PLANNER_THREADS);
+    }
+
+    AsyncCompilerAgent(int plannerThreads) {
+        m_workers = new PlannerWorker[plannerThreads];
+        for (int ii = 0; ii < plannerThreads; ii++) {
+            m_workers[ii] = new PlannerWorker(ii);
+        }
+    }
 
     // intended for integration test use. finish planning what's in
     // the queue and terminate the TPE.
@@ -58,6 +89,12 @@ public class AsyncCompilerAgent {
             m_es.shutdown();
             m_es.awaitTermination(120, TimeUnit.SECONDS);
         }
+        for (PlannerWorker worker : m_workers) {
+            worker.m_es.shutdown();
+        }
+        for (PlannerWorker worker : m_workers) {
+            worker.m_es.awaitTermination(120, TimeUnit.SECONDS);
+        }
     }
 
     public void createMailbox(final HostMessenger hostMessenger, final long hsId) {
@@ -71,6 +108,17 @@ public class AsyncCompilerAgent {
 
             @Override
             public void deliver(final VoltMessage message) {
+                final LocalObjectMessage wrapper = (LocalObjectMessage)message;
+                if (wrapper.payload instanceof AdHocPlannerWork) {
+                    final AdHocPlannerWork w = (AdHocPlannerWork)(wrapper.payload);
+                    submitToPlannerPool(w, new Runnable() {
+                        @Override
+                        public void run() {
+                            handleMailboxMessage(message);
+                        }
+                    });
+                    return;
+                }
                 try {
                     m_es.submit(new Runnable() {
                         @Override
@@ -79,20 +127,67 @@ public class AsyncCompilerAgent {
                         }
                     });
                 } catch (RejectedExecutionException rejected) {
-                    final LocalObjectMessage wrapper = (LocalObjectMessage)message;
-                    AsyncCompilerWork work = (AsyncCompilerWork)(wrapper.payload);
-                    AsyncCompilerResult retval = new AsyncCompilerResult();
-                    retval.clientHandle = work.clientHandle;
-                    retval.errorMsg = "Ad Hoc Planner is not available. Try again.";
-                    retval.connectionId = work.connectionId;
-                    retval.hostname = work.hostname;
-                    retval.adminConnection = work.adminConnection;
-                    retval.clientData = work.clientData;
-                    work.completionHandler.onCompletion(retval);
+                    rejectWork((AsyncCompilerWork)(wrapper.payload));
                 }
             }
         };
         hostMessenger.createMailbox(hsId, m_mailbox);
+
+        // In mock test environments there may be no stats agent.
+        final StatsAgent statsAgent = VoltDB.instance().getStatsAgent();
+        if (statsAgent != null) {
+            m_stats = new PlannerPoolStats(m_workers);
+            statsAgent.registerStatsSource(SysProcSelector.PLANNERPOOL, 0, m_stats);
+        }
+    }
+
+    /**
+     * Queue ad hoc work on the worker with the fewest requests waiting,
+     * or answer it with an error if the pool is already holding
+     * MAX_QUEUE_DEPTH requests.
+     */
+    void submitToPlannerPool(final AsyncCompilerWork work, final Runnable task) {
+        if (m_outstanding.incrementAndGet() > MAX_QUEUE_DEPTH) {
+            m_outstanding.decrementAndGet();
+            rejectWork(work);
+            return;
+        }
+
+        final int first = (m_nextWorker.getAndIncrement() & Integer.MAX_VALUE) % m_workers.length;
+        PlannerWorker target = m_workers[first];
+        for (int ii = 1; ii < m_workers.length && target.m_depth.get() > 0; ii++) {
+            final PlannerWorker candidate = m_workers[(first + ii) % m_workers.length];
+            if (candidate.m_depth.get() < target.m_depth.get()) {
+                target = candidate;
+            }
+        }
+
+        try {
+            target.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        m_outstanding.decrementAndGet();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException rejected) {
+            m_outstanding.decrementAndGet();
+            rejectWork(work);
+        }
+    }
+
+    private static void rejectWork(AsyncCompilerWork work) {
+        AsyncCompilerResult retval = new AsyncCompilerResult();
+        retval.clientHandle = work.clientHandle;
+        retval.errorMsg = "Ad Hoc Planner is not available. Try again.";
+        retval.connectionId = work.connectionId;
+        retval.hostname = work.hostname;
+        retval.adminConnection = work.adminConnection;
+        retval.clientData = work.clientData;
+        work.completionHandler.onCompletion(retval);
     }
 
     void handleMailboxMessage(final VoltMessage message) {
@@ -126,7 +221,7 @@ public class AsyncCompilerAgent {
     }
 
     public void compileAdHocPlanForProcedure(final AdHocPlannerWork apw) {
-        m_es.submit(new Runnable() {
+        submitToPlannerPool(apw, new Runnable() {
             @Override
             public void run(){
                 apw.completionHandler.onCompletion(compileAdHocPlan(apw));
@@ -143,7 +238,7 @@ public class AsyncCompilerAgent {
             context = VoltDB.instance().getCatalogContext();
         }
 
-        final PlannerTool ptool = context.m_ptool;
+        final PlannerTool ptool = PlannerWorker.plannerFor(context);
 
         AdHocPlannedStmtBatch plannedStmtBatch =
                 new AdHocPlannedStmtBatch(work.sqlBatchText,
@@ -197,4 +292,84 @@ public class AsyncCompilerAgent {
         }
         return plannedStmtBatch;
     }
+
+    /**
+     * One ad hoc planner thread. Each worker plans with its own PlannerTool,
+     * and so its own HSQL instance, but the PlannerTools for a catalog
+     * version all share that version's AdHocCompilerCache.
+     */
+    static class PlannerWorker {
+        private static final ThreadLocal<PlannerWorker> s_current = new ThreadLocal<PlannerWorker>();
+
+        final int m_id;
+        final ListeningExecutorService m_es;
+
+        // requests queued on or running in this worker
+        final AtomicInteger m_depth = new AtomicInteger();
+
+        // only touched by this worker's thread
+        private PlannerTool m_ptool = null;
+
+        // guarded by this, times in microseconds
+        int m_maxDepth = 0;
+        int m_intervalMaxDepth = 0;
+        final LatencyHistogram m_waitTimes = new LatencyHistogram();
+        final LatencyHistogram m_planTimes = new LatencyHistogram();
+        LatencyHistogram m_lastWaitTimes = new LatencyHistogram();
+        LatencyHistogram m_lastPlanTimes = new LatencyHistogram();
+
+        PlannerWorker(int id) {
+            m_id = id;
+            m_es = CoreUtils.getSingleThreadExecutor("Ad Hoc Planner - " + id);
+        }
+
+        void submit(final Runnable task) {
+            final long queuedAt = System.nanoTime();
+            final int depth = m_depth.incrementAndGet();
+            synchronized (this) {
+                m_maxDepth = Math.max(m_maxDepth, depth);
+                m_intervalMaxDepth = Math.max(m_intervalMaxDepth, depth);
+            }
+            try {
+                m_es.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        final long startedAt = System.nanoTime();
+                        s_current.set(PlannerWorker.this);
+                        try {
+                            task.run();
+                        } finally {
+                            m_depth.decrementAndGet();
+                            recordPlan((startedAt - queuedAt) / 1000, (System.nanoTime() - startedAt) / 1000);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException rejected) {
+                m_depth.decrementAndGet();
+                throw rejected;
+            }
+        }
+
+        synchronized void recordPlan(long waitMicros, long planMicros) {
+            m_waitTimes.recordValue(waitMicros);
+            m_planTimes.recordValue(planMicros);
+        }
+
+        /**
+         * The planner for <tt>context</tt> on the calling thread. The first
+         * worker, and any thread outside the pool, uses the one the catalog
+         * context already built. Other workers build their own the first
+         * time they see each catalog version.
+         */
+        static PlannerTool plannerFor(CatalogContext context) {
+            final PlannerWorker worker = s_current.get();
+            if (worker == null || worker.m_id == 0) {
+                return context.m_ptool;
+            }
+            if (worker.m_ptool == null || worker.m_ptool.m_catalogVersion != context.catalogVersion) {
+                worker.m_ptool = new PlannerTool(context.cluster, context.database, context.catalogVersion);
+            }
+            return worker.m_ptool;
+        }
+    }
 }
@@ -18,8 +18,14 @@
 package org.voltdb.compiler;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Table size estimates the planner costs plans with. Tables that have no
+ * estimate get the fixed defaults in TableEstimates. The ad hoc planner
+ * gets an instance filled in with live row counts from
+ * {@link LiveDatabaseEstimates} and may share it across planner threads.
+ */
 public class DatabaseEstimates {
 
     public static class TableEstimates {
@@ -28,12 +34,27 @@ public class DatabaseEstimates {
         public ArrayList<ScalarValueHints> valueHints = new ArrayList<ScalarValueHints>();
     }
 
-    HashMap<String, TableEstimates> tables = new HashMap<String, TableEstimates>();
+    ConcurrentHashMap<String, TableEstimates> tables = new ConcurrentHashMap<String, TableEstimates>();
 
     public TableEstimates getEstimatesForTable(String tableName) {
-        if (tables.containsKey(tableName) == false)
-            tables.put(tableName, new TableEstimates());
+        TableEstimates estimates = tables.get(tableName);
+        if (estimates == null) {
+            estimates = new TableEstimates();
+            TableEstimates existing = tables.putIfAbsent(tableName, estimates);
+            if (existing != null) {
+                estimates = existing;
+            }
+        }
+        return estimates;
+    }
 
-        return tables.get(tableName);
+    /**
+     * Replace the default estimates for a table with a known row count.
+     */
+    public void setTableRowCount(String tableName, long rowCount) {
+        TableEstimates estimates = new TableEstimates();
+        estimates.maxTuples = rowCount;
+        estimates.minTuples = rowCount;
+        tables.put(tableName, estimates);
     }
 }
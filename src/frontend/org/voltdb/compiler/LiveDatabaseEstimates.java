@@ -0,0 +1,111 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.voltdb.compiler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Table row counts reported by this host's execution sites, for the ad hoc
+ * planner to cost plans with in place of DatabaseEstimates' fixed defaults.
+ *
+ * Each site reports the row counts of its partition on every statistics
+ * tick. A table's estimate is the largest count any site reported, which is
+ * what one fragment scans for a partitioned table and the full count for a
+ * replicated one. Estimates are rounded up to a power of two, no smaller than
+ * {@link #MIN_ROWS}, so that a new DatabaseEstimates instance only appears
+ * when some table has changed size noticeably. The ad hoc plan cache is
+ * dropped whenever the instance changes.
+ */
+public class LiveDatabaseEstimates {
+
+    /**
+     * Smallest row count estimate. Keeps a plan chosen while a table is still
+     * empty, and then cached, from preferring a scan over a selective index.
+     */
+    public static final long MIN_ROWS = 16;
+
+    private static final ConcurrentHashMap<Long, Map<String, Long>> s_siteRowCounts =
+        new ConcurrentHashMap<Long, Map<String, Long>>();
+    private static final AtomicBoolean s_dirty = new AtomicBoolean(false);
+    private static volatile DatabaseEstimates s_estimates = null;
+    private static Map<String, Long> s_roundedRowCounts = new HashMap<String, Long>();
+
+    /**
+     * Record the row count of each table at one site.
+     * @param siteId      reporting site
+     * @param rowCounts   table name to number of rows at that site
+     */
+    public static void updateSiteRowCounts(long siteId, Map<String, Long> rowCounts) {
+        Map<String, Long> previous = s_siteRowCounts.put(siteId, rowCounts);
+        if (!rowCounts.equals(previous)) {
+            s_dirty.set(true);
+        }
+    }
+
+    /**
+     * @return estimates built from the latest row counts, or null if no site
+     * has reported yet. The same instance is returned until some table's
+     * rounded estimate changes.
+     */
+    public static DatabaseEstimates get() {
+        if (s_dirty.compareAndSet(true, false)) {
+            rebuild();
+        }
+        return s_estimates;
+    }
+
+    /** Forget all reported row counts, e.g. when the server shuts down. */
+    public static synchronized void clear() {
+        s_siteRowCounts.clear();
+        s_roundedRowCounts = new HashMap<String, Long>();
+        s_estimates = null;
+        s_dirty.set(false);
+    }
+
+    private static synchronized void rebuild() {
+        Map<String, Long> rounded = new HashMap<String, Long>();
+        for (Map<String, Long> siteCounts : s_siteRowCounts.values()) {
+            for (Map.Entry<String, Long> e : siteCounts.entrySet()) {
+                long estimate = roundRowCount(e.getValue());
+                Long other = rounded.get(e.getKey());
+                if (other == null || other < estimate) {
+                    rounded.put(e.getKey(), estimate);
+                }
+            }
+        }
+        if (rounded.isEmpty() || rounded.equals(s_roundedRowCounts)) {
+            return;
+        }
+
+        DatabaseEstimates estimates = new DatabaseEstimates();
+        for (Map.Entry<String, Long> e : rounded.entrySet()) {
+            estimates.setTableRowCount(e.getKey(), e.getValue());
+        }
+        s_roundedRowCounts = rounded;
+        s_estimates = estimates;
+    }
+
+    static long roundRowCount(long rowCount) {
+        if (rowCount <= MIN_ROWS) {
+            return MIN_ROWS;
+        }
+        return Long.highestOneBit(rowCount - 1) << 1;
+    }
+}
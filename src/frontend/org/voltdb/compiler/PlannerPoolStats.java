@@ -0,0 +1,116 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.voltdb.compiler;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.voltdb.LatencyHistogram;
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.compiler.AsyncCompilerAgent.PlannerWorker;
+
+/**
+ * Per-worker statistics for the ad hoc planner pool: how many requests
+ * each worker planned, how deep its queue got, how long requests waited
+ * for it and how long it took to plan them. Times are in microseconds.
+ * Plan cache hit rates are reported by PLANNER.
+ */
+public class PlannerPoolStats extends StatsSource {
+
+    private final PlannerWorker m_workers[];
+    private boolean m_interval = false;
+
+    PlannerPoolStats(PlannerWorker workers[]) {
+        super(false);
+        m_workers = workers;
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("WORKER_ID", VoltType.INTEGER));
+        columns.add(new ColumnInfo("PLANS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("QUEUE_DEPTH", VoltType.INTEGER));
+        columns.add(new ColumnInfo("MAX_QUEUE_DEPTH", VoltType.INTEGER));
+        columns.add(new ColumnInfo("AVG_WAIT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P99_WAIT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("AVG_PLAN_TIME", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P50_PLAN_TIME", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P99_PLAN_TIME", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MAX_PLAN_TIME", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object rowValues[]) {
+        final PlannerWorker worker = (PlannerWorker)rowKey;
+        final LatencyHistogram waitTimes;
+        final LatencyHistogram planTimes;
+        final int maxDepth;
+        synchronized (worker) {
+            if (m_interval) {
+                waitTimes = LatencyHistogram.diff(worker.m_waitTimes, worker.m_lastWaitTimes);
+                planTimes = LatencyHistogram.diff(worker.m_planTimes, worker.m_lastPlanTimes);
+                worker.m_lastWaitTimes = worker.m_waitTimes.copy();
+                worker.m_lastPlanTimes = worker.m_planTimes.copy();
+                maxDepth = worker.m_intervalMaxDepth;
+                worker.m_intervalMaxDepth = worker.m_depth.get();
+            }
+            else {
+                waitTimes = worker.m_waitTimes.copy();
+                planTimes = worker.m_planTimes.copy();
+                maxDepth = worker.m_maxDepth;
+            }
+        }
+
+        rowValues[columnNameToIndex.get("WORKER_ID")] = worker.m_id;
+        rowValues[columnNameToIndex.get("PLANS")] = planTimes.getTotalCount();
+        rowValues[columnNameToIndex.get("QUEUE_DEPTH")] = worker.m_depth.get();
+        rowValues[columnNameToIndex.get("MAX_QUEUE_DEPTH")] = maxDepth;
+        rowValues[columnNameToIndex.get("AVG_WAIT")] = (long)waitTimes.getMean();
+        rowValues[columnNameToIndex.get("P99_WAIT")] = waitTimes.getValueAtPercentile(99.0);
+        rowValues[columnNameToIndex.get("AVG_PLAN_TIME")] = (long)planTimes.getMean();
+        rowValues[columnNameToIndex.get("P50_PLAN_TIME")] = planTimes.getValueAtPercentile(50.0);
+        rowValues[columnNameToIndex.get("P99_PLAN_TIME")] = planTimes.getValueAtPercentile(99.0);
+        rowValues[columnNameToIndex.get("MAX_PLAN_TIME")] = planTimes.getMaxValue();
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        m_interval = interval;
+        return new Iterator<Object>() {
+            int m_next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return m_next < m_workers.length;
+            }
+
+            @Override
+            public Object next() {
+                return m_workers[m_next++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
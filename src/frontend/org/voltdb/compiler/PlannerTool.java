@@ -31,11 +31,13 @@ import org.voltdb.SysProcSelector;
 import org.voltdb.VoltDB;
 import org.voltdb.catalog.Cluster;
 import org.voltdb.catalog.Database;
+import org.voltdb.planner.AbstractCostModel;
 import org.voltdb.planner.BoundPlan;
 import org.voltdb.planner.CompiledPlan;
 import org.voltdb.planner.CorePlan;
 import org.voltdb.planner.PartitioningForStatement;
 import org.voltdb.planner.QueryPlanner;
+import org.voltdb.planner.StatisticsCostModel;
 import org.voltdb.planner.TrivialCostModel;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.utils.Encoder;
@@ -43,6 +45,10 @@ import org.voltdb.utils.Encoder;
 /**
  * Planner tool accepts an already compiled VoltDB catalog and then
  * interactively accept SQL and outputs plans on standard out.
+ *
+ * An instance is not thread-safe since it owns an HSQL session. Each ad hoc
+ * planner thread uses its own instance; instances for the same catalog
+ * version share one AdHocCompilerCache.
  */
 public class PlannerTool {
 
@@ -89,7 +95,7 @@ public class PlannerTool {
 
         // Create and register a singleton planner stats collector, if this is the first time.
         // In mock test environments there may be no stats agent.
-        synchronized (this) {
+        synchronized (PlannerTool.class) {
             if (m_plannerStats == null) {
                 final StatsAgent statsAgent = VoltDB.instance().getStatsAgent();
                 if (statsAgent != null) {
@@ -102,8 +108,10 @@ public class PlannerTool {
 
     public AdHocPlannedStatement planSql(String sqlIn, Object partitionParam, boolean inferSP, boolean allowParameterization) {
         CacheUse cacheUse = CacheUse.FAIL;
+        // the collector is shared by every ad hoc planner thread
+        Long startTime = null;
         if (m_plannerStats != null) {
-            m_plannerStats.startStatsCollection();
+            startTime = m_plannerStats.startStatsCollection();
         }
         try {
             if ((sqlIn == null) || (sqlIn.length() == 0)) {
@@ -117,6 +125,18 @@ public class PlannerTool {
             // no caching for forced single or forced multi SQL
             boolean cacheable = (partitionParam == null) && (inferSP);
 
+            // cost with the row counts the sites last reported, if any
+            DatabaseEstimates estimates = LiveDatabaseEstimates.get();
+            AbstractCostModel costModel;
+            if (estimates == null) {
+                estimates = new DatabaseEstimates();
+                costModel = new TrivialCostModel();
+            }
+            else {
+                costModel = new StatisticsCostModel(m_cluster, m_database, estimates);
+            }
+            m_cache.invalidateIfEstimatesChanged(estimates);
+
             // check the literal cache for a match
             if (cacheable) {
                 AdHocPlannedStatement cachedPlan = m_cache.getWithSQL(sqlIn);
@@ -136,11 +156,10 @@ public class PlannerTool {
             // PLAN THE STMT
             //////////////////////
 
-            TrivialCostModel costModel = new TrivialCostModel();
             PartitioningForStatement partitioning = new PartitioningForStatement(partitionParam, inferSP, inferSP);
             QueryPlanner planner = new QueryPlanner(
                     sql, "PlannerTool", "PlannerToolProc", m_cluster, m_database,
-                    partitioning, m_hsql, new DatabaseEstimates(), true,
+                    partitioning, m_hsql, estimates, true,
                     AD_HOC_JOINED_TABLE_LIMIT, costModel, null, null, DeterminismMode.FASTER);
             CompiledPlan plan = null;
             String[] extractedLiterals = null;
@@ -230,7 +249,8 @@ public class PlannerTool {
         }
         finally {
             if (m_plannerStats != null) {
-                m_plannerStats.endStatsCollection(m_cache.getLiteralCacheSize(), m_cache.getCoreCacheSize(), cacheUse, -1);
+                m_plannerStats.endStatsCollection(startTime, m_cache.getLiteralCacheSize(),
+                                                  m_cache.getCoreCacheSize(), cacheUse, -1);
             }
         }
     }
@@ -14,111 +14,77 @@
  * You should have received a copy of the GNU Affero General Public License
  * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package org.voltdb.dtxn;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 
-import org.voltdb.SiteStatsSource;
-import org.voltdb.SysProcSelector;
-import org.voltdb.VoltDB;
+import org.voltdb.LatencyHistogram;
+import org.voltdb.StatsSource;
 import org.voltdb.VoltTable.ColumnInfo;
 import org.voltdb.VoltType;
 
 /**
- * Class that provides latency information in buckets. Each bucket contains the
- * number of procedures with latencies in the range.
+ * Round trip latency of the transactions answered by a host's client interface,
+ * from the time an invocation is initiated until its response is ready to send.
+ * Latencies are kept in a {@link LatencyHistogram} in microseconds and reported
+ * as one row of percentiles per host.
  */
-public class LatencyStats extends SiteStatsSource {
-    /**
-     * A dummy iterator that wraps an integer and provides the
-     * Iterator<Object> necessary for getStatsRowKeyIterator()
-     *
-     */
-    private static class BucketIterator implements Iterator<Object> {
-        private final int max;
-        private int current = -1;
-
-        private BucketIterator(int max) {
-            this.max = max - 1; // minus one so that it's easier to compare later
-        }
-
-        @Override
-        public boolean hasNext() {
-            if (current == max) {
-                return false;
-            }
-            return true;
-        }
-
-        @Override
-        public Object next() {
-            return ++current;
-        }
-
-        @Override
-        public void remove() {
+public class LatencyStats extends StatsSource {
+    private final LatencyHistogram m_latencies = new LatencyHistogram();
+    private LatencyHistogram m_lastLatencies = new LatencyHistogram();
+    private boolean m_interval = false;
 
-        }
+    public LatencyStats() {
+        super(false);
     }
 
     /**
-     * Latency buckets to store overall latency distribution. It's divided into
-     * 26 buckets, each stores 10ms latency range invocation info. The last
-     * bucket covers invocations with latencies larger than 250ms.
+     * Called by the client interface every time a transaction is completed
+     * @param micros Time the procedure took to round trip intra cluster
      */
-    private final long[] m_latencyBuckets = {0l, 0l, 0l, 0l, 0l, 0l, 0l, 0l, 0l, 0l,
-                                             0l, 0l, 0l, 0l, 0l, 0l, 0l, 0l, 0l, 0l,
-                                             0l, 0l, 0l, 0l, 0l, 0l};
-    private long m_max = (m_latencyBuckets.length - 1) * BUCKET_RANGE;
-    private static final long BUCKET_RANGE = 10; // 10ms
-
-    public LatencyStats(long siteId) {
-        super(siteId, false);
-        VoltDB.instance().getStatsAgent().registerStatsSource(SysProcSelector.LATENCY, 0, this);
-    }
-
-    /**
-     * Called by the Initiator every time a transaction is completed
-     * @param delta Time the procedure took to round trip intra cluster
-     */
-    public synchronized void logTransactionCompleted(int delta) {
-        int bucketIndex = Math.min((int) (delta / BUCKET_RANGE), m_latencyBuckets.length - 1);
-
-        // if the host's clock moves backwards, bucketIndex can be negative
-        // this next line of code is a lie, but a beautiful one that keeps your server up
-        if (bucketIndex < 0) bucketIndex = 0;
-
-        m_max = Math.max(delta, m_max);
-        m_latencyBuckets[bucketIndex]++;
+    public synchronized void logTransactionCompleted(long micros) {
+        m_latencies.recordValue(micros);
     }
 
     @Override
     protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
-        return new BucketIterator(m_latencyBuckets.length);
+        m_interval = interval;
+        return Collections.<Object>singletonList(this).iterator();
     }
 
     @Override
     protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
         super.populateColumnSchema(columns);
-        columns.add(new ColumnInfo("BUCKET_MIN", VoltType.INTEGER));
-        columns.add(new ColumnInfo("BUCKET_MAX", VoltType.INTEGER));
         columns.add(new ColumnInfo("INVOCATIONS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("AVG", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P50", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P95", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P99", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P999", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MAX", VoltType.BIGINT));
     }
 
     @Override
     protected void updateStatsRow(Object rowKey, Object[] rowValues) {
-        final int bucket = (Integer) rowKey;
-
-        rowValues[columnNameToIndex.get("BUCKET_MIN")] = bucket * BUCKET_RANGE;
-        if (bucket < m_latencyBuckets.length - 1) {
-            rowValues[columnNameToIndex.get("BUCKET_MAX")] = (bucket + 1) * BUCKET_RANGE;
-        } else {
-            // max for the last bucket is the max of the largest latency
-            rowValues[columnNameToIndex.get("BUCKET_MAX")] = m_max;
+        final LatencyHistogram latencies;
+        synchronized (this) {
+            if (m_interval) {
+                latencies = LatencyHistogram.diff(m_latencies, m_lastLatencies);
+                m_lastLatencies = m_latencies.copy();
+            } else {
+                latencies = m_latencies.copy();
+            }
         }
-        rowValues[columnNameToIndex.get("INVOCATIONS")] = m_latencyBuckets[bucket];
+
+        rowValues[columnNameToIndex.get("INVOCATIONS")] = latencies.getTotalCount();
+        rowValues[columnNameToIndex.get("AVG")] = (long)latencies.getMean();
+        rowValues[columnNameToIndex.get("P50")] = latencies.getValueAtPercentile(50.0);
+        rowValues[columnNameToIndex.get("P95")] = latencies.getValueAtPercentile(95.0);
+        rowValues[columnNameToIndex.get("P99")] = latencies.getValueAtPercentile(99.0);
+        rowValues[columnNameToIndex.get("P999")] = latencies.getValueAtPercentile(99.9);
+        rowValues[columnNameToIndex.get("MAX")] = latencies.getMaxValue();
         super.updateStatsRow(rowKey, rowValues);
     }
 }
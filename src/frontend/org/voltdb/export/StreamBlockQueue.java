@@ -56,8 +56,13 @@ public class StreamBlockQueue {
 
     private final String m_nonce;
 
+    /**
+     * Spill to memory mapped overflow segments instead of writing them with file channel I/O
+     */
+    private static final boolean MMAP_OVERFLOW = Boolean.getBoolean("EXPORT_OVERFLOW_MMAP");
+
     public StreamBlockQueue(String path, String nonce) throws java.io.IOException {
-        m_persistentDeque = new PersistentBinaryDeque( nonce, new VoltFile(path));
+        m_persistentDeque = new PersistentBinaryDeque( nonce, new VoltFile(path), MMAP_OVERFLOW);
         m_nonce = nonce;
     }
 
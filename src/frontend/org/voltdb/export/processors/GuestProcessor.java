@@ -164,9 +164,7 @@ public class GuestProcessor implements ExportDataProcessor {
                                 cont.b.order(ByteOrder.LITTLE_ENDIAN);
                                 while (cont.b.hasRemaining()) {
                                     int length = cont.b.getInt();
-                                    byte[] rowdata = new byte[length];
-                                    cont.b.get(rowdata, 0, length);
-                                    edb.processRow(length, rowdata);
+                                    edb.processRowInBlock(cont.b, length);
                                 }
                                 edb.onBlockCompletion();
                                 break;
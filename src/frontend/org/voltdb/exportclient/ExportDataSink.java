@@ -181,9 +181,7 @@ public class ExportDataSink {
                     // run the verifier until m.getData() is consumed
                     while (m.getData().hasRemaining()) {
                         int length = m.getData().getInt();
-                        byte[] rowdata = new byte[length];
-                        m.getData().get(rowdata, 0, length);
-                        m_decoder.processRow(length, rowdata);
+                        m_decoder.processRowInBlock(m.getData(), length);
                     }
 
                     // Perform completion work on the decoder
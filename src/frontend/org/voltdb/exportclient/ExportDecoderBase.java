@@ -19,6 +19,7 @@ package org.voltdb.exportclient;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 
@@ -48,11 +49,70 @@ public abstract class ExportDecoderBase {
     // This is available as a convenience, could go away.
     protected ArrayList<VoltType> m_tableSchema;
 
+    // Repositioned over each row of a block, see processRowInBlock().
+    // Clients may share one decoder among the sources for every partition
+    // of a table, each polled on its own thread, so the cursor is per thread.
+    private final ThreadLocal<ExportRowCursor> m_rowCursor = new ThreadLocal<ExportRowCursor>() {
+        @Override
+        protected ExportRowCursor initialValue() {
+            return new ExportRowCursor(m_tableSchema);
+        }
+    };
+
     public ExportDecoderBase(AdvertisedDataSource source) {
         m_source = source;
         m_tableSchema = source.columnTypes;
     }
 
+    /**
+     * Hand the next row of a block to the decoder without copying it. The
+     * block's position is advanced past the row.
+     *
+     * @param block   little endian export block positioned at the row
+     * @param rowSize the length of the row (in octets)
+     * @return whether or not the row processing was successful
+     */
+    public final boolean processRowInBlock(ByteBuffer block, int rowSize) throws RestartBlockException {
+        final int rowOffset = block.position();
+        block.position(rowOffset + rowSize);
+        final ExportRowCursor cursor = m_rowCursor.get();
+        try {
+            cursor.reset(block, rowOffset, rowSize);
+        } catch (IOException e) {
+            // let the decoder's own row path report the bad row
+            byte[] rowData = new byte[rowSize];
+            for (int i = 0; i < rowSize; i++) {
+                rowData[i] = block.get(rowOffset + i);
+            }
+            return processRow(rowSize, rowData);
+        }
+        return processRow(cursor);
+    }
+
+    /**
+     * Process a row read in place from its export block. Decoders that
+     * override this and read columns through the cursor's typed getters
+     * decode rows without allocating. The default copies the row out and
+     * calls {@link #processRow(int, byte[])}.
+     *
+     * @param row cursor positioned on the row, valid only for this call
+     * @return whether or not the row processing was successful
+     */
+    public boolean processRow(ExportRowCursor row) throws RestartBlockException {
+        return processRow(row.getRowLength(), row.copyRow());
+    }
+
+    /**
+     * Position this decoder's cursor over a standalone row, so that
+     * {@link #processRow(int, byte[])} can share a cursor based
+     * implementation.
+     */
+    protected ExportRowCursor rowCursor(byte[] rowData) throws IOException {
+        final ExportRowCursor cursor = m_rowCursor.get();
+        cursor.reset(ByteBuffer.wrap(rowData).order(ByteOrder.LITTLE_ENDIAN), 0, rowData.length);
+        return cursor;
+    }
+
     /**
      * Process a row of octets from the Export stream. Overridden by subclasses
      * to provide whatever specific processing is desired by this ELClient
@@ -191,15 +251,17 @@ public abstract class ExportDecoderBase {
     static public BigDecimal decodeDecimal(final FastDeserializer fds)
             throws IOException {
         final int strlength = fds.readInt();
-        final byte[] strdata = new byte[strlength];
-        fds.readFully(strdata);
-        final String str = new String(strdata);
+        // the string form of a decimal is plain ASCII, parse it in place
+        final char[] strdata = new char[strlength];
+        for (int i = 0; i < strlength; i++) {
+            strdata[i] = (char) fds.readByte();
+        }
         BigDecimal bd = null;
         try {
-            bd = new BigDecimal(str);
+            bd = new BigDecimal(strdata);
         } catch (Exception e) {
-            System.out.println("error creating decimal from string(" + str
-                    + ")");
+            System.out.println("error creating decimal from string("
+                    + new String(strdata) + ")");
             e.printStackTrace();
         }
         return bd;
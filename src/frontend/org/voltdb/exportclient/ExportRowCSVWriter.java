@@ -0,0 +1,300 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.exportclient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.text.FieldPosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.voltdb.VoltDB;
+import org.voltdb.exportclient.ExportToFileClient.BinaryEncoding;
+import org.voltdb.utils.Encoder;
+
+import au.com.bytecode.opencsv_voltpatches.CSVWriter;
+
+/**
+ * Writes export rows as delimited text straight from an ExportRowCursor
+ * into a byte buffer, without building a String per field or per line.
+ * The output matches what ExportToFileClient produces through CSVWriter:
+ * every field is quoted (unless the quote character is
+ * {@link CSVWriter#NO_QUOTE_CHARACTER}), quote and escape characters
+ * inside a field are escaped, and nulls are written as NULL.
+ *
+ * Strings are copied byte for byte from the export block. This is safe
+ * because the delimiters are required to be ASCII, and no byte of a
+ * multi-byte UTF-8 character is in the ASCII range.
+ *
+ * Not thread safe. Each instance is written by one thread at a time.
+ */
+public class ExportRowCSVWriter {
+
+    private static final byte[] NULL_BYTES = { 'N', 'U', 'L', 'L' };
+    private static final byte[] HEX_DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
+    private final OutputStream m_out;
+    private final byte[] m_buffer;
+    private int m_position = 0;
+    private long m_bytesWritten = 0;
+
+    private final byte m_separator;
+    private final byte m_quote;
+    private final byte m_escape;
+    private final byte[] m_lineEnd;
+    private final byte[] m_extraEscapes;
+    private final BinaryEncoding m_binaryEncoding;
+    private final int m_firstField;
+
+    // formats timestamps without the per-row allocations of format(Date)
+    private final SimpleDateFormat m_timestampFormat;
+    private final Date m_date = new Date(0);
+    private final StringBuffer m_timestampText = new StringBuffer(32);
+    private final FieldPosition m_fieldPosition = new FieldPosition(0);
+    private long m_lastTimestampMillis = Long.MIN_VALUE;
+
+    private final byte[] m_scratch = new byte[32];
+
+    /**
+     * @param out           destination, written only in whole buffers
+     * @param bufferSize    bytes to collect before writing to out
+     * @param separator     field separator
+     * @param quote         quote character, or CSVWriter.NO_QUOTE_CHARACTER
+     * @param escape        escape character, or CSVWriter.NO_ESCAPE_CHARACTER
+     * @param lineEnd       line terminator
+     * @param extraEscapes  further characters to escape, or null
+     * @param be            encoding for VARBINARY values
+     * @param firstField    index of the first column written
+     * @param tz            time zone timestamps are written in
+     */
+    public ExportRowCSVWriter(OutputStream out, int bufferSize,
+            char separator, char quote, char escape, String lineEnd, char[] extraEscapes,
+            BinaryEncoding be, int firstField, TimeZone tz) {
+        m_out = out;
+        m_buffer = new byte[bufferSize];
+        m_separator = toAscii(separator);
+        m_quote = toAscii(quote);
+        m_escape = toAscii(escape);
+        m_lineEnd = new byte[lineEnd.length()];
+        for (int i = 0; i < m_lineEnd.length; i++) {
+            m_lineEnd[i] = toAscii(lineEnd.charAt(i));
+        }
+        if (extraEscapes != null) {
+            m_extraEscapes = new byte[extraEscapes.length];
+            for (int i = 0; i < extraEscapes.length; i++) {
+                m_extraEscapes[i] = toAscii(extraEscapes[i]);
+            }
+        }
+        else {
+            m_extraEscapes = null;
+        }
+        m_binaryEncoding = be;
+        m_firstField = firstField;
+        m_timestampFormat = new SimpleDateFormat(VoltDB.ODBC_DATE_FORMAT_STRING);
+        m_timestampFormat.setTimeZone(tz);
+    }
+
+    /**
+     * @return true if every character can be written by this class,
+     * which only handles ASCII delimiters.
+     */
+    public static boolean isAscii(char... chars) {
+        for (char c : chars) {
+            if (c > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte toAscii(char c) {
+        if (c > 0x7F) {
+            throw new IllegalArgumentException("Delimiter " + c + " is not ASCII");
+        }
+        return (byte) c;
+    }
+
+    /** Bytes handed to the output stream so far, including the buffer. */
+    public long getBytesWritten() {
+        return m_bytesWritten + m_position;
+    }
+
+    public void writeRow(ExportRowCursor row) throws IOException {
+        for (int i = m_firstField; i < row.getColumnCount(); i++) {
+            if (i != m_firstField) {
+                put(m_separator);
+            }
+            quote();
+            writeField(row, i);
+            quote();
+        }
+        for (byte b : m_lineEnd) {
+            put(b);
+        }
+    }
+
+    private void writeField(ExportRowCursor row, int i) throws IOException {
+        if (row.isNull(i)) {
+            putEscaped(NULL_BYTES, 0, NULL_BYTES.length);
+            return;
+        }
+        switch (row.getColumnType(i)) {
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT:
+            putLong(row.getLong(i));
+            break;
+        case TIMESTAMP:
+            putTimestamp(row.getLong(i));
+            break;
+        case FLOAT:
+            putAscii(Double.toString(row.getDouble(i)));
+            break;
+        case DECIMAL:
+            putAscii(row.getDecimal(i).toString());
+            break;
+        case STRING:
+            putEscaped(row.getBuffer(), row.getValueOffset(i), row.getValueLength(i));
+            break;
+        case VARBINARY:
+            if (m_binaryEncoding == BinaryEncoding.HEX) {
+                putHex(row.getBuffer(), row.getValueOffset(i), row.getValueLength(i));
+            }
+            else {
+                putAscii(Encoder.base64Encode(row.getBytes(i)));
+            }
+            break;
+        default:
+            throw new IOException("Invalid column type: " + row.getColumnType(i));
+        }
+    }
+
+    private void quote() throws IOException {
+        if (m_quote != CSVWriter.NO_QUOTE_CHARACTER) {
+            put(m_quote);
+        }
+    }
+
+    private void putLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            putAscii(Long.toString(value));
+            return;
+        }
+        int pos = m_scratch.length;
+        long v = Math.abs(value);
+        do {
+            m_scratch[--pos] = (byte) ('0' + (v % 10));
+            v /= 10;
+        } while (v != 0);
+        if (value < 0) {
+            m_scratch[--pos] = '-';
+        }
+        putEscaped(m_scratch, pos, m_scratch.length - pos);
+    }
+
+    private void putTimestamp(long micros) throws IOException {
+        // microseconds to milliseconds, as TimestampType.asApproximateJavaDate()
+        long millis = micros / 1000;
+        if (millis != m_lastTimestampMillis) {
+            m_date.setTime(millis);
+            m_timestampText.setLength(0);
+            m_timestampFormat.format(m_date, m_timestampText, m_fieldPosition);
+            m_lastTimestampMillis = millis;
+        }
+        for (int i = 0; i < m_timestampText.length(); i++) {
+            m_scratch[i] = (byte) m_timestampText.charAt(i);
+        }
+        putEscaped(m_scratch, 0, m_timestampText.length());
+    }
+
+    private void putAscii(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            putEscapedByte((byte) value.charAt(i));
+        }
+    }
+
+    private void putHex(ByteBuffer buf, int offset, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            byte b = buf.get(offset + i);
+            putEscapedByte(HEX_DIGITS[(b >> 4) & 0xF]);
+            putEscapedByte(HEX_DIGITS[b & 0xF]);
+        }
+    }
+
+    private void putEscaped(byte[] bytes, int offset, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            putEscapedByte(bytes[offset + i]);
+        }
+    }
+
+    private void putEscaped(ByteBuffer buf, int offset, int length) throws IOException {
+        if (buf.hasArray()) {
+            putEscaped(buf.array(), buf.arrayOffset() + offset, length);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            putEscapedByte(buf.get(offset + i));
+        }
+    }
+
+    private void putEscapedByte(byte b) throws IOException {
+        if (m_escape != CSVWriter.NO_ESCAPE_CHARACTER) {
+            boolean special = (b == m_escape) ||
+                    (m_quote != CSVWriter.NO_QUOTE_CHARACTER && b == m_quote);
+            if (!special && m_extraEscapes != null) {
+                for (byte e : m_extraEscapes) {
+                    if (b == e) {
+                        special = true;
+                        break;
+                    }
+                }
+            }
+            if (special) {
+                put(m_escape);
+            }
+        }
+        put(b);
+    }
+
+    private void put(byte b) throws IOException {
+        if (m_position == m_buffer.length) {
+            drain();
+        }
+        m_buffer[m_position++] = b;
+    }
+
+    private void drain() throws IOException {
+        m_out.write(m_buffer, 0, m_position);
+        m_bytesWritten += m_position;
+        m_position = 0;
+    }
+
+    public void flush() throws IOException {
+        drain();
+        m_out.flush();
+    }
+
+    public void close() throws IOException {
+        flush();
+        m_out.close();
+    }
+}
@@ -0,0 +1,266 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.exportclient;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import org.voltdb.VoltType;
+import org.voltdb.types.TimestampType;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A reusable view of one row of an export block, read in place from the
+ * block's buffer. Each decoder owns one cursor and repositions it on every
+ * row, so reading a row through the typed getters allocates nothing: no
+ * row copy, no null flag arrays and no boxed column values.
+ *
+ * The export encoding is a null bitmap (one bit per column, high bit
+ * first) followed by each non-null column in schema order. Integer types
+ * and timestamps are 8 byte longs, FLOAT is an 8 byte double, and STRING,
+ * VARBINARY and DECIMAL are a 4 byte length followed by that many bytes,
+ * DECIMAL as its plain string form. Everything is little endian.
+ *
+ * A cursor is only valid until it is repositioned or the block it reads
+ * is released; copy out anything that has to live longer.
+ */
+public class ExportRowCursor {
+
+    private final VoltType[] m_schema;
+    private final int m_nullArrayLength;
+
+    /** Absolute offset of each column's value in the buffer, -1 for null */
+    private final int[] m_offsets;
+
+    private ByteBuffer m_buffer;
+    private int m_rowOffset;
+    private int m_rowLength;
+
+    /** Scratch space for decoding values out of a direct buffer */
+    private byte[] m_scratch = new byte[64];
+    private char[] m_decimalChars = new char[64];
+
+    public ExportRowCursor(List<VoltType> schema) {
+        m_schema = schema.toArray(new VoltType[schema.size()]);
+        m_nullArrayLength = ((m_schema.length + 7) & -8) >> 3;
+        m_offsets = new int[m_schema.length];
+    }
+
+    /**
+     * Position the cursor on the row that starts at offset in buffer.
+     * The buffer must be little endian. Its position is not changed.
+     *
+     * @param buffer      block holding the row
+     * @param offset      absolute offset of the row's null bitmap
+     * @param rowLength   length of the row in bytes
+     * @throws IOException if the row is shorter than its columns claim
+     */
+    public void reset(ByteBuffer buffer, int offset, int rowLength) throws IOException {
+        assert(buffer.order() == ByteOrder.LITTLE_ENDIAN);
+        m_buffer = buffer;
+        m_rowOffset = offset;
+        m_rowLength = rowLength;
+
+        final int end = offset + rowLength;
+        int position = offset + m_nullArrayLength;
+        for (int i = 0; i < m_schema.length; i++) {
+            // see ExportDecoderBase.extractNullFlags for the bit layout
+            byte flags = buffer.get(offset + (i >> 3));
+            if ((flags & (0x80 >>> (i % 8))) != 0) {
+                m_offsets[i] = -1;
+                continue;
+            }
+            m_offsets[i] = position;
+            switch (m_schema[i]) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+            case TIMESTAMP:
+            case FLOAT:
+                position += 8;
+                break;
+            case STRING:
+            case VARBINARY:
+            case DECIMAL:
+                if (position + 4 > end) {
+                    throw new IOException("Export row truncated in column " + i);
+                }
+                position += 4 + buffer.getInt(position);
+                break;
+            default:
+                throw new IOException("Invalid column type: " + m_schema[i]);
+            }
+            if (position > end) {
+                throw new IOException("Export row truncated in column " + i);
+            }
+        }
+    }
+
+    public int getColumnCount() {
+        return m_schema.length;
+    }
+
+    public VoltType getColumnType(int column) {
+        return m_schema[column];
+    }
+
+    /** The buffer holding the row, for reading values in place. */
+    public ByteBuffer getBuffer() {
+        return m_buffer;
+    }
+
+    public int getRowOffset() {
+        return m_rowOffset;
+    }
+
+    public int getRowLength() {
+        return m_rowLength;
+    }
+
+    public boolean isNull(int column) {
+        return m_offsets[column] == -1;
+    }
+
+    /**
+     * Value of a TINYINT, SMALLINT, INTEGER, BIGINT or TIMESTAMP column.
+     * Timestamps are microseconds since the epoch.
+     */
+    public long getLong(int column) {
+        assert(!isNull(column));
+        return m_buffer.getLong(m_offsets[column]);
+    }
+
+    /** Value of a FLOAT column. */
+    public double getDouble(int column) {
+        assert(m_schema[column] == VoltType.FLOAT && !isNull(column));
+        return m_buffer.getDouble(m_offsets[column]);
+    }
+
+    /**
+     * Absolute offset in {@link #getBuffer()} of the bytes of a STRING,
+     * VARBINARY or DECIMAL column, past the length prefix.
+     */
+    public int getValueOffset(int column) {
+        assert(!isNull(column));
+        return m_offsets[column] + 4;
+    }
+
+    /** Length in bytes of a STRING, VARBINARY or DECIMAL column. */
+    public int getValueLength(int column) {
+        assert(!isNull(column));
+        return m_buffer.getInt(m_offsets[column]);
+    }
+
+    /** Decode a STRING column (or a DECIMAL's string form) as UTF-8. */
+    public String getString(int column) {
+        final int offset = getValueOffset(column);
+        final int length = getValueLength(column);
+        if (m_buffer.hasArray()) {
+            return new String(m_buffer.array(), m_buffer.arrayOffset() + offset, length, Charsets.UTF_8);
+        }
+        return new String(scratch(offset, length), 0, length, Charsets.UTF_8);
+    }
+
+    /** Copy a VARBINARY or STRING column's bytes out of the block. */
+    public byte[] getBytes(int column) {
+        final int offset = getValueOffset(column);
+        final byte[] retval = new byte[getValueLength(column)];
+        copyOut(offset, retval, retval.length);
+        return retval;
+    }
+
+    /**
+     * Parse a DECIMAL column straight from its encoded digits, without
+     * building an intermediate String.
+     */
+    public BigDecimal getDecimal(int column) {
+        final int offset = getValueOffset(column);
+        final int length = getValueLength(column);
+        if (m_decimalChars.length < length) {
+            m_decimalChars = new char[length];
+        }
+        // the string form of a decimal is plain ASCII
+        for (int i = 0; i < length; i++) {
+            m_decimalChars[i] = (char) m_buffer.get(offset + i);
+        }
+        return new BigDecimal(m_decimalChars, 0, length);
+    }
+
+    /**
+     * Box a column into the same type ExportDecoderBase.decodeRow would
+     * produce, or null. Allocates; prefer the typed getters.
+     */
+    public Object getObject(int column) {
+        if (isNull(column)) {
+            return null;
+        }
+        switch (m_schema[column]) {
+        case TINYINT:
+            return (byte) getLong(column);
+        case SMALLINT:
+            return (short) getLong(column);
+        case INTEGER:
+            return (int) getLong(column);
+        case BIGINT:
+            return getLong(column);
+        case FLOAT:
+            return getDouble(column);
+        case TIMESTAMP:
+            return new TimestampType(getLong(column));
+        case STRING:
+            return getString(column);
+        case VARBINARY:
+            return getBytes(column);
+        case DECIMAL:
+            return getDecimal(column);
+        default:
+            throw new IllegalStateException("Invalid column type: " + m_schema[column]);
+        }
+    }
+
+    /** Copy the whole encoded row, for decoders that want a byte[]. */
+    public byte[] copyRow() {
+        final byte[] retval = new byte[m_rowLength];
+        copyOut(m_rowOffset, retval, m_rowLength);
+        return retval;
+    }
+
+    private void copyOut(int offset, byte[] dest, int length) {
+        if (m_buffer.hasArray()) {
+            System.arraycopy(m_buffer.array(), m_buffer.arrayOffset() + offset, dest, 0, length);
+        }
+        else {
+            for (int i = 0; i < length; i++) {
+                dest[i] = m_buffer.get(offset + i);
+            }
+        }
+    }
+
+    private byte[] scratch(int offset, int length) {
+        if (m_scratch.length < length) {
+            m_scratch = new byte[Math.max(length, m_scratch.length * 2)];
+        }
+        copyOut(offset, m_scratch, length);
+        return m_scratch;
+    }
+}
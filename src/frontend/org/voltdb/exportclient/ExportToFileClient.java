@@ -38,8 +38,11 @@ import java.util.TimeZone;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.lang3.StringEscapeUtils;
@@ -50,13 +53,14 @@ import org.voltcore.utils.CoreUtils;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltType;
 import org.voltdb.export.ExportProtoMessage.AdvertisedDataSource;
-import org.voltdb.types.TimestampType;
 import org.voltdb.utils.Encoder;
 import org.voltdb.utils.VoltFile;
 
 import au.com.bytecode.opencsv_voltpatches.CSVWriter;
 
 import com.google.common.base.Throwables;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.ListeningExecutorService;
 
 /**
  * Uses the Export feature of VoltDB to write exported tables to files.
@@ -77,6 +81,9 @@ public class ExportToFileClient extends ExportClientBase2 {
     // active means the folder is being written to
     private static final String ACTIVE_PREFIX = "active-";
 
+    // bytes each sharded writer collects before writing to its file
+    private static final int ROW_WRITER_BUFFER_SIZE = 256 * 1024;
+
     // use thread-local to avoid SimpleDateFormat thread-safety issues
     protected ThreadLocal<SimpleDateFormat> m_ODBCDateformat;
     protected char m_delimiter;
@@ -117,6 +124,18 @@ public class ExportToFileClient extends ExportClientBase2 {
     }
 
     private BinaryEncoding m_binaryEncoding;
+    protected TimeZone m_timeZone;
+
+    // When positive, each table is split by partition into this many
+    // shards, each with its own file and writer thread, see ExportRowCSVWriter
+    protected int m_writers = 0;
+    protected ListeningExecutorService[] m_shardExecutors = null;
+    // roll early once any file passes this many bytes, 0 to only roll by time
+    protected long m_maxFileBytes = 0;
+    private Runnable m_rotator;
+    private final AtomicBoolean m_rollRequested = new AtomicBoolean(false);
+    // the date stamp of the previous batch, a new one must differ
+    private String m_lastRollDate = null;
 
     /**
     *
@@ -126,6 +145,8 @@ public class ExportToFileClient extends ExportClientBase2 {
     class PeriodicExportContext {
         File m_dirContainingFiles;
         final Map<FileHandle, CSVWriter> m_writers = new TreeMap<FileHandle, CSVWriter>();
+        final Map<FileHandle, ExportRowCSVWriter> m_rowWriters = new TreeMap<FileHandle, ExportRowCSVWriter>();
+        final Map<FileHandle, CountingOutputStream> m_byteCounts = new TreeMap<FileHandle, CountingOutputStream>();
         boolean m_hasClosed = false;
         protected Date start;
         protected final Set<String> m_batchSchemasWritten = new HashSet<String>();
@@ -133,10 +154,21 @@ public class ExportToFileClient extends ExportClientBase2 {
         class FileHandle implements Comparable<FileHandle> {
             final String tableName;
             final long generation;
+            // -1 unless the table is written in shards
+            final int shard;
 
             FileHandle(String tableName, long generation) {
+                this(tableName, generation, -1);
+            }
+
+            FileHandle(String tableName, long generation, int shard) {
                 this.tableName = tableName;
                 this.generation = generation;
+                this.shard = shard;
+            }
+
+            String getShardSuffix() {
+                return (shard < 0) ? "" : "-" + shard;
             }
 
             String getPath(String prefix) {
@@ -146,6 +178,7 @@ public class ExportToFileClient extends ExportClientBase2 {
                            generation +
                            "-" +
                            tableName +
+                           getShardSuffix() +
                            m_extension;
                 }
                 else {
@@ -157,6 +190,7 @@ public class ExportToFileClient extends ExportClientBase2 {
                            generation +
                            "-" +
                            tableName +
+                           getShardSuffix() +
                            "-" +
                            m_dateformat.get().format(start) +
                            m_extension;
@@ -191,7 +225,7 @@ public class ExportToFileClient extends ExportClientBase2 {
                 long second = generation - obj.generation;
                 if (second > 0) return 1;
                 if (second < 0) return -1;
-                return 0;
+                return shard - obj.shard;
             }
         }
 
@@ -200,26 +234,22 @@ public class ExportToFileClient extends ExportClientBase2 {
                 /*
                  * The batch dir name is by default only named to second granularity.
                  * What can happen is that when using on server export the client
-                 * can be rapidly cycled sub-second resulting in collisions with the previous
-                 * client. Spin here until a new one can be generated.
+                 * can be rapidly cycled sub-second, or roll by size more than once
+                 * a second, resulting in collisions with the previous batch.
+                 * Rather than wait for the clock, step the name forward a second
+                 * at a time until it is unused.
                  *
                  * Going to do this under a global lock to ensure that if this ends
                  * up being done in parallel it is properly sequenced
                  */
                 synchronized (m_batchDirNamingLock) {
-                    File dirContainingFiles = null;
-                    do {
-                        start = new Date();
-                        dirContainingFiles = new VoltFile(getPathOfBatchDir(ACTIVE_PREFIX));
-                        if (dirContainingFiles.exists()) {
-                            try {
-                                Thread.sleep(1000);
-                            } catch (InterruptedException e) {
-                                Throwables.propagate(e);
-                            }
-                        }
-                    } while (dirContainingFiles.exists());
-                    m_dirContainingFiles = dirContainingFiles;
+                    start = nextStart();
+                    while (new VoltFile(getPathOfBatchDir(ACTIVE_PREFIX)).exists() ||
+                           new VoltFile(getPathOfBatchDir("")).exists()) {
+                        start = new Date(start.getTime() + 1000);
+                    }
+                    m_lastRollDate = m_dateformat.get().format(start);
+                    m_dirContainingFiles = new VoltFile(getPathOfBatchDir(ACTIVE_PREFIX));
                 }
                 m_logger.trace(String.format("Creating dir for batch at %s", m_dirContainingFiles.getPath()));
                 m_dirContainingFiles.mkdirs();
@@ -229,11 +259,27 @@ public class ExportToFileClient extends ExportClientBase2 {
                 }
             }
             else {
-                start = new Date();
+                synchronized (m_batchDirNamingLock) {
+                    start = nextStart();
+                    m_lastRollDate = m_dateformat.get().format(start);
+                }
                 m_dirContainingFiles = m_outDir;
             }
         }
 
+        /**
+         * Now, or if that formats to the same date stamp as the previous
+         * batch, the first second that doesn't. File names are only as
+         * fine grained as the date format.
+         */
+        private Date nextStart() {
+            Date next = new Date();
+            while (m_lastRollDate != null && m_lastRollDate.equals(m_dateformat.get().format(next))) {
+                next = new Date(next.getTime() + 1000);
+            }
+            return next;
+        }
+
         String getPathOfBatchDir(String prefix) {
             assert(m_batched);
             return m_outDir.getPath() + File.separator + prefix + m_nonce + "-" + m_dateformat.get().format(start);
@@ -265,6 +311,13 @@ public class ExportToFileClient extends ExportClientBase2 {
                     e.printStackTrace();
                 }
             }
+            for (ExportRowCSVWriter writer : m_rowWriters.values()) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
 
             if (m_batched)
                 closeBatch();
@@ -273,6 +326,8 @@ public class ExportToFileClient extends ExportClientBase2 {
 
             // empty the writer set (probably not needed)
             m_writers.clear();
+            m_rowWriters.clear();
+            m_byteCounts.clear();
 
             // note that we're closed now
             m_hasClosed = true;
@@ -301,14 +356,16 @@ public class ExportToFileClient extends ExportClientBase2 {
         }
 
         void closeFiles() {
-            File[] notifySet = new VoltFile[m_writers.size()];
+            File[] notifySet = new VoltFile[m_writers.size() + m_rowWriters.size()];
 
             int i = 0;
             // Sort the open files by TXN ID so that we can close and rename
             // them in the order in which they were created.  This allows
             // apps interested in the files to know that whenever a new file
             // is closed, it will be the next file temporally in the export stream
-            FileHandle[] keys = m_writers.keySet().toArray(new FileHandle[] {});
+            List<FileHandle> handles = new ArrayList<FileHandle>(m_writers.keySet());
+            handles.addAll(m_rowWriters.keySet());
+            FileHandle[] keys = handles.toArray(new FileHandle[] {});
             Arrays.sort(keys, new Comparator<FileHandle>(){
                 @Override
                 public int compare(FileHandle f1, FileHandle f2)
@@ -351,6 +408,43 @@ public class ExportToFileClient extends ExportClientBase2 {
             notifyRollIsComplete(notifySet);
         }
 
+        /**
+         * Open the active file for a handle, counting the bytes written to it.
+         */
+        private CountingOutputStream openFile(FileHandle handle) {
+            File newFile = new VoltFile(handle.getPath(ACTIVE_PREFIX));
+            if (newFile.exists()) {
+                m_logger.error("Error: Output file for next period already exists at path: " + newFile.getPath());
+                m_logger.error("Consider using a more specific timestamp in your filename or cleaning up your export data directory.");
+                m_logger.error("ExportToFileClient will stop to prevent data loss.");
+                throw new RuntimeException();
+            }
+            try {
+                CountingOutputStream out = new CountingOutputStream(new FileOutputStream(newFile, false));
+                synchronized (m_byteCounts) {
+                    m_byteCounts.put(handle, out);
+                }
+                return out;
+            }
+            catch (IOException e) {
+                m_logger.error(e.getMessage());
+                m_logger.error("Error: Failed to create output file: " + newFile.getPath());
+                throw new RuntimeException();
+            }
+        }
+
+        /**
+         * @return bytes written so far to the active file for a table (shard),
+         * or 0 if it isn't open.
+         */
+        long getBytesWritten(String tableName, long generation, int shard) {
+            CountingOutputStream out;
+            synchronized (m_byteCounts) {
+                out = m_byteCounts.get(new FileHandle(tableName, generation, shard));
+            }
+            return (out == null) ? 0 : out.getCount();
+        }
+
         CSVWriter getWriter(String tableName, long generation) {
             FileHandle handle = new FileHandle(tableName, generation);
             CSVWriter writer = m_writers.get(handle);
@@ -358,15 +452,9 @@ public class ExportToFileClient extends ExportClientBase2 {
                 return writer;
 
             String path = handle.getPath(ACTIVE_PREFIX);
-            File newFile = new VoltFile(path);
-            if (newFile.exists()) {
-                m_logger.error("Error: Output file for next period already exists at path: " + newFile.getPath());
-                m_logger.error("Consider using a more specific timestamp in your filename or cleaning up your export data directory.");
-                m_logger.error("ExportToFileClient will stop to prevent data loss.");
-                throw new RuntimeException();
-            }
+            CountingOutputStream out = openFile(handle);
             try {
-                OutputStreamWriter osw = new OutputStreamWriter(new FileOutputStream(newFile, false), "UTF-8");
+                OutputStreamWriter osw = new OutputStreamWriter(out, "UTF-8");
                 if (m_fullDelimiters != null) {
                     writer = new CSVWriter(new BufferedWriter(osw, 4096 * 4),
                             m_fullDelimiters[0], m_fullDelimiters[1], m_fullDelimiters[2], String.valueOf(m_fullDelimiters[3]));
@@ -388,6 +476,43 @@ public class ExportToFileClient extends ExportClientBase2 {
             return writer;
         }
 
+        /**
+         * Get the writer for one shard of a table. Each shard is written by a
+         * single thread, but the map is shared by all of them.
+         */
+        ExportRowCSVWriter getRowWriter(String tableName, long generation, int shard) {
+            FileHandle handle = new FileHandle(tableName, generation, shard);
+            synchronized (m_rowWriters) {
+                ExportRowCSVWriter writer = m_rowWriters.get(handle);
+                if (writer != null) {
+                    return writer;
+                }
+                CountingOutputStream out = openFile(handle);
+                if (m_fullDelimiters != null) {
+                    writer = new ExportRowCSVWriter(out, ROW_WRITER_BUFFER_SIZE,
+                            m_fullDelimiters[0], m_fullDelimiters[1], m_fullDelimiters[2],
+                            String.valueOf(m_fullDelimiters[3]), null,
+                            m_binaryEncoding, m_firstfield, m_timeZone);
+                }
+                else if (m_delimiter == ',') {
+                    // CSV
+                    writer = new ExportRowCSVWriter(out, ROW_WRITER_BUFFER_SIZE,
+                            m_delimiter, CSVWriter.DEFAULT_QUOTE_CHARACTER, CSVWriter.DEFAULT_ESCAPE_CHARACTER,
+                            CSVWriter.DEFAULT_LINE_END, null,
+                            m_binaryEncoding, m_firstfield, m_timeZone);
+                }
+                else {
+                    // TSV, as CSVWriter.getStrictTSVWriter()
+                    writer = new ExportRowCSVWriter(out, ROW_WRITER_BUFFER_SIZE,
+                            '\t', CSVWriter.NO_QUOTE_CHARACTER, '\\',
+                            CSVWriter.DEFAULT_LINE_END, new char[] { '\r', '\n' },
+                            m_binaryEncoding, m_firstfield, m_timeZone);
+                }
+                m_rowWriters.put(handle, writer);
+                return writer;
+            }
+        }
+
         void writeSchema(String tableName, long generation, String schema) {
             // if no schema's enabled pretend like this worked
             if (!m_withSchema) return;
@@ -444,15 +569,24 @@ public class ExportToFileClient extends ExportClientBase2 {
 
 
     // This class outputs exported rows converted to CSV or TSV values
-    // for the table named in the constructor's AdvertisedDataSource
+    // for the table named in the constructor's AdvertisedDataSource,
+    // or for one shard of its partitions when m_writers is set
     class ExportToFileDecoder extends ExportDecoderBase {
         private final long m_generation;
         private final String m_tableName;
+        private final int m_shard;
         protected String m_schemaString = "ERROR SERIALIZING SCHEMA";
         private final HashSet<AdvertisedDataSource> m_sources = new HashSet<AdvertisedDataSource>();
         private FutureTask<CSVWriter> m_firstBlockTask;
         private CSVWriter m_writer;
 
+        // Used instead of the CSVWriter when sharded. A shard's blocks run on
+        // its executor on the server, the lock covers clients with several
+        // connections polling partitions of the same shard.
+        private final ReentrantLock m_shardLock = new ReentrantLock();
+        private ExportRowCSVWriter m_rowWriter;
+        private PeriodicExportContext m_rowWriterContext;
+
         private void resetWriter() {
             m_firstBlockTask = new FutureTask<CSVWriter>(new Callable<CSVWriter>() {
                 @Override
@@ -468,9 +602,18 @@ public class ExportToFileClient extends ExportClientBase2 {
                 AdvertisedDataSource source,
                 String tableName,
                 long generation) {
+            this(source, tableName, generation, -1);
+        }
+
+        public ExportToFileDecoder(
+                AdvertisedDataSource source,
+                String tableName,
+                long generation,
+                int shard) {
             super(source);
             m_generation = generation;
             m_tableName = tableName;
+            m_shard = shard;
 
             setSchemaForSource(source);
             resetWriter();
@@ -512,35 +655,32 @@ public class ExportToFileClient extends ExportClientBase2 {
 
         @Override
         public boolean processRow(int rowSize, byte[] rowData) {
-            // Grab the data row
-            Object[] row = null;
+            ExportRowCursor row = null;
             try {
-                row = decodeRow(rowData);
+                row = rowCursor(rowData);
             } catch (IOException e) {
                 m_logger.error("Unable to decode row for table: " + m_source.tableName);
                 return false;
             }
+            return processRow(row);
+        }
 
+        @Override
+        public boolean processRow(ExportRowCursor row) {
+            if (m_shard >= 0) {
+                try {
+                    m_rowWriter.writeRow(row);
+                }
+                catch (IOException x) {
+                    x.printStackTrace();
+                    return false;
+                }
+                return true;
+            }
             try {
                 String[] fields = new String[m_tableSchema.size() - m_firstfield];
-
                 for (int i = m_firstfield; i < m_tableSchema.size(); i++) {
-                    if (row[i] == null) {
-                        fields[i - m_firstfield] = "NULL";
-                    } else if (m_tableSchema.get(i) == VoltType.VARBINARY) {
-                        if (m_binaryEncoding == BinaryEncoding.HEX) {
-                            fields[i - m_firstfield] = Encoder.hexEncode((byte[]) row[i]);
-                        } else {
-                            fields[i - m_firstfield] = Encoder.base64Encode((byte[]) row[i]);
-                        }
-                    } else if (m_tableSchema.get(i) == VoltType.STRING) {
-                        fields[i - m_firstfield] = (String) row[i];
-                    } else if (m_tableSchema.get(i) == VoltType.TIMESTAMP) {
-                        TimestampType timestamp = (TimestampType) row[i];
-                        fields[i - m_firstfield] = m_ODBCDateformat.get().format(timestamp.asApproximateJavaDate());
-                    } else {
-                        fields[i - m_firstfield] = row[i].toString();
-                    }
+                    fields[i - m_firstfield] = formatField(row, i);
                 }
                 m_writer.writeNext(fields);
             }
@@ -551,6 +691,31 @@ public class ExportToFileClient extends ExportClientBase2 {
             return true;
         }
 
+        private String formatField(ExportRowCursor row, int i) {
+            if (row.isNull(i)) {
+                return "NULL";
+            }
+            switch (m_tableSchema.get(i)) {
+            case VARBINARY:
+                if (m_binaryEncoding == BinaryEncoding.HEX) {
+                    return Encoder.hexEncode(row.getBytes(i));
+                } else {
+                    return Encoder.base64Encode(row.getBytes(i));
+                }
+            case STRING:
+                return row.getString(i);
+            case TIMESTAMP:
+                // microseconds to milliseconds, as TimestampType.asApproximateJavaDate()
+                return m_ODBCDateformat.get().format(new Date(row.getLong(i) / 1000));
+            case FLOAT:
+                return Double.toString(row.getDouble(i));
+            case DECIMAL:
+                return row.getDecimal(i).toString();
+            default:
+                return Long.toString(row.getLong(i));
+            }
+        }
+
         /**
          * Get and hold the current batch folder.
          * Ask the batch object for a stream to write to.
@@ -558,6 +723,15 @@ public class ExportToFileClient extends ExportClientBase2 {
         @Override
         public void onBlockStart() {
             m_batchLock.readLock().lock();
+            if (m_shard >= 0) {
+                m_shardLock.lock();
+                if (m_rowWriterContext != m_current) {
+                    m_rowWriter = m_current.getRowWriter(m_tableName, m_generation, m_shard);
+                    m_current.writeSchema(m_tableName, m_generation, m_schemaString);
+                    m_rowWriterContext = m_current;
+                }
+                return;
+            }
             m_firstBlockTask.run();
             try {
                 m_writer = m_firstBlockTask.get();
@@ -572,21 +746,45 @@ public class ExportToFileClient extends ExportClientBase2 {
         @Override
         public void onBlockCompletion() {
             try {
-                m_writer.flush();
+                if (m_shard >= 0) {
+                    m_rowWriter.flush();
+                }
+                else {
+                    m_writer.flush();
+                }
+                if (m_maxFileBytes > 0 &&
+                        m_current.getBytesWritten(m_tableName, m_generation, m_shard) >= m_maxFileBytes) {
+                    requestRoll();
+                }
             } catch (Throwable t) {
                 Throwables.propagate(t);
             } finally {
+                if (m_shard >= 0) {
+                    m_shardLock.unlock();
+                }
                 m_batchLock.readLock().unlock();
             }
         }
 
+        @Override
+        public ListeningExecutorService getExecutor() {
+            if (m_shard >= 0) {
+                return m_shardExecutors[m_shard];
+            }
+            return super.getExecutor();
+        }
+
+        String getDecoderKey() {
+            return decoderKey(m_tableName, m_shard);
+        }
+
         @Override
         public void sourceNoLongerAdvertised(AdvertisedDataSource source) {
             m_batchLock.writeLock().lock();
             try {
                 HashMap<String, ExportToFileDecoder> decoders = m_tableDecoders.get(m_generation);
                 if (decoders != null) {
-                    decoders.remove(m_tableName);
+                    decoders.remove(getDecoderKey());
                     if (decoders.isEmpty()) {
                         m_tableDecoders.remove(m_generation);
                     }
@@ -632,6 +830,32 @@ public class ExportToFileClient extends ExportClientBase2 {
                               boolean autodiscoverTopology,
                               TimeZone tz,
                               BinaryEncoding be) {
+        this(delimiter, nonce, outdir, period, dateformatString, fullDelimiters,
+                firstfield, useAdminPorts, batched, withSchema, throughputMonitorPeriod,
+                autodiscoverTopology, tz, be, 0, 0);
+    }
+
+    /**
+     * @param writers       if positive, split each table by partition into this
+     *                      many files, each written by its own thread
+     * @param maxFileBytes  if positive, also roll once a file reaches this size
+     */
+    public ExportToFileClient(char delimiter,
+                              String nonce,
+                              File outdir,
+                              int period,
+                              String dateformatString,
+                              String fullDelimiters,
+                              int firstfield,
+                              boolean useAdminPorts,
+                              boolean batched,
+                              boolean withSchema,
+                              int throughputMonitorPeriod,
+                              boolean autodiscoverTopology,
+                              TimeZone tz,
+                              BinaryEncoding be,
+                              int writers,
+                              long maxFileBytes) {
         super(useAdminPorts, throughputMonitorPeriod, autodiscoverTopology);
         configureInternal(
                 delimiter,
@@ -644,33 +868,41 @@ public class ExportToFileClient extends ExportClientBase2 {
                 batched,
                 withSchema,
                 tz,
-                be);
+                be,
+                writers,
+                maxFileBytes);
     }
 
     @Override
     public ExportToFileDecoder constructExportDecoder(AdvertisedDataSource source) {
         m_batchLock.writeLock().lock();
         try {
-            // For every source that provides part of a table, use the same
-            // export decoder.
+            // For every source that provides part of a table (or of one
+            // shard of the table), use the same export decoder.
             String table_name = source.tableName;
+            int shard = (m_writers > 0) ? source.partitionId % m_writers : -1;
+            String key = decoderKey(table_name, shard);
             HashMap<String, ExportToFileDecoder> decoders = m_tableDecoders.get(source.m_generation);
             if (decoders == null) {
                 decoders = new HashMap<String, ExportToFileDecoder>();
                 m_tableDecoders.put(source.m_generation, decoders);
             }
-            ExportToFileDecoder decoder = decoders.get(table_name);
+            ExportToFileDecoder decoder = decoders.get(key);
             if (decoder == null) {
-                decoder = new ExportToFileDecoder(source, table_name, source.m_generation);
-                decoders.put(table_name, decoder);
+                decoder = new ExportToFileDecoder(source, table_name, source.m_generation, shard);
+                decoders.put(key, decoder);
             }
             decoder.m_sources.add(source);
-            return decoders.get(table_name);
+            return decoders.get(key);
         } finally {
             m_batchLock.writeLock().unlock();
         }
     }
 
+    static String decoderKey(String tableName, int shard) {
+        return (shard < 0) ? tableName : tableName + "-" + shard;
+    }
+
     @Override
     public void shutdown() {
         m_ses.shutdown();
@@ -679,8 +911,41 @@ public class ExportToFileClient extends ExportClientBase2 {
         } catch( InterruptedException iex) {
             Throwables.propagate(iex);
         }
+        // Let the shard writers finish the blocks and the sourceNoLongerAdvertised
+        // tasks already queued to them before closing, they need the batch lock
+        if (m_shardExecutors != null) {
+            for (ListeningExecutorService es : m_shardExecutors) {
+                es.shutdown();
+            }
+            try {
+                for (ListeningExecutorService es : m_shardExecutors) {
+                    es.awaitTermination(365, TimeUnit.DAYS);
+                }
+            } catch (InterruptedException iex) {
+                Throwables.propagate(iex);
+            }
+        }
         m_batchLock.writeLock().lock();
-        m_current.closeAllWriters();
+        try {
+            m_current.closeAllWriters();
+        } finally {
+            m_batchLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Roll as soon as the rotation thread gets to it, because a file has
+     * grown past m_maxFileBytes. Called with the batch read lock held, so
+     * this can't roll directly.
+     */
+    void requestRoll() {
+        if (m_rollRequested.compareAndSet(false, true)) {
+            try {
+                m_ses.execute(m_rotator);
+            } catch (RejectedExecutionException e) {
+                // shutting down, the final batch is closed by shutdown()
+            }
+        }
     }
 
     /**
@@ -693,6 +958,7 @@ public class ExportToFileClient extends ExportClientBase2 {
         final PeriodicExportContext previous = m_current;
         try {
             m_current = new PeriodicExportContext();
+            m_rollRequested.set(false);
 
             m_logger.trace("Rolling batch.");
 
@@ -735,6 +1001,14 @@ public class ExportToFileClient extends ExportClientBase2 {
                 m_dateFormatOriginalString));
         m_logger.info(String.format("Rotate export files every %d minute%s",
                 m_period, m_period == 1 ? "" : "s"));
+        if (m_maxFileBytes > 0) {
+            m_logger.info(String.format("Rotate export files early once one reaches %d bytes",
+                    m_maxFileBytes));
+        }
+        if (m_writers > 0) {
+            m_logger.info(String.format("Writing each table to %d files in parallel",
+                    m_writers));
+        }
         m_logger.info(String.format("Writing export files to dir: %s",
                 m_outDir));
         if (m_firstfield == 0) {
@@ -763,7 +1037,9 @@ public class ExportToFileClient extends ExportClientBase2 {
                         + "[--user export_username] "
                         + "[--password export_password]"
                         + "[--timezone GMT+0]"
-                        + "[--binaryencoding [ HEX | BASE64 ]]");
+                        + "[--binaryencoding [ HEX | BASE64 ]]"
+                        + "[--writers files_per_table] "
+                        + "[--max-file-size rolling_size_in_megabytes]");
         System.out.println("Note that server hostnames may be appended with a specific port:");
         System.out.println("  --servers server1:port1[,server2:port2,...,serverN:portN]");
 
@@ -788,6 +1064,8 @@ public class ExportToFileClient extends ExportClientBase2 {
         boolean autodiscoverTopolgy = true;
         TimeZone tz = VoltDB.GMT_TIMEZONE;
         BinaryEncoding be = BinaryEncoding.HEX;
+        int writers = 0;
+        long maxFileBytes = 0;
 
         for (int ii = 0; ii < args.length; ii++) {
             String arg = args[ii];
@@ -958,6 +1236,30 @@ public class ExportToFileClient extends ExportClientBase2 {
                 }
                 ii++;
             }
+            else if (arg.equals("--writers")) {
+                if (args.length < ii + 1) {
+                    System.err.println("Error: Not enough args following --writers");
+                    printHelpAndQuit(-1);
+                }
+                writers = Integer.parseInt(args[ii + 1].trim());
+                if (writers < 1) {
+                    System.err.println("Error: Specified value for --writers must be >= 1.");
+                    printHelpAndQuit(-1);
+                }
+                ii++;
+            }
+            else if (arg.equals("--max-file-size")) {
+                if (args.length < ii + 1) {
+                    System.err.println("Error: Not enough args following --max-file-size");
+                    printHelpAndQuit(-1);
+                }
+                maxFileBytes = Long.parseLong(args[ii + 1].trim()) * 1024 * 1024;
+                if (maxFileBytes < 1) {
+                    System.err.println("Error: Specified value for --max-file-size must be >= 1.");
+                    printHelpAndQuit(-1);
+                }
+                ii++;
+            }
             else if (arg.equals("--disable-topology-autodiscovery")) {
                 autodiscoverTopolgy = false;
             }
@@ -1016,7 +1318,9 @@ public class ExportToFileClient extends ExportClientBase2 {
                                                            throughputMonitorPeriod,
                                                            autodiscoverTopolgy,
                                                            tz,
-                                                           be);
+                                                           be,
+                                                           writers,
+                                                           maxFileBytes);
 
         // add all of the servers specified
         for (String server : volt_servers) {
@@ -1107,6 +1411,15 @@ public class ExportToFileClient extends ExportClientBase2 {
         BinaryEncoding encoding = BinaryEncoding.valueOf(
                 conf.getProperty("binaryencoding", "HEX").trim().toUpperCase());
 
+        int writers = Integer.parseInt(conf.getProperty("writers", "0").trim());
+        if (writers < 0) {
+            throw new IllegalArgumentException("Error: Specified value for writers must be >= 0.");
+        }
+        long maxFileBytes = Long.parseLong(conf.getProperty("maxfilesize", "0").trim()) * 1024 * 1024;
+        if (maxFileBytes < 0) {
+            throw new IllegalArgumentException("Error: Specified value for maxfilesize must be >= 0.");
+        }
+
         configureInternal(
                 delimiter,
                 nonce,
@@ -1118,7 +1431,9 @@ public class ExportToFileClient extends ExportClientBase2 {
                 batched,
                 withSchema,
                 tz,
-                encoding);
+                encoding,
+                writers,
+                maxFileBytes);
     }
 
     private void configureInternal(
@@ -1132,7 +1447,9 @@ public class ExportToFileClient extends ExportClientBase2 {
                               boolean batched,
                               boolean withSchema,
                               final TimeZone tz,
-                              final BinaryEncoding be) {
+                              final BinaryEncoding be,
+                              int writers,
+                              long maxFileBytes) {
         m_delimiter = delimiter;
         m_extension = (delimiter == ',') ? ".csv" : ".tsv";
         m_nonce = nonce;
@@ -1157,6 +1474,7 @@ public class ExportToFileClient extends ExportClientBase2 {
             }
         };
         m_binaryEncoding = be;
+        m_timeZone = tz;
         m_firstfield = firstfield;
         m_batched = batched;
         m_withSchema = withSchema;
@@ -1172,13 +1490,26 @@ public class ExportToFileClient extends ExportClientBase2 {
             m_fullDelimiters = null;
         }
 
+        m_maxFileBytes = maxFileBytes;
+        m_writers = writers;
+        if (m_writers > 0) {
+            if (m_fullDelimiters != null && !ExportRowCSVWriter.isAscii(m_fullDelimiters)) {
+                throw new IllegalArgumentException("Multiple writers require ASCII delimiters.");
+            }
+            m_shardExecutors = new ListeningExecutorService[m_writers];
+            for (int i = 0; i < m_writers; i++) {
+                m_shardExecutors[i] =
+                        CoreUtils.getSingleThreadExecutor("Export file writer " + i + " for nonce " + nonce);
+            }
+        }
+
         // init the batch system with the first batch
         assert(m_current == null);
         m_current = new PeriodicExportContext();
 
 
         // schedule rotations every m_period minutes
-        Runnable rotator = new Runnable() {
+        m_rotator = new Runnable() {
             @Override
             public void run() {
                 try {
@@ -1191,6 +1522,6 @@ public class ExportToFileClient extends ExportClientBase2 {
         m_ses =
                 CoreUtils.getScheduledThreadPoolExecutor(
                         "Export file rotate timer for nonce " + nonce, 1, CoreUtils.SMALL_STACK_SIZE);
-        m_ses.scheduleWithFixedDelay(rotator, m_period, m_period, TimeUnit.MINUTES);
+        m_ses.scheduleWithFixedDelay(m_rotator, m_period, m_period, TimeUnit.MINUTES);
     }
 }
@@ -20,7 +20,6 @@
 package org.voltdb.exportclient;
 
 import java.io.IOException;
-import java.math.BigDecimal;
 import java.sql.*;
 import java.util.Properties;
 
@@ -172,40 +171,43 @@ public class PostgreSQLExportClient extends ExportClientBase {
 
         @Override
         public boolean processRow(int rowSize, byte[] rowData) {
-            m_logger.debug("In processRow for table " + m_source.tableName);
-
-            Object[] row = null;
+            ExportRowCursor row = null;
             try {
-                row = decodeRow(rowData);
+                row = rowCursor(rowData);
             } catch (IOException e) {
                 m_logger.error("Unable to decode row for table: " + m_source.tableName);
                 return false;
             }
+            return processRow(row);
+        }
+
+        @Override
+        public boolean processRow(ExportRowCursor row) {
+            m_logger.debug("In processRow for table " + m_source.tableName);
 
             try {
                 for (int i = 0; i < m_source.columnTypes.size(); i++) {
-                    if (row[i] == null) {
+                    if (row.isNull(i)) {
                         pstmt.setNull(i + 1, Types.NULL);
                     } else if (m_source.columnTypes.get(i) == VoltType.DECIMAL) {
-                        pstmt.setBigDecimal(i + 1, (BigDecimal)row[i]);
+                        pstmt.setBigDecimal(i + 1, row.getDecimal(i));
                     } else if (m_source.columnTypes.get(i) == VoltType.TINYINT) {
-                        pstmt.setByte(i + 1, (Byte)row[i]);
+                        pstmt.setByte(i + 1, (byte)row.getLong(i));
                     } else if (m_source.columnTypes.get(i) == VoltType.SMALLINT) {
-                        pstmt.setShort(i + 1, (Short)row[i]);
+                        pstmt.setShort(i + 1, (short)row.getLong(i));
                     } else if (m_source.columnTypes.get(i) == VoltType.INTEGER) {
-                        pstmt.setInt(i + 1, (Integer)row[i]);
+                        pstmt.setInt(i + 1, (int)row.getLong(i));
                     } else if (m_source.columnTypes.get(i) == VoltType.BIGINT) {
-                        pstmt.setLong(i + 1, (Long)row[i]);
+                        pstmt.setLong(i + 1, row.getLong(i));
                     } else if (m_source.columnTypes.get(i) == VoltType.FLOAT) {
-                        pstmt.setDouble(i + 1, (Double)row[i]);
+                        pstmt.setDouble(i + 1, row.getDouble(i));
                     } else if (m_source.columnTypes.get(i) == VoltType.STRING) {
-                        pstmt.setString(i + 1, (String)row[i]);
+                        pstmt.setString(i + 1, row.getString(i));
                     } else if (m_source.columnTypes.get(i) == VoltType.TIMESTAMP) {
-                        TimestampType timestamp = (TimestampType)row[i];
+                        TimestampType timestamp = new TimestampType(row.getLong(i));
                         pstmt.setTimestamp(i + 1, timestamp.asJavaTimestamp());
                     } else if (m_source.columnTypes.get(i) == VoltType.VARBINARY) {
-                        byte[] bytes = (byte[])row[i];
-                        pstmt.setBytes(i + 1, bytes);
+                        pstmt.setBytes(i + 1, row.getBytes(i));
                     }
                 }
 
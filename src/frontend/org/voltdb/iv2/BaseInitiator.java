@@ -31,6 +31,7 @@ import org.voltdb.LoadedProcedureSet;
 import org.voltdb.MemoryStats;
 import org.voltdb.PartitionDRGateway;
 import org.voltdb.ProcedureRunnerFactory;
+import org.voltdb.SiteQueueStats;
 import org.voltdb.StarvationTracker;
 import org.voltdb.StatsAgent;
 import org.voltdb.SysProcSelector;
@@ -106,6 +107,11 @@ public abstract class BaseInitiator implements Initiator
         agent.registerStatsSource(SysProcSelector.STARVATION,
                                   getInitiatorHSId(),
                                   st);
+        SiteQueueStats qs = new SiteQueueStats(getInitiatorHSId());
+        m_scheduler.setQueueStats(qs);
+        agent.registerStatsSource(SysProcSelector.QUEUE,
+                                  getInitiatorHSId(),
+                                  qs);
 
         String partitionString = " ";
         if (m_partitionId != -1) {
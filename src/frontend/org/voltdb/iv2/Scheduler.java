@@ -26,6 +26,7 @@ import org.voltcore.messaging.TransactionInfoBaseMessage;
 import org.voltcore.messaging.VoltMessage;
 
 import org.voltdb.SiteProcedureConnection;
+import org.voltdb.SiteQueueStats;
 import org.voltdb.StarvationTracker;
 import org.voltdb.VoltDB;
 import org.voltdb.messaging.MultiPartitionParticipantMessage;
@@ -152,6 +153,10 @@ abstract public class Scheduler implements InitiatorMessageHandler
         m_tasks.setStarvationTracker(tracker);
     }
 
+    public void setQueueStats(SiteQueueStats stats) {
+        m_tasks.setQueueStats(stats);
+    }
+
     public void setLock(Object o) {
         m_lock = o;
     }
@@ -17,6 +17,7 @@
 
 package org.voltdb.iv2;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Deque;
 import java.util.HashMap;
@@ -34,6 +35,7 @@ import org.voltcore.messaging.TransactionInfoBaseMessage;
 import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.EstTime;
 import org.voltcore.utils.Pair;
+import org.voltcore.utils.RateLimitedLogger;
 import org.voltdb.BackendTarget;
 import org.voltdb.CatalogContext;
 import org.voltdb.CatalogSpecificPlanner;
@@ -42,6 +44,7 @@ import org.voltdb.FragmentPlanSource;
 import org.voltdb.HsqlBackend;
 import org.voltdb.IndexStats;
 import org.voltdb.LoadedProcedureSet;
+import org.voltdb.Memory;
 import org.voltdb.MemoryStats;
 import org.voltdb.ParameterSet;
 import org.voltdb.PartitionDRGateway;
@@ -63,6 +66,7 @@ import org.voltdb.catalog.CatalogMap;
 import org.voltdb.catalog.Cluster;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Table;
+import org.voltdb.compiler.LiveDatabaseEstimates;
 import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.dtxn.TransactionState;
 import org.voltdb.exceptions.EEException;
@@ -84,6 +88,7 @@ import com.google.common.collect.ImmutableMap;
 public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConnection, FragmentPlanSource
 {
     private static final VoltLogger hostLog = new VoltLogger("HOST");
+    private static final RateLimitedLogger antiCacheLog = new RateLimitedLogger(60 * 1000, hostLog, Level.INFO);
 
     // Set to false trigger shutdown.
     volatile boolean m_shouldContinue = true;
@@ -130,6 +135,8 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     final TableStats m_tableStats;
     final IndexStats m_indexStats;
     final MemoryStats m_memStats;
+    // this site's cold storage eviction state
+    private final Memory.Eviction m_eviction = new Memory.Eviction();
 
     // Each execution site manages snapshot using a SnapshotSiteProcessor
     private SnapshotSiteProcessor m_snapshotter;
@@ -450,6 +457,10 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
                             this);
                 eeTemp.loadCatalog( timestamp, serializedCatalog);
             }
+            if (Memory.coldStorageIsEnabled()) {
+                eeTemp.antiCacheInitialize(new File(m_context.cluster.getVoltroot(),
+                            "anticache" + File.separator + m_siteId));
+            }
         }
         // just print error info an bail if we run into an error here
         catch (final Exception ex) {
@@ -677,8 +688,9 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     }
 
     @Override
-    public void loadTable(long txnId, String clusterName, String databaseName,
-            String tableName, VoltTable data) throws VoltAbortException
+    public VoltTable loadTable(long txnId, String clusterName, String databaseName,
+            String tableName, VoltTable data, boolean returnConstraintViolations)
+    throws VoltAbortException
     {
         Cluster cluster = m_context.cluster;
         if (cluster == null) {
@@ -693,7 +705,15 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
             throw new VoltAbortException("table '" + tableName + "' does not exist in database " + clusterName + "." + databaseName);
         }
 
+        if (returnConstraintViolations) {
+            return m_ee.loadTable(table.getRelativeIndex(), data,
+                    txnId,
+                    m_lastCommittedSpHandle,
+                    getNextUndoToken(),
+                    true);
+        }
         loadTable(txnId, table.getRelativeIndex(), data);
+        return null;
     }
 
     @Override
@@ -792,6 +812,18 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
 
         m_ee.tick(time, m_lastCommittedSpHandle);
         statsTick(time);
+        // decide from what the EEs of this host hold, as just updated above
+        if (Memory.coldStorageIsEnabled() && m_memStats != null) {
+            final long eeMemoryKB = m_memStats.getEEMemoryKB();
+            if (m_eviction.shouldBeMoveOnDisk(eeMemoryKB)) {
+                final long evicted = m_ee.antiCacheEvict();
+                m_eviction.evicted(evicted, eeMemoryKB);
+                if (evicted > 0) {
+                    antiCacheLog.log("Site " + CoreUtils.hsIdToString(m_siteId) + " evicted " +
+                            (evicted / 1024) + "KB of cold tuple blocks to disk", time);
+                }
+            }
+        }
     }
 
     /**
@@ -828,10 +860,13 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
                 assert(stats != null);
 
                 // rollup the table memory stats for this site
+                final Map<String, Long> rowCounts = new HashMap<String, Long>();
                 while (stats.advanceRow()) {
                     //Assert column index matches name for ENG-4092
+                    assert(stats.getColumnName(5).equals("TABLE_NAME"));
                     assert(stats.getColumnName(7).equals("TUPLE_COUNT"));
                     tupleCount += stats.getLong(7);
+                    rowCounts.put(stats.getString(5), stats.getLong(7));
                     assert(stats.getColumnName(8).equals("TUPLE_ALLOCATED_MEMORY"));
                     tupleAllocatedMem += (int) stats.getLong(8);
                     assert(stats.getColumnName(9).equals("TUPLE_DATA_MEMORY"));
@@ -840,6 +875,8 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
                     stringMem += (int) stats.getLong(10);
                 }
                 stats.resetRowPosition();
+                // let the ad hoc planner cost plans with these row counts
+                LiveDatabaseEstimates.updateSiteRowCounts(m_siteId, rowCounts);
 
                 m_tableStats.setStatsTable(stats);
             }
@@ -870,7 +907,8 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
                                             tupleAllocatedMem,
                                             indexMem,
                                             stringMem,
-                                            m_ee.getThreadLocalPoolAllocations());
+                                            m_ee.getThreadLocalPoolAllocations(),
+                                            (int) (m_ee.getTempTableMemory() / 1024));
             }
         }
     }
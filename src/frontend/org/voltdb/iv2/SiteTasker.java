@@ -25,6 +25,9 @@ import org.voltdb.SiteProcedureConnection;
 
 public abstract class SiteTasker {
 
+    // When this task was last offered to a SiteTaskerQueue, for wait-time stats.
+    long m_queueOfferNanos;
+
     /**
      * Run executes the task. Run is called on the ExecutionSite thread
      * and has exclusive access to the ee. Tasks are not preempted.
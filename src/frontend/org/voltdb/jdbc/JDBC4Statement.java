@@ -27,7 +27,6 @@ import java.sql.SQLWarning;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -38,6 +37,7 @@ import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcCallException;
+import org.voltdb.client.ProcedureCallback;
 
 public class JDBC4Statement implements java.sql.Statement
 {
@@ -105,24 +105,7 @@ public class JDBC4Statement implements java.sql.Statement
             {
                 ClientResponse response = e.getClientResponse();
                 if (response != null) {
-                    // Map response status to specific JDBC exception, mostly GENERAL_ERROR except
-                    // for connection problems.
-                    switch (response.getStatus()) {
-                    case ClientResponse.CONNECTION_LOST:
-                        throw SQLError.get(e, SQLError.CONNECTION_CLOSED, "CONNECTION_LOST", e.getMessage());
-                    case ClientResponse.CONNECTION_TIMEOUT:
-                        throw SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_TIMEOUT", e.getMessage());
-                    case ClientResponse.SERVER_UNAVAILABLE:
-                        throw SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_UNAVAILABLE", e.getMessage());
-                    case ClientResponse.USER_ABORT:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "USER_ABORT", e.getMessage());
-                    case ClientResponse.UNEXPECTED_FAILURE:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "UNEXPECTED_FAILURE", e.getMessage());
-                    case ClientResponse.GRACEFUL_FAILURE:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "GRACEFUL_FAILURE", e.getMessage());
-                    default:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, String.format("status=%d", (int)response.getStatus()), e.getMessage());
-                    }
+                    throw getResponseError(response, e, e.getMessage());
                 } else {
                     throw SQLError.get(e, SQLError.GENERAL_ERROR, e.getMessage());
                 }
@@ -133,6 +116,52 @@ public class JDBC4Statement implements java.sql.Statement
             }
         }
 
+        /**
+         * Submits the statement without waiting for it to complete. The
+         * callback gets the response, whether or not it succeeded.
+         */
+        protected void executeAsync(JDBC4ClientConnection connection, ProcedureCallback callback) throws SQLException
+        {
+            try
+            {
+                boolean queued;
+                if (this.type == TYPE_EXEC)
+                    queued = connection.executeAsync(callback, this.sql[0], this.parameters);
+                else
+                    queued = connection.executeAsync(callback, "@AdHoc", this.sql[0]);
+                if (!queued)
+                    throw SQLError.get(SQLError.CONNECTION_FAILURE, "CONNECTION_LOST");
+            }
+            catch(IOException e)
+            {
+                throw SQLError.get(e, SQLError.CONNECTION_FAILURE, e.getMessage());
+            }
+        }
+
+        /**
+         * Map response status to specific JDBC exception, mostly GENERAL_ERROR except
+         * for connection problems.
+         */
+        protected static SQLException getResponseError(ClientResponse response, Throwable cause, String message)
+        {
+            switch (response.getStatus()) {
+            case ClientResponse.CONNECTION_LOST:
+                return SQLError.get(cause, SQLError.CONNECTION_CLOSED, "CONNECTION_LOST", message);
+            case ClientResponse.CONNECTION_TIMEOUT:
+                return SQLError.get(cause, SQLError.CONNECTION_FAILURE, "CONNECTION_TIMEOUT", message);
+            case ClientResponse.SERVER_UNAVAILABLE:
+                return SQLError.get(cause, SQLError.CONNECTION_FAILURE, "CONNECTION_UNAVAILABLE", message);
+            case ClientResponse.USER_ABORT:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, "USER_ABORT", message);
+            case ClientResponse.UNEXPECTED_FAILURE:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, "UNEXPECTED_FAILURE", message);
+            case ClientResponse.GRACEFUL_FAILURE:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, "GRACEFUL_FAILURE", message);
+            default:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, String.format("status=%d", (int)response.getStatus()), message);
+            }
+        }
+
         public static boolean isUpdateResult(VoltTable table)
         {
             return ((table.getColumnName(0).length() == 0 || table.getColumnName(0).equals("modified_tuples"))&& table.getRowCount() == 1 && table.getColumnCount() == 1 && table.getColumnType(0) == VoltType.BIGINT);
@@ -465,6 +494,11 @@ public class JDBC4Statement implements java.sql.Statement
     }
 
     // Submits a batch of commands to the database for execution and if all commands execute successfully, returns an array of update counts.
+    // Runs of INSERTs and procedure calls are sent without waiting for each other, up to MAX_BATCH_IN_FLIGHT at a
+    // time. Any other command waits for everything before it to complete and completes before anything after it is
+    // sent, as its effects may depend on or affect the rows of the commands around it. Procedure calls act the same
+    // way when BATCH_CALL_BARRIER is set. Nothing more is sent after a failure;
+    // the update counts then cover the commands that were sent, in batch order, with EXECUTE_FAILED for failures.
     @Override
     public int[] executeBatch() throws SQLException
     {
@@ -472,23 +506,150 @@ public class JDBC4Statement implements java.sql.Statement
         closeCurrentResult();
         if (batch == null || batch.size() == 0)
             return new int[0];
-        int[] updateCounts = new int[batch.size()];
-        for(int i=0;i<batch.size();i++)
+        final BatchResponses responses = new BatchResponses(batch.size(), MAX_BATCH_IN_FLIGHT);
+        int sent = 0;
+        SQLException sendError = null;
+        try
         {
-            try
+            while (sent < batch.size() && !responses.hasFailure())
+            {
+                final VoltSQL query = batch.get(sent);
+                final boolean barrier = BATCH_CALL_BARRIER ?
+                        !query.isOfType(VoltSQL.TYPE_INSERT) :
+                        !query.isOfType(VoltSQL.TYPE_INSERT, VoltSQL.TYPE_EXEC);
+                if (barrier)
+                {
+                    responses.drain();
+                    if (responses.hasFailure())
+                        break;
+                }
+                responses.acquire();
+                try
+                {
+                    query.executeAsync(sourceConnection.NativeConnection, responses.callback(sent));
+                }
+                catch(SQLException x)
+                {
+                    responses.release();
+                    sendError = x;
+                    break;
+                }
+                sent++;
+                if (barrier)
+                    responses.drain();
+            }
+            responses.drain();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw SQLError.get(e, SQLError.GENERAL_ERROR, e.getMessage());
+        }
+
+        int[] updateCounts = new int[sendError == null ? sent : sent + 1];
+        SQLException firstError = null;
+        for(int i=0;i<sent;i++)
+        {
+            ClientResponse response = responses.get(i);
+            if (response.getStatus() == ClientResponse.SUCCESS)
             {
-                setCurrentResult(null, (int)batch.get(i).execute(sourceConnection.NativeConnection)[0].fetchRow(0).getLong(0));
-                updateCounts[i] = this.lastUpdateCount;
+                updateCounts[i] = (int)response.getResults()[0].fetchRow(0).getLong(0);
+                setCurrentResult(null, updateCounts[i]);
             }
-            catch(SQLException x)
+            else
             {
                 updateCounts[i] = EXECUTE_FAILED;
-                throw new BatchUpdateException(Arrays.copyOf(updateCounts, i+1), x);
+                if (firstError == null)
+                    firstError = VoltSQL.getResponseError(response, response.getException(), response.getStatusString());
             }
         }
+        if (sendError != null)
+        {
+            updateCounts[sent] = EXECUTE_FAILED;
+            if (firstError == null)
+                firstError = sendError;
+        }
+        if (firstError != null)
+            throw new BatchUpdateException(updateCounts, firstError);
         return updateCounts;
     }
 
+    // Most batch commands that may be waiting on the database at once.
+    static final int MAX_BATCH_IN_FLIGHT = Integer.getInteger("voltdb.jdbc.maxBatchInFlight", 128);
+
+    // Makes each procedure call in a batch wait for the commands before it, for procedures
+    // that read what earlier calls of the batch wrote to other partitions.
+    static final boolean BATCH_CALL_BARRIER = Boolean.getBoolean("voltdb.jdbc.batchCallBarrier");
+
+    /**
+     * Responses to the commands of a batch sent asynchronously, by position
+     * in the batch, and the count of commands still waiting on the database.
+     */
+    static class BatchResponses
+    {
+        private final ClientResponse[] responses;
+        private final int maxInFlight;
+        private int inFlight = 0;
+        private boolean failed = false;
+
+        BatchResponses(int size, int maxInFlight)
+        {
+            this.responses = new ClientResponse[size];
+            this.maxInFlight = Math.max(1, maxInFlight);
+        }
+
+        // Waits for room to send one more command.
+        synchronized void acquire() throws InterruptedException
+        {
+            while (inFlight >= maxInFlight)
+                wait();
+            inFlight++;
+        }
+
+        // Gives back the room of a command that could not be sent.
+        synchronized void release()
+        {
+            inFlight--;
+            notifyAll();
+        }
+
+        // Waits until no command is waiting on the database.
+        synchronized void drain() throws InterruptedException
+        {
+            while (inFlight > 0)
+                wait();
+        }
+
+        synchronized void completed(int index, ClientResponse response)
+        {
+            responses[index] = response;
+            if (response.getStatus() != ClientResponse.SUCCESS)
+                failed = true;
+            release();
+        }
+
+        synchronized boolean hasFailure()
+        {
+            return failed;
+        }
+
+        synchronized ClientResponse get(int index)
+        {
+            return responses[index];
+        }
+
+        ProcedureCallback callback(final int index)
+        {
+            return new ProcedureCallback() {
+                @Override
+                public void clientCallback(ClientResponse response) throws Exception
+                {
+                    completed(index, response);
+                }
+            };
+        }
+    }
+
     protected ResultSet executeQuery(VoltSQL query) throws SQLException
     {
         setCurrentResult(query.execute(this.sourceConnection.NativeConnection), -1);
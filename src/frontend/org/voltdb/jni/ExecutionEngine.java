@@ -17,6 +17,7 @@
 
 package org.voltdb.jni;
 
+import java.io.File;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.Arrays;
@@ -44,6 +45,8 @@ import org.voltdb.export.ExportProtoMessage;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.utils.LogKeys;
 
+import com.google.common.base.Charsets;
+
 /**
  * Wrapper for native Execution Engine library. There are two implementations,
  * one using JNI and one using IPC. ExecutionEngine provides a consistent interface
@@ -368,9 +371,29 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
 
     abstract public long getThreadLocalPoolAllocations();
 
-    abstract public void loadTable(
+    /** Bytes held by the temp tables of the plan fragments the EE has cached. */
+    abstract public long getTempTableMemory();
+
+    public void loadTable(
+        int tableId, VoltTable table, long spHandle,
+        long lastCommittedSpHandle) throws EEException
+    {
+        loadTable(tableId, table, spHandle, lastCommittedSpHandle, Long.MAX_VALUE, false);
+    }
+
+    /**
+     * Load rows into a persistent table.
+     * @param undoToken Token of the undo quantum the rows are inserted under,
+     *        only used when returnConstraintViolations is set
+     * @param returnConstraintViolations If true, insert the rows with undo and skip the
+     *        ones that violate a constraint instead of treating that as a fatal error
+     * @return The skipped rows in a table with the schema of the persistent table,
+     *         or null if returnConstraintViolations is false
+     */
+    abstract public VoltTable loadTable(
         int tableId, VoltTable table, long spHandle,
-        long lastCommittedSpHandle) throws EEException;
+        long lastCommittedSpHandle, long undoToken,
+        boolean returnConstraintViolations) throws EEException;
 
     /**
      * Set the log levels to be used when logging in this engine
@@ -393,6 +416,35 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
      */
     abstract public void quiesce(long lastCommittedSpHandle);
 
+    /**
+     * Have the EE keep the tuple blocks it evicts under cold storage in
+     * directory. Blocks left there by an earlier process can't be read
+     * back by this one, so they are removed first.
+     */
+    public void antiCacheInitialize(File directory) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            VoltDB.crashLocalVoltDB("Unable to create anti-cache directory " + directory, false, null);
+        }
+        File[] stale = directory.listFiles();
+        if (stale != null) {
+            for (File block : stale) {
+                if (block.getName().endsWith(".block") && !block.delete()) {
+                    VoltDB.crashLocalVoltDB("Unable to remove stale anti-cache block " + block, false, null);
+                }
+            }
+        }
+        coreAntiCacheInitialize(directory.getPath().getBytes(Charsets.UTF_8));
+    }
+
+    abstract protected void coreAntiCacheInitialize(byte[] directory);
+
+    /**
+     * Evict the coldest tuple blocks, up to the configured percentage of
+     * the resident tuple memory, to the anti-cache.
+     * @return bytes of tuple memory released
+     */
+    abstract public long antiCacheEvict();
+
     /**
      * Retrieve a set of statistics using the specified selector from the StatisticsSelector enum.
      * @param selector Selector from StatisticsSelector specifying what statistics to retrieve
@@ -555,9 +607,12 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
      * @param serialized_table the table data to be loaded
      * @param Length of the serialized table
      * @param undoToken token for undo quantum where changes should be logged.
+     * @param returnConstraintViolations log the inserts for undo and return the rows
+     *        that violate a constraint in the result buffer
      */
     protected native int nativeLoadTable(long pointer, int table_id, byte[] serialized_table,
-            long spHandle, long lastCommittedSpHandle);
+            long spHandle, long lastCommittedSpHandle, long undoToken,
+            boolean returnConstraintViolations);
 
     /**
      * Executes multiple plan fragments with the given parameter sets and gets the results.
@@ -598,6 +653,10 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
      */
     protected native void nativeQuiesce(long pointer, long lastCommittedSpHandle);
 
+    protected native void nativeAntiCacheInitialize(long pointer, byte[] directory);
+
+    protected native long nativeAntiCacheEvict(long pointer);
+
     /**
      * Retrieve a set of statistics using the specified selector ordinal from the StatisticsSelector enum.
      * @param stat_selector Ordinal value of a statistic selector from StatisticsSelector.
@@ -640,6 +699,8 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
      */
     protected static native long nativeGetThreadLocalPoolAllocations();
 
+    protected native long nativeGetTempTableMemory(long pointer);
+
     /**
      * @param nextUndoToken The undo token to associate with future work
      * @return true for success false for failure
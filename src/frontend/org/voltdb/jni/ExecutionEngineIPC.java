@@ -120,7 +120,10 @@ public class ExecutionEngineIPC extends ExecutionEngine {
         Hashinate(23),
         GetPoolAllocations(24),
         GetUSOs(25),
-        updateHashinator(27);
+        updateHashinator(27),
+        AntiCacheInitialize(28),
+        AntiCacheEvict(29),
+        GetTempTableMemory(30);
         Commands(final int id) {
             m_id = id;
         }
@@ -693,6 +696,48 @@ public class ExecutionEngineIPC extends ExecutionEngine {
         checkErrorCode(result);
     }
 
+    @Override
+    protected void coreAntiCacheInitialize(byte[] directory) {
+        int result = ExecutionEngine.ERRORCODE_ERROR;
+        m_data.clear();
+        m_data.putInt(Commands.AntiCacheInitialize.m_id);
+        m_data.putInt(directory.length);
+        m_data.put(directory);
+        try {
+            m_data.flip();
+            m_connection.write();
+            result = m_connection.readStatusByte();
+        } catch (final IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+            throw new RuntimeException(e);
+        }
+        checkErrorCode(result);
+    }
+
+    @Override
+    public long antiCacheEvict() {
+        m_data.clear();
+        m_data.putInt(Commands.AntiCacheEvict.m_id);
+        try {
+            m_data.flip();
+            m_connection.write();
+
+            m_connection.readStatusByte();
+            ByteBuffer evicted = ByteBuffer.allocate(8);
+            while (evicted.hasRemaining()) {
+                int read = m_connection.m_socketChannel.read(evicted);
+                if (read <= 0) {
+                    throw new EOFException();
+                }
+            }
+            evicted.flip();
+            return evicted.getLong();
+        } catch (final IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+            throw new RuntimeException(e);
+        }
+    }
+
     private void sendPlanFragmentsInvocation(final Commands cmd,
             final int numFragmentIds,
             final long[] planFragmentIds,
@@ -818,8 +863,9 @@ public class ExecutionEngineIPC extends ExecutionEngine {
 
 
     @Override
-    public void loadTable(final int tableId, final VoltTable table, final long spHandle,
-            final long lastCommittedSpHandle)
+    public VoltTable loadTable(final int tableId, final VoltTable table, final long spHandle,
+            final long lastCommittedSpHandle, final long undoToken,
+            final boolean returnConstraintViolations)
     throws EEException
     {
         m_data.clear();
@@ -827,6 +873,8 @@ public class ExecutionEngineIPC extends ExecutionEngine {
         m_data.putInt(tableId);
         m_data.putLong(spHandle);
         m_data.putLong(lastCommittedSpHandle);
+        m_data.putLong(undoToken);
+        m_data.put((byte)(returnConstraintViolations ? 1 : 0));
 
         final ByteBuffer tableBytes = table.getTableDataReference();
         if (m_data.remaining() < tableBytes.remaining()) {
@@ -856,8 +904,38 @@ public class ExecutionEngineIPC extends ExecutionEngine {
             throw new RuntimeException(e);
         }
 
+        if (!returnConstraintViolations) {
+            if (result != ExecutionEngine.ERRORCODE_SUCCESS) {
+                throw new EEException(result);
+            }
+            return null;
+        }
+
+        // the backend sends the exception or the violations table after the status
         if (result != ExecutionEngine.ERRORCODE_SUCCESS) {
-            throw new EEException(result);
+            throwExceptionForError(result);
+        }
+        try {
+            final ByteBuffer messageLengthBuffer = ByteBuffer.allocate(4);
+            while (messageLengthBuffer.hasRemaining()) {
+                int read = m_connection.m_socketChannel.read(messageLengthBuffer);
+                if (read == -1) {
+                    throw new EOFException("End of file reading constraint violations(1)");
+                }
+            }
+            messageLengthBuffer.rewind();
+            final ByteBuffer messageBuffer = ByteBuffer.allocate(messageLengthBuffer.getInt());
+            while (messageBuffer.hasRemaining()) {
+                int read = m_connection.m_socketChannel.read(messageBuffer);
+                if (read == -1) {
+                    throw new EOFException("End of file reading constraint violations(2)");
+                }
+            }
+            messageBuffer.rewind();
+            return new FastDeserializer(messageBuffer).readObject(VoltTable.class);
+        } catch (final IOException e) {
+            System.out.println("IPC exception reading constraint violations: " + e.getMessage());
+            throw new RuntimeException(e);
         }
     }
 
@@ -1309,4 +1387,28 @@ public class ExecutionEngineIPC extends ExecutionEngine {
             throw new RuntimeException(e);
         }
     }
+
+    @Override
+    public long getTempTableMemory() {
+        m_data.clear();
+        m_data.putInt(Commands.GetTempTableMemory.m_id);
+        try {
+            m_data.flip();
+            m_connection.write();
+
+            m_connection.readStatusByte();
+            ByteBuffer tempTableMemory = ByteBuffer.allocate(8);
+            while (tempTableMemory.hasRemaining()) {
+                int read = m_connection.m_socketChannel.read(tempTableMemory);
+                if (read <= 0) {
+                    throw new EOFException();
+                }
+            }
+            tempTableMemory.flip();
+            return tempTableMemory.getLong();
+        } catch (final Exception e) {
+            System.out.println("Exception: " + e.getMessage());
+            throw new RuntimeException(e);
+        }
+    }
 }
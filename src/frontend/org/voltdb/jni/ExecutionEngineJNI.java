@@ -338,8 +338,9 @@ public class ExecutionEngineJNI extends ExecutionEngine {
     }
 
     @Override
-    public void loadTable(final int tableId, final VoltTable table,
-        final long txnId, final long lastCommittedTxnId) throws EEException
+    public VoltTable loadTable(final int tableId, final VoltTable table,
+        final long txnId, final long lastCommittedTxnId, final long undoToken,
+        final boolean returnConstraintViolations) throws EEException
     {
         if (LOG.isTraceEnabled()) {
             LOG.trace("loading table id=" + tableId + "...");
@@ -349,9 +350,26 @@ public class ExecutionEngineJNI extends ExecutionEngine {
             LOG.trace("passing " + serialized_table.length + " bytes to EE...");
         }
 
+        deserializer.clear();
         final int errorCode = nativeLoadTable(pointer, tableId, serialized_table,
-                                              txnId, lastCommittedTxnId);
-        checkErrorCode(errorCode);
+                                              txnId, lastCommittedTxnId,
+                                              undoToken, returnConstraintViolations);
+        try {
+            checkErrorCode(errorCode);
+            if (!returnConstraintViolations) {
+                return null;
+            }
+            FastDeserializer fds = fallbackBuffer == null ? deserializer : new FastDeserializer(fallbackBuffer);
+            try {
+                fds.readInt(); // ignore the length of the violations table
+                return fds.readObject(VoltTable.class);
+            } catch (final IOException ex) {
+                LOG.error("Failed to deserialize constraint violations of table " + tableId + ex);
+                throw new EEException(ERRORCODE_WRONG_SERIALIZED_BYTES);
+            }
+        } finally {
+            fallbackBuffer = null;
+        }
     }
 
     /**
@@ -370,6 +388,16 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         nativeQuiesce(pointer, lastCommittedTxnId);
     }
 
+    @Override
+    protected void coreAntiCacheInitialize(byte[] directory) {
+        nativeAntiCacheInitialize(pointer, directory);
+    }
+
+    @Override
+    public long antiCacheEvict() {
+        return nativeAntiCacheEvict(pointer);
+    }
+
     /**
      * Retrieve a set of statistics using the specified selector from the StatisticsSelector enum.
      * @param selector Selector from StatisticsSelector specifying what statistics to retrieve
@@ -515,6 +543,11 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         return nativeGetThreadLocalPoolAllocations();
     }
 
+    @Override
+    public long getTempTableMemory() {
+        return nativeGetTempTableMemory(pointer);
+    }
+
     /*
      * Instead of using the reusable output buffer to get results for the next batch,
      * use this buffer allocated by the EE. This is for one time use.
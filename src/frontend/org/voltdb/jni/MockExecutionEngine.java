@@ -136,10 +136,12 @@ public class MockExecutionEngine extends ExecutionEngine {
     }
 
     @Override
-    public void loadTable(final int tableId, final VoltTable table, final long txnId,
-        final long lastCommittedTxnId)
+    public VoltTable loadTable(final int tableId, final VoltTable table, final long txnId,
+        final long lastCommittedTxnId, final long undoToken,
+        final boolean returnConstraintViolations)
     throws EEException
     {
+        return null;
     }
 
     @Override
@@ -180,6 +182,15 @@ public class MockExecutionEngine extends ExecutionEngine {
 
     }
 
+    @Override
+    protected void coreAntiCacheInitialize(byte[] directory) {
+    }
+
+    @Override
+    public long antiCacheEvict() {
+        return 0;
+    }
+
     @Override
     public boolean activateTableStream(int tableId, TableStreamType type) {
         return false;
@@ -225,4 +236,9 @@ public class MockExecutionEngine extends ExecutionEngine {
     public long getThreadLocalPoolAllocations() {
         return 0L;
     }
+
+    @Override
+    public long getTempTableMemory() {
+        return 0L;
+    }
 }
@@ -17,6 +17,8 @@
 
 package org.voltdb.planner;
 
+import org.voltdb.plannodes.AbstractPlanNode;
+
 /**
  * Abstract base class for the code that computes plan cost given
  * a set of statistics for a plan.
@@ -32,4 +34,28 @@ public abstract class AbstractCostModel {
      * @return The computed cost of the plan.
      */
     public abstract double getPlanCost(PlanStatistics stats);
+
+    /**
+     * Computes the cost of a VoltDB plan given its plan graph, after
+     * computeEstimatesRecursively has filled in the PlanStatistics.
+     * Models that only need the statistics use the default.
+     *
+     * @param planGraph The root of the plan.
+     * @param stats The statistics describing the work for the plan.
+     * @return The computed cost of the plan.
+     */
+    public double getPlanCost(AbstractPlanNode planGraph, PlanStatistics stats) {
+        return getPlanCost(stats);
+    }
+
+    /**
+     * Describes how the cost of a plan was arrived at, for @Explain.
+     *
+     * @param planGraph The root of a plan already passed to getPlanCost.
+     * @return A description of the cost per plan node, or null if this
+     * model has nothing to add to the plan's own explanation.
+     */
+    public String explainPlanCost(AbstractPlanNode planGraph) {
+        return null;
+    }
 }
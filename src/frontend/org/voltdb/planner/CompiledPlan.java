@@ -65,6 +65,12 @@ public class CompiledPlan {
      */
     public String explainedPlan = null;
 
+    /**
+     * The cost model's account of this plan's estimated cost, if it
+     * gives one. Only used for ad hoc sql and not serialized.
+     */
+    public String costExplanation = null;
+
     /** Parameter types in parameter index order */
     public VoltType[] parameters = null;
 
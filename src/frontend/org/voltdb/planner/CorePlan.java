@@ -70,6 +70,12 @@ public class CorePlan {
      */
     public final int partitioningParamIndex;
 
+    /**
+     * The cost model's account of how this plan was chosen, shown by @Explain.
+     * (Note, not serialized, and null when the cost model gives none.)
+     */
+    public final String costExplanation;
+
     /**
      * Constructor from QueryPlanner output.
      *
@@ -105,6 +111,7 @@ public class CorePlan {
         parameterTypes = plan.parameters;
         readOnly = plan.readOnly;
         partitioningParamIndex = plan.partitioningKeyIndex;
+        costExplanation = plan.costExplanation;
     }
 
     /***
@@ -137,6 +144,7 @@ public class CorePlan {
         this.parameterTypes = paramTypes;
         this.catalogVersion = catalogVersion;
         partitioningParamIndex = -1; // invalid after de-serialization
+        costExplanation = null;
     }
 
     @Override
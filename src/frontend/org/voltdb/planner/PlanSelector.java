@@ -167,7 +167,7 @@ public class PlanSelector implements Cloneable {
             planGraph.computeEstimatesRecursively(m_stats, m_cluster, m_db, m_estimates, m_paramHints);
 
             // compute the cost based on the resources using the current cost model
-            plan.cost = m_costModel.getPlanCost(m_stats);
+            plan.cost = m_costModel.getPlanCost(planGraph, m_stats);
 
             // filename for debug output
             String filename = String.valueOf(m_planId++);
@@ -177,6 +177,8 @@ public class PlanSelector implements Cloneable {
                 // free the PlanColumns held by the previous best plan
                 m_bestPlan = plan;
                 m_bestFilename = filename;
+                // the node estimates are current for this plan, so explain its cost now
+                plan.costExplanation = m_costModel.explainPlanCost(planGraph);
             }
 
             outputPlan(plan, planGraph, filename);
@@ -0,0 +1,174 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.planner;
+
+import org.voltdb.catalog.Cluster;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Table;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.AbstractScanPlanNode;
+import org.voltdb.plannodes.IndexScanPlanNode;
+import org.voltdb.plannodes.NestLoopIndexPlanNode;
+import org.voltdb.plannodes.NestLoopPlanNode;
+import org.voltdb.types.PlanNodeType;
+
+/**
+ * Costs a plan by walking its graph with the row counts the sites last
+ * reported (see LiveDatabaseEstimates), instead of summing the flat
+ * TUPLES_READ totals the way TrivialCostModel does. The difference shows
+ * up in joins: the inner side of a nested loop is charged once per outer
+ * row, so the small table ends up on the outside.
+ *
+ * Each node is charged for the rows it reads from its children plus its
+ * own work: a sequential scan reads its table, an index scan descends the
+ * tree then reads its matches, an order by sorts its input.
+ */
+public class StatisticsCostModel extends AbstractCostModel {
+
+    private final Cluster m_cluster;
+    private final Database m_db;
+    private final DatabaseEstimates m_estimates;
+
+    /** Estimated output rows and cumulative cost of one plan node. */
+    private static class NodeCost {
+        final double rows;
+        final double cost;
+
+        NodeCost(double rows, double cost) {
+            this.rows = rows;
+            this.cost = cost;
+        }
+    }
+
+    public StatisticsCostModel(Cluster cluster, Database db, DatabaseEstimates estimates) {
+        assert(estimates != null);
+        m_cluster = cluster;
+        m_db = db;
+        m_estimates = estimates;
+    }
+
+    @Override
+    public double getPlanCost(PlanStatistics stats) {
+        // without a plan graph, fall back to the trivial model's total
+        return new TrivialCostModel().getPlanCost(stats);
+    }
+
+    @Override
+    public double getPlanCost(AbstractPlanNode planGraph, PlanStatistics stats) {
+        return costNode(planGraph, null, 0).cost;
+    }
+
+    @Override
+    public String explainPlanCost(AbstractPlanNode planGraph) {
+        StringBuilder sb = new StringBuilder();
+        NodeCost total = costNode(planGraph, sb, 1);
+        sb.insert(0, "ESTIMATED COST " + format(total.cost) + "\n");
+        return sb.toString();
+    }
+
+    /**
+     * Cost the subtree rooted at node. When explain is non-null, one line
+     * per node is appended to it, children indented under their parent.
+     */
+    private NodeCost costNode(AbstractPlanNode node, StringBuilder explain, int depth) {
+        int insertAt = (explain == null) ? 0 : explain.length();
+
+        NodeCost[] children = new NodeCost[node.getChildCount()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = costNode(node.getChild(i), explain, depth + 1);
+        }
+
+        NodeCost result;
+        if (node instanceof IndexScanPlanNode) {
+            result = costIndexScan((IndexScanPlanNode) node);
+        }
+        else if (node instanceof AbstractScanPlanNode) {
+            // sequential scans read every row of the table
+            double rows = node.getEstimatedOutputTupleCount();
+            result = new NodeCost(rows, rows);
+        }
+        else if (node instanceof NestLoopPlanNode && children.length == 2) {
+            // the inner side is rescanned for every outer row
+            NodeCost outer = children[0];
+            NodeCost inner = children[1];
+            result = new NodeCost(Math.max(outer.rows, inner.rows),
+                                  outer.cost + Math.max(1, outer.rows) * inner.cost);
+        }
+        else if (node instanceof NestLoopIndexPlanNode && children.length == 1) {
+            // the inline index scan is probed once per outer row
+            NodeCost outer = children[0];
+            IndexScanPlanNode probe =
+                (IndexScanPlanNode) node.getInlinePlanNode(PlanNodeType.INDEXSCAN);
+            NodeCost inner = outer;
+            if (probe != null) {
+                probe.computeEstimatesRecursively(new PlanStatistics(), m_cluster, m_db, m_estimates, null);
+                inner = costIndexScan(probe);
+            }
+            result = new NodeCost(Math.max(outer.rows, inner.rows),
+                                  outer.cost + Math.max(1, outer.rows) * inner.cost);
+        }
+        else {
+            // everything else streams its children's rows
+            double rows = 0;
+            double cost = 0;
+            for (NodeCost child : children) {
+                rows += child.rows;
+                cost += child.cost + child.rows;
+            }
+            if (node.getPlanNodeType() == PlanNodeType.ORDERBY && rows > 1) {
+                cost += rows * log2(rows);
+            }
+            result = new NodeCost(rows, cost);
+        }
+
+        if (explain != null) {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < depth; i++) {
+                line.append("  ");
+            }
+            line.append(node.getPlanNodeType().name());
+            if (node instanceof AbstractScanPlanNode) {
+                line.append(" ").append(((AbstractScanPlanNode) node).getTargetTableName());
+            }
+            line.append(" rows=").append(format(result.rows));
+            line.append(" cost=").append(format(result.cost)).append("\n");
+            // parent lines precede their children
+            explain.insert(insertAt, line);
+        }
+        return result;
+    }
+
+    private NodeCost costIndexScan(IndexScanPlanNode node) {
+        double rows = Math.max(1, node.getEstimatedOutputTupleCount());
+        double tableRows = 0;
+        Table target = m_db.getTables().getIgnoreCase(node.getTargetTableName());
+        if (target != null) {
+            tableRows = m_estimates.getEstimatesForTable(target.getTypeName()).maxTuples;
+        }
+        return new NodeCost(rows, rows + log2(tableRows + 1));
+    }
+
+    private static double log2(double value) {
+        return Math.log(value) / Math.log(2);
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value));
+    }
+}
@@ -43,17 +43,23 @@ import org.voltdb.types.PlanNodeType;
 public abstract class AbstractPlanNode implements JSONString, Comparable<AbstractPlanNode> {
 
     /**
-     * Internal PlanNodeId counter. Note that this member is static, which means
-     * all PlanNodes will have a unique id
+     * Internal PlanNodeId counter. Note that this member is per-thread, which means
+     * all PlanNodes created by one planner thread will have a unique id. Ad hoc
+     * planning runs on several threads at once.
      */
-    private static int NEXT_PLAN_NODE_ID = 1;
+    private static final ThreadLocal<int[]> NEXT_PLAN_NODE_ID = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[] { 1 };
+        }
+    };
 
     /*
      * IDs only need to be unique for a single plan.
      * Reset between plans
      */
     public static final void resetPlanNodeIds() {
-        NEXT_PLAN_NODE_ID = 1;
+        NEXT_PLAN_NODE_ID.get()[0] = 1;
     }
 
     public enum Members {
@@ -96,7 +102,7 @@ public abstract class AbstractPlanNode implements JSONString, Comparable<Abstrac
      * Instantiates a new plan node.
      */
     protected AbstractPlanNode() {
-        m_id = NEXT_PLAN_NODE_ID++;
+        m_id = NEXT_PLAN_NODE_ID.get()[0]++;
     }
 
     public void overrideId(int newId) {
@@ -279,6 +285,14 @@ public abstract class AbstractPlanNode implements JSONString, Comparable<Abstrac
         }
     }
 
+    /**
+     * @return the number of rows computeEstimatesRecursively estimated this
+     * node will output.
+     */
+    public long getEstimatedOutputTupleCount() {
+        return m_estimatedOutputTupleCount;
+    }
+
     /**
      * Gets the id.
      *
@@ -0,0 +1,94 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.rejoin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Progress of the rejoin streams this host is sending, one row per stream.
+ * DATA columns count uncompressed snapshot bytes, BYTES_SENT what went on
+ * the wire. DATA_EXPECTED is estimated from the source site's table memory,
+ * so the remaining time is approximate; both are -1 when unknown.
+ */
+public class RejoinStats extends StatsSource {
+
+    private static final Set<StreamSnapshotDataTarget> s_streams =
+            Collections.newSetFromMap(new ConcurrentHashMap<StreamSnapshotDataTarget, Boolean>());
+
+    static void register(StreamSnapshotDataTarget stream) {
+        s_streams.add(stream);
+    }
+
+    static void unregister(StreamSnapshotDataTarget stream) {
+        s_streams.remove(stream);
+    }
+
+    public RejoinStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("DESTINATION_SITE", VoltType.STRING));
+        columns.add(new ColumnInfo("BLOCKS_SENT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BLOCKS_OUTSTANDING", VoltType.INTEGER));
+        columns.add(new ColumnInfo("WINDOW", VoltType.INTEGER));
+        columns.add(new ColumnInfo("ROUND_TRIP_TIME", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BYTES_SENT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("DATA_ACKED", VoltType.BIGINT));
+        columns.add(new ColumnInfo("DATA_EXPECTED", VoltType.BIGINT));
+        columns.add(new ColumnInfo("DATA_RATE", VoltType.BIGINT));
+        columns.add(new ColumnInfo("SECONDS_REMAINING", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object rowValues[]) {
+        final StreamSnapshotDataTarget stream = (StreamSnapshotDataTarget)rowKey;
+        final StreamSnapshotWindow window = stream.getWindow();
+        final long now = System.nanoTime();
+        rowValues[columnNameToIndex.get("DESTINATION_SITE")] =
+            CoreUtils.hsIdToString(stream.getDestinationHSId());
+        rowValues[columnNameToIndex.get("BLOCKS_SENT")] = window.getBlocksSent();
+        rowValues[columnNameToIndex.get("BLOCKS_OUTSTANDING")] = window.getOutstanding();
+        rowValues[columnNameToIndex.get("WINDOW")] = window.getWindow();
+        rowValues[columnNameToIndex.get("ROUND_TRIP_TIME")] = window.getMinRttMillis();
+        rowValues[columnNameToIndex.get("BYTES_SENT")] = window.getBytesSent();
+        rowValues[columnNameToIndex.get("DATA_ACKED")] = window.getDataAcked();
+        rowValues[columnNameToIndex.get("DATA_EXPECTED")] = window.getExpectedData();
+        rowValues[columnNameToIndex.get("DATA_RATE")] = window.getDataRate(now);
+        rowValues[columnNameToIndex.get("SECONDS_REMAINING")] = window.getSecondsRemaining(now);
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        return ImmutableList.<Object>copyOf(s_streams).iterator();
+    }
+}
@@ -19,11 +19,14 @@ package org.voltdb.rejoin;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -49,6 +52,14 @@ import com.google.common.util.concurrent.ListenableFuture;
 /**
  * A stream snapshot target for sending snapshot data directly to a rejoining
  * partition.
+ *
+ * Blocks are compressed on the compression service as soon as they are
+ * written, so several compress in parallel while the sender thread puts
+ * earlier ones on the wire in order. How many blocks may be written ahead
+ * of the rejoining site's acks is bounded by a StreamSnapshotWindow. Writes
+ * never block: queue() sends a block while the window has room, and
+ * otherwise parks it, still in its snapshot buffer, in m_pendingBlocks until
+ * acks make room again.
  */
 public class StreamSnapshotDataTarget extends StreamSnapshotBase
 implements SnapshotDataTarget {
@@ -80,17 +91,17 @@ implements SnapshotDataTarget {
     // Skip all subsequent writes if one fails
     private final AtomicBoolean m_writeFailed = new AtomicBoolean(false);
 
-    // a scratch buffer for compression work
-    private final ByteBuffer m_compressionBuffer =
-            ByteBuffer.allocateDirect(
-                    CompressionService.maxCompressedLength(1024 * 1024 * 2 + (1024 * 256)));
-
     private final AtomicLong m_bytesSent = new AtomicLong();
 
-    // number of sent, but un-acked buffers
+    // bounds the blocks in flight and keeps the REJOIN statistics
+    private final StreamSnapshotWindow m_window = new StreamSnapshotWindow();
+
+    // number of written, but un-acked buffers, including those waiting for the window
     private final AtomicInteger m_outstandingWorkCount = new AtomicInteger(0);
     // map of sent, but un-acked buffers, packaged up a bit
     private final Map<Integer, SendWork> m_outstandingWork = (new TreeMap<Integer, SendWork>());
+    // blocks written while the window was full, still in their snapshot buffers, in order
+    private final ArrayDeque<PendingBlock> m_pendingBlocks = new ArrayDeque<PendingBlock>();
 
     private int m_blockIndex = 0;
     private final AtomicReference<Runnable> m_onCloseHandler = new AtomicReference<Runnable>(null);
@@ -121,6 +132,41 @@ implements SnapshotDataTarget {
 
         // start a periodic task to look for timed out connections
         VoltDB.instance().scheduleWork(new Watchdog(m_bytesSent.get()), WATCHDOG_PERIOS_S, -1, TimeUnit.SECONDS);
+
+        RejoinStats.register(this);
+    }
+
+    long getDestinationHSId() {
+        return m_destHSId;
+    }
+
+    StreamSnapshotWindow getWindow() {
+        return m_window;
+    }
+
+    /**
+     * Estimate of the uncompressed bytes this stream will send, for the
+     * time remaining reported in REJOIN statistics.
+     */
+    public void setExpectedBytes(long expectedBytes) {
+        m_window.setExpectedData(expectedBytes);
+    }
+
+    /**
+     * A block that is waiting for room in the window. It keeps the site's
+     * snapshot buffer, so the site stops producing blocks once all of its
+     * buffers are waiting.
+     */
+    private static class PendingBlock {
+        final int m_blockIndex;
+        final BBContainer m_schema;
+        final BBContainer m_chunk;
+
+        PendingBlock(int blockIndex, BBContainer schema, BBContainer chunk) {
+            m_blockIndex = blockIndex;
+            m_schema = schema;
+            m_chunk = chunk;
+        }
     }
 
     /**
@@ -132,6 +178,12 @@ implements SnapshotDataTarget {
         BBContainer m_schema;
         int m_blockIndex;
         long m_ts;
+        // uncompressed length of the block and when it went on the wire, for the window
+        final int m_dataLength;
+        long m_sentNanos;
+        // compression starts as soon as the work is created
+        final Future<byte[]> m_compressedSchema;
+        final Future<byte[]> m_compressedMessage;
         AtomicReference<ListenableFuture<Boolean>> m_future = new AtomicReference<ListenableFuture<Boolean>>(null);
 
         SendWork (int blockIndex, BBContainer schema, BBContainer message) {
@@ -139,6 +191,16 @@ implements SnapshotDataTarget {
             m_schema = schema;
             m_message = message;
             m_ts = System.currentTimeMillis();
+            m_dataLength = message.b.remaining();
+            m_compressedSchema = schema == null ? null : compress(schema.b);
+            m_compressedMessage = compress(message.b);
+        }
+
+        private Future<byte[]> compress(ByteBuffer b) {
+            if (b.isDirect()) {
+                return CompressionService.compressBufferAsync(b);
+            }
+            return CompressionService.compressBytesAsync(b.array(), b.position(), b.remaining());
         }
 
         @Override
@@ -172,6 +234,10 @@ implements SnapshotDataTarget {
                 assert(m_future.get() == null);
             }
 
+            // the compression service may still be reading the buffers
+            waitForCompression(m_compressedSchema);
+            waitForCompression(m_compressedMessage);
+
             // discard the buffers and null them out
             if (m_message != null) {
                 m_message.discard();
@@ -183,47 +249,40 @@ implements SnapshotDataTarget {
             }
         }
 
+        private void waitForCompression(Future<byte[]> compressed) {
+            if (compressed == null) {
+                return;
+            }
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    compressed.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
         /**
-         * Compress the data in the BBContainer provided, then package it up in
-         * a RejoinDataMessage instance, and finally hand it off to the messaging
+         * Wait for a block's compression to finish, then package it up in a
+         * RejoinDataMessage instance, and finally hand it off to the messaging
          * subsystem.
          */
-        protected boolean send(BBContainer message) {
+        protected boolean send(Future<byte[]> compressed) throws InterruptedException {
             try {
-                if (message.b.isDirect()) {
-                    byte[] data = null;
-                    int compressedSize = 0;
-
-                    // sync access to the one scratch buffer for compression
-                    synchronized (m_compressionBuffer) {
-                        m_compressionBuffer.clear();
-                        compressedSize = CompressionService.compressBuffer(message.b, m_compressionBuffer);
-                        m_compressionBuffer.limit(compressedSize);
-                        m_compressionBuffer.position(0);
-
-                        data = new byte[compressedSize];
-                        m_compressionBuffer.get(data);
-                    }
-
-                    RejoinDataMessage msg = new RejoinDataMessage(data);
-                    m_mb.send(m_destHSId, msg);
-                    m_bytesSent.addAndGet(compressedSize);
-
-                    rejoinLog.trace("Sending direct buffer");
-                } else {
-                    byte compressedBytes[] =
-                            CompressionService.compressBytes(
-                                    message.b.array(), message.b.position(),
-                                    message.b.remaining());
-
-                    RejoinDataMessage msg = new RejoinDataMessage(compressedBytes);
-                    m_mb.send(m_destHSId, msg);
-                    m_bytesSent.addAndGet(compressedBytes.length);
-
-                    rejoinLog.trace("Sending heap buffer");
-                }
-            } catch (IOException e) {
-                rejoinLog.error("Error writing rejoin snapshot block", e);
+                byte compressedBytes[] = compressed.get();
+                RejoinDataMessage msg = new RejoinDataMessage(compressedBytes);
+                m_mb.send(m_destHSId, msg);
+                m_bytesSent.addAndGet(compressedBytes.length);
+                m_window.sent(compressedBytes.length);
+            } catch (ExecutionException e) {
+                rejoinLog.error("Error writing rejoin snapshot block", e.getCause());
                 return false;
             }
             return true;
@@ -236,12 +295,13 @@ implements SnapshotDataTarget {
                 return true;
             }
 
-            if (m_schema != null) {
-                if (!send(m_schema)) {
+            if (m_compressedSchema != null) {
+                if (!send(m_compressedSchema)) {
                     return false;
                 }
             }
-            return send(m_message);
+            m_sentNanos = System.nanoTime();
+            return send(m_compressedMessage);
         }
     }
 
@@ -264,8 +324,10 @@ implements SnapshotDataTarget {
             }
 
             long bytesWritten = m_bytesSent.get();
-            rejoinLog.info(String.format("While sending rejoin data to site %s, %d bytes have been sent in the past %s seconds.",
-                    CoreUtils.hsIdToString(m_destHSId), bytesWritten - m_bytesWrittenSinceConstruction, WATCHDOG_PERIOS_S));
+            rejoinLog.info(String.format("While sending rejoin data to site %s, %d bytes have been sent in the past %s seconds " +
+                    "(%d of %d blocks in flight).",
+                    CoreUtils.hsIdToString(m_destHSId), bytesWritten - m_bytesWrittenSinceConstruction, WATCHDOG_PERIOS_S,
+                    m_window.getOutstanding(), m_window.getWindow()));
 
             long now = System.currentTimeMillis();
             for (Entry<Integer, SendWork> e : m_outstandingWork.entrySet()) {
@@ -292,7 +354,11 @@ implements SnapshotDataTarget {
      * work so buffers aren't leaked.
      */
     synchronized void clearOutstanding() {
-        if (m_outstandingWork.isEmpty() && (m_outstandingWorkCount.get() == 0)) {
+        // nothing more goes out
+        m_window.abort();
+
+        if (m_outstandingWork.isEmpty() && m_pendingBlocks.isEmpty() &&
+                (m_outstandingWorkCount.get() == 0)) {
             return;
         }
 
@@ -302,6 +368,13 @@ implements SnapshotDataTarget {
             e.getValue().discard();
         }
         m_outstandingWork.clear();
+        PendingBlock pending;
+        while ((pending = m_pendingBlocks.poll()) != null) {
+            if (pending.m_schema != null) {
+                pending.m_schema.discard();
+            }
+            pending.m_chunk.discard();
+        }
         m_outstandingWorkCount.set(0);
     }
 
@@ -350,11 +423,19 @@ implements SnapshotDataTarget {
     public synchronized void receiveAck(int blockIndex) {
         rejoinLog.trace("Received block ack for index " + String.valueOf(blockIndex));
 
-        m_outstandingWorkCount.decrementAndGet();
         SendWork work = m_outstandingWork.remove(blockIndex);
+        if (work == null) {
+            // already cleared after a failure
+            return;
+        }
+        m_outstandingWorkCount.decrementAndGet();
+        m_window.acked(work.m_sentNanos, work.m_dataLength);
 
         // releases the BBContainers and cleans up
         work.discard();
+
+        // the ack made room in the window
+        sendPendingBlocks();
     }
 
     /**
@@ -451,7 +532,7 @@ implements SnapshotDataTarget {
             chunk.b.putInt(context.getTableId()); // put table ID
             chunk.b.position(0);
 
-            send(m_blockIndex++, schemaContainer, chunk);
+            queue(m_blockIndex++, schemaContainer, chunk);
 
             rejoinLog.trace("Submitted write with index " + String.valueOf(m_blockIndex));
 
@@ -462,19 +543,57 @@ implements SnapshotDataTarget {
         }
     }
 
+    /**
+     * Send a block if the window has room, otherwise hold it until an ack
+     * makes room. Never blocks, the site thread calls this.
+     *
+     * @param blockIndex Index useful for ack tracking and debugging
+     * @param schemaContainer Optional schema for table (can be null)
+     * @param chunk Snapshot data to send, in one of the site's snapshot buffers.
+     */
+    synchronized void queue(int blockIndex, BBContainer schemaContainer, BBContainer chunk) {
+        m_outstandingWorkCount.incrementAndGet();
+        if (m_pendingBlocks.isEmpty() && m_window.tryAcquire()) {
+            send(blockIndex, schemaContainer, copyAndRelease(chunk));
+        } else {
+            m_pendingBlocks.add(new PendingBlock(blockIndex, schemaContainer, chunk));
+        }
+    }
+
+    /**
+     * Send the blocks that were waiting for the window, in order, while it has room.
+     */
+    private synchronized void sendPendingBlocks() {
+        while (!m_pendingBlocks.isEmpty() && m_window.tryAcquire()) {
+            PendingBlock pending = m_pendingBlocks.poll();
+            send(pending.m_blockIndex, pending.m_schema, copyAndRelease(pending.m_chunk));
+        }
+    }
+
+    /**
+     * The site only has a few snapshot buffers, and holding one until its block
+     * is acked would cap the blocks in flight at that number whatever the window.
+     * Copy the block to the heap and return the buffer so the site can fill it again.
+     */
+    private static BBContainer copyAndRelease(BBContainer chunk) {
+        ByteBuffer copy = ByteBuffer.allocate(chunk.b.remaining());
+        copy.put(chunk.b);
+        copy.flip();
+        chunk.discard();
+        return DBBPool.wrapBB(copy);
+    }
+
     /**
      * Send data to the rejoining node, tracking what was sent for ack tracking.
-     * Synchronized to protect access to m_outstandingWork and to keep
-     * m_outstandingWorkCount in sync with m_outstandingWork.
+     * Synchronized to protect access to m_outstandingWork.
      *
      * @param blockIndex Index useful for ack tracking and debugging
      * @param schemaContainer Optional schema for table (can be null)
      * @param chunk Snapshot data to send.
      */
-    synchronized void send(int blockIndex, BBContainer schemaContainer, BBContainer chunk) {
+    private synchronized void send(int blockIndex, BBContainer schemaContainer, BBContainer chunk) {
         SendWork sendWork = new SendWork(blockIndex, schemaContainer, chunk);
         m_outstandingWork.put(blockIndex, sendWork);
-        m_outstandingWorkCount.incrementAndGet();
         m_sendQueue.add(sendWork);
     }
 
@@ -531,7 +650,9 @@ implements SnapshotDataTarget {
                 m_closed.set(true);
 
                 assert(m_outstandingWork.size() == 0);
+                assert(m_pendingBlocks.isEmpty());
             }
+            RejoinStats.unregister(this);
 
             rejoinLog.trace("Closed stream snapshot target");
         }
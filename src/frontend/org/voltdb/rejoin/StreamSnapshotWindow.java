@@ -0,0 +1,172 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.rejoin;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flow control for one rejoin stream. Bounds the number of blocks that
+ * have been written but not yet acked by the rejoining site.
+ *
+ * The bound follows the bandwidth-delay product measured from the acks:
+ * the rate at which blocks are acked times the shortest round trip seen,
+ * doubled for headroom. That is enough blocks in flight to keep the link
+ * busy while waiting for acks, and no more, so a rejoining site that
+ * applies blocks slowly doesn't make the source pile up blocks in memory.
+ *
+ * Also keeps the counters reported by REJOIN statistics.
+ */
+class StreamSnapshotWindow {
+    static final int MIN_WINDOW = 2;
+    static final int MAX_WINDOW = Integer.getInteger("rejoinMaxWindowBlocks", 64);
+
+    // weight of the newest sample in the moving average of the ack interval
+    private static final double ALPHA = 0.125;
+
+    private final int m_maxWindow;
+    private final long m_startNanos;
+
+    private int m_window;
+    private int m_outstanding = 0;
+    private boolean m_aborted = false;
+
+    private long m_minRttNanos = Long.MAX_VALUE;
+    private double m_ackIntervalNanos = -1;
+    private long m_lastAckNanos = -1;
+
+    private long m_blocksSent = 0;
+    private long m_blocksAcked = 0;
+    private long m_dataAcked = 0;
+    private long m_bytesSent = 0;
+    private long m_expectedData = -1;
+
+    StreamSnapshotWindow() {
+        this(MAX_WINDOW, System.nanoTime());
+    }
+
+    StreamSnapshotWindow(int maxWindow, long startNanos) {
+        m_maxWindow = Math.max(MIN_WINDOW, maxWindow);
+        m_window = Math.min(m_maxWindow, MIN_WINDOW * 2);
+        m_startNanos = startNanos;
+    }
+
+    /**
+     * Claim room in the window for one block if there is any.
+     * @return false if the window is full or the stream was aborted
+     */
+    synchronized boolean tryAcquire() {
+        if (m_aborted || m_outstanding >= m_window) {
+            return false;
+        }
+        m_outstanding++;
+        return true;
+    }
+
+    /** Fail every tryAcquire() from now on. */
+    synchronized void abort() {
+        m_aborted = true;
+    }
+
+    /** A block went out on the wire as compressedLength bytes. */
+    synchronized void sent(int compressedLength) {
+        m_blocksSent++;
+        m_bytesSent += compressedLength;
+    }
+
+    void acked(long sentNanos, int dataLength) {
+        acked(sentNanos, System.nanoTime(), dataLength);
+    }
+
+    /**
+     * A block of dataLength uncompressed bytes sent at sentNanos was acked
+     * at ackNanos. Frees its slot and resizes the window.
+     */
+    synchronized void acked(long sentNanos, long ackNanos, int dataLength) {
+        m_outstanding = Math.max(0, m_outstanding - 1);
+        m_blocksAcked++;
+        m_dataAcked += dataLength;
+
+        m_minRttNanos = Math.min(m_minRttNanos, Math.max(1, ackNanos - sentNanos));
+        if (m_lastAckNanos != -1) {
+            final long interval = Math.max(1, ackNanos - m_lastAckNanos);
+            m_ackIntervalNanos = m_ackIntervalNanos < 0 ?
+                    interval : (1 - ALPHA) * m_ackIntervalNanos + ALPHA * interval;
+            final int bdp = (int)Math.max(1, Math.round(m_minRttNanos / m_ackIntervalNanos));
+            m_window = Math.max(MIN_WINDOW, Math.min(m_maxWindow, 2 * bdp));
+        }
+        m_lastAckNanos = ackNanos;
+    }
+
+    /** Uncompressed bytes the stream is expected to carry, -1 if unknown. */
+    synchronized void setExpectedData(long expectedData) {
+        m_expectedData = expectedData;
+    }
+
+    synchronized int getWindow() {
+        return m_window;
+    }
+
+    synchronized int getOutstanding() {
+        return m_outstanding;
+    }
+
+    synchronized long getBlocksSent() {
+        return m_blocksSent;
+    }
+
+    synchronized long getBytesSent() {
+        return m_bytesSent;
+    }
+
+    synchronized long getDataAcked() {
+        return m_dataAcked;
+    }
+
+    synchronized long getExpectedData() {
+        return m_expectedData;
+    }
+
+    /** Shortest round trip of a block in milliseconds, -1 before the first ack. */
+    synchronized long getMinRttMillis() {
+        if (m_minRttNanos == Long.MAX_VALUE) {
+            return -1;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(m_minRttNanos);
+    }
+
+    /** Uncompressed bytes acked per second since the stream started. */
+    synchronized long getDataRate(long nowNanos) {
+        final long elapsed = nowNanos - m_startNanos;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return (long)(m_dataAcked * (double)TimeUnit.SECONDS.toNanos(1) / elapsed);
+    }
+
+    /**
+     * Seconds left at the average rate so far, -1 if there is no estimate
+     * of the stream's size or nothing has been acked yet.
+     */
+    synchronized long getSecondsRemaining(long nowNanos) {
+        final long rate = getDataRate(nowNanos);
+        if (m_expectedData < 0 || rate == 0) {
+            return -1;
+        }
+        return Math.max(0, m_expectedData - m_dataAcked) / rate;
+    }
+}
@@ -551,7 +551,7 @@ this.AddConnection = function(connection, success)
                     src += '<li class="empty"><span>' + list[k] + '</span></li>';
             src += '</ul></li>';
             src += '<li class="type closed"><span>StatisticsComponent</span><ul>';
-                list = ['INDEX','INITIATOR','IOSTATS','MANAGEMENT','MEMORY','PROCEDURE','TABLE','PARTITIONCOUNT','STARVATION','LIVECLIENTS'];
+                list = ['INDEX','INITIATOR','IOSTATS','MANAGEMENT','MEMORY','PROCEDURE','TABLE','PARTITIONCOUNT','STARVATION','QUEUE','LIVECLIENTS'];
                 for(var k in list)
                     src += '<li class="empty"><span>' + list[k] + '</span></li>';
             src += '</ul></li>';
@@ -0,0 +1,144 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.voltdb.DependencyPair;
+import org.voltdb.ParameterSet;
+import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.ProcInfo;
+import org.voltdb.SystemProcedureExecutionContext;
+import org.voltdb.TheHashinator;
+import org.voltdb.VoltSystemProcedure;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.catalog.CatalogMap;
+import org.voltdb.catalog.Column;
+import org.voltdb.catalog.Table;
+
+/**
+ * Bulk insert into a partitioned table without a multi-partition transaction.
+ * The client interface that receives the invocation splits the rows by
+ * partition with partitionRows() and runs this procedure once in each
+ * partition with that partition's rows. The rows are passed to the EE as
+ * they are, and the ones that violate a constraint are left out and returned
+ * instead of aborting the transaction. Each partition commits on its own.
+ */
+@ProcInfo(
+    partitionInfo = "DUMMY: 0", // partitioning is done special for this class
+    singlePartition = true
+)
+public class LoadPartitionedTable extends VoltSystemProcedure
+{
+    @Override
+    public void init() {}
+
+    /**
+     * This single-partition sysproc has no special fragments
+     */
+    @Override
+    public DependencyPair executePlanFragment(
+            Map<Integer, List<VoltTable>> dependencies, long fragmentId,
+            ParameterSet params, SystemProcedureExecutionContext context) {
+        return null;
+    }
+
+    /**
+     * @param ctx
+     *            Internal. Not a user-supplied parameter.
+     * @param tableName
+     *            Name of persistent table receiving data.
+     * @param table
+     *            The rows of this partition, with the schema of tableName.
+     * @return The rows that violated a constraint and were not inserted.
+     * @throws VoltAbortException
+     */
+    public VoltTable[] run(SystemProcedureExecutionContext ctx,
+            String tableName, VoltTable table)
+            throws VoltAbortException {
+        VoltTable violations = m_runner.voltLoadTable(
+                ctx.getCluster().getTypeName(),
+                ctx.getDatabase().getTypeName(),
+                tableName,
+                table,
+                true);
+        if (violations == null) {
+            // nothing was loaded
+            violations = table.clone(0);
+        }
+        return new VoltTable[] { violations };
+    }
+
+    /**
+     * Called by the client interface to split the rows of an invocation
+     * into one table per partition.
+     *
+     * @param tables The set of active tables in the catalog.
+     * @param tableName The table the rows are loaded into.
+     * @param table The rows to load.
+     * @return The rows hashed to each partition, in tables with the input's schema
+     * @throws Exception thrown with a descriptive message if the rows can't be
+     *         loaded into the table
+     */
+    public static Map<Integer, VoltTable> partitionRows(
+            CatalogMap<Table> tables, String tableName, VoltTable table) throws Exception {
+        Table catTable = tables.getIgnoreCase(tableName);
+        if (catTable == null) {
+            throw new Exception(
+                    String.format("Unable to find target table \"%s\" for LoadPartitionedTable.",
+                            tableName));
+        }
+        if (catTable.getIsreplicated()) {
+            throw new Exception(
+                    String.format("LoadPartitionedTable incompatible with replicated table %s, " +
+                            "use LoadMultipartitionTable.", catTable.getTypeName()));
+        }
+
+        // the EE reads the rows with the table's schema, so the types have to match exactly
+        if (table.getColumnCount() != catTable.getColumns().size()) {
+            throw new Exception("Input table has the wrong number of columns for bulk insert.");
+        }
+        for (Column column : catTable.getColumns()) {
+            VoltType expected = VoltType.get((byte) column.getType());
+            if (table.getColumnType(column.getIndex()) != expected) {
+                throw new Exception(String.format(
+                        "Input table column %d is %s, table %s expects %s for column %s.",
+                        column.getIndex(), table.getColumnType(column.getIndex()).toSQLString(),
+                        catTable.getTypeName(), expected.toSQLString(), column.getTypeName()));
+            }
+        }
+
+        int pIndex = catTable.getPartitioncolumn().getIndex();
+        VoltType pType = table.getColumnType(pIndex);
+        Map<Integer, VoltTable> partitioned = new TreeMap<Integer, VoltTable>();
+        table.resetRowPosition();
+        while (table.advanceRow()) {
+            int partition = TheHashinator.hashToPartition(table.get(pIndex, pType));
+            VoltTable partitionTable = partitioned.get(partition);
+            if (partitionTable == null) {
+                partitionTable = table.clone(0);
+                partitioned.put(partition, partitionTable);
+            }
+            PrivateVoltTableFactory.copyRow(table, partitionTable);
+        }
+        return partitioned;
+    }
+}
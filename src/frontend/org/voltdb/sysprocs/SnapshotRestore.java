@@ -141,6 +141,27 @@ public class SnapshotRestore extends VoltSystemProcedure
     private static HashSet<String>  m_initializedTableSaveFileNames = new HashSet<String>();
     private static ArrayDeque<TableSaveFile> m_saveFiles = new ArrayDeque<TableSaveFile>();
 
+    /*
+     * Every save file of a partitioned table has its own reader thread doing I/O.
+     * CRC validation and decompression of the chunks they read happens on this
+     * pool, which lives as long as the files of the table being distributed.
+     * Rows are split per partition by the local sites pulling chunks, which
+     * are all blocked in the distribute fragment anyway. It is shut down with
+     * the last of those files, whether they were read to the end or abandoned.
+     */
+    private static ExecutorService m_decodePool = null;
+
+    /*
+     * Progress of the partitioned table currently being read on this host
+     */
+    private static final long PROGRESS_LOG_INTERVAL = 10 * 1000;
+    private static String m_progressTableName;
+    private static int m_progressFiles;
+    private static long m_progressStartTime;
+    private static long m_progressLastLogTime;
+    private static long m_progressChunks;
+    private static long m_progressBytes;
+
     private static synchronized void initializeTableSaveFiles(
             String filePath,
             String fileNonce,
@@ -173,25 +194,61 @@ public class SnapshotRestore extends VoltSystemProcedure
             relevantPartitionSet.add(part_id);
         }
 
-        for (int originalHostId : originalHostIds) {
-            final File f = getSaveFileForPartitionedTable(filePath, fileNonce,
-                    tableName,
-                    originalHostId);
-            TableSaveFile savefile = getTableSaveFile(
-                    f,
-                    st.getLocalSites().length * 4,
-                    relevantPartitionSet.toArray(new Integer[relevantPartitionSet.size()]));
-
-            m_saveFiles.offer(savefile);
-            for (int part_id : savefile.getPartitionIds())
-            {
-                relevantPartitionSet.remove(part_id);
+        if (m_decodePool == null) {
+            m_decodePool = CoreUtils.getListeningExecutorService("Restore Decode",
+                    Math.max(1, Runtime.getRuntime().availableProcessors()));
+        }
+        m_progressTableName = tableName;
+        m_progressFiles = 0;
+        m_progressStartTime = m_progressLastLogTime = System.currentTimeMillis();
+        m_progressChunks = 0;
+        m_progressBytes = 0;
+
+        try {
+            for (int originalHostId : originalHostIds) {
+                final File f = getSaveFileForPartitionedTable(filePath, fileNonce,
+                        tableName,
+                        originalHostId);
+                TableSaveFile savefile = getTableSaveFile(
+                        f,
+                        st.getLocalSites().length * 4,
+                        relevantPartitionSet.toArray(new Integer[relevantPartitionSet.size()]),
+                        m_decodePool);
+                m_progressFiles++;
+
+                m_saveFiles.offer(savefile);
+                for (int part_id : savefile.getPartitionIds())
+                {
+                    relevantPartitionSet.remove(part_id);
+                }
+                if (relevantPartitionSet.isEmpty())
+                {
+                    break;
+                }
+                assert(m_saveFiles.peekLast().getCompleted());
             }
-            if (relevantPartitionSet.isEmpty())
-            {
-                break;
+        } catch (IOException e) {
+            abandonSaveFiles();
+            throw e;
+        }
+    }
+
+    /*
+     * Close the save files that won't be read to the end, stopping their
+     * reader threads, and shut down the decode pool they were using.
+     */
+    private static synchronized void abandonSaveFiles() {
+        TableSaveFile f;
+        while ((f = m_saveFiles.poll()) != null) {
+            try {
+                f.close();
+            } catch (IOException e) {
+                SNAP_LOG.warn("Error closing abandoned save file", e);
             }
-            assert(m_saveFiles.peekLast().getCompleted());
+        }
+        if (m_decodePool != null) {
+            m_decodePool.shutdown();
+            m_decodePool = null;
         }
     }
 
@@ -206,24 +263,63 @@ public class SnapshotRestore extends VoltSystemProcedure
                 } catch (IOException e) {
                 }
                 m_saveFiles.poll();
+                saveFileDone(f);
             }
         }
         return hasMoreChunks;
     }
 
+    /*
+     * Take chunks from the save files round robin so all of their reader
+     * threads keep the disks busy instead of draining one file at a time.
+     */
     private static synchronized BBContainer getNextChunk() throws IOException {
         BBContainer c = null;
         while (c == null && m_saveFiles.peek() != null) {
-            TableSaveFile f = m_saveFiles.peek();
+            TableSaveFile f = m_saveFiles.poll();
             c = f.getNextChunk();
             if (c == null) {
                 f.close();
-                m_saveFiles.poll();
+                saveFileDone(f);
+            } else {
+                m_saveFiles.offer(f);
             }
         }
+        logRestoreProgress(false);
         return c;
     }
 
+    private static void saveFileDone(TableSaveFile f) {
+        m_progressChunks += f.getChunksRead();
+        m_progressBytes += f.getBytesRead();
+        if (m_saveFiles.isEmpty()) {
+            logRestoreProgress(true);
+            if (m_decodePool != null) {
+                m_decodePool.shutdown();
+                m_decodePool = null;
+            }
+        }
+    }
+
+    private static void logRestoreProgress(boolean done) {
+        final long now = System.currentTimeMillis();
+        if (!done && now - m_progressLastLogTime < PROGRESS_LOG_INTERVAL) {
+            return;
+        }
+        m_progressLastLogTime = now;
+        long chunks = m_progressChunks;
+        long bytes = m_progressBytes;
+        for (TableSaveFile f : m_saveFiles) {
+            chunks += f.getChunksRead();
+            bytes += f.getBytesRead();
+        }
+        final long elapsed = Math.max(1, now - m_progressStartTime);
+        SNAP_LOG.info((done ? "Finished reading " : "Reading ") + "table " + m_progressTableName +
+                " from " + m_progressFiles + " file(s): " + chunks + " chunks, " +
+                (bytes / (1024 * 1024)) + " MB in " + elapsed + " ms (" +
+                String.format("%.1f", (bytes / (1024.0 * 1024.0)) / (elapsed / 1000.0)) + " MB/s)");
+    }
+
     @Override
     public void init()
     {
@@ -403,7 +499,7 @@ public class SnapshotRestore extends VoltSystemProcedure
                 // distribution fragments, so two sites on the same node
                 // can't be attempting to set and clear this HashSet simultaneously
                 m_initializedTableSaveFileNames.clear();
-                m_saveFiles.clear();//Tests will reused a VoltDB process that fails a restore
+                abandonSaveFiles();//Tests will reused a VoltDB process that fails a restore
 
                 m_filePath = (String) params.toArray()[0];
                 m_fileNonce = (String) params.toArray()[1];
@@ -1070,7 +1166,7 @@ public class SnapshotRestore extends VoltSystemProcedure
             startAction == VoltDB.START_ACTION.CREATE && mode != org.voltdb.OperationMode.INITIALIZING;
 
         final boolean isCLEnabled =
-            VoltDB.instance().getCommandLog().getClass().getSimpleName().equals("CommandLogImpl");
+            VoltDB.instance().getCommandLog().isEnabled();
 
         final boolean isStartedWithCreateAction = startAction == VoltDB.START_ACTION.CREATE;
 
@@ -1172,12 +1268,23 @@ public class SnapshotRestore extends VoltSystemProcedure
             int readAheadChunks,
             Integer relevantPartitionIds[]) throws IOException
             {
+        return getTableSaveFile(saveFile, readAheadChunks, relevantPartitionIds, null);
+            }
+
+    private static TableSaveFile getTableSaveFile(
+            File saveFile,
+            int readAheadChunks,
+            Integer relevantPartitionIds[],
+            ExecutorService decodePool) throws IOException
+            {
         FileInputStream savefile_input = new FileInputStream(saveFile);
         TableSaveFile savefile =
                 new TableSaveFile(
                         savefile_input.getChannel(),
                         readAheadChunks,
-                        relevantPartitionIds);
+                        relevantPartitionIds,
+                        false,
+                        decodePool);
         return savefile;
             }
 
@@ -1730,6 +1837,8 @@ public class SnapshotRestore extends VoltSystemProcedure
                 results = executeSysProcPlanFragments(pfs, m_mbox);
             }
         } catch (Exception e) {
+            // the table can't be restored, so nobody will read the rest of its files
+            abandonSaveFiles();
             VoltTable result = PrivateVoltTableFactory.createUninitializedVoltTable();
             result = constructResultsTable();
             result.addRow(m_hostId, hostname, CoreUtils.getSiteIdFromHSId(m_siteId), tableName, relevantPartitionIds[0],
@@ -43,7 +43,7 @@ import org.voltdb.dtxn.DtxnConstants;
 import org.voltdb.utils.VoltTableUtil;
 
 /**
- * Access the TABLE, PRCOEDURE, INITIATOR, IOSTATS, or PARTITIONCOUNT statistics.
+ * Access the TABLE, PRCOEDURE, INITIATOR, LATENCY, IOSTATS, HOSTMESSAGING, or PARTITIONCOUNT statistics.
  */
 @ProcInfo(
     // partitionInfo = "TABLE.ATTR: 0",
@@ -91,6 +91,31 @@ public class Statistics extends VoltSystemProcedure {
     static final int DEP_starvationDataAggregator = (int)
         SysProcFragmentId.PF_starvationDataAggregator;
 
+    static final int DEP_queueData = (int)
+        SysProcFragmentId.PF_queueData | DtxnConstants.MULTIPARTITION_DEPENDENCY;
+    static final int DEP_queueDataAggregator = (int)
+        SysProcFragmentId.PF_queueDataAggregator;
+
+    static final int DEP_plannerPoolData = (int)
+        SysProcFragmentId.PF_plannerPoolData | DtxnConstants.MULTIPARTITION_DEPENDENCY;
+    static final int DEP_plannerPoolAggregator = (int)
+        SysProcFragmentId.PF_plannerPoolAggregator;
+
+    static final int DEP_rejoinData = (int)
+        SysProcFragmentId.PF_rejoinData | DtxnConstants.MULTIPARTITION_DEPENDENCY;
+    static final int DEP_rejoinAggregator = (int)
+        SysProcFragmentId.PF_rejoinAggregator;
+
+    static final int DEP_latencyData = (int)
+        SysProcFragmentId.PF_latencyData | DtxnConstants.MULTIPARTITION_DEPENDENCY;
+    static final int DEP_latencyAggregator = (int)
+        SysProcFragmentId.PF_latencyAggregator;
+
+    static final int DEP_hostMessagingData = (int)
+        SysProcFragmentId.PF_hostMessagingData | DtxnConstants.MULTIPARTITION_DEPENDENCY;
+    static final int DEP_hostMessagingAggregator = (int)
+        SysProcFragmentId.PF_hostMessagingAggregator;
+
     static final int DEP_liveClientData = (int)
         SysProcFragmentId.PF_liveClientData | DtxnConstants.MULTIPARTITION_DEPENDENCY;
     static final int DEP_liveClientDataAggregator = (int)
@@ -120,6 +145,16 @@ public class Statistics extends VoltSystemProcedure {
         registerPlanFragment(SysProcFragmentId.PF_ioDataAggregator);
         registerPlanFragment(SysProcFragmentId.PF_starvationData);
         registerPlanFragment(SysProcFragmentId.PF_starvationDataAggregator);
+        registerPlanFragment(SysProcFragmentId.PF_queueData);
+        registerPlanFragment(SysProcFragmentId.PF_queueDataAggregator);
+        registerPlanFragment(SysProcFragmentId.PF_plannerPoolData);
+        registerPlanFragment(SysProcFragmentId.PF_plannerPoolAggregator);
+        registerPlanFragment(SysProcFragmentId.PF_latencyData);
+        registerPlanFragment(SysProcFragmentId.PF_latencyAggregator);
+        registerPlanFragment(SysProcFragmentId.PF_hostMessagingData);
+        registerPlanFragment(SysProcFragmentId.PF_hostMessagingAggregator);
+        registerPlanFragment(SysProcFragmentId.PF_rejoinData);
+        registerPlanFragment(SysProcFragmentId.PF_rejoinAggregator);
         registerPlanFragment(SysProcFragmentId.PF_liveClientData);
         registerPlanFragment(SysProcFragmentId.PF_liveClientDataAggregator);
     }
@@ -224,6 +259,118 @@ public class Statistics extends VoltSystemProcedure {
             VoltTable result = VoltTableUtil.unionTables(dependencies.get(DEP_plannerData));
             return new DependencyPair(DEP_plannerAggregator, result);
         }
+        //  PLANNERPOOL statistics
+        else if (fragmentId == SysProcFragmentId.PF_plannerPoolData) {
+            // the planner pool is per host and registered with id 0, like the initiator stats.
+            assert(params.toArray().length == 2);
+            final boolean interval =
+                ((Byte)params.toArray()[0]).byteValue() == 0 ? false : true;
+            final Long now = (Long)params.toArray()[1];
+            ArrayList<Long> catalogIds = new ArrayList<Long>();
+            catalogIds.add(0L);
+            // Only the lowest site ID on this host reports, so only it may
+            // consume the interval. All other sites return empty tables.
+            final boolean lowestSite = context.isLowestSiteId();
+            VoltTable result = VoltDB.instance().
+                    getStatsAgent().getStats(
+                            SysProcSelector.PLANNERPOOL,
+                            catalogIds,
+                            interval && lowestSite,
+                            now);
+            if (!lowestSite) {
+                // Hacky way to generate an empty table with the correct schema
+                result.clearRowData();
+            }
+            return new DependencyPair(DEP_plannerPoolData, result);
+        }
+        else if (fragmentId == SysProcFragmentId.PF_plannerPoolAggregator) {
+            VoltTable result = VoltTableUtil.unionTables(dependencies.get(DEP_plannerPoolData));
+            return new DependencyPair(DEP_plannerPoolAggregator, result);
+        }
+        //  LATENCY statistics
+        else if (fragmentId == SysProcFragmentId.PF_latencyData) {
+            // latency is tracked by the client interface, per host with id 0, like the planner pool.
+            assert(params.toArray().length == 2);
+            final boolean interval =
+                ((Byte)params.toArray()[0]).byteValue() == 0 ? false : true;
+            final Long now = (Long)params.toArray()[1];
+            ArrayList<Long> catalogIds = new ArrayList<Long>();
+            catalogIds.add(0L);
+            // Only the lowest site ID on this host reports, so only it may
+            // consume the interval. All other sites return empty tables.
+            final boolean lowestSite = context.isLowestSiteId();
+            VoltTable result = VoltDB.instance().
+                    getStatsAgent().getStats(
+                            SysProcSelector.LATENCY,
+                            catalogIds,
+                            interval && lowestSite,
+                            now);
+            if (!lowestSite) {
+                // Hacky way to generate an empty table with the correct schema
+                result.clearRowData();
+            }
+            return new DependencyPair(DEP_latencyData, result);
+        }
+        else if (fragmentId == SysProcFragmentId.PF_latencyAggregator) {
+            VoltTable result = VoltTableUtil.unionTables(dependencies.get(DEP_latencyData));
+            return new DependencyPair(DEP_latencyAggregator, result);
+        }
+        //  HOSTMESSAGING statistics
+        else if (fragmentId == SysProcFragmentId.PF_hostMessagingData) {
+            // connections to other hosts are per host, registered with id 0 like IOSTATS.
+            assert(params.toArray().length == 2);
+            final boolean interval =
+                ((Byte)params.toArray()[0]).byteValue() == 0 ? false : true;
+            final Long now = (Long)params.toArray()[1];
+            ArrayList<Long> catalogIds = new ArrayList<Long>();
+            catalogIds.add(0L);
+            // Only the lowest site ID on this host reports, so only it may
+            // consume the interval. All other sites return empty tables.
+            final boolean lowestSite = context.isLowestSiteId();
+            VoltTable result = VoltDB.instance().
+                    getStatsAgent().getStats(
+                            SysProcSelector.HOSTMESSAGING,
+                            catalogIds,
+                            interval && lowestSite,
+                            now);
+            if (!lowestSite) {
+                // Hacky way to generate an empty table with the correct schema
+                result.clearRowData();
+            }
+            return new DependencyPair(DEP_hostMessagingData, result);
+        }
+        else if (fragmentId == SysProcFragmentId.PF_hostMessagingAggregator) {
+            VoltTable result = VoltTableUtil.unionTables(dependencies.get(DEP_hostMessagingData));
+            return new DependencyPair(DEP_hostMessagingAggregator, result);
+        }
+        //  REJOIN statistics
+        else if (fragmentId == SysProcFragmentId.PF_rejoinData) {
+            // rejoin streams are tracked per host and registered with id 0, like the planner pool.
+            assert(params.toArray().length == 2);
+            final boolean interval =
+                ((Byte)params.toArray()[0]).byteValue() == 0 ? false : true;
+            final Long now = (Long)params.toArray()[1];
+            ArrayList<Long> catalogIds = new ArrayList<Long>();
+            catalogIds.add(0L);
+            // Only the lowest site ID on this host reports, all other sites
+            // return empty tables.
+            final boolean lowestSite = context.isLowestSiteId();
+            VoltTable result = VoltDB.instance().
+                    getStatsAgent().getStats(
+                            SysProcSelector.REJOIN,
+                            catalogIds,
+                            interval && lowestSite,
+                            now);
+            if (!lowestSite) {
+                // Hacky way to generate an empty table with the correct schema
+                result.clearRowData();
+            }
+            return new DependencyPair(DEP_rejoinData, result);
+        }
+        else if (fragmentId == SysProcFragmentId.PF_rejoinAggregator) {
+            VoltTable result = VoltTableUtil.unionTables(dependencies.get(DEP_rejoinData));
+            return new DependencyPair(DEP_rejoinAggregator, result);
+        }
         //  STARVATION statistics
         else if (fragmentId == SysProcFragmentId.PF_starvationData) {
             // starvation stats are registered to VoltDB's statsagent with the site's catalog id.
@@ -246,6 +393,27 @@ public class Statistics extends VoltSystemProcedure {
             VoltTable result = VoltTableUtil.unionTables(dependencies.get(DEP_starvationData));
             return new DependencyPair(DEP_starvationDataAggregator, result);
         }
+        //  QUEUE statistics
+        else if (fragmentId == SysProcFragmentId.PF_queueData) {
+            // queue stats are registered alongside the starvation stats, keyed by site id.
+            assert(params.toArray().length == 2);
+            final boolean interval =
+                ((Byte)params.toArray()[0]).byteValue() == 0 ? false : true;
+            final Long now = (Long)params.toArray()[1];
+            ArrayList<Long> catalogIds = new ArrayList<Long>();
+            catalogIds.add(context.getSiteId());
+            VoltTable result = VoltDB.instance().
+                    getStatsAgent().getStats(
+                            SysProcSelector.QUEUE,
+                            catalogIds,
+                            interval,
+                            now);
+            return new DependencyPair(DEP_queueData, result);
+        }
+        else if (fragmentId == SysProcFragmentId.PF_queueDataAggregator) {
+            VoltTable result = VoltTableUtil.unionTables(dependencies.get(DEP_queueData));
+            return new DependencyPair(DEP_queueDataAggregator, result);
+        }
         //INITIATOR statistics
         else if (fragmentId == SysProcFragmentId.PF_initiatorData) {
             // initiator stats are registered to VoltDB's statsagent with the initiators index.
@@ -457,6 +625,15 @@ public class Statistics extends VoltSystemProcedure {
         else if (selector.toUpperCase().equals(SysProcSelector.PLANNER.name())) {
             results = getPlannerData(interval, now);
         }
+        else if (selector.toUpperCase().equals(SysProcSelector.PLANNERPOOL.name())) {
+            results = getPlannerPoolData(interval, now);
+        }
+        else if (selector.toUpperCase().equals(SysProcSelector.REJOIN.name())) {
+            results = getRejoinData(interval, now);
+        }
+        else if (selector.toUpperCase().equals(SysProcSelector.LATENCY.name())) {
+            results = getLatencyData(interval, now);
+        }
         else if (selector.toUpperCase().equals(SysProcSelector.INITIATOR.name())) {
             results = getInitiatorData(interval, now);
         }
@@ -466,9 +643,15 @@ public class Statistics extends VoltSystemProcedure {
         else if (selector.toUpperCase().equals(SysProcSelector.IOSTATS.name())) {
             results = getIOStatsData(interval, now);
         }
+        else if (selector.toUpperCase().equals(SysProcSelector.HOSTMESSAGING.name())) {
+            results = getHostMessagingData(interval, now);
+        }
         else if (selector.toUpperCase().equals(SysProcSelector.STARVATION.name())) {
             results = getStarvationData(interval, now);
         }
+        else if (selector.toUpperCase().equals(SysProcSelector.QUEUE.name())) {
+            results = getQueueData(interval, now);
+        }
         else if (selector.toUpperCase().equals(SysProcSelector.LIVECLIENTS.name())) {
             results = getLiveClientData(interval, now);
         }
@@ -670,6 +853,131 @@ public class Statistics extends VoltSystemProcedure {
         return results;
     }
 
+    private VoltTable[] getQueueData(long interval, final long now) {
+        VoltTable[] results;
+        SynthesizedPlanFragment pfs[] = new SynthesizedPlanFragment[2];
+        // create a work fragment to gather queue data from each of the sites.
+        pfs[1] = new SynthesizedPlanFragment();
+        pfs[1].fragmentId = SysProcFragmentId.PF_queueData;
+        pfs[1].outputDepId = DEP_queueData;
+        pfs[1].inputDepIds = new int[]{};
+        pfs[1].multipartition = true;
+        pfs[1].parameters = ParameterSet.fromArrayNoCopy((byte)interval, now);
+
+        // create a work fragment to aggregate the results.
+        pfs[0] = new SynthesizedPlanFragment();
+        pfs[0].fragmentId = SysProcFragmentId.PF_queueDataAggregator;
+        pfs[0].outputDepId = DEP_queueDataAggregator;
+        pfs[0].inputDepIds = new int[]{DEP_queueData};
+        pfs[0].multipartition = false;
+        pfs[0].parameters = ParameterSet.emptyParameterSet();
+
+        // distribute and execute these fragments providing pfs and id of the
+        // aggregator's output dependency table.
+        results = executeSysProcPlanFragments(pfs, DEP_queueDataAggregator);
+        return results;
+    }
+
+    private VoltTable[] getPlannerPoolData(long interval, final long now) {
+        VoltTable[] results;
+        SynthesizedPlanFragment pfs[] = new SynthesizedPlanFragment[2];
+        // create a work fragment to gather planner pool data from each of the hosts.
+        pfs[1] = new SynthesizedPlanFragment();
+        pfs[1].fragmentId = SysProcFragmentId.PF_plannerPoolData;
+        pfs[1].outputDepId = DEP_plannerPoolData;
+        pfs[1].inputDepIds = new int[]{};
+        pfs[1].multipartition = true;
+        pfs[1].parameters = ParameterSet.fromArrayNoCopy((byte)interval, now);
+
+        // create a work fragment to aggregate the results.
+        pfs[0] = new SynthesizedPlanFragment();
+        pfs[0].fragmentId = SysProcFragmentId.PF_plannerPoolAggregator;
+        pfs[0].outputDepId = DEP_plannerPoolAggregator;
+        pfs[0].inputDepIds = new int[]{DEP_plannerPoolData};
+        pfs[0].multipartition = false;
+        pfs[0].parameters = ParameterSet.emptyParameterSet();
+
+        // distribute and execute these fragments providing pfs and id of the
+        // aggregator's output dependency table.
+        results = executeSysProcPlanFragments(pfs, DEP_plannerPoolAggregator);
+        return results;
+    }
+
+    private VoltTable[] getLatencyData(long interval, final long now) {
+        VoltTable[] results;
+        SynthesizedPlanFragment pfs[] = new SynthesizedPlanFragment[2];
+        // create a work fragment to gather latency data from each of the hosts.
+        pfs[1] = new SynthesizedPlanFragment();
+        pfs[1].fragmentId = SysProcFragmentId.PF_latencyData;
+        pfs[1].outputDepId = DEP_latencyData;
+        pfs[1].inputDepIds = new int[]{};
+        pfs[1].multipartition = true;
+        pfs[1].parameters = ParameterSet.fromArrayNoCopy((byte)interval, now);
+
+        // create a work fragment to aggregate the results.
+        pfs[0] = new SynthesizedPlanFragment();
+        pfs[0].fragmentId = SysProcFragmentId.PF_latencyAggregator;
+        pfs[0].outputDepId = DEP_latencyAggregator;
+        pfs[0].inputDepIds = new int[]{DEP_latencyData};
+        pfs[0].multipartition = false;
+        pfs[0].parameters = ParameterSet.emptyParameterSet();
+
+        // distribute and execute these fragments providing pfs and id of the
+        // aggregator's output dependency table.
+        results = executeSysProcPlanFragments(pfs, DEP_latencyAggregator);
+        return results;
+    }
+
+    private VoltTable[] getHostMessagingData(long interval, final long now) {
+        VoltTable[] results;
+        SynthesizedPlanFragment pfs[] = new SynthesizedPlanFragment[2];
+        // create a work fragment to gather host messaging data from each of the hosts.
+        pfs[1] = new SynthesizedPlanFragment();
+        pfs[1].fragmentId = SysProcFragmentId.PF_hostMessagingData;
+        pfs[1].outputDepId = DEP_hostMessagingData;
+        pfs[1].inputDepIds = new int[]{};
+        pfs[1].multipartition = true;
+        pfs[1].parameters = ParameterSet.fromArrayNoCopy((byte)interval, now);
+
+        // create a work fragment to aggregate the results.
+        pfs[0] = new SynthesizedPlanFragment();
+        pfs[0].fragmentId = SysProcFragmentId.PF_hostMessagingAggregator;
+        pfs[0].outputDepId = DEP_hostMessagingAggregator;
+        pfs[0].inputDepIds = new int[]{DEP_hostMessagingData};
+        pfs[0].multipartition = false;
+        pfs[0].parameters = ParameterSet.emptyParameterSet();
+
+        // distribute and execute these fragments providing pfs and id of the
+        // aggregator's output dependency table.
+        results = executeSysProcPlanFragments(pfs, DEP_hostMessagingAggregator);
+        return results;
+    }
+
+    private VoltTable[] getRejoinData(long interval, final long now) {
+        VoltTable[] results;
+        SynthesizedPlanFragment pfs[] = new SynthesizedPlanFragment[2];
+        // create a work fragment to gather rejoin stream data from each of the hosts.
+        pfs[1] = new SynthesizedPlanFragment();
+        pfs[1].fragmentId = SysProcFragmentId.PF_rejoinData;
+        pfs[1].outputDepId = DEP_rejoinData;
+        pfs[1].inputDepIds = new int[]{};
+        pfs[1].multipartition = true;
+        pfs[1].parameters = ParameterSet.fromArrayNoCopy((byte)interval, now);
+
+        // create a work fragment to aggregate the results.
+        pfs[0] = new SynthesizedPlanFragment();
+        pfs[0].fragmentId = SysProcFragmentId.PF_rejoinAggregator;
+        pfs[0].outputDepId = DEP_rejoinAggregator;
+        pfs[0].inputDepIds = new int[]{DEP_rejoinData};
+        pfs[0].multipartition = false;
+        pfs[0].parameters = ParameterSet.emptyParameterSet();
+
+        // distribute and execute these fragments providing pfs and id of the
+        // aggregator's output dependency table.
+        results = executeSysProcPlanFragments(pfs, DEP_rejoinAggregator);
+        return results;
+    }
+
     private VoltTable[] getTableData(long interval, final long now) {
         VoltTable[] results;
         SynthesizedPlanFragment pfs[] = new SynthesizedPlanFragment[2];
@@ -48,6 +48,16 @@ public class SysProcFragmentId
     public static final long PF_liveClientDataAggregator = 21;
     public static final long PF_plannerData = 22;
     public static final long PF_plannerAggregator = 23;
+    public static final long PF_queueData = 24;
+    public static final long PF_queueDataAggregator = 25;
+    public static final long PF_plannerPoolData = 26;
+    public static final long PF_plannerPoolAggregator = 27;
+    public static final long PF_rejoinData = 32;
+    public static final long PF_rejoinAggregator = 33;
+    public static final long PF_latencyData = 34;
+    public static final long PF_latencyAggregator = 35;
+    public static final long PF_hostMessagingData = 36;
+    public static final long PF_hostMessagingAggregator = 37;
 
     // @Shutdown
     public static final long PF_shutdownCommand = 28;
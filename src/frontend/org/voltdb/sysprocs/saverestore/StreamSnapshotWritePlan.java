@@ -51,6 +51,9 @@ import org.voltdb.SnapshotDataTarget;
 import org.voltdb.SnapshotFormat;
 import org.voltdb.SnapshotSiteProcessor;
 import org.voltdb.SnapshotTableTask;
+import org.voltdb.SiteProcedureConnection;
+import org.voltdb.SysProcSelector;
+import org.voltdb.VoltTable;
 
 import org.voltdb.sysprocs.SnapshotRegistry;
 import org.voltdb.SystemProcedureExecutionContext;
@@ -112,8 +115,11 @@ public class StreamSnapshotWritePlan extends SnapshotWritePlan
         if (streamPairs.size() > 0) {
             SNAP_LOG.debug("Sites to stream from: " +
                     CoreUtils.hsIdCollectionToString(streamPairs.keySet()));
+            final long expectedBytes = estimateStreamBytes(context, tables);
             for (Entry<Long, Long> entry : streamPairs.entrySet()) {
-                sdts.put(entry.getKey(), new StreamSnapshotDataTarget(entry.getValue(), schemas));
+                StreamSnapshotDataTarget sdt = new StreamSnapshotDataTarget(entry.getValue(), schemas);
+                sdt.setExpectedBytes(expectedBytes);
+                sdts.put(entry.getKey(), sdt);
             }
         }
         else
@@ -167,6 +173,35 @@ public class StreamSnapshotWritePlan extends SnapshotWritePlan
         return false;
     }
 
+    /**
+     * Estimate how much tuple data one source site will stream from the memory
+     * this site's tables use. Partitions are roughly the same size, so this
+     * site stands in for the others on this host. Returns -1 if the stats
+     * aren't available.
+     */
+    private static long estimateStreamBytes(SystemProcedureExecutionContext context,
+                                            List<Table> tables)
+    {
+        SiteProcedureConnection site = context.getSiteProcedureConnection();
+        if (site == null) {
+            return -1;
+        }
+        int tableIds[] = new int[tables.size()];
+        for (int ii = 0; ii < tableIds.length; ii++) {
+            tableIds[ii] = tables.get(ii).getRelativeIndex();
+        }
+        VoltTable stats[] = site.getStats(SysProcSelector.TABLE, tableIds, false, System.currentTimeMillis());
+        if (stats == null || stats.length == 0) {
+            return -1;
+        }
+        // memory columns are in KB
+        long kilobytes = 0;
+        while (stats[0].advanceRow()) {
+            kilobytes += stats[0].getLong("TUPLE_DATA_MEMORY") + stats[0].getLong("STRING_DATA_MEMORY");
+        }
+        return kilobytes * 1024;
+    }
+
     private List<Table> getTablesToInclude(JSONObject jsData,
                                            SystemProcedureExecutionContext context)
     {
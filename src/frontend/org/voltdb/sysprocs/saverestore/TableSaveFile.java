@@ -24,10 +24,13 @@ import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.Checksum;
 
 import org.apache.hadoop_voltpatches.util.PureJavaCrc32;
@@ -89,13 +92,28 @@ public class TableSaveFile
         this(dataIn, readAheadChunks, relevantPartitionIds, false);
     }
 
+    public TableSaveFile(
+            FileChannel dataIn,
+            int readAheadChunks,
+            Integer[] relevantPartitionIds,
+            boolean continueOnCorruptedChunk) throws IOException {
+        this(dataIn, readAheadChunks, relevantPartitionIds, continueOnCorruptedChunk, null);
+    }
+
+    /**
+     * @param decodePool If not null, the chunk reader thread only does I/O and hands
+     * CRC validation and decompression of version 2 chunks to this pool. Chunks
+     * are then returned in the order they finish decoding, not file order.
+     */
     // XXX maybe consider an IOException subclass at some point
     public TableSaveFile(
             FileChannel dataIn,
             int readAheadChunks,
             Integer[] relevantPartitionIds,
-            boolean continueOnCorruptedChunk) throws IOException
+            boolean continueOnCorruptedChunk,
+            Executor decodePool) throws IOException
             {
+        m_decodePool = decodePool;
         try {
             EELibraryLoader.loadExecutionEngineLibrary(true);
             if (relevantPartitionIds == null) {
@@ -384,6 +402,14 @@ public class TableSaveFile
             }
         }
         synchronized (this) {
+            // decodes already handed to the pool will still publish their chunks
+            while (m_pendingDecodes > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
             while (!m_availableChunks.isEmpty()) {
                 m_availableChunks.poll().discard();
             }
@@ -403,6 +429,20 @@ public class TableSaveFile
         return m_corruptedPartitions;
     }
 
+    /**
+     * @return The number of chunks read from the file so far
+     */
+    public long getChunksRead() {
+        return m_chunksRead.get();
+    }
+
+    /**
+     * @return The number of chunk bytes, as stored on disk, read so far
+     */
+    public long getBytesRead() {
+        return m_bytesRead.get();
+    }
+
     public ByteBuffer getTableHeader() {
         return m_tableHeader;
     }
@@ -413,7 +453,7 @@ public class TableSaveFile
         if (m_chunkReaderException != null) {
             throw m_chunkReaderException;
         }
-        if (!m_hasMoreChunks) {
+        if (!m_hasMoreChunks && m_pendingDecodes == 0) {
             return m_availableChunks.poll();
         }
 
@@ -424,7 +464,7 @@ public class TableSaveFile
         }
 
         Container c = null;
-        while (c == null && (m_hasMoreChunks || !m_availableChunks.isEmpty())) {
+        while (c == null && (m_hasMoreChunks || m_pendingDecodes > 0 || !m_availableChunks.isEmpty())) {
             c = m_availableChunks.poll();
             if (c == null) {
                 try {
@@ -448,7 +488,7 @@ public class TableSaveFile
         if (m_chunkReaderException != null) {
             throw m_chunkReaderException;
         }
-        return m_hasMoreChunks || !m_availableChunks.isEmpty();
+        return m_hasMoreChunks || m_pendingDecodes > 0 || !m_availableChunks.isEmpty();
     }
 
     private final FileChannel m_saveFile;
@@ -483,7 +523,8 @@ public class TableSaveFile
      * Maintain a list of corrupted partitions. It is possible for uncorrupted partitions
      * to be recovered from a save file in the future
      */
-    private final HashSet<Integer> m_corruptedPartitions = new HashSet<Integer>();
+    private final Set<Integer> m_corruptedPartitions =
+            Collections.synchronizedSet(new HashSet<Integer>());
 
     /**
      * Ignore corrupted chunks and continue validation of the rest of the chunks.
@@ -495,6 +536,19 @@ public class TableSaveFile
      */
     private final Semaphore m_chunkReads;
 
+    /**
+     * Optional pool that validates and decompresses chunks off the reader thread,
+     * the number of chunks handed to it that haven't been published yet, and
+     * the staging buffers holding their compressed bytes.
+     */
+    private final Executor m_decodePool;
+    private int m_pendingDecodes = 0;
+    private final ConcurrentLinkedQueue<ByteBuffer> m_compressedBuffers =
+            new ConcurrentLinkedQueue<ByteBuffer>();
+
+    private final AtomicLong m_chunksRead = new AtomicLong();
+    private final AtomicLong m_bytesRead = new AtomicLong();
+
     private ChunkReader m_chunkReader = null;
     private Thread m_chunkReaderThread = null;
     private IOException m_chunkReaderException = null;
@@ -581,10 +635,8 @@ public class TableSaveFile
                     }
 
                     /*
-                     * Go fetch the compressed data so that the uncompressed size is known
-                     * and use that to set nextChunkLength to be the uncompressed length,
-                     * the code ahead that constructs the volt table is expecting
-                     * the uncompressed size/data since it is producing an uncompressed table
+                     * Go fetch the compressed data. Validating and decompressing it
+                     * happens in decodeChunk, either here or on the decode pool.
                      */
                     fileInputBuffer.clear();
                     fileInputBuffer.limit(nextChunkLength);
@@ -595,81 +647,13 @@ public class TableSaveFile
                         }
                     }
                     fileInputBuffer.flip();
-                    nextChunkLength = CompressionService.uncompressedLength(fileInputBuffer);
-
-                    /*
-                     * Validate the rest of the chunk. This can fail if the data is corrupted
-                     * or the length value was corrupted.
-                     */
-                    final int calculatedCRC =
-                            DBBPool.getBufferCRC32C(fileInputBuffer, 0, fileInputBuffer.remaining());
-                    if (calculatedCRC != nextChunkCRC) {
-                        m_corruptedPartitions.add(nextChunkPartitionId);
-                        if (m_continueOnCorruptedChunk) {
-                            m_chunkReads.release();
-                            continue;
-                        } else {
-                            throw new IOException("CRC mismatch in saved table chunk");
-                        }
-                    }
+                    m_chunksRead.incrementAndGet();
+                    m_bytesRead.addAndGet(nextChunkLength + chunkLengthB.capacity());
 
-                    /*
-                     * Now allocate space to store the chunk using the VoltTable serialization representation.
-                     * The chunk will contain an integer row count preceding it so it can
-                     * be sucked straight in. There is a little funny business to overwrite the
-                     * partition id that is not part of the serialization format
-                     */
-                    Container c = getOutputBuffer(nextChunkPartitionId);
-
-                    /*
-                     * If the length value is wrong or not all data made it to disk this read will
-                     * not complete correctly. There could be overflow, underflow etc.
-                     * so use a try finally block to indicate that all partitions are now corrupt.
-                     * The enclosing exception handlers will do the right thing WRT to
-                     * propagating the error and closing the file.
-                     */
-                    boolean completedRead = false;
-                    try {
-                        /*
-                         * Assemble a VoltTable out of the chunk of tuples.
-                         * Put in the header that was cached in the constructor,
-                         * then copy the tuple data.
-                         */
-                        c.b.clear();
-                        c.b.limit(nextChunkLength  + m_tableHeader.capacity());
-                        m_tableHeader.position(0);
-                        c.b.put(m_tableHeader);
-                        //Doesn't move buffer position, does change the limit
-                        CompressionService.decompressBuffer(fileInputBuffer, c.b);
-                        completedRead = true;
-                    } finally {
-                        if (!completedRead) {
-                            for (int partitionId : m_partitionIds) {
-                                m_corruptedPartitions.add(partitionId);
-                            }
-                        }
-                    }
-
-                    /*
-                     * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
-                     * in case it is the length value that is corrupted
-                     */
-                    if (m_relevantPartitionIds != null) {
-                        if (!m_relevantPartitionIds.contains(nextChunkPartitionId)) {
-                            c.discard();
-                            m_chunkReads.release();
-                            continue;
-                        }
-                    }
-
-                    /*
-                     * VoltTable wants the buffer at the home position 0
-                     */
-                    c.b.position(0);
-
-                    synchronized (TableSaveFile.this) {
-                        m_availableChunks.offer(c);
-                        TableSaveFile.this.notifyAll();
+                    if (m_decodePool == null) {
+                        publishChunk(decodeChunk(fileInputBuffer, nextChunkPartitionId, nextChunkCRC));
+                    } else {
+                        submitDecode(fileInputBuffer, nextChunkPartitionId, nextChunkCRC);
                     }
                 } catch (EOFException eof) {
                     synchronized (TableSaveFile.this) {
@@ -968,6 +952,148 @@ public class TableSaveFile
                 }
             }
         }
+        /**
+         * Validate the CRC of a compressed version 2 chunk and decompress it into
+         * a VoltTable formatted container.
+         * @return The decoded chunk or null if it was skipped as corrupt or irrelevant,
+         * in which case its read ahead permit has been released.
+         */
+        private Container decodeChunk(ByteBuffer compressed,
+                                      int partitionId,
+                                      int expectedCRC) throws IOException {
+            final int uncompressedLength = CompressionService.uncompressedLength(compressed);
+
+            /*
+             * Validate the rest of the chunk. This can fail if the data is corrupted
+             * or the length value was corrupted.
+             */
+            final int calculatedCRC =
+                    DBBPool.getBufferCRC32C(compressed, 0, compressed.remaining());
+            if (calculatedCRC != expectedCRC) {
+                m_corruptedPartitions.add(partitionId);
+                if (m_continueOnCorruptedChunk) {
+                    m_chunkReads.release();
+                    return null;
+                } else {
+                    throw new IOException("CRC mismatch in saved table chunk");
+                }
+            }
+
+            /*
+             * Now allocate space to store the chunk using the VoltTable serialization representation.
+             * The chunk will contain an integer row count preceding it so it can
+             * be sucked straight in. There is a little funny business to overwrite the
+             * partition id that is not part of the serialization format
+             */
+            Container c = getOutputBuffer(partitionId);
+
+            /*
+             * If the length value is wrong or not all data made it to disk this read will
+             * not complete correctly. There could be overflow, underflow etc.
+             * so use a try finally block to indicate that all partitions are now corrupt.
+             * The enclosing exception handlers will do the right thing WRT to
+             * propagating the error and closing the file.
+             */
+            boolean completedRead = false;
+            try {
+                /*
+                 * Assemble a VoltTable out of the chunk of tuples.
+                 * Put in the header that was cached in the constructor,
+                 * then copy the tuple data. The header is shared between
+                 * decoding threads so copy from a duplicate.
+                 */
+                c.b.clear();
+                c.b.limit(uncompressedLength  + m_tableHeader.capacity());
+                final ByteBuffer header = m_tableHeader.duplicate();
+                header.position(0);
+                c.b.put(header);
+                //Doesn't move buffer position, does change the limit
+                CompressionService.decompressBuffer(compressed, c.b);
+                completedRead = true;
+            } finally {
+                if (!completedRead) {
+                    for (int pid : m_partitionIds) {
+                        m_corruptedPartitions.add(pid);
+                    }
+                }
+            }
+
+            /*
+             * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
+             * in case it is the length value that is corrupted
+             */
+            if (m_relevantPartitionIds != null) {
+                if (!m_relevantPartitionIds.contains(partitionId)) {
+                    c.discard();
+                    m_chunkReads.release();
+                    return null;
+                }
+            }
+
+            /*
+             * VoltTable wants the buffer at the home position 0
+             */
+            c.b.position(0);
+            return c;
+        }
+
+        private void publishChunk(Container c) {
+            if (c == null) {
+                return;
+            }
+            synchronized (TableSaveFile.this) {
+                m_availableChunks.offer(c);
+                TableSaveFile.this.notifyAll();
+            }
+        }
+
+        /**
+         * Copy the compressed chunk out of the reader's buffer and decode it on the
+         * decode pool so the reader can go back to the file. Decode failures are
+         * reported the same way read failures are.
+         */
+        private void submitDecode(ByteBuffer fileInputBuffer,
+                                  final int partitionId,
+                                  final int expectedCRC) {
+            ByteBuffer staging = m_compressedBuffers.poll();
+            if (staging == null) {
+                staging = ByteBuffer.allocateDirect(fileInputBuffer.capacity());
+            }
+            staging.clear();
+            staging.put(fileInputBuffer);
+            staging.flip();
+            final ByteBuffer compressed = staging;
+
+            synchronized (TableSaveFile.this) {
+                m_pendingDecodes++;
+            }
+            m_decodePool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    IOException failure = null;
+                    try {
+                        publishChunk(decodeChunk(compressed, partitionId, expectedCRC));
+                    } catch (IOException e) {
+                        failure = e;
+                    } catch (RuntimeException e) {
+                        failure = new IOException(e);
+                    } finally {
+                        m_compressedBuffers.offer(compressed);
+                        synchronized (TableSaveFile.this) {
+                            m_pendingDecodes--;
+                            if (failure != null) {
+                                m_hasMoreChunks = false;
+                                if (m_chunkReaderException == null) {
+                                    m_chunkReaderException = failure;
+                                }
+                            }
+                            TableSaveFile.this.notifyAll();
+                        }
+                    }
+                }
+            });
+        }
+
         private Container getOutputBuffer(final int nextChunkPartitionId) {
             Container c = m_buffers.poll();
             if (c == null) {
@@ -23,17 +23,28 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.FilterReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.json_voltpatches.JSONObject;
 import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
 import org.voltdb.CLIConfig;
+import org.voltdb.JdbcDatabaseMetaDataGenerator;
+import org.voltdb.ParameterConverter;
+import org.voltdb.TheHashinator;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
 import org.voltdb.client.Client;
@@ -49,6 +60,11 @@ import au.com.bytecode.opencsv_voltpatches.CSVReader;
  * CSVLoader is a simple utility to load data from a CSV formatted file to a
  * table (or pass it to any stored proc, but ignoring any result other than the
  * success code.).
+ *
+ * The main thread reads and splits lines and hands them to worker threads in
+ * chunks. The workers check each row, convert its values to the procedure's
+ * parameter types, group rows by the partition they hash to and send each
+ * group with one callProcedureBatch once it is full.
  */
 public class CSVLoader {
     public static String pathInvalidrowfile = "";
@@ -60,7 +76,6 @@ public class CSVLoader {
     private static final AtomicLong inCount = new AtomicLong(0);
     private static final AtomicLong outCount = new AtomicLong(0);
     private static final int reportEveryNRows = 10000;
-    private static final int waitSeconds = 10;
     private static CSVConfig config = null;
     private static long latency = 0;
     private static long start = 0;
@@ -85,42 +100,235 @@ public class CSVLoader {
         blankValues.put(VoltType.VARBINARY, "");
     }
     private static List <VoltType> typeList = new ArrayList<VoltType>();
+    // index of the parameter rows are partitioned on, -1 if the procedure isn't single partition
+    private static int partitionParameter = -1;
+    // characters read so far and the size of the input file, for the time remaining
+    private static CountingReader inputReader = null;
+    private static long inputLength = -1;
 
     private static final class MyCallback implements ProcedureCallback {
         private final long m_lineNum;
         private final CSVConfig m_config;
-        private final String m_rowdata;
+        private final String m_line[];
 
-        MyCallback(long lineNumber, CSVConfig cfg, String rowdata) {
+        MyCallback(long lineNumber, CSVConfig cfg, String line[]) {
             m_lineNum = lineNumber;
             m_config = cfg;
-            m_rowdata = rowdata;
+            m_line = line;
         }
 
         @Override
         public void clientCallback(ClientResponse response) throws Exception {
             if (response.getStatus() != ClientResponse.SUCCESS) {
                 m_log.error( response.getStatusString() );
-                synchronized (errorInfo) {
-                    if (!errorInfo.containsKey(m_lineNum)) {
-                        String[] info = { m_rowdata, response.getStatusString() };
-                        errorInfo.put(m_lineNum, info);
+                recordError(m_lineNum, lineData(m_line), response.getStatusString());
+                return;
+            }
+
+            long currentCount = inCount.incrementAndGet();
+
+            if (currentCount % reportEveryNRows == 0) {
+                m_log.info( "Inserted " + currentCount + " rows" + progress(currentCount) );
+            }
+        }
+    }
+
+    /**
+     * Lines read from the input, numbered from firstRow. A chunk without
+     * lines tells a worker that the input is finished.
+     */
+    private static final class Chunk {
+        final long m_firstRow;
+        final List<String[]> m_lines;
+
+        Chunk(long firstRow, List<String[]> lines) {
+            m_firstRow = firstRow;
+            m_lines = lines;
+        }
+    }
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final Chunk END_OF_INPUT = new Chunk(-1, null);
+
+    /**
+     * Rows converted by one worker for one partition, not yet sent.
+     */
+    private static final class Batch {
+        final List<Object[]> m_parameters = new ArrayList<Object[]>();
+        final List<MyCallback> m_callbacks = new ArrayList<MyCallback>();
+    }
+
+    /**
+     * Checks and converts chunks of lines, and sends them to the database in
+     * batches of rows that hash to the same partition. Rows whose partition
+     * isn't known yet, because the client hasn't heard the cluster topology,
+     * share one batch and are routed by the client one by one.
+     */
+    private static final class LoaderWorker extends Thread {
+        private final BlockingQueue<Chunk> m_chunks;
+        private final Client m_client;
+        private final int m_columnCnt;
+        private final Map<Integer, Batch> m_batches = new HashMap<Integer, Batch>();
+        // set if the worker gave up, the reader checks it while waiting to queue chunks
+        private volatile Exception m_error = null;
+
+        LoaderWorker(int id, BlockingQueue<Chunk> chunks, Client client, int columnCnt) {
+            super("CSVLoader worker " + id);
+            m_chunks = chunks;
+            m_client = client;
+            m_columnCnt = columnCnt;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Chunk chunk;
+                while ((chunk = m_chunks.take()) != END_OF_INPUT) {
+                    loadChunk(chunk);
+                }
+                for (Batch batch : m_batches.values()) {
+                    send(batch);
+                }
+            } catch (Exception e) {
+                m_error = e;
+            }
+        }
+
+        private void loadChunk(Chunk chunk) throws Exception {
+            final int count = chunk.m_lines.size();
+            final Object rows[][] = new Object[count][];
+            final String originals[][] = new String[count][];
+            for (int i = 0; i < count; i++) {
+                // keep the line as read for the invalid row file
+                originals[i] = chunk.m_lines.get(i).clone();
+                rows[i] = convertRow(chunk.m_firstRow + i, chunk.m_lines.get(i), originals[i]);
+            }
+
+            final int partitions[] = partitionRows(rows);
+            for (int i = 0; i < count; i++) {
+                if (rows[i] == null) {
+                    continue;
+                }
+                Batch batch = m_batches.get(partitions[i]);
+                if (batch == null) {
+                    batch = new Batch();
+                    m_batches.put(partitions[i], batch);
+                }
+                batch.m_parameters.add(rows[i]);
+                batch.m_callbacks.add(new MyCallback(chunk.m_firstRow + i, config, originals[i]));
+                if (batch.m_parameters.size() >= config.batch) {
+                    send(batch);
+                }
+            }
+        }
+
+        /**
+         * Convert a line to the procedure's parameters.
+         * @return null if the line is invalid, after recording the error
+         */
+        private Object[] convertRow(long rowNumber, String line[], String original[]) throws Exception {
+            String lineCheckResult;
+            if ((lineCheckResult = checkparams_trimspace(line, m_columnCnt)) != null) {
+                recordError(rowNumber, lineData(original), lineCheckResult);
+                return null;
+            }
+
+            final Object parameters[] = new Object[line.length];
+            for (int i = 0; i < line.length; i++) {
+                final VoltType type = typeList.get(i);
+                final Class<?> slot = type.classFromType();
+                try {
+                    parameters[i] = ParameterConverter.tryToMakeCompatible(
+                            slot.isPrimitive(), false, slot, null, line[i]);
+                } catch (Exception e) {
+                    recordError(rowNumber, lineData(original),
+                            "Error: column " + (i + 1) + " is not a valid " + type + ": " + e.getMessage());
+                    return null;
+                }
+            }
+            return parameters;
+        }
+
+        /**
+         * The partition of each converted row, or -1 for all of them if the procedure
+         * isn't partitioned. Integer keys of the whole chunk are hashed in one call.
+         */
+        private int[] partitionRows(Object rows[][]) {
+            final int partitions[] = new int[rows.length];
+            if (partitionParameter < 0) {
+                Arrays.fill(partitions, -1);
+                return partitions;
+            }
+            final VoltType type = typeList.get(partitionParameter);
+            try {
+                if (type.isInteger() && type != VoltType.TIMESTAMP) {
+                    // each type's null value hashes like the null BIGINT, to partition 0
+                    final long nullValue = ((Number) type.getNullValue()).longValue();
+                    final long keys[] = new long[rows.length];
+                    for (int i = 0; i < rows.length; i++) {
+                        final Object key = rows[i] == null ? null : rows[i][partitionParameter];
+                        final long value = key == null ? VoltType.NULL_BIGINT : ((Number) key).longValue();
+                        keys[i] = value == nullValue ? VoltType.NULL_BIGINT : value;
                     }
-                    if (errorInfo.size() >= m_config.maxerrors) {
-                        m_log.error("The number of Failure row data exceeds " + m_config.maxerrors);
-                        produceFiles();
-                        close_cleanup();
-                        System.exit(-1);
+                    TheHashinator.hashinate(keys, partitions);
+                } else {
+                    for (int i = 0; i < rows.length; i++) {
+                        if (rows[i] != null) {
+                            partitions[i] = TheHashinator.hashToPartition(rows[i][partitionParameter]);
+                        }
                     }
                 }
+            } catch (RuntimeException e) {
+                // the client hasn't configured the hashinator yet
+                Arrays.fill(partitions, -1);
+            }
+            return partitions;
+        }
+
+        private void send(Batch batch) throws Exception {
+            if (batch.m_parameters.isEmpty()) {
                 return;
             }
+            // blocks while there is backpressure
+            m_client.callProcedureBatch(
+                    batch.m_callbacks.toArray(new ProcedureCallback[batch.m_callbacks.size()]),
+                    insertProcedure,
+                    batch.m_parameters);
+            batch.m_parameters.clear();
+            batch.m_callbacks.clear();
+        }
+    }
 
-            long currentCount = inCount.incrementAndGet();
+    /**
+     * Counts the characters read from the input file.
+     */
+    private static final class CountingReader extends FilterReader {
+        private final AtomicLong m_count = new AtomicLong(0);
 
-            if (currentCount % reportEveryNRows == 0) {
-                m_log.info( "Inserted " + currentCount + " rows" );
+        CountingReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c != -1) {
+                m_count.incrementAndGet();
             }
+            return c;
+        }
+
+        @Override
+        public int read(char cbuf[], int off, int len) throws IOException {
+            int n = super.read(cbuf, off, len);
+            if (n > 0) {
+                m_count.addAndGet(n);
+            }
+            return n;
+        }
+
+        long getCount() {
+            return m_count.get();
         }
     }
 
@@ -161,6 +369,12 @@ public class CSVLoader {
         @Option(desc = "do not allow whitespace between values and separators", hasArg = false)
         boolean nowhitespace = !CSVParser.DEFAULT_IGNORE_LEADING_WHITESPACE;
 
+        @Option(desc = "number of threads converting rows and sending them to the database (default: number of cores, at most 8)")
+        int threads = Math.min(8, CoreUtils.availableProcessors());
+
+        @Option(desc = "rows for the same partition sent to the database together (default: 200)")
+        int batch = 200;
+
         @Option(shortOpt = "s", desc = "list of servers to connect to (default: localhost)")
         String servers = "localhost";
 
@@ -191,6 +405,10 @@ public class CSVLoader {
                         + Integer.MAX_VALUE);
             if (port < 0)
                 exitWithMessageAndUsage("port number must be >= 0");
+            if (threads < 1)
+                exitWithMessageAndUsage("threads must be >= 1");
+            if (batch < 1)
+                exitWithMessageAndUsage("batch must be >= 1");
             if ((blank.equalsIgnoreCase("error") ||
                     blank.equalsIgnoreCase("null") ||
                     blank.equalsIgnoreCase("empty")) == false)
@@ -210,8 +428,6 @@ public class CSVLoader {
     public static void main(String[] args) throws IOException,
             InterruptedException {
         start = System.currentTimeMillis();
-        int waits = 0;
-        int shortWaits = 0;
 
         CSVConfig cfg = new CSVConfig();
         cfg.parse(CSVLoader.class.getName(), args);
@@ -225,10 +441,13 @@ public class CSVLoader {
                         new InputStreamReader(System.in)), config.separator,
                         config.quotechar, config.escape, config.skip,
                         config.strictquotes, config.nowhitespace);
-            else
-                csvReader = new CSVReader(new FileReader(config.file),
+            else {
+                inputReader = new CountingReader(new FileReader(config.file));
+                inputLength = new File(config.file).length();
+                csvReader = new CSVReader(inputReader,
                         config.separator, config.quotechar, config.escape,
                         config.skip, config.strictquotes, config.nowhitespace);
+            }
 
         } catch (FileNotFoundException e) {
             m_log.error("CSV file '" + config.file + "' could not be found.");
@@ -253,10 +472,8 @@ public class CSVLoader {
         }
         assert(csvClient != null);
 
+        boolean failed = false;
         try {
-            ProcedureCallback cb = null;
-
-            boolean lastOK = true;
             String line[] = null;
 
             int columnCnt = 0;
@@ -284,75 +501,153 @@ public class CSVLoader {
                 close_cleanup();
                 System.exit(-1);
             }
+            partitionParameter = getPartitionParameter(csvClient);
+
+            // a few chunks per worker keep them busy without reading far ahead
+            final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<Chunk>(config.threads * 4);
+            final LoaderWorker workers[] = new LoaderWorker[config.threads];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new LoaderWorker(i, chunks, csvClient, columnCnt);
+                workers[i].start();
+            }
 
-            while ((config.limitrows-- > 0)
+            List<String[]> lines = new ArrayList<String[]>(CHUNK_SIZE);
+            long firstRow = 1;
+            while (!failed && (config.limitrows-- > 0)
                     && (line = csvReader.readNext()) != null) {
                 outCount.incrementAndGet();
-                boolean queued = false;
-                while (queued == false) {
-                    StringBuilder linedata = new StringBuilder();
-                    for (int i = 0; i < line.length; i++) {
-                        linedata.append("\"" + line[i] + "\"");
-                        if (i != line.length - 1)
-                            linedata.append(",");
-                    }
-                    String[] correctedLine = line;
-                    cb = new MyCallback(outCount.get(), config,
-                            linedata.toString());
-                    String lineCheckResult;
-
-                    if ((lineCheckResult = checkparams_trimspace(correctedLine,
-                            columnCnt)) != null) {
-                        synchronized (errorInfo) {
-                            if (!errorInfo.containsKey(outCount.get())) {
-                                String[] info = { linedata.toString(),
-                                        lineCheckResult };
-                                errorInfo.put(outCount.get(), info);
-                            }
-                            if (errorInfo.size() >= config.maxerrors) {
-                                m_log.error("The number of Failure row data exceeds "
-                                        + config.maxerrors);
-                                produceFiles();
-                                close_cleanup();
-                                System.exit(-1);
-                            }
-                        }
-                        break;
-                    }
-
-                    queued = csvClient.callProcedure(cb, insertProcedure,
-                            (Object[]) correctedLine);
-
-                    if (queued == false) {
-                        ++waits;
-                        if (lastOK == false) {
-                            ++shortWaits;
-                        }
-                        Thread.sleep(waitSeconds);
-                    }
-                    lastOK = queued;
+                lines.add(line);
+                if (lines.size() == CHUNK_SIZE) {
+                    failed = !offerChunk(chunks, new Chunk(firstRow, lines), workers);
+                    firstRow += lines.size();
+                    lines = new ArrayList<String[]>(CHUNK_SIZE);
+                }
+            }
+            if (!failed && !lines.isEmpty()) {
+                failed = !offerChunk(chunks, new Chunk(firstRow, lines), workers);
+            }
+            for (int i = 0; !failed && i < workers.length; i++) {
+                failed = !offerChunk(chunks, END_OF_INPUT, workers);
+            }
+            if (failed) {
+                // the rows not yet loaded are abandoned, let the other workers finish,
+                // there is room for all of them once the queue is empty
+                chunks.clear();
+                for (int i = 0; i < workers.length; i++) {
+                    chunks.offer(END_OF_INPUT);
+                }
+            }
+            for (LoaderWorker worker : workers) {
+                worker.join();
+                if (worker.m_error != null) {
+                    m_log.error("Error loading rows", worker.m_error);
+                    failed = true;
                 }
             }
             csvClient.drain();
 
         } catch (Exception e) {
-            e.printStackTrace();
+            m_log.error("Error loading rows", e);
+            failed = true;
         }
 
         m_log.info("Inserted " + outCount.get() + " and acknowledged "
                 + inCount.get() + " rows (final)");
-        if (waits > 0) {
-            m_log.info("Waited " + waits + " times");
-            if (shortWaits > 0) {
-                m_log.info( "Waited too briefly? " + shortWaits
-                        + " times" );
-            }
-        }
 
         produceFiles();
         close_cleanup();
         csvReader.close();
         csvClient.close();
+        if (failed) {
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Queue a chunk for the workers, waiting while they are busy.
+     * @return false if a worker failed, nothing will take the chunk then
+     */
+    private static boolean offerChunk(BlockingQueue<Chunk> chunks, Chunk chunk, LoaderWorker workers[])
+    throws InterruptedException {
+        while (true) {
+            for (LoaderWorker worker : workers) {
+                if (worker.m_error != null) {
+                    return false;
+                }
+            }
+            if (chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Find which parameter of the insert procedure rows are partitioned on.
+     * @return the parameter index, or -1 if the procedure isn't single partition
+     */
+    private static int getPartitionParameter(Client client) throws Exception {
+        VoltTable procs = client.callProcedure("@SystemCatalog", "PROCEDURES").getResults()[0];
+        while (procs.advanceRow()) {
+            if (insertProcedure.equalsIgnoreCase(procs.getString("PROCEDURE_NAME"))) {
+                JSONObject jsObj = new JSONObject(procs.getString("REMARKS"));
+                if (jsObj.getBoolean(JdbcDatabaseMetaDataGenerator.JSON_SINGLE_PARTITION)) {
+                    return jsObj.getInt(JdbcDatabaseMetaDataGenerator.JSON_PARTITION_PARAMETER);
+                }
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static String lineData(String line[]) {
+        StringBuilder linedata = new StringBuilder();
+        for (int i = 0; i < line.length; i++) {
+            linedata.append("\"" + line[i] + "\"");
+            if (i != line.length - 1)
+                linedata.append(",");
+        }
+        return linedata.toString();
+    }
+
+    /**
+     * Remember an invalid row for the report, and give up once there are too many.
+     */
+    private static void recordError(long lineNum, String rowdata, String message) throws Exception {
+        synchronized (errorInfo) {
+            if (!errorInfo.containsKey(lineNum)) {
+                String[] info = { rowdata, message };
+                errorInfo.put(lineNum, info);
+            }
+            if (errorInfo.size() >= config.maxerrors) {
+                m_log.error("The number of Failure row data exceeds " + config.maxerrors);
+                produceFiles();
+                close_cleanup();
+                System.exit(-1);
+            }
+        }
+    }
+
+    /**
+     * Insert rate so far and, when reading a file, an estimate of the time
+     * left from how much of the file has been read.
+     */
+    private static String progress(long inserted) {
+        final long elapsed = System.currentTimeMillis() - start;
+        if (elapsed <= 0) {
+            return "";
+        }
+        String progress = ", " + (inserted * 1000 / elapsed) + " rows/s";
+        if (inputReader != null && inputLength > 0) {
+            final long read = inputReader.getCount();
+            if (read > 0 && outCount.get() > 0) {
+                // rows still queued or in flight are part of the work left
+                final double done = (double)read / inputLength * inserted / outCount.get();
+                if (done > 0) {
+                    progress += ", about " + (long)(elapsed * (1 - done) / done / 1000) + " seconds left";
+                }
+            }
+        }
+        return progress;
     }
 
     private static String checkparams_trimspace(String[] slot,
@@ -490,6 +785,9 @@ public class CSVLoader {
         errorInfo.clear();
 
         typeList.clear();
+        partitionParameter = -1;
+        inputReader = null;
+        inputLength = -1;
 
         out_invaliderowfile.close();
         out_logfile.close();
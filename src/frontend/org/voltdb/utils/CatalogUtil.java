@@ -1235,7 +1235,6 @@ public abstract class CatalogUtil {
                            "export_overflow");
         validateDirectory("export overflow", exportOverflowPath, crashOnFailedValidation);
 
-        // only use these directories in the enterprise version
         File commandLogPath = null;
         File commandLogSnapshotPath = null;
 
@@ -1244,30 +1243,18 @@ public abstract class CatalogUtil {
         {
             path_entry = paths.getCommandlog();
         }
-        if (VoltDB.instance().getConfig().m_isEnterprise) {
-            commandLogPath =
-                    getFeaturePath(paths, path_entry, voltDbRoot, "command log", "command_log");
-            validateDirectory("command log", commandLogPath, crashOnFailedValidation);
-        }
-        else {
-            // dumb defaults if you ask for logging in community version
-            commandLogPath = new VoltFile(voltDbRoot, "command_log");
-        }
+        commandLogPath =
+                getFeaturePath(paths, path_entry, voltDbRoot, "command log", "command_log");
+        validateDirectory("command log", commandLogPath, crashOnFailedValidation);
 
         path_entry = null;
         if (paths != null)
         {
             path_entry = paths.getCommandlogsnapshot();
         }
-        if (VoltDB.instance().getConfig().m_isEnterprise) {
-            commandLogSnapshotPath =
-                getFeaturePath(paths, path_entry, voltDbRoot, "command log snapshot", "command_log_snapshot");
-            validateDirectory("command log snapshot", commandLogSnapshotPath, crashOnFailedValidation);
-        }
-        else {
-            // dumb defaults if you ask for logging in community version
-            commandLogSnapshotPath = new VoltFile(voltDbRoot, "command_log_snapshot");;
-        }
+        commandLogSnapshotPath =
+            getFeaturePath(paths, path_entry, voltDbRoot, "command log snapshot", "command_log_snapshot");
+        validateDirectory("command log snapshot", commandLogSnapshotPath, crashOnFailedValidation);
 
         //Set the volt root in the catalog
         catalog.getClusters().get("cluster").setVoltroot(voltDbRoot.getPath());
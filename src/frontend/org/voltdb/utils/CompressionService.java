@@ -156,6 +156,16 @@ public final class CompressionService {
         return compressBytes(bytes, 0, bytes.length);
     }
 
+    /**
+     * Compress part of a heap array straight into another, for callers that frame
+     * the result themselves. Output needs maxCompressedLength(length) bytes from outputOffset.
+     * @return the compressed length
+     */
+    public static int compressBytes(byte bytes[], int offset, int length,
+                                    byte output[], int outputOffset) throws IOException {
+        return Snappy.compress(bytes, offset, length, output, outputOffset);
+    }
+
     public static Future<byte[]> decompressBufferAsync(final ByteBuffer input) throws IOException {
         return submitCompressionTask(new Callable<byte[]>() {
 
@@ -204,6 +214,15 @@ public final class CompressionService {
         return Snappy.uncompress(compressed, uncompressed);
     }
 
+    /**
+     * Decompress part of a heap array without copying it to a direct buffer first
+     */
+    public static byte[] decompressBytes(byte bytes[], int offset, int length) throws IOException {
+        final byte result[] = new byte[Snappy.uncompressedLength(bytes, offset, length)];
+        Snappy.uncompress(bytes, offset, length, result, 0);
+        return result;
+    }
+
     public static byte[] decompressBytes(byte bytes[]) throws IOException {
         IOBuffers buffers = m_buffers.get();
         ByteBuffer input = buffers.input;
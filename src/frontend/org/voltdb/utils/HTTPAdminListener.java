@@ -372,9 +372,4 @@ public class HTTPAdminListener {
         try { m_server.destroy(); } catch (Exception e2) {}
         m_server = null;
     }
-
-    public void notifyOfCatalogUpdate()
-    {
-        httpClientInterface.notifyOfCatalogUpdate();
-    }
 }
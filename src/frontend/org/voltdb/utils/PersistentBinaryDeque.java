@@ -23,14 +23,19 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.RandomAccessFile;
 import java.io.StringWriter;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.TreeMap;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.base.Joiner;
 import org.voltcore.logging.VoltLogger;
@@ -45,6 +50,9 @@ import org.voltcore.utils.DBBPool.BBContainer;
  * once all objects from the segment have been polled and all the containers returned by poll have been discarded.
  * Push is implemented by creating new segments at the head of the queue containing the objects to be pushed.
  *
+ * Segments can optionally be memory mapped instead of being accessed with file channel reads and writes.
+ * Offer and poll are guarded by separate locks so a single producer and a single consumer don't contend
+ * except when the consumer catches up and steals the write segment.
  */
 public class PersistentBinaryDeque implements BinaryDeque {
 
@@ -55,9 +63,18 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
     private final File m_path;
     private final String m_nonce;
+    private final boolean m_useMemoryMappedSegments;
     private java.util.concurrent.atomic.AtomicLong m_sizeInBytes =
         new java.util.concurrent.atomic.AtomicLong(0);
 
+    /*
+     * The producer holds the offer lock while writing to the write segment and the consumer
+     * holds the poll lock while reading finished segments. Operations that need both
+     * always acquire the poll lock first.
+     */
+    private final Object m_offerLock = new Object();
+    private final Object m_pollLock = new Object();
+
     /**
      * Objects placed in the deque are stored in file segments that are up to 64 megabytes.
      * Segments only support appending objects. A segment will throw an IOException if an attempt
@@ -72,17 +89,29 @@ public class PersistentBinaryDeque implements BinaryDeque {
         private RandomAccessFile m_ras;
         private FileChannel m_fc;
 
+        //Only set for memory mapped segments. New segments are mapped at the full chunk size
+        //and the file is trimmed back to the written size when the segment is closed
+        private MappedByteBuffer m_buf;
+
         //Index of the next object to read, not an offset into the file
-        //The offset is maintained by the ByteBuffer. Used to determine if there is another object
+        //Used to determine if there is another object
         private int m_objectReadIndex = 0;
 
+        //Offset of the next object to read and offset past the last object written
+        private int m_readOffset = 4;
+        private int m_writeOffset = 4;
+
+        //The entry count is also stored at the head of the file, but is kept here so
+        //it is only read from disk when the segment is opened
+        private volatile int m_numEntries = 0;
+
         //ID of this segment
         private final Long m_index;
         private static final int m_chunkSize = (1024 * 1024) * 64;
 
         //How many entries that have been polled have from this file have been discarded.
         //Once this == the number of entries the segment can close and delete itself
-        private int m_discardsUntilDeletion = 0;
+        private final AtomicInteger m_discardsUntilDeletion = new AtomicInteger(0);
 
         public DequeSegment(Long index, File file) {
             m_index = index;
@@ -95,53 +124,51 @@ public class PersistentBinaryDeque implements BinaryDeque {
             if (m_fc == null) {
                 open();
             }
-            if (m_fc.size() > 0) {
-                m_bufferForNumEntries.clear();
-                while (m_bufferForNumEntries.hasRemaining()) {
-                    int read = m_fc.read(m_bufferForNumEntries, 0);
-                    if (read == -1) {
-                        throw new EOFException();
-                    }
-                }
-                m_bufferForNumEntries.flip();
-                return m_bufferForNumEntries.getInt();
-            } else {
-                return 0;
-            }
+            return m_numEntries;
         }
 
-        private void initNumEntries() throws IOException {
-            m_bufferForNumEntries.clear();
-            m_bufferForNumEntries.putInt(0).flip();
-            while (m_bufferForNumEntries.hasRemaining()) {
-                m_fc.write(m_bufferForNumEntries, 0);
+        private int readInt(int offset) throws IOException {
+            if (m_buf != null) {
+                return m_buf.getInt(offset);
             }
-            m_syncedSinceLastEdit = false;
-        }
-
-        private void incrementNumEntries() throws IOException {
-            //First read the existing amount
             m_bufferForNumEntries.clear();
             while (m_bufferForNumEntries.hasRemaining()) {
-                int read = m_fc.read(m_bufferForNumEntries, 0);
+                int read = m_fc.read(m_bufferForNumEntries, offset + m_bufferForNumEntries.position());
                 if (read == -1) {
                     throw new EOFException();
                 }
             }
             m_bufferForNumEntries.flip();
+            return m_bufferForNumEntries.getInt();
+        }
 
-            //Then write the incremented value
-            int numEntries = m_bufferForNumEntries.getInt();
-            m_bufferForNumEntries.flip();
-            m_bufferForNumEntries.putInt(++numEntries).flip();
+        private void writeInt(int offset, int value) throws IOException {
+            if (m_buf != null) {
+                m_buf.putInt(offset, value);
+                return;
+            }
+            m_bufferForNumEntries.clear();
+            m_bufferForNumEntries.putInt(value).flip();
             while (m_bufferForNumEntries.hasRemaining()) {
-                m_fc.write(m_bufferForNumEntries, 0);
+                m_fc.write(m_bufferForNumEntries, offset + m_bufferForNumEntries.position());
             }
+        }
+
+        private void initNumEntries() throws IOException {
+            writeInt(0, 0);
+            m_numEntries = 0;
+            m_syncedSinceLastEdit = false;
+        }
+
+        private void incrementNumEntries() throws IOException {
+            final int numEntries = m_numEntries + 1;
+            writeInt(0, numEntries);
             m_syncedSinceLastEdit = false;
 
             //For when this buffer is eventually finished and starts being polled
             //Stored on disk and in memory
-            m_discardsUntilDeletion++;
+            m_discardsUntilDeletion.incrementAndGet();
+            m_numEntries = numEntries;
         }
 
         /**
@@ -150,7 +177,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
          */
         private int remaining() throws IOException {
             //Subtract 4 for the length prefix
-            return (int)(m_chunkSize - m_fc.position()) - 4;
+            return m_chunkSize - m_writeOffset - 4;
         }
 
         private void open() throws IOException {
@@ -162,40 +189,70 @@ public class PersistentBinaryDeque implements BinaryDeque {
             }
             m_ras = new RandomAccessFile( m_file, "rw");
             m_fc = m_ras.getChannel();
-            m_fc.position(4);
-            if (m_fc.size() >= 4) {
-                m_discardsUntilDeletion = getNumEntries();
+            final long size = m_fc.size();
+            m_readOffset = 4;
+            m_writeOffset = (int)Math.max(4, size);
+            if (m_useMemoryMappedSegments) {
+                m_buf = m_fc.map(MapMode.READ_WRITE, 0, size >= 4 ? size : m_chunkSize);
+            }
+            if (size >= 4) {
+                m_numEntries = readInt(0);
+                m_discardsUntilDeletion.set(m_numEntries);
             }
         }
 
+        /**
+         * Called once nothing more will be appended so the segment can be polled from the start
+         */
+        private void finishWriting() {
+            m_readOffset = 4;
+        }
+
         private void closeAndDelete() throws IOException {
             close();
             m_sizeInBytes.addAndGet(-sizeInBytes());
             m_file.delete();
         }
 
-        private void close() throws IOException {
+        private synchronized void close() throws IOException {
             if (m_fc != null) {
-                m_fc.close();
-                m_ras = null;
-                m_fc = null;
+                try {
+                    if (m_buf != null) {
+                        unmap(m_buf);
+                        m_buf = null;
+                        if (m_fc.size() > m_writeOffset) {
+                            m_fc.truncate(m_writeOffset);
+                        }
+                    }
+                } finally {
+                    m_fc.close();
+                    m_ras = null;
+                    m_fc = null;
+                }
             }
         }
 
-        private void sync() throws IOException {
+        private synchronized void sync() throws IOException {
+            if (m_fc == null) {
+                return;
+            }
             if (!m_syncedSinceLastEdit) {
-                m_fc.force(true);
+                if (m_buf != null) {
+                    m_buf.force();
+                } else {
+                    m_fc.force(true);
+                }
             }
             m_syncedSinceLastEdit = true;
         }
 
-        private BBContainer poll() throws IOException {
+        private synchronized BBContainer poll() throws IOException {
             if (m_fc == null) {
                 open();
             }
 
             //No more entries to read
-            if (m_objectReadIndex >= getNumEntries()) {
+            if (m_objectReadIndex >= m_numEntries) {
                 return null;
             }
 
@@ -204,29 +261,29 @@ public class PersistentBinaryDeque implements BinaryDeque {
             //If this is the last object to read from this segment
             //increment the poll segment index so that the next poll
             //selects the correct segment
-            if (m_objectReadIndex >= getNumEntries()) {
+            if (m_objectReadIndex >= m_numEntries) {
                 m_currentPollSegmentIndex++;
             }
 
             //Get the length prefix and then read the object
-            m_bufferForNumEntries.clear();
-            while (m_bufferForNumEntries.hasRemaining()) {
-                int read = m_fc.read(m_bufferForNumEntries);
-                if (read == -1) {
-                    throw new EOFException();
-                }
-            }
-            m_bufferForNumEntries.flip();
-            int length = m_bufferForNumEntries.getInt();
+            int length = readInt(m_readOffset);
             if (length < 1) {
                 throw new IOException("Read an invalid length");
             }
+            final int objectOffset = m_readOffset + 4;
+            m_readOffset = objectOffset + length;
 
             ByteBuffer resultBuffer = ByteBuffer.allocate(length);
-            while (resultBuffer.hasRemaining()) {
-                int read = m_fc.read(resultBuffer);
-                if (read == -1) {
-                    throw new EOFException();
+            if (m_buf != null) {
+                ByteBuffer object = m_buf.duplicate();
+                object.limit(objectOffset + length).position(objectOffset);
+                resultBuffer.put(object);
+            } else {
+                while (resultBuffer.hasRemaining()) {
+                    int read = m_fc.read(resultBuffer, objectOffset + resultBuffer.position());
+                    if (read == -1) {
+                        throw new EOFException();
+                    }
                 }
             }
             resultBuffer.flip();
@@ -239,8 +296,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
                 public void discard() {
                     if (!discarded) {
                         discarded = true;
-                        m_discardsUntilDeletion--;
-                        if (m_discardsUntilDeletion == 0) {
+                        if (m_discardsUntilDeletion.decrementAndGet() == 0) {
                             m_finishedSegments.remove(m_index);
                             try {
                                 closeAndDelete();
@@ -277,18 +333,24 @@ public class PersistentBinaryDeque implements BinaryDeque {
                 throw new IOException(m_file + " has insufficient space");
             }
 
-            m_bufferForNumEntries.clear();
-            m_bufferForNumEntries.putInt(length).flip();
-            while (m_bufferForNumEntries.hasRemaining()) {
-                m_fc.write(m_bufferForNumEntries);
-            }
+            writeInt(m_writeOffset, length);
 
+            ByteBuffer mappedDestination = null;
+            if (m_buf != null) {
+                mappedDestination = m_buf.duplicate();
+                mappedDestination.position(m_writeOffset + 4);
+            }
+            int position = m_writeOffset + 4;
             int objectIndex = 0;
             for (BBContainer obj : objects ) {
                 boolean success = false;
                 try {
-                    while (obj.b.hasRemaining()) {
-                        m_fc.write(obj.b);
+                    if (mappedDestination != null) {
+                        mappedDestination.put(obj.b);
+                    } else {
+                        while (obj.b.hasRemaining()) {
+                            position += m_fc.write(obj.b, position);
+                        }
                     }
                     obj.discard();
                     success = true;
@@ -301,6 +363,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
                     }
                 }
             }
+            m_writeOffset += 4 + length;
             m_sizeInBytes.addAndGet(4 + length);
             incrementNumEntries();
         }
@@ -308,16 +371,69 @@ public class PersistentBinaryDeque implements BinaryDeque {
         //A white lie, don't include the object count prefix
         //so that the size is 0 when there is no user data
         private long sizeInBytes() {
+            if (m_fc != null) {
+                return m_writeOffset - 4;
+            }
             return m_file.length() - 4;
         }
     }
 
+    /**
+     * Release a mapping eagerly instead of waiting for the buffer to be collected, otherwise
+     * deleted segments keep holding disk space. Falls back to letting the GC do it if the
+     * JVM doesn't expose a cleaner.
+     */
+    private static void unmap(MappedByteBuffer buf) {
+        try {
+            Method cleanerMethod = buf.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buf);
+            if (cleaner != null) {
+                Method cleanMethod = cleaner.getClass().getMethod("clean");
+                cleanMethod.setAccessible(true);
+                cleanMethod.invoke(cleaner);
+            }
+        } catch (Exception e) {
+            exportLog.debug("Unable to unmap PBD segment, it will be released by the GC", e);
+        }
+    }
+
+    /**
+     * A memory mapped segment is extended to the full chunk size when it is created. If the
+     * process stopped before the segment was closed, trim the file back to the objects that were
+     * written so the file size can be used to account for the segment.
+     * @return the number of objects in the segment
+     */
+    private static int trimSegment(File file) throws IOException {
+        RandomAccessFile ras = new RandomAccessFile(file, "rw");
+        try {
+            final long size = ras.length();
+            if (size < 4) {
+                return 0;
+            }
+            final int numEntries = ras.readInt();
+            long end = 4;
+            for (int ii = 0; ii < numEntries && end + 4 <= size; ii++) {
+                ras.seek(end);
+                end += 4 + ras.readInt();
+            }
+            if (end < size) {
+                ras.setLength(end);
+            }
+            return numEntries;
+        } finally {
+            ras.close();
+        }
+    }
+
     //Segments that are no longer being written to and can be polled
     //These segments are "immutable". They will not be modified until deletion
-    private final TreeMap<Long, DequeSegment> m_finishedSegments = new TreeMap<Long, DequeSegment>();
+    //Concurrent because segments are finished under the offer lock and deleted by discards
+    private final ConcurrentSkipListMap<Long, DequeSegment> m_finishedSegments =
+        new ConcurrentSkipListMap<Long, DequeSegment>();
 
     //The current segment being written to
-    private DequeSegment m_writeSegment = null;
+    private volatile DequeSegment m_writeSegment = null;
 
     //Index of the segment being polled
     private Long m_currentPollSegmentIndex = 0L;
@@ -332,8 +448,22 @@ public class PersistentBinaryDeque implements BinaryDeque {
      * @throws IOException
      */
     public PersistentBinaryDeque(final String nonce, final File path) throws IOException {
+        this(nonce, path, false);
+    }
+
+    /**
+     * Create a persistent binary deque with the specified nonce and storage back at the specified path.
+     * @param nonce
+     * @param path
+     * @param useMemoryMappedSegments access segments through memory mappings instead of
+     *        file channel reads and writes
+     * @throws IOException
+     */
+    public PersistentBinaryDeque(final String nonce, final File path, boolean useMemoryMappedSegments)
+    throws IOException {
         m_path = path;
         m_nonce = nonce;
+        m_useMemoryMappedSegments = useMemoryMappedSegments;
 
         if (!path.exists() || !path.canRead() || !path.canWrite() || !path.canExecute() || !path.isDirectory()) {
             throw new IOException(path + " is not usable ( !exists || !readable " +
@@ -342,6 +472,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
         //Parse the files in the directory by name to find files
         //that are part of this deque
+        final TreeMap<Long, File> segmentFiles = new TreeMap<Long, File>();
         path.listFiles(new FileFilter() {
 
             @Override
@@ -371,16 +502,24 @@ public class PersistentBinaryDeque implements BinaryDeque {
                         pathname.delete();
                         return false;
                     }
-                    Long index = Long.valueOf(seqNum);
-                    DequeSegment ds = new DequeSegment( index, pathname);
-                    m_finishedSegments.put( index, ds);
-                    m_sizeInBytes.addAndGet(ds.sizeInBytes());
+                    segmentFiles.put(Long.valueOf(seqNum), pathname);
                 }
                 return false;
             }
 
         });
 
+        for (Map.Entry<Long, File> entry : segmentFiles.entrySet()) {
+            if (trimSegment(entry.getValue()) == 0) {
+                //A mapped segment that was never closed and doesn't have any objects
+                entry.getValue().delete();
+                continue;
+            }
+            DequeSegment ds = new DequeSegment( entry.getKey(), entry.getValue());
+            m_finishedSegments.put( entry.getKey(), ds);
+            m_sizeInBytes.addAndGet(ds.sizeInBytes());
+        }
+
         Long lastKey = null;
         for (Long key : m_finishedSegments.keySet()) {
             if (lastKey == null) {
@@ -410,28 +549,38 @@ public class PersistentBinaryDeque implements BinaryDeque {
     }
 
     @Override
-    public synchronized void offer(BBContainer[] objects) throws IOException {
-        if (m_writeSegment == null) {
-            throw new IOException("Closed");
-        }
-        int needed = 0;
-        for (BBContainer b : objects) {
-            needed +=  b.b.remaining();
-        }
+    public void offer(BBContainer[] objects) throws IOException {
+        synchronized (m_offerLock) {
+            if (m_writeSegment == null) {
+                throw new IOException("Closed");
+            }
+            int needed = 0;
+            for (BBContainer b : objects) {
+                needed +=  b.b.remaining();
+            }
 
-        if (needed > DequeSegment.m_chunkSize - 4) {
-            throw new IOException("Maxiumum object size is " + (DequeSegment.m_chunkSize - 4));
-        }
+            if (needed > DequeSegment.m_chunkSize - 4) {
+                throw new IOException("Maxiumum object size is " + (DequeSegment.m_chunkSize - 4));
+            }
 
-        if (m_writeSegment.remaining() < needed) {
-            openNewWriteSegment();
-        }
+            if (m_writeSegment.remaining() < needed) {
+                openNewWriteSegment();
+            }
 
-        m_writeSegment.offer(objects);
+            m_writeSegment.offer(objects);
+        }
     }
 
     @Override
-    public synchronized void push(BBContainer[][] objects) throws IOException {
+    public void push(BBContainer[][] objects) throws IOException {
+        synchronized (m_pollLock) {
+            synchronized (m_offerLock) {
+                pushLocked(objects);
+            }
+        }
+    }
+
+    private void pushLocked(BBContainer[][] objects) throws IOException {
         if (m_writeSegment == null) {
             throw new IOException("Closed");
         }
@@ -490,89 +639,111 @@ public class PersistentBinaryDeque implements BinaryDeque {
                 writeSegment.offer(currentSegmentContents.pollFirst());
             }
 
-            writeSegment.m_fc.position(4);
+            writeSegment.finishWriting();
             m_finishedSegments.put(writeSegment.m_index, writeSegment);
         }
     }
 
+    /*
+     * Must be called with the offer lock held
+     */
     private void openNewWriteSegment() throws IOException {
         if (m_writeSegment == null) {
             throw new IOException("Closed");
         }
-        m_writeSegment.m_fc.position(4);
+        m_writeSegment.finishWriting();
         m_finishedSegments.put(m_writeSegment.m_index, m_writeSegment);
         Long nextIndex = m_writeSegment.m_index + 1;
-        m_writeSegment =
+        DequeSegment writeSegment =
             new DequeSegment(
                     nextIndex,
                     new VoltFile(m_path, m_nonce + "." + nextIndex + ".pbd"));
-        m_writeSegment.open();
-        m_writeSegment.initNumEntries();
+        writeSegment.open();
+        writeSegment.initNumEntries();
+        m_writeSegment = writeSegment;
     }
 
     @Override
-    public synchronized BBContainer poll() throws IOException {
-        if (m_writeSegment == null) {
-            throw new IOException("Closed");
-        }
-        DequeSegment segment = m_finishedSegments.get(m_currentPollSegmentIndex);
-        if (segment == null) {
-            assert(m_writeSegment.m_index.equals(m_currentPollSegmentIndex));
-            //See if we can steal the write segment, otherwise return null
-            if (m_writeSegment.getNumEntries() > 0) {
-                openNewWriteSegment();
-                return poll();
-            } else {
-                return null;
+    public BBContainer poll() throws IOException {
+        synchronized (m_pollLock) {
+            if (m_writeSegment == null) {
+                throw new IOException("Closed");
+            }
+            DequeSegment segment = m_finishedSegments.get(m_currentPollSegmentIndex);
+            if (segment == null) {
+                synchronized (m_offerLock) {
+                    //The producer may have finished the write segment since the last check
+                    segment = m_finishedSegments.get(m_currentPollSegmentIndex);
+                    if (segment == null) {
+                        assert(m_writeSegment.m_index.equals(m_currentPollSegmentIndex));
+                        //See if we can steal the write segment, otherwise return null
+                        if (m_writeSegment.getNumEntries() > 0) {
+                            openNewWriteSegment();
+                            segment = m_finishedSegments.get(m_currentPollSegmentIndex);
+                        } else {
+                            return null;
+                        }
+                    }
+                }
             }
+            return segment.poll();
         }
-        return segment.poll();
     }
 
     @Override
-    public synchronized void sync() throws IOException {
-        if (m_writeSegment == null) {
-            throw new IOException("Closed");
-        }
-        m_writeSegment.sync();
-        for (DequeSegment segment : m_finishedSegments.values()) {
-            segment.sync();
+    public void sync() throws IOException {
+        synchronized (m_pollLock) {
+            synchronized (m_offerLock) {
+                if (m_writeSegment == null) {
+                    throw new IOException("Closed");
+                }
+                m_writeSegment.sync();
+                for (DequeSegment segment : m_finishedSegments.values()) {
+                    segment.sync();
+                }
+            }
         }
     }
 
     @Override
-    public synchronized void close() throws IOException {
-        if (m_writeSegment == null) {
-            throw new IOException("Closed");
-        }
-        if (m_writeSegment.getNumEntries() > 0) {
-            m_finishedSegments.put(m_writeSegment.m_index, m_writeSegment);
-        } else {
-            m_writeSegment.closeAndDelete();
-        }
-        m_writeSegment = null;
-        for (DequeSegment segment : m_finishedSegments.values()) {
-            segment.close();
+    public void close() throws IOException {
+        synchronized (m_pollLock) {
+            synchronized (m_offerLock) {
+                if (m_writeSegment == null) {
+                    throw new IOException("Closed");
+                }
+                if (m_writeSegment.getNumEntries() > 0) {
+                    m_finishedSegments.put(m_writeSegment.m_index, m_writeSegment);
+                } else {
+                    m_writeSegment.closeAndDelete();
+                }
+                m_writeSegment = null;
+                for (DequeSegment segment : m_finishedSegments.values()) {
+                    segment.close();
+                }
+                m_closed = true;
+            }
         }
-        m_closed = true;
     }
 
     @Override
-    public synchronized boolean isEmpty() throws IOException {
-        if (m_writeSegment == null) {
-            throw new IOException("Closed");
-        }
-        DequeSegment segment = m_finishedSegments.get(m_currentPollSegmentIndex);
-        if (segment == null) {
-            assert(m_writeSegment.m_index.equals(m_currentPollSegmentIndex));
-            //See if we can steal the write segment, otherwise return null
-            if (m_writeSegment.getNumEntries() > 0) {
-                return false;
-            } else {
-                return true;
+    public boolean isEmpty() throws IOException {
+        synchronized (m_pollLock) {
+            if (m_writeSegment == null) {
+                throw new IOException("Closed");
             }
+            DequeSegment segment = m_finishedSegments.get(m_currentPollSegmentIndex);
+            if (segment == null) {
+                synchronized (m_offerLock) {
+                    segment = m_finishedSegments.get(m_currentPollSegmentIndex);
+                    if (segment == null) {
+                        assert(m_writeSegment.m_index.equals(m_currentPollSegmentIndex));
+                        return m_writeSegment.getNumEntries() == 0;
+                    }
+                }
+            }
+            return segment.m_objectReadIndex >= segment.getNumEntries();
         }
-        return segment.m_objectReadIndex >= segment.getNumEntries();
     }
 
     @Override
@@ -581,15 +752,27 @@ public class PersistentBinaryDeque implements BinaryDeque {
     }
 
     @Override
-    public synchronized void closeAndDelete() throws IOException {
-        m_writeSegment.closeAndDelete();
-        for (DequeSegment ds : m_finishedSegments.values()) {
-            ds.closeAndDelete();
+    public void closeAndDelete() throws IOException {
+        synchronized (m_pollLock) {
+            synchronized (m_offerLock) {
+                m_writeSegment.closeAndDelete();
+                for (DequeSegment ds : m_finishedSegments.values()) {
+                    ds.closeAndDelete();
+                }
+            }
         }
     }
 
     @Override
-    public synchronized void parseAndTruncate(BinaryDequeTruncator truncator) throws IOException {
+    public void parseAndTruncate(BinaryDequeTruncator truncator) throws IOException {
+        synchronized (m_pollLock) {
+            synchronized (m_offerLock) {
+                parseAndTruncateLocked(truncator);
+            }
+        }
+    }
+
+    private void parseAndTruncateLocked(BinaryDequeTruncator truncator) throws IOException {
         if (m_finishedSegments.isEmpty()) {
             exportLog.debug("PBD " + m_nonce + " has no finished segments");
             return;
@@ -597,6 +780,16 @@ public class PersistentBinaryDeque implements BinaryDeque {
         //+16 because I am not sure if the max chunk size is enforced right
         ByteBuffer readBuffer = ByteBuffer.allocateDirect(DequeSegment.m_chunkSize + 16);
 
+        /*
+         * The segments are rewritten through separate file handles, close them so mappings
+         * and cached entry counts don't go stale. They are reopened on demand afterwards.
+         */
+        for (Map.Entry<Long, DequeSegment> entry : m_finishedSegments.entrySet()) {
+            DequeSegment segment = entry.getValue();
+            segment.close();
+            m_finishedSegments.put(entry.getKey(), new DequeSegment(segment.m_index, segment.m_file));
+        }
+
         /*
          * Iterator all the objects in all the segments and pass them to the truncator
          * When it finds the truncation point
@@ -737,12 +930,13 @@ public class PersistentBinaryDeque implements BinaryDeque {
             writeSegmentIndex = m_finishedSegments.lastKey() + 1;
         } catch (NoSuchElementException e) {}
 
-        m_writeSegment =
+        DequeSegment writeSegment =
             new DequeSegment(
                     writeSegmentIndex,
                     new VoltFile(m_path, m_nonce + "." + writeSegmentIndex + ".pbd"));
-        m_writeSegment.open();
-        m_writeSegment.initNumEntries();
+        writeSegment.open();
+        writeSegment.initNumEntries();
+        m_writeSegment = writeSegment;
         if (m_finishedSegments.isEmpty()) {
             assert(m_writeSegment.m_index.equals(m_currentPollSegmentIndex));
         }
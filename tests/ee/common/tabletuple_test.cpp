@@ -24,6 +24,7 @@
 #include "harness.h"
 #include "common/tabletuple.h"
 #include "common/ValueFactory.hpp"
+#include "common/ValuePeeker.hpp"
 #include "common/ThreadLocalPool.h"
 
 using namespace voltdb;
@@ -88,6 +89,63 @@ TEST_F(TableTupleTest, ComputeNonInlinedMemory)
     TupleSchema::freeTupleSchema(non_inline_schema);
 }
 
+TEST_F(TableTupleTest, ColdStorageIndexSaturates)
+{
+    vector<bool> column_allow_null(1, true);
+    vector<ValueType> types(1, VALUE_TYPE_BIGINT);
+    vector<int32_t> lengths(1, NValue::getTupleStorageSize(VALUE_TYPE_BIGINT));
+    TupleSchema* schema =
+        TupleSchema::createTupleSchema(types, lengths, column_allow_null, true);
+
+    TableTuple tuple(schema);
+    char *storage = new char[tuple.tupleLength()];
+    memset(storage, 0, tuple.tupleLength());
+    tuple.move(storage);
+    EXPECT_EQ(0, tuple.getCSI());
+
+    tuple.incrementCSI();
+    EXPECT_EQ(1, tuple.getCSI());
+
+    // the counter stops at the maximum rather than wrapping negative
+    tuple.setCSI(MAX_CSI - 1);
+    tuple.incrementCSI();
+    tuple.incrementCSI();
+    EXPECT_EQ(MAX_CSI, tuple.getCSI());
+
+    // and lives beside the flags without disturbing them
+    EXPECT_FALSE(tuple.isActive());
+
+    delete[] storage;
+    TupleSchema::freeTupleSchema(schema);
+}
+
+TEST_F(TableTupleTest, HeaderIsFlagsAndColdStorageIndex)
+{
+    vector<bool> column_allow_null(1, true);
+    vector<ValueType> types(1, VALUE_TYPE_BIGINT);
+    vector<int32_t> lengths(1, NValue::getTupleStorageSize(VALUE_TYPE_BIGINT));
+    TupleSchema* schema =
+        TupleSchema::createTupleSchema(types, lengths, column_allow_null, true);
+
+    TableTuple tuple(schema);
+    EXPECT_EQ(schema->tupleLength() + 2, tuple.tupleLength());
+
+    char *storage = new char[tuple.tupleLength()];
+    memset(storage, 0, tuple.tupleLength());
+    tuple.move(storage);
+    tuple.setNValue(0, ValueFactory::getBigIntValue(-1));
+    tuple.setCSI(MAX_CSI);
+
+    // the column data starts right after the two header bytes
+    EXPECT_EQ(storage + 2, tuple.address() + TUPLE_HEADER_SIZE);
+    EXPECT_EQ(-1, ValuePeeker::peekAsBigInt(tuple.getNValue(0)));
+    EXPECT_EQ(MAX_CSI, tuple.getCSI());
+    EXPECT_FALSE(tuple.isActive());
+
+    delete[] storage;
+    TupleSchema::freeTupleSchema(schema);
+}
+
 int main() {
     return TestSuite::globalInstance()->runAll();
 }
@@ -0,0 +1,146 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include "storage/AntiCacheBlockStore.h"
+
+#include "harness.h"
+
+#include <cstdlib>
+#include <cstring>
+#include <string>
+#include <vector>
+#include <sys/stat.h>
+#include <unistd.h>
+
+using namespace voltdb;
+using namespace std;
+
+class AntiCacheBlockStoreTest : public Test
+{
+public:
+    AntiCacheBlockStoreTest() {
+        char directory[] = "/tmp/anticache_test_XXXXXX";
+        m_directory = mkdtemp(directory);
+    }
+
+    ~AntiCacheBlockStoreTest() {
+        rmdir(m_directory.c_str());
+    }
+
+    // a block of fixed width rows that share most of their bytes
+    vector<char> rows(int count) {
+        vector<char> data(count * 40, 0);
+        for (int i = 0; i < count; i++) {
+            data[i * 40] = 1;
+            memcpy(&data[i * 40 + 2], &i, sizeof(i));
+            memcpy(&data[i * 40 + 10], "customer", 8);
+        }
+        return data;
+    }
+
+    string m_directory;
+};
+
+TEST_F(AntiCacheBlockStoreTest, CompressRoundTrip)
+{
+    vector<char> data = rows(5000);
+    vector<char> compressed(data.size());
+    uint32_t length = AntiCacheBlockStore::compress(&data[0], static_cast<uint32_t>(data.size()),
+                                                    &compressed[0], static_cast<uint32_t>(compressed.size()));
+    ASSERT_TRUE(length > 0);
+    EXPECT_TRUE(length < data.size() / 2);
+
+    vector<char> restored(data.size());
+    ASSERT_TRUE(AntiCacheBlockStore::decompress(&compressed[0], length,
+                                                &restored[0], static_cast<uint32_t>(restored.size())));
+    EXPECT_TRUE(data == restored);
+
+    // a truncated stream doesn't come out at the right length
+    EXPECT_FALSE(AntiCacheBlockStore::decompress(&compressed[0], length - 1,
+                                                 &restored[0], static_cast<uint32_t>(restored.size())));
+}
+
+TEST_F(AntiCacheBlockStoreTest, IncompressibleData)
+{
+    vector<char> data(4096);
+    srand(42);
+    for (size_t i = 0; i < data.size(); i++) {
+        data[i] = static_cast<char>(rand());
+    }
+    vector<char> compressed(data.size());
+    EXPECT_EQ(0, AntiCacheBlockStore::compress(&data[0], static_cast<uint32_t>(data.size()),
+                                               &compressed[0], static_cast<uint32_t>(compressed.size())));
+
+    AntiCacheBlockStore store(m_directory);
+    int32_t blockId = store.writeBlock(&data[0], static_cast<uint32_t>(data.size()));
+    ASSERT_TRUE(blockId >= 0);
+    vector<char> restored(data.size());
+    ASSERT_TRUE(store.readBlock(blockId, &restored[0], static_cast<uint32_t>(restored.size())));
+    EXPECT_TRUE(data == restored);
+}
+
+TEST_F(AntiCacheBlockStoreTest, WriteReadDiscard)
+{
+    vector<char> first = rows(1000);
+    vector<char> second = rows(2000);
+    AntiCacheBlockStore store(m_directory);
+
+    int32_t firstId = store.writeBlock(&first[0], static_cast<uint32_t>(first.size()));
+    int32_t secondId = store.writeBlock(&second[0], static_cast<uint32_t>(second.size()));
+    ASSERT_TRUE(firstId >= 0);
+    ASSERT_TRUE(secondId >= 0);
+    EXPECT_NE(firstId, secondId);
+    EXPECT_EQ(2, store.blockCount());
+    EXPECT_TRUE(store.diskBytes() > 0);
+    EXPECT_TRUE(store.diskBytes() < static_cast<int64_t>(first.size() + second.size()));
+
+    // the length has to match what was written
+    vector<char> restored(second.size());
+    EXPECT_FALSE(store.readBlock(secondId, &restored[0], static_cast<uint32_t>(first.size())));
+    ASSERT_TRUE(store.readBlock(secondId, &restored[0], static_cast<uint32_t>(restored.size())));
+    EXPECT_TRUE(second == restored);
+    EXPECT_EQ(1, store.blockCount());
+
+    // a block can only be read back once
+    EXPECT_FALSE(store.readBlock(secondId, &restored[0], static_cast<uint32_t>(restored.size())));
+
+    store.discardBlock(firstId);
+    EXPECT_EQ(0, store.blockCount());
+    EXPECT_EQ(0, store.diskBytes());
+}
+
+TEST_F(AntiCacheBlockStoreTest, DestructorRemovesBlocks)
+{
+    vector<char> data = rows(100);
+    {
+        AntiCacheBlockStore store(m_directory);
+        ASSERT_TRUE(store.writeBlock(&data[0], static_cast<uint32_t>(data.size())) >= 0);
+    }
+    // the directory is empty again, so it can be removed
+    EXPECT_EQ(0, rmdir(m_directory.c_str()));
+    mkdir(m_directory.c_str(), 0700);
+}
+
+int main() {
+    return TestSuite::globalInstance()->runAll();
+}
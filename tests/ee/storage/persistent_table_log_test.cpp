@@ -26,9 +26,12 @@
 #include "common/types.h"
 #include "common/NValue.hpp"
 #include "common/ValueFactory.hpp"
+#include "common/Pool.hpp"
+#include "common/serializeio.h"
 #include "execution/VoltDBEngine.h"
 #include "storage/persistenttable.h"
 #include "storage/tablefactory.h"
+#include "storage/temptable.h"
 #include "storage/tableutil.h"
 #include "indexes/tableindex.h"
 #include <vector>
@@ -237,6 +240,70 @@ TEST_F(PersistentTableLogTest, InsertThenUndoInsertsOneTest) {
     ASSERT_EQ( m_table->activeTupleCount(), 0);
 }
 
+TEST_F(PersistentTableLogTest, LoadTableSkipsViolationsThenUndoTest) {
+    initTable(true);
+    tableutil::addRandomTuples(m_table, 10);
+    voltdb::TableTuple existing(m_tableSchema);
+    tableutil::getRandomTuple(m_table, existing);
+
+    /*
+     * Three new tuples, a copy of one already in the table and one
+     * with a null in a NOT NULL column.
+     */
+    CopySerializeOutput input;
+    m_table->serializeColumnHeaderTo(input);
+    input.writeInt(5);
+    voltdb::TableTuple &tuple = m_table->tempTuple();
+    for (int ii = 0; ii < 5; ii++) {
+        if (ii == 3) {
+            existing.serializeTo(input);
+            continue;
+        }
+        tableutil::setRandomTupleValues(m_table, &tuple);
+        if (ii == 4) {
+            NValue notNullValue = tuple.getNValue(6);
+            tuple.setNValue(6, ValueFactory::getNullStringValue());
+            notNullValue.free();
+        }
+        tuple.serializeTo(input);
+        for (int jj = 0; jj < m_tableSchema->getUninlinedObjectColumnCount(); jj++) {
+            tuple.getNValue(m_tableSchema->getUninlinedObjectColumnInfoIndex(jj)).free();
+        }
+    }
+
+    m_engine->setUndoToken(INT64_MIN + 2);
+    // this next line is a testing hack until engine data is
+    // de-duplicated with executorcontext data
+    m_engine->getExecutorContext();
+
+    ReferenceSerializeInput serializeIn(input.data(), input.size());
+    CopySerializeOutput violations;
+    m_table->loadTuplesForLoadTable(serializeIn, violations);
+    ASSERT_EQ(13, m_table->activeTupleCount());
+
+    /*
+     * The rejected tuples come back as a table, after the length of
+     * the whole result and the length of the table.
+     */
+    ReferenceSerializeInput violationsIn(violations.data() + 2 * sizeof(int32_t),
+                                         violations.size() - 2 * sizeof(int32_t));
+    TempTableLimits limits;
+    Pool pool;
+    TempTable *rejected = TableFactory::getCopiedTempTable(0, "Rejected", m_table, &limits);
+    rejected->loadTuplesFrom(violationsIn, &pool);
+    ASSERT_EQ(2, rejected->activeTupleCount());
+    voltdb::TableTuple rejectedTuple(rejected->schema());
+    ASSERT_TRUE(tableutil::getTupleAt(rejected, 0, rejectedTuple));
+    ASSERT_TRUE(rejectedTuple.equals(existing));
+    ASSERT_TRUE(tableutil::getTupleAt(rejected, 1, rejectedTuple));
+    ASSERT_TRUE(rejectedTuple.getNValue(6).isNull());
+    delete rejected;
+
+    m_engine->undoUndoToken(INT64_MIN + 2);
+    ASSERT_EQ(10, m_table->activeTupleCount());
+    ASSERT_FALSE(m_table->lookupTuple(existing).isNullTuple());
+}
+
 int main() {
     return TestSuite::globalInstance()->runAll();
 }
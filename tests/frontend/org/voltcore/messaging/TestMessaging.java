@@ -26,12 +26,17 @@ package org.voltcore.messaging;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.voltcore.utils.Pair;
 import org.voltcore.utils.PortGenerator;
 
 import junit.framework.TestCase;
@@ -462,6 +467,149 @@ public class TestMessaging extends TestCase {
         msg3.shutdown();
     }
 
+    public void testMultipleConnectionsPerHost() throws Exception {
+        HostMessenger msgs[] = new HostMessenger[3];
+        for (int ii = 0; ii < msgs.length; ii++) {
+            HostMessenger.Config config = getConfig();
+            config.connectionsPerHost = 3;
+            msgs[ii] = new HostMessenger(config);
+            msgs[ii].start();
+        }
+        for (HostMessenger msg : msgs) {
+            msg.waitForGroupJoin(msgs.length);
+        }
+        for (HostMessenger msg : msgs) {
+            assertEquals(msgs.length - 1, msg.countForeignHosts());
+            for (ForeignHost fh : msg.m_foreignHosts.values()) {
+                assertEquals(3, fh.getConnectionCount());
+            }
+        }
+
+        // enough mailboxes on each remote host that every connection is used
+        Mailbox sender = msgs[0].createMailbox();
+        List<Mailbox> receivers = new ArrayList<Mailbox>();
+        for (int ii = 1; ii < msgs.length; ii++) {
+            for (int jj = 0; jj < 4; jj++) {
+                receivers.add(msgs[ii].createMailbox());
+            }
+        }
+        long allHSIds[] = new long[receivers.size()];
+        for (int ii = 0; ii < allHSIds.length; ii++) {
+            allHSIds[ii] = receivers.get(ii).getHSId();
+        }
+
+        // sequence numbers in the metadata, some payloads too big to coalesce
+        final int count = 500;
+        for (int seq = 0; seq < count; seq++) {
+            byte metadata[] = ByteBuffer.allocate(4).putInt(seq).array();
+            byte payload[] = new byte[seq % 50 == 0 ? 1024 * 64 : 16];
+            BinaryPayloadMessage bpm = new BinaryPayloadMessage(metadata, payload);
+            if (seq % 2 == 0) {
+                sender.send(allHSIds, bpm);
+            } else {
+                for (long hsId : allHSIds) {
+                    sender.send(hsId, bpm);
+                }
+            }
+        }
+
+        // every site sees every message, in the order it was sent
+        for (Mailbox receiver : receivers) {
+            final long start = System.currentTimeMillis();
+            for (int seq = 0; seq < count; seq++) {
+                VoltMessage message = null;
+                while (message == null) {
+                    assertTrue(System.currentTimeMillis() - start < 10000);
+                    message = receiver.recv();
+                }
+                BinaryPayloadMessage bpm = (BinaryPayloadMessage)message;
+                assertEquals(seq, ByteBuffer.wrap(bpm.m_metadata).getInt());
+                assertEquals(seq % 50 == 0 ? 1024 * 64 : 16, bpm.m_payload.length);
+            }
+        }
+
+        Map<Long, Pair<String, long[]>> stats = msgs[0].getForeignHostConnectionStats();
+        assertEquals(6, stats.size());
+        long messages = 0;
+        long buffers = 0;
+        for (Pair<String, long[]> connection : stats.values()) {
+            long counters[] = connection.getSecond();
+            assertTrue(counters[0] > 0);
+            messages += counters[0];
+            buffers += counters[2];
+        }
+        // multi-destination sends go out once per connection, not once per site
+        assertTrue(messages >= count * 2);
+        assertTrue(messages < count * receivers.size());
+        assertTrue(buffers <= messages);
+
+        for (HostMessenger msg : msgs) {
+            msg.shutdown();
+        }
+    }
+
+    public void testCompression() throws Exception {
+        HostMessenger msgs[] = new HostMessenger[3];
+        for (int ii = 0; ii < msgs.length; ii++) {
+            HostMessenger.Config config = getConfig();
+            // the last host doesn't compress, so nothing sent to it is compressed
+            config.compressionThreshold = ii < 2 ? 1024 : 0;
+            msgs[ii] = new HostMessenger(config);
+            msgs[ii].start();
+        }
+        for (HostMessenger msg : msgs) {
+            msg.waitForGroupJoin(msgs.length);
+        }
+        ForeignHost compressing = msgs[0].m_foreignHosts.get(msgs[1].getHostId());
+        ForeignHost plain = msgs[0].m_foreignHosts.get(msgs[2].getHostId());
+        final long start = System.currentTimeMillis();
+        while (!compressing.isCompressing()) {
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            Thread.sleep(5);
+        }
+        assertFalse(plain.isCompressing());
+
+        Mailbox sender = msgs[0].createMailbox();
+        Mailbox receivers[] = new Mailbox[] { msgs[1].createMailbox(), msgs[2].createMailbox() };
+        long hsIds[] = new long[] { receivers[0].getHSId(), receivers[1].getHSId() };
+
+        // compressible, too small to bother, and incompressible payloads
+        byte random[] = new byte[1024 * 8];
+        new Random(0).nextBytes(random);
+        byte payloads[][] = new byte[][] { new byte[1024 * 64], new byte[100], random };
+        for (int ii = 0; ii < payloads.length; ii++) {
+            sender.send(hsIds, new BinaryPayloadMessage(new byte[] { (byte)ii }, payloads[ii]));
+        }
+
+        for (Mailbox receiver : receivers) {
+            for (int ii = 0; ii < payloads.length; ii++) {
+                VoltMessage message = null;
+                while (message == null) {
+                    assertTrue(System.currentTimeMillis() - start < 10000);
+                    message = receiver.recv();
+                }
+                BinaryPayloadMessage bpm = (BinaryPayloadMessage)message;
+                assertEquals(ii, bpm.m_metadata[0]);
+                assertTrue(java.util.Arrays.equals(payloads[ii], bpm.m_payload));
+            }
+        }
+
+        Map<Long, Pair<String, long[]>> stats = new HashMap<Long, Pair<String, long[]>>();
+        compressing.getConnectionStats(stats);
+        long counters[] = stats.values().iterator().next().getSecond();
+        assertEquals(1, counters[3]);
+        assertTrue(counters[4] > 1024 * 64);
+        assertTrue(counters[5] < 1024 * 8);
+
+        stats.clear();
+        plain.getConnectionStats(stats);
+        assertEquals(0, stats.values().iterator().next().getSecond()[3]);
+
+        for (HostMessenger msg : msgs) {
+            msg.shutdown();
+        }
+    }
+
     /*public void testForStress1() {
         final int siteCount = 3;
 
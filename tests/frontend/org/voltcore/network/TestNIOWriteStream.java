@@ -54,9 +54,12 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SelectionKey;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import junit.framework.TestCase;
 
+import org.voltcore.utils.ContainerDeferredSerialization;
+import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.EstTime;
 import org.voltcore.utils.EstTimeUpdater;
 
@@ -194,9 +197,19 @@ public class TestNIOWriteStream extends TestCase {
         @Override
         public long write(ByteBuffer[] srcs, int offset, int length)
                 throws IOException {
-            // TODO Auto-generated method stub
-            return 0;
+            // Behaves like a sequence of single buffer writes that stops at the first short write
+            gatheringWrites++;
+            long written = 0;
+            for (int ii = offset; ii < offset + length; ii++) {
+                written += write(srcs[ii]);
+                if (srcs[ii].hasRemaining()) {
+                    break;
+                }
+            }
+            return written;
         }
+
+        public int gatheringWrites = 0;
     }
 
 
@@ -337,6 +350,57 @@ public class TestNIOWriteStream extends TestCase {
         wstream.shutdown();
     }
 
+    public void testGatheringWrite() throws IOException {
+        MockChannel channel = new MockChannel(MockChannel.SINK);
+        MockPort port = new MockPort();
+        NIOWriteStream wstream = new NIOWriteStream(port);
+
+        // Spans several pool buffers which should go out in one gathering write
+        ByteBuffer tmp = ByteBuffer.allocate(1024 * 32 * 4);
+        wstream.enqueue(tmp);
+        wstream.swapAndSerializeQueuedWrites(pool);
+        assertEquals(1024 * 32 * 4, wstream.drainTo(channel));
+        assertEquals(1, channel.gatheringWrites);
+        assertTrue(wstream.isEmpty());
+        wstream.shutdown();
+    }
+
+    public void testContainerDeferredSerialization() throws IOException {
+        MockChannel channel = new MockChannel(MockChannel.SINK);
+        MockPort port = new MockPort();
+        NIOWriteStream wstream = new NIOWriteStream(port);
+
+        final ByteBuffer serialized = ByteBuffer.allocateDirect(64);
+        serialized.putLong(42);
+        final AtomicBoolean discarded = new AtomicBoolean(false);
+        wstream.enqueue(new ContainerDeferredSerialization() {
+            @Override
+            public BBContainer serializeToContainer() {
+                return new BBContainer(serialized, 0) {
+                    @Override
+                    public void discard() {
+                        discarded.set(true);
+                    }
+                };
+            }
+
+            @Override
+            public ByteBuffer[] serialize() {
+                fail();
+                return null;
+            }
+
+            @Override
+            public void cancel() {}
+        });
+        wstream.swapAndSerializeQueuedWrites(pool);
+        // Only the serialized portion of the container is written and it is discarded afterwards
+        assertEquals(8, wstream.drainTo(channel));
+        assertTrue(discarded.get());
+        assertTrue(wstream.isEmpty());
+        wstream.shutdown();
+    }
+
     public void testLastWriteDelta() throws Exception {
         final MockChannel channel = new MockChannel(MockChannel.SINK);
         MockPort port = new MockPort();
@@ -0,0 +1,136 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.cassandra_voltpatches.MurmurHash3;
+
+import com.google.common.collect.ImmutableSortedMap;
+
+/**
+ * Compares ElasticHashinator's sorted array lookup against the floorEntry
+ * lookup on an ImmutableSortedMap it replaced, and the bulk
+ * TheHashinator.hashinate(long[], int[]) against hashing one key at a time.
+ * Each ring size is warmed up before it is timed.
+ *
+ * Usage: ElasticHashinatorBenchmark [lookups per run]
+ */
+public class ElasticHashinatorBenchmark {
+
+    private static final int PARTITION_COUNTS[] = new int[] { 2, 8, 32, 128, 512 };
+    private static final int TOKENS_PER_PARTITION = 8;
+    private static final int BATCH = 1024;
+
+    // keeps the JIT from discarding the lookups
+    private static long sink = 0;
+
+    private static ImmutableSortedMap<Long, Integer> tokenMap(byte configBytes[]) {
+        ImmutableSortedMap.Builder<Long, Integer> builder = ImmutableSortedMap.naturalOrder();
+        ByteBuffer buf = ByteBuffer.wrap(configBytes);
+        int count = buf.getInt();
+        for (int ii = 0; ii < count; ii++) {
+            builder.put(buf.getLong(), buf.getInt());
+        }
+        return builder.build();
+    }
+
+    private static int mapLookup(ImmutableSortedMap<Long, Integer> tokens, long hash) {
+        Map.Entry<Long, Integer> entry = tokens.floorEntry(hash);
+        return entry != null ? entry.getValue() : tokens.lastEntry().getValue();
+    }
+
+    private static double nanosPerLookup(long nanos, long lookups) {
+        return nanos / (double)lookups;
+    }
+
+    private static void run(int partitionCount, long lookups, boolean print) {
+        final byte configBytes[] = ElasticHashinator.getConfigureBytes(partitionCount, TOKENS_PER_PARTITION);
+        final ImmutableSortedMap<Long, Integer> map = tokenMap(configBytes);
+        final ElasticHashinator hashinator = new ElasticHashinator(configBytes);
+        TheHashinator.initialize(ElasticHashinator.class, configBytes);
+
+        final Random r = new Random(0);
+        final long keys[] = new long[BATCH];
+        final long hashes[] = new long[BATCH];
+        for (int ii = 0; ii < BATCH; ii++) {
+            keys[ii] = r.nextLong();
+            hashes[ii] = MurmurHash3.hash3_x64_128(keys[ii]);
+        }
+        final int partitions[] = new int[BATCH];
+        final long batches = lookups / BATCH;
+
+        long start = System.nanoTime();
+        for (long b = 0; b < batches; b++) {
+            for (int ii = 0; ii < BATCH; ii++) {
+                sink += mapLookup(map, hashes[ii]);
+            }
+        }
+        long mapNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (long b = 0; b < batches; b++) {
+            for (int ii = 0; ii < BATCH; ii++) {
+                sink += hashinator.partitionForToken(hashes[ii]);
+            }
+        }
+        long arrayNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (long b = 0; b < batches; b++) {
+            for (int ii = 0; ii < BATCH; ii++) {
+                sink += TheHashinator.hashToPartition(keys[ii]);
+            }
+        }
+        long singleNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (long b = 0; b < batches; b++) {
+            TheHashinator.hashinate(keys, partitions);
+            sink += partitions[0];
+        }
+        long bulkNanos = System.nanoTime() - start;
+
+        if (print) {
+            final long total = batches * BATCH;
+            System.out.printf("%5d tokens: map %6.1f ns, array %6.1f ns, " +
+                              "hashToPartition %6.1f ns, bulk hashinate %6.1f ns per key\n",
+                              map.size(),
+                              nanosPerLookup(mapNanos, total),
+                              nanosPerLookup(arrayNanos, total),
+                              nanosPerLookup(singleNanos, total),
+                              nanosPerLookup(bulkNanos, total));
+        }
+    }
+
+    public static void main(String args[]) {
+        long lookups = args.length > 0 ? Long.parseLong(args[0]) : 20 * 1000 * 1000;
+        for (int partitionCount : PARTITION_COUNTS) {
+            run(partitionCount, lookups / 4, false);
+            run(partitionCount, lookups, true);
+        }
+        System.out.println("(" + sink + ")");
+    }
+}
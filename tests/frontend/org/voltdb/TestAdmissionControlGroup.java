@@ -133,6 +133,31 @@ public class TestAdmissionControlGroup extends TestCase {
 
     }
 
+    public void testThreadSafeFromOtherThreads() throws Exception {
+        final AdmissionControlGroup threadSafe = AdmissionControlGroup.makeThreadSafe(1024 * 1024 * 8, 1000);
+        Thread threads[] = new Thread[4];
+        for (int ii = 0; ii < threads.length; ii++) {
+            threads[ii] = new Thread() {
+                @Override
+                public void run() {
+                    for (int jj = 0; jj < 1000; jj++) {
+                        threadSafe.increaseBackpressure(1);
+                        threadSafe.logTransactionCompleted(32, "", "foo", 1, (byte)1);
+                    }
+                    for (int jj = 0; jj < 1000; jj++) {
+                        threadSafe.reduceBackpressure(1);
+                    }
+                }
+            };
+            threads[ii].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertFalse(threadSafe.hasBackPressure());
+        assertTrue(threadSafe.getInitiationStatsIterator().hasNext());
+    }
+
     public void testArgs() {
         try {
             acg.increaseBackpressure(-1);
@@ -29,7 +29,10 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
@@ -37,6 +40,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -44,6 +48,11 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.zookeeper_voltpatches.CreateMode;
 import org.apache.zookeeper_voltpatches.ZooDefs.Ids;
@@ -59,11 +68,13 @@ import org.voltcore.messaging.HostMessenger;
 import org.voltcore.messaging.LocalObjectMessage;
 import org.voltcore.network.Connection;
 import org.voltcore.network.VoltNetworkPool;
+import org.voltcore.network.WriteStream;
 import org.voltdb.ClientInterface.ClientInputHandler;
 import org.voltdb.VoltDB.Configuration;
 import org.voltdb.VoltTable.ColumnInfo;
 import org.voltdb.catalog.Catalog;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
 import org.voltdb.client.ProcedureInvocationType;
 import org.voltdb.compiler.AdHocPlannedStatement;
 import org.voltdb.compiler.AdHocPlannedStmtBatch;
@@ -75,9 +86,12 @@ import org.voltdb.iv2.Cartographer;
 import org.voltdb.messaging.FastSerializer;
 import org.voltdb.messaging.Iv2InitiateTaskMessage;
 import org.voltdb.planner.CorePlan;
+import org.voltdb.sysprocs.LoadPartitionedTable;
 import org.voltdb.utils.CatalogUtil;
 import org.voltdb.utils.Encoder;
 
+import com.google.common.base.Charsets;
+
 public class TestClientInterface {
     // mocked objects that CI requires
     private VoltDBInterface m_volt;
@@ -86,6 +100,7 @@ public class TestClientInterface {
     private ClientInputHandler m_handler;
     private Cartographer m_cartographer;
     private Connection m_cxn;
+    private WriteStream m_writeStream;
     private ZooKeeper m_zk;
 
     // real context
@@ -114,7 +129,8 @@ public class TestClientInterface {
         m_cartographer = mock(Cartographer.class);
         m_zk = mock(ZooKeeper.class);
         m_cxn = mock(Connection.class);
-
+        m_writeStream = mock(WriteStream.class);
+        doReturn(m_writeStream).when(m_cxn).writeStream();
 
         /*
          * Setup the mock objects so that they return expected objects in CI
@@ -200,6 +216,30 @@ public class TestClientInterface {
         return fs.getBuffer();
     }
 
+    /**
+     * Create a @Batch message the way the client's Distributer does, the count of
+     * invocations followed by each length prefixed invocation.
+     */
+    private static ByteBuffer createBatchMsg(ByteBuffer...invocations) {
+        final byte name[] = "@Batch".getBytes(Charsets.UTF_8);
+        int size = 1 + 4 + name.length + 8 + 4;
+        for (ByteBuffer invocation : invocations) {
+            size += 4 + invocation.remaining();
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.put(ProcedureInvocationType.ORIGINAL.getValue());
+        buf.putInt(name.length);
+        buf.put(name);
+        buf.putLong(-1);
+        buf.putInt(invocations.length);
+        for (ByteBuffer invocation : invocations) {
+            buf.putInt(invocation.remaining());
+            buf.put(invocation.duplicate());
+        }
+        buf.flip();
+        return buf;
+    }
+
     /**
      * Pass the VoltMessage to CI's handleRead() and inspect if the expected
      * parameters are passed to the initiator's createTranction() method. This
@@ -321,6 +361,70 @@ public class TestClientInterface {
         assertEquals("select * from a", sql);
     }
 
+    /**
+     * Run @AdHoc the way the HTTP/JSON interface does, through invokeInternal(). The
+     * finished plan comes back for the internal adapter, which has to initiate the
+     * transaction and hand the response to the callback.
+     */
+    @Test
+    public void testInternalAdHocInvocation() throws Exception {
+        final AtomicReference<ClientResponse> response = new AtomicReference<ClientResponse>();
+        final CountDownLatch responded = new CountDownLatch(1);
+        ProcedureCallback callback = new ProcedureCallback() {
+            @Override
+            public void clientCallback(ClientResponse clientResponse) {
+                response.set(clientResponse);
+                responded.countDown();
+            }
+        };
+        assertTrue(m_ci.invokeInternal(null, null, false, "@AdHoc", new Object[] {"select * from a"}, callback));
+
+        ArgumentCaptor<LocalObjectMessage> captor = ArgumentCaptor.forClass(LocalObjectMessage.class);
+        verify(m_messenger).send(eq(32L), captor.capture());
+        assertTrue(captor.getValue().payload instanceof AdHocPlannerWork);
+        final Connection adapter = (Connection) ((AdHocPlannerWork) captor.getValue().payload).clientData;
+        assertNotNull(adapter);
+        m_ci.bindAdapter(adapter);
+        reset(m_messenger);
+
+        // the first handle a new adapter gives out
+        final long handle = 1;
+        AdHocPlannedStmtBatch plannedStmtBatch = new AdHocPlannedStmtBatch(
+                "select * from a", null, handle, adapter.connectionId(), "", false,
+                ProcedureInvocationType.ORIGINAL, 0, 0, adapter);
+        plannedStmtBatch.addStatement(new AdHocPlannedStatement("select * from a".getBytes(VoltDB.UTF8ENCODING),
+                                                                new CorePlan(new byte[0],
+                                                                             new byte[0],
+                                                                             new byte[20],
+                                                                             new byte[20],
+                                                                             false,
+                                                                             false,
+                                                                             true,
+                                                                             new VoltType[0],
+                                                                             0),
+                                                                ParameterSet.emptyParameterSet(),
+                                                                null,
+                                                                null,
+                                                                null));
+        // runs on the adapter's threads, failures surface here
+        m_ci.processFinishedCompilerWork(plannedStmtBatch).get(10, TimeUnit.SECONDS);
+
+        ArgumentCaptor<Iv2InitiateTaskMessage> messageCaptor =
+                ArgumentCaptor.forClass(Iv2InitiateTaskMessage.class);
+        verify(m_messenger).send(anyLong(), messageCaptor.capture());
+        Iv2InitiateTaskMessage message = messageCaptor.getValue();
+        assertEquals("@AdHoc_RO_MP", message.getStoredProcedureName());
+        assertEquals(handle, message.getStoredProcedureInvocation().getClientHandle());
+
+        ClientResponseImpl result = new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[0], "", handle);
+        ByteBuffer buf = ByteBuffer.allocate(result.getSerializedSize() + 4);
+        buf.putInt(buf.capacity() - 4);
+        result.flattenToBuffer(buf).flip();
+        adapter.writeStream().enqueue(buf);
+        assertTrue(responded.await(10, TimeUnit.SECONDS));
+        assertEquals(ClientResponse.SUCCESS, response.get().getStatus());
+    }
+
     @Test
     public void testUpdateCatalog() throws IOException {
         // only makes sense in pro (sysproc suite has a complementary test for community)
@@ -437,6 +541,182 @@ public class TestClientInterface {
         readAndCheck(msg, "@LoadSinglepartitionTable", 1, false, false, true, false);
     }
 
+    @Test
+    public void testLoadPartitionedTableSplitsRows() throws Exception {
+        VoltTable table = new VoltTable(new ColumnInfo("i", VoltType.INTEGER));
+        for (int i = 0; i < 30; i++) {
+            table.addRow(i);
+        }
+        Map<Integer, VoltTable> partitioned =
+            LoadPartitionedTable.partitionRows(m_context.database.getTables(), "a", table);
+        assertTrue(partitioned.size() > 1);
+
+        int rows = 0;
+        for (Map.Entry<Integer, VoltTable> e : partitioned.entrySet()) {
+            VoltTable partitionTable = e.getValue();
+            while (partitionTable.advanceRow()) {
+                assertEquals(e.getKey().intValue(),
+                        TheHashinator.hashToPartition((int) partitionTable.getLong(0)));
+                rows++;
+            }
+        }
+        assertEquals(30, rows);
+    }
+
+    @Test
+    public void testLoadPartitionedTableChecksSchema() throws IOException {
+        VoltTable table = new VoltTable(new ColumnInfo("i", VoltType.BIGINT));
+        table.addRow(1);
+        ClientResponseImpl resp = m_ci.handleRead(createMsg("@LoadPartitionedTable", "a", table), m_handler, m_cxn);
+        assertNotNull(resp);
+        assertEquals(ClientResponse.UNEXPECTED_FAILURE, resp.getStatus());
+
+        resp = m_ci.handleRead(createMsg("@LoadPartitionedTable", "b", table), m_handler, m_cxn);
+        assertNotNull(resp);
+        assertEquals(ClientResponse.UNEXPECTED_FAILURE, resp.getStatus());
+
+        // nothing to load is answered right away
+        table = new VoltTable(new ColumnInfo("i", VoltType.INTEGER));
+        resp = m_ci.handleRead(createMsg("@LoadPartitionedTable", "a", table), m_handler, m_cxn);
+        assertNotNull(resp);
+        assertEquals(ClientResponse.SUCCESS, resp.getStatus());
+        assertEquals(0, resp.getResults()[0].getRowCount());
+        verify(m_messenger, never()).send(any(Long.class), any(Iv2InitiateTaskMessage.class));
+    }
+
+    /**
+     * One partition failing doesn't hold back the others. The client gets a single
+     * response with the constraint violations of the partitions that loaded their rows
+     * and the failure of the one that didn't.
+     */
+    @Test
+    public void testLoadPartitionedTableWithFailedPartition() throws Exception {
+        VoltTable table = new VoltTable(new ColumnInfo("i", VoltType.INTEGER));
+        for (int i = 0; i < 30; i++) {
+            table.addRow(i);
+        }
+        doReturn(true).when(m_ci).createTransaction(anyLong(), anyString(), anyBoolean(),
+                any(StoredProcedureInvocation.class), anyBoolean(), anyBoolean(), anyBoolean(),
+                any(int[].class), any(), anyInt(), anyLong());
+        final AtomicReference<ByteBuffer> response = new AtomicReference<ByteBuffer>();
+        final CountDownLatch responded = new CountDownLatch(1);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                response.set((ByteBuffer) invocation.getArguments()[0]);
+                responded.countDown();
+                return null;
+            }
+        }).when(m_writeStream).enqueue(any(ByteBuffer.class));
+
+        ClientResponseImpl resp = m_ci.handleRead(createMsg("@LoadPartitionedTable", "a", table), m_handler, m_cxn);
+        assertNull(resp);
+
+        ArgumentCaptor<StoredProcedureInvocation> invocationCaptor =
+                ArgumentCaptor.forClass(StoredProcedureInvocation.class);
+        ArgumentCaptor<Object> adapterCaptor = ArgumentCaptor.forClass(Object.class);
+        verify(m_ci, times(m_allPartitions.length)).createTransaction(anyLong(), anyString(), anyBoolean(),
+                invocationCaptor.capture(), anyBoolean(), anyBoolean(), anyBoolean(),
+                any(int[].class), adapterCaptor.capture(), anyInt(), anyLong());
+        final Connection adapter = (Connection) adapterCaptor.getValue();
+        List<StoredProcedureInvocation> invocations = invocationCaptor.getAllValues();
+
+        // the first partition fails, the others each reject their first row
+        for (int i = 0; i < invocations.size(); i++) {
+            final long handle = invocations.get(i).getClientHandle();
+            ClientResponseImpl result;
+            if (i == 0) {
+                result = new ClientResponseImpl(ClientResponse.UNEXPECTED_FAILURE,
+                        new VoltTable[0], "boom", handle);
+            } else {
+                VoltTable partitionTable = (VoltTable) invocations.get(i).getParams().toArray()[1];
+                partitionTable.advanceRow();
+                VoltTable violations = new VoltTable(new ColumnInfo("i", VoltType.INTEGER));
+                violations.addRow(partitionTable.getLong(0));
+                result = new ClientResponseImpl(ClientResponse.SUCCESS,
+                        new VoltTable[] { violations }, null, handle);
+            }
+            ByteBuffer buf = ByteBuffer.allocate(result.getSerializedSize() + 4);
+            buf.putInt(buf.capacity() - 4);
+            result.flattenToBuffer(buf).flip();
+            adapter.writeStream().enqueue(buf);
+        }
+
+        assertTrue(responded.await(10, TimeUnit.SECONDS));
+        ClientResponseImpl loadResponse = new ClientResponseImpl();
+        response.get().getInt();
+        loadResponse.initFromBuffer(response.get());
+        assertEquals(ClientResponse.UNEXPECTED_FAILURE, loadResponse.getStatus());
+        assertTrue(loadResponse.getStatusString().contains("1 of 3 partitions"));
+        assertTrue(loadResponse.getStatusString().contains("boom"));
+        assertEquals(m_allPartitions.length - 1, loadResponse.getResults()[0].getRowCount());
+    }
+
+    @Test
+    public void testBatchDispatchesEachInvocation() throws IOException {
+        ByteBuffer first = createMsg("hello", 1);
+        ByteBuffer second = createMsg("hello", 2);
+        ByteBuffer batch = createBatchMsg(first, second, createMsg("@Ping"));
+        ClientResponseImpl resp = m_ci.handleRead(batch, m_handler, m_cxn);
+        assertNull(resp);
+
+        // each invocation is charged its own size, not the size of the whole batch
+        ArgumentCaptor<Integer> sizeCaptor = ArgumentCaptor.forClass(Integer.class);
+        ArgumentCaptor<StoredProcedureInvocation> invocationCaptor =
+                ArgumentCaptor.forClass(StoredProcedureInvocation.class);
+        verify(m_ci, times(2)).createTransaction(anyLong(), anyString(), anyBoolean(),
+                invocationCaptor.capture(), anyBoolean(), anyBoolean(), anyBoolean(),
+                any(int[].class), any(), sizeCaptor.capture(), anyLong());
+        assertEquals(Arrays.asList(first.remaining(), second.remaining()), sizeCaptor.getAllValues());
+        List<StoredProcedureInvocation> invocations = invocationCaptor.getAllValues();
+        assertEquals(1, invocations.get(0).getParameterAtIndex(0));
+        assertEquals(2, invocations.get(1).getParameterAtIndex(0));
+        verify(m_messenger, times(2)).send(anyLong(), any(Iv2InitiateTaskMessage.class));
+
+        // the ping in the batch is answered through the connection
+        ArgumentCaptor<ByteBuffer[]> responseCaptor = ArgumentCaptor.forClass(ByteBuffer[].class);
+        verify(m_writeStream).enqueue(responseCaptor.capture());
+        assertEquals(1, responseCaptor.getValue().length);
+    }
+
+    @Test
+    public void testTruncatedBatchReportsFirstDropped() throws IOException {
+        ByteBuffer batch = createBatchMsg(createMsg("hello", 1), createMsg("hello", 2));
+        // cut the second invocation short
+        batch.limit(batch.limit() - 4);
+        ClientResponseImpl resp = m_ci.handleRead(batch, m_handler, m_cxn);
+        assertNotNull(resp);
+        assertEquals(ClientResponse.UNEXPECTED_FAILURE, resp.getStatus());
+        assertEquals(-1, resp.getClientHandle());
+        VoltTable dropped = resp.getResults()[0];
+        assertTrue(dropped.advanceRow());
+        assertEquals(1, dropped.getLong(0));
+        verify(m_messenger).send(anyLong(), any(Iv2InitiateTaskMessage.class));
+    }
+
+    @Test
+    public void testNestedBatchIsRejected() throws IOException {
+        ByteBuffer nested = createBatchMsg(createMsg("hello", 1));
+        ByteBuffer batch = createBatchMsg(nested, createMsg("hello", 2));
+        ClientResponseImpl resp = m_ci.handleRead(batch, m_handler, m_cxn);
+        assertNull(resp);
+
+        // only the invocation outside the nested batch is dispatched
+        ArgumentCaptor<Iv2InitiateTaskMessage> messageCaptor =
+                ArgumentCaptor.forClass(Iv2InitiateTaskMessage.class);
+        verify(m_messenger).send(anyLong(), messageCaptor.capture());
+        assertEquals(2, messageCaptor.getValue().getStoredProcedureInvocation().getParameterAtIndex(0));
+
+        ArgumentCaptor<ByteBuffer[]> responseCaptor = ArgumentCaptor.forClass(ByteBuffer[].class);
+        verify(m_writeStream).enqueue(responseCaptor.capture());
+        ByteBuffer[] responses = responseCaptor.getValue();
+        assertEquals(1, responses.length);
+        ClientResponseImpl error = new ClientResponseImpl();
+        responses[0].getInt();
+        error.initFromBuffer(responses[0]);
+        assertEquals(ClientResponse.UNEXPECTED_FAILURE, error.getStatus());
+    }
+
     @Test
     public void testPausedMode() throws IOException {
         // pause the node
@@ -448,6 +728,45 @@ public class TestClientInterface {
         when(m_volt.getMode()).thenReturn(OperationMode.RUNNING);
     }
 
+    @Test
+    public void testPausedModeInternalInvocation() throws Exception {
+        when(m_volt.getMode()).thenReturn(OperationMode.PAUSED);
+        doReturn(true).when(m_ci).createTransaction(anyLong(), anyString(), anyBoolean(),
+                any(StoredProcedureInvocation.class), anyBoolean(), anyBoolean(), anyBoolean(),
+                any(int[].class), any(), anyInt(), anyLong());
+        final AtomicReference<ClientResponse> response = new AtomicReference<ClientResponse>();
+        ProcedureCallback callback = new ProcedureCallback() {
+            @Override
+            public void clientCallback(ClientResponse clientResponse) {
+                response.set(clientResponse);
+            }
+        };
+
+        assertTrue(m_ci.invokeInternal(null, null, false, "hello", new Object[] {1}, callback));
+        assertEquals(ClientResponse.SERVER_UNAVAILABLE, response.get().getStatus());
+
+        // security is off, so anyone may use admin mode
+        response.set(null);
+        assertTrue(m_ci.invokeInternal(null, null, true, "hello", new Object[] {1}, callback));
+        assertNull(response.get());
+        verify(m_ci).createTransaction(anyLong(), anyString(), eq(true),
+                any(StoredProcedureInvocation.class), anyBoolean(), anyBoolean(), anyBoolean(),
+                any(int[].class), any(), anyInt(), anyLong());
+        when(m_volt.getMode()).thenReturn(OperationMode.RUNNING);
+    }
+
+    @Test
+    public void testInternalAdapterAnswersConnectionQueries() throws Exception {
+        InternalClientAdapter adapter = new InternalClientAdapter(Long.MIN_VALUE + 100);
+        assertFalse(adapter.hadBackPressure());
+        assertEquals(0, adapter.calculatePendingWriteDelta(System.currentTimeMillis()));
+        assertTrue(adapter.isEmpty());
+        assertEquals(0, adapter.readStream().dataAvailable());
+        adapter.disableReadSelection();
+        adapter.enableReadSelection();
+        adapter.shutdown();
+    }
+
     @Test
     public void testInvalidProcedure() throws IOException {
         ByteBuffer msg = createMsg("hellooooo", 1);
@@ -0,0 +1,183 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.voltcore.utils.InstanceId;
+import org.voltdb.iv2.TxnEgo;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+import org.voltdb.messaging.VoltDbMessageFactory;
+
+public class TestGroupCommitCommandLog extends TestCase {
+
+    private File m_dir;
+
+    @Override
+    public void setUp() throws Exception {
+        m_dir = new File("/tmp/" + System.getProperty("user.name") + "/test_group_commit_cl");
+        if (m_dir.exists()) {
+            for (File f : m_dir.listFiles()) {
+                f.delete();
+            }
+        }
+        m_dir.mkdirs();
+    }
+
+    private static Iv2InitiateTaskMessage makeTask(long spHandle) {
+        StoredProcedureInvocation invocation = new StoredProcedureInvocation();
+        invocation.setProcName("Insert");
+        invocation.setParams(spHandle, "value " + spHandle);
+        Iv2InitiateTaskMessage msg = new Iv2InitiateTaskMessage(0, 0, -1, spHandle, spHandle,
+                                                                false, true, invocation, 0, 0, false);
+        msg.setSpHandle(spHandle);
+        return msg;
+    }
+
+    private GroupCommitCommandLog startLog(boolean synchronous, int fsyncIntervalMs) {
+        GroupCommitCommandLog log = new GroupCommitCommandLog();
+        log.configure(m_dir, synchronous, fsyncIntervalMs, Integer.MAX_VALUE, Long.MAX_VALUE,
+                      new InstanceId(0, 12345), false);
+        Map<Integer, Long> lastDurable = new HashMap<Integer, Long>();
+        lastDurable.put(0, TxnEgo.makeZero(0).getTxnId());
+        log.start(lastDurable, null);
+        return log;
+    }
+
+    public void testSynchronousGroupCommit() throws Exception {
+        GroupCommitCommandLog log = startLog(true, 5);
+        final int count = 2000;
+        final Semaphore durable = new Semaphore(0);
+        final List<Object> handles = new ArrayList<Object>();
+        CommandLog.DurabilityListener listener = new CommandLog.DurabilityListener() {
+            @Override
+            public void onDurability(ArrayList<Object> durableThings) {
+                synchronized (handles) {
+                    handles.addAll(durableThings);
+                }
+                durable.release(durableThings.size());
+            }
+        };
+
+        TxnEgo ego = TxnEgo.makeZero(0);
+        for (int ii = 0; ii < count; ii++) {
+            ego = ego.makeNext();
+            assertTrue(log.log(makeTask(ego.getTxnId()), ego.getTxnId(), listener, ii));
+        }
+        assertTrue(durable.tryAcquire(count, 10, TimeUnit.SECONDS));
+        log.shutdown();
+
+        // Handles come back in log order and fewer fsyncs than transactions were needed
+        for (int ii = 0; ii < count; ii++) {
+            assertEquals(ii, handles.get(ii));
+        }
+        assertTrue(log.getBatchCount() < count);
+
+        List<CommandLogSegment> segments = CommandLogSegment.listSegments(m_dir);
+        assertEquals(1, segments.size());
+        List<CommandLogSegment.Record> records = new ArrayList<CommandLogSegment.Record>();
+        CommandLogSegment.Header header = segments.get(0).read(records);
+        assertEquals(new InstanceId(0, 12345), header.instanceId);
+        assertEquals(TxnEgo.makeZero(0).getTxnId(), header.lastDurableTxnIds.get(0).longValue());
+        assertEquals(count, records.size());
+
+        VoltDbMessageFactory factory = new VoltDbMessageFactory();
+        ego = TxnEgo.makeZero(0);
+        for (CommandLogSegment.Record record : records) {
+            ego = ego.makeNext();
+            assertEquals(CommandLogSegment.INITIATE_TASK_RECORD, record.type);
+            assertEquals(ego.getTxnId(), record.payload.getLong());
+            Iv2InitiateTaskMessage msg =
+                (Iv2InitiateTaskMessage)factory.createMessageFromBuffer(record.payload, -1);
+            assertEquals(ego.getTxnId(), msg.getTxnId());
+            assertEquals("Insert", msg.getStoredProcedureInvocation().getProcName());
+        }
+    }
+
+    public void testAsynchronousDoesNotHoldTransactions() throws Exception {
+        GroupCommitCommandLog log = startLog(false, 1000);
+        CommandLog.DurabilityListener listener = new CommandLog.DurabilityListener() {
+            @Override
+            public void onDurability(ArrayList<Object> durableThings) {
+                fail("Asynchronous command log should not report durability");
+            }
+        };
+        TxnEgo ego = TxnEgo.makeZero(0);
+        for (int ii = 0; ii < 100; ii++) {
+            ego = ego.makeNext();
+            assertFalse(log.log(makeTask(ego.getTxnId()), ego.getTxnId(), listener, ii));
+        }
+        // Shutdown flushes whatever is pending
+        log.shutdown();
+        List<CommandLogSegment.Record> records = new ArrayList<CommandLogSegment.Record>();
+        CommandLogSegment.listSegments(m_dir).get(0).read(records);
+        assertEquals(100, records.size());
+    }
+
+    public void testTornTailIsIgnored() throws Exception {
+        GroupCommitCommandLog log = startLog(false, 1);
+        TxnEgo ego = TxnEgo.makeZero(0);
+        for (int ii = 0; ii < 10; ii++) {
+            ego = ego.makeNext();
+            log.log(makeTask(ego.getTxnId()), ego.getTxnId(), null, null);
+        }
+        log.shutdown();
+
+        File segment = CommandLogSegment.listSegments(m_dir).get(0).m_file;
+        FileOutputStream fos = new FileOutputStream(segment, true);
+        fos.write(new byte[] { 0, 0, 0, 100, 1, 2, 3, 4, 0, 42 });
+        fos.close();
+
+        List<CommandLogSegment.Record> records = new ArrayList<CommandLogSegment.Record>();
+        CommandLogSegment.listSegments(m_dir).get(0).read(records);
+        assertEquals(10, records.size());
+    }
+
+    public void testNotLoggingBeforeInitialization() {
+        GroupCommitCommandLog log = new GroupCommitCommandLog();
+        assertTrue(log.needsInitialization());
+        assertFalse(log.log(makeTask(1), 1, null, null));
+    }
+
+    public void testSegmentCoverage() {
+        Map<Integer, Long> segment = new HashMap<Integer, Long>();
+        segment.put(0, 10L);
+        segment.put(1, 20L);
+        Map<Integer, Long> snapshot = new HashMap<Integer, Long>();
+        snapshot.put(0, 10L);
+        assertFalse(GroupCommitCommandLog.isCoveredBy(segment, snapshot));
+        snapshot.put(1, 19L);
+        assertFalse(GroupCommitCommandLog.isCoveredBy(segment, snapshot));
+        snapshot.put(1, 25L);
+        assertTrue(GroupCommitCommandLog.isCoveredBy(segment, snapshot));
+    }
+}
@@ -882,6 +882,57 @@ public class TestJSONInterface extends TestCase {
     }
     }
 
+    public void testAdHocAndExplain() throws Exception {
+    try {
+        String simpleSchema =
+            "CREATE TABLE foo (\n" +
+            "    bar BIGINT NOT NULL,\n" +
+            "    PRIMARY KEY (bar)\n" +
+            ");";
+
+        VoltProjectBuilder builder = new VoltProjectBuilder();
+        builder.addLiteralSchema(simpleSchema);
+        builder.addPartitionInfo("foo", "bar");
+        builder.setHTTPDPort(8095);
+        boolean success = builder.compile(Configuration.getPathToCatalogForTest("json.jar"));
+        assertTrue(success);
+
+        VoltDB.Configuration config = new VoltDB.Configuration();
+        config.m_pathToCatalog = config.setPathToCatalogForTest("json.jar");
+        config.m_pathToDeployment = builder.getPathToDeployment();
+        server = new ServerThread(config);
+        server.start();
+        server.waitForInitialization();
+
+        // planned ad hoc work is finished on the in process connection of the JSON interface
+        for (int i = 0; i < 10; i++) {
+            ParameterSet pset = ParameterSet.fromArrayNoCopy("insert into foo values (" + i + ");");
+            Response r = responseFromJSON(callProcOverJSON("@AdHoc", pset, null, null, false));
+            assertEquals(r.statusString, ClientResponse.SUCCESS, r.status);
+        }
+
+        ParameterSet pset = ParameterSet.fromArrayNoCopy("select count(*) from foo;");
+        Response r = responseFromJSON(callProcOverJSON("@AdHoc", pset, null, null, false));
+        assertEquals(r.statusString, ClientResponse.SUCCESS, r.status);
+        assertEquals(10, r.results[0].asScalarLong());
+
+        r = responseFromJSON(callProcOverJSON("@Explain", pset, null, null, false));
+        assertEquals(r.statusString, ClientResponse.SUCCESS, r.status);
+        assertEquals(1, r.results.length);
+
+        // a planning error is answered too
+        pset = ParameterSet.fromArrayNoCopy("select * from nosuchtable;");
+        r = responseFromJSON(callProcOverJSON("@AdHoc", pset, null, null, false));
+        assertEquals(ClientResponse.GRACEFUL_FAILURE, r.status);
+    } finally {
+        if (server != null) {
+            server.shutdown();
+            server.join();
+        }
+        server = null;
+    }
+    }
+
     public void testBinaryProc() throws Exception {
     try {
         String simpleSchema =
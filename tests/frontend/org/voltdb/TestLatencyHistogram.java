@@ -0,0 +1,134 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestLatencyHistogram extends TestCase {
+
+    public void testBucketBoundaries() {
+        // every bucket's highest value maps back to that bucket and the next
+        // value starts the following one
+        for (int i = 0; i < LatencyHistogram.bucketIndex(LatencyHistogram.DEFAULT_HIGHEST_TRACKABLE_VALUE); i++) {
+            long highest = LatencyHistogram.highestEquivalentValue(i);
+            assertEquals(i, LatencyHistogram.bucketIndex(highest));
+            assertEquals(i + 1, LatencyHistogram.bucketIndex(highest + 1));
+        }
+    }
+
+    public void testSmallValuesAreExact() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 50; i++) {
+            h.recordValue(i);
+        }
+        assertEquals(50, h.getTotalCount());
+        assertEquals(1, h.getMinValue());
+        assertEquals(50, h.getMaxValue());
+        assertEquals(25, h.getValueAtPercentile(50.0));
+        assertEquals(50, h.getValueAtPercentile(100.0));
+        assertEquals(1, h.getValueAtPercentile(0.0));
+        assertEquals(25.5, h.getMean(), 0.0001);
+    }
+
+    public void testRelativeError() {
+        Random r = new Random(0);
+        for (int i = 0; i < 10000; i++) {
+            long value = (long)Math.abs(r.nextDouble() * Math.pow(10, r.nextInt(9)));
+            LatencyHistogram h = new LatencyHistogram();
+            h.recordValue(value);
+            h.recordValue(LatencyHistogram.DEFAULT_HIGHEST_TRACKABLE_VALUE);
+            long reported = h.getValueAtPercentile(50.0);
+            assertTrue(reported >= value);
+            assertTrue("value " + value + " reported as " + reported,
+                    reported - value <= value / 32);
+        }
+    }
+
+    public void testTailPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        // 990 fast values, 9 slow ones, 1 very slow one
+        for (int i = 0; i < 990; i++) {
+            h.recordValue(200);
+        }
+        for (int i = 0; i < 9; i++) {
+            h.recordValue(5000);
+        }
+        h.recordValue(100000);
+        assertEquals(200, h.getValueAtPercentile(50.0), 200 / 32);
+        assertEquals(200, h.getValueAtPercentile(99.0), 200 / 32);
+        assertEquals(5000, h.getValueAtPercentile(99.9), 5000 / 32);
+        assertEquals(100000, h.getValueAtPercentile(100.0));
+
+        try {
+            h.getValueAtPercentile(100.1);
+            fail();
+        } catch (IllegalArgumentException expected) {}
+    }
+
+    public void testClampsAboveHighestTrackable() {
+        LatencyHistogram h = new LatencyHistogram(1000);
+        h.recordValue(-5);
+        h.recordValue(1000000);
+        assertEquals(2, h.getTotalCount());
+        assertEquals(0, h.getMinValue());
+        assertEquals(1000000, h.getMaxValue());
+        assertEquals(0, h.getValueAtPercentile(50.0));
+        assertTrue(h.getValueAtPercentile(100.0) >= 1000);
+    }
+
+    public void testAddAndDiff() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        for (int i = 0; i < 100; i++) {
+            a.recordValue(10);
+            b.recordValue(10000);
+        }
+        LatencyHistogram sum = a.copy();
+        sum.add(b);
+        assertEquals(200, sum.getTotalCount());
+        assertEquals(10, sum.getValueAtPercentile(50.0));
+        assertEquals(10000, sum.getValueAtPercentile(51.0), 10000 / 32);
+        assertEquals(10, sum.getMinValue());
+        assertEquals(10000, sum.getMaxValue());
+
+        LatencyHistogram diff = LatencyHistogram.diff(sum, a);
+        assertEquals(100, diff.getTotalCount());
+        assertEquals(10000, diff.getValueAtPercentile(1.0), 10000 / 32);
+        assertEquals(10000.0, diff.getMean(), 0.0001);
+
+        // the original isn't changed by copies
+        assertEquals(100, a.getTotalCount());
+
+        try {
+            a.add(new LatencyHistogram(1000));
+            fail();
+        } catch (IllegalArgumentException expected) {}
+
+        sum.reset();
+        assertEquals(0, sum.getTotalCount());
+        assertEquals(0, sum.getValueAtPercentile(99.0));
+    }
+}
@@ -0,0 +1,102 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import junit.framework.TestCase;
+
+public class TestMemory extends TestCase
+{
+    @Override
+    public void tearDown() {
+        Memory.setLimitUsagePercentage(100);
+        Memory.setPercentageOfDataToMove(0);
+    }
+
+    public void testEvictionHysteresis() {
+        Memory.setLimitUsagePercentage(50);
+        Memory.setPercentageOfDataToMove(10);
+        final long high = Memory.getHighWatermarkKB();
+        final long low = Memory.getLowWatermarkKB();
+        assertTrue(high > 0);
+        assertTrue(low < high);
+
+        Memory.Eviction eviction = new Memory.Eviction();
+        assertFalse(eviction.shouldBeMoveOnDisk(high - 1));
+        assertTrue(eviction.shouldBeMoveOnDisk(high));
+        // keeps going below the limit until the low watermark is reached
+        assertTrue(eviction.shouldBeMoveOnDisk(high - 1));
+        assertTrue(eviction.shouldBeMoveOnDisk(low + 1));
+        assertFalse(eviction.shouldBeMoveOnDisk(low));
+        // and doesn't start again until the limit is reached
+        assertFalse(eviction.shouldBeMoveOnDisk(high - 1));
+        assertTrue(eviction.shouldBeMoveOnDisk(high + 1));
+    }
+
+    public void testEvictionStopsWhenNothingIsFreed() {
+        Memory.setLimitUsagePercentage(50);
+        Memory.setPercentageOfDataToMove(10);
+        final long high = Memory.getHighWatermarkKB();
+
+        Memory.Eviction eviction = new Memory.Eviction();
+        assertTrue(eviction.shouldBeMoveOnDisk(high + 10));
+        eviction.evicted(1024, high + 10);
+        assertTrue(eviction.shouldBeMoveOnDisk(high + 9));
+        // what's left isn't evictable, so stop above the low watermark
+        eviction.evicted(0, high + 9);
+        assertFalse(eviction.shouldBeMoveOnDisk(high + 9));
+        // start again once there is more data
+        assertTrue(eviction.shouldBeMoveOnDisk(high + 20));
+        eviction.evicted(0, high + 20);
+        assertFalse(eviction.shouldBeMoveOnDisk(high + 20));
+        // or once the memory has been under the limit in between
+        assertFalse(eviction.shouldBeMoveOnDisk(high - 1));
+        assertTrue(eviction.shouldBeMoveOnDisk(high));
+    }
+
+    public void testEvictionStateIsPerSite() {
+        Memory.setLimitUsagePercentage(50);
+        Memory.setPercentageOfDataToMove(10);
+        final long high = Memory.getHighWatermarkKB();
+
+        Memory.Eviction site1 = new Memory.Eviction();
+        Memory.Eviction site2 = new Memory.Eviction();
+        assertTrue(site1.shouldBeMoveOnDisk(high));
+        assertTrue(site2.shouldBeMoveOnDisk(high));
+        // one site running out of cold data doesn't stop the other
+        site1.evicted(0, high);
+        assertFalse(site1.shouldBeMoveOnDisk(high - 1));
+        assertTrue(site2.shouldBeMoveOnDisk(high - 1));
+    }
+
+    public void testEEMemoryTotals() {
+        MemoryStats stats = new MemoryStats();
+        stats.eeUpdateMemStats(1, 10, 100, 200, 30, 40, 1000, 5);
+        stats.eeUpdateMemStats(2, 10, 100, 300, 30, 40, 1000, 0);
+        // tuple allocated + index + string + temp table, pooled memory excluded
+        assertEquals(200 + 30 + 40 + 5 + 300 + 30 + 40, stats.getEEMemoryKB());
+        // a site's new numbers replace its old ones
+        stats.eeUpdateMemStats(2, 10, 100, 0, 0, 0, 1000, 0);
+        assertEquals(200 + 30 + 40 + 5, stats.getEEMemoryKB());
+    }
+}
@@ -0,0 +1,69 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestSiteQueueStats extends TestCase
+{
+    public void testWaitPercentiles() {
+        SiteQueueStats.Window w = new SiteQueueStats.Window();
+        assertEquals(0, w.waitPercentile(50.0));
+        for (long i = 1; i <= 100; i++) {
+            w.recordWait(i * 1000);
+        }
+        // power-of-two buckets overestimate by less than 2x and never exceed the max
+        long p50 = w.waitPercentile(50.0);
+        assertTrue(p50 >= 50000 && p50 < 100000);
+        assertEquals(100000, w.waitPercentile(99.0));
+        assertEquals(100000, w.waitPercentile(100.0));
+        w.recordWait(0);
+        assertEquals(101, w.m_tasks);
+    }
+
+    public void testStatsRow() {
+        SiteQueueStats stats = new SiteQueueStats(0);
+        stats.recordDrain(2, 3);
+        stats.recordWait(2000);
+        stats.recordWait(4000);
+        stats.recordPark();
+        Object rows[][] = stats.getStatsRows(true, 0L);
+        assertEquals(1, rows.length);
+        List<VoltTable.ColumnInfo> schema = stats.getColumnSchema();
+        int tasks = -1, avgWait = -1;
+        for (int i = 0; i < schema.size(); i++) {
+            if (schema.get(i).name.equals("TASKS")) tasks = i;
+            if (schema.get(i).name.equals("AVG_WAIT")) avgWait = i;
+        }
+        assertEquals(2L, rows[0][tasks]);
+        assertEquals(3L, rows[0][avgWait]);
+        // interval stats reset after each read, totals don't
+        rows = stats.getStatsRows(true, 0L);
+        assertEquals(0L, rows[0][tasks]);
+        rows = stats.getStatsRows(false, 0L);
+        assertEquals(2L, rows[0][tasks]);
+    }
+}
@@ -555,5 +555,77 @@ public class TestTheHashinator extends TestCase {
         assertEquals( 2, hashinator.partitionForToken(Long.MAX_VALUE - 1));
     }
 
-}
 
+    @Test
+    public void testElasticHashinatorMatchesSortedMap() {
+        if (hashinatorType == HashinatorType.LEGACY) return;
+
+        // small rings are searched directly, larger ones through the bucket index
+        for (int partitionCount : new int[] { 1, 2, 3, 12, 100 }) {
+            byte configBytes[] = ElasticHashinator.getConfigureBytes(partitionCount, 8);
+            ElasticHashinator hashinator = new ElasticHashinator(configBytes);
+
+            TreeMap<Long, Integer> expected = new TreeMap<Long, Integer>();
+            ByteBuffer buf = ByteBuffer.wrap(configBytes);
+            int tokenCount = buf.getInt();
+            for (int ii = 0; ii < tokenCount; ii++) {
+                expected.put(buf.getLong(), buf.getInt());
+            }
+
+            for (long token : expected.keySet()) {
+                for (long hash : new long[] { token - 1, token, token + 1 }) {
+                    assertEquals(floorPartition(expected, hash), hashinator.partitionForToken(hash));
+                }
+            }
+            for (long hash : new long[] { Long.MIN_VALUE, Long.MIN_VALUE + 1, -1, 0, 1,
+                                          Long.MAX_VALUE - 1, Long.MAX_VALUE }) {
+                assertEquals(floorPartition(expected, hash), hashinator.partitionForToken(hash));
+            }
+            for (int ii = 0; ii < 100000; ii++) {
+                long hash = r.nextLong();
+                assertEquals(floorPartition(expected, hash), hashinator.partitionForToken(hash));
+            }
+        }
+    }
+
+    private static int floorPartition(NavigableMap<Long, Integer> tokens, long hash) {
+        Map.Entry<Long, Integer> entry = tokens.floorEntry(hash);
+        return entry != null ? entry.getValue() : tokens.lastEntry().getValue();
+    }
+
+    @Test
+    public void testBulkHashinate() {
+        TheHashinator.initialize(getHashinatorClass(), getConfigBytes(12));
+
+        long keys[] = new long[10000];
+        for (int ii = 0; ii < keys.length; ii++) {
+            keys[ii] = r.nextLong();
+        }
+        keys[0] = VoltType.NULL_BIGINT;
+        keys[1] = Long.MAX_VALUE;
+        keys[2] = 0;
+
+        int partitions[] = new int[keys.length];
+        TheHashinator.hashinate(keys, partitions);
+        assertEquals(0, partitions[0]);
+        for (int ii = 0; ii < keys.length; ii++) {
+            assertEquals(TheHashinator.hashToPartition(keys[ii]), partitions[ii]);
+        }
+    }
+
+    @Test
+    public void testHashToPartitionOfUnhashableValues() {
+        TheHashinator.initialize(getHashinatorClass(), getConfigBytes(12));
+
+        // VoltType values that aren't hashed and null sigils go to partition 0
+        assertEquals(0, TheHashinator.hashToPartition(3.5));
+        assertEquals(0, TheHashinator.hashToPartition(VoltType.NULL_TIMESTAMP));
+        assertEquals(0, TheHashinator.hashToPartition(VoltType.NULL_STRING_OR_VARBINARY));
+
+        // anything else is an error
+        try {
+            TheHashinator.hashToPartition(new Object());
+            fail();
+        } catch (VoltTypeException e) {}
+    }
+}
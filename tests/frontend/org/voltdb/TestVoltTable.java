@@ -24,14 +24,19 @@
 package org.voltdb;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import junit.framework.TestCase;
 
+import org.json_voltpatches.JSONArray;
 import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONObject;
+import org.json_voltpatches.JSONWriter;
 import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.client.ClientResponse;
 import org.voltdb.messaging.FastSerializableTestUtil;
 import org.voltdb.messaging.FastSerializer;
 import org.voltdb.types.TimestampType;
@@ -169,6 +174,30 @@ public class TestVoltTable extends TestCase {
         assertEquals(5L, LONG_FIVE.asScalarLong());
     }
 
+    public void testCopyRow() {
+        t = new VoltTable(new ColumnInfo("id", VoltType.BIGINT), new ColumnInfo("name", VoltType.STRING));
+        for (int i = 0; i < 1000; i++) {
+            t.addRow(i, i % 3 == 0 ? null : "name" + i);
+        }
+        // starts smaller than the rows so the copy has to grow it
+        t2 = t.clone(0);
+        while (t.advanceRow()) {
+            if (t.getLong(0) % 2 == 0) {
+                PrivateVoltTableFactory.copyRow(t, t2);
+            }
+        }
+        assertEquals(500, t2.getRowCount());
+        while (t2.advanceRow()) {
+            long id = t2.getLong(0);
+            assertEquals(0, id % 2);
+            if (id % 3 == 0) {
+                assertNull(t2.getString(1));
+            } else {
+                assertEquals("name" + id, t2.getString(1));
+            }
+        }
+    }
+
     public void testAddColumnNullName() {
         try {
             t = new VoltTable(new ColumnInfo(null, VoltType.BIGINT));
@@ -940,6 +969,29 @@ public class TestVoltTable extends TestCase {
         assertTrue(t1.equals(t2));
     }
 
+    public void testStreamedJSON() throws JSONException, IOException {
+        VoltTable t1 = new VoltTable(
+                new ColumnInfo("integer", VoltType.INTEGER),
+                new ColumnInfo("string", VoltType.STRING));
+        t1.addRow(1, "aabbcc");
+        t1.addRow(null, null);
+        VoltTable t2 = new VoltTable(new ColumnInfo("bigint", VoltType.BIGINT));
+        t2.addRow(12345678901L);
+
+        ClientResponseImpl response =
+            new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[] { t1, t2 }, "status");
+
+        // writing to a stream must produce the same document as building a string
+        StringWriter writer = new StringWriter();
+        response.writeJSON(new JSONWriter(writer));
+        assertEquals(response.toJSONString(), writer.toString());
+
+        JSONArray results = new JSONObject(writer.toString()).getJSONArray("results");
+        assertEquals(2, results.length());
+        assertTrue(t1.equals(VoltTable.fromJSONObject(results.getJSONObject(0))));
+        assertTrue(t2.equals(VoltTable.fromJSONObject(results.getJSONObject(1))));
+    }
+
     /**
      * Java won't let you pass >255 args to a method. Verify it's possible to
      * make a big table using vararg methods and arrays.
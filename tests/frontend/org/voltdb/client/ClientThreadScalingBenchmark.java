@@ -0,0 +1,267 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.voltcore.network.Connection;
+import org.voltcore.network.QueueMonitor;
+import org.voltcore.network.VoltNetworkPool;
+import org.voltcore.network.VoltProtocolHandler;
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.VoltTable;
+import org.voltdb.messaging.FastDeserializer;
+
+/**
+ * Measures how asynchronous invocation throughput of a single shared Client scales
+ * as the number of application threads calling it goes from 1 to 32.
+ *
+ * By default the client talks to an in-process server that answers every invocation
+ * immediately so the numbers reflect client side overhead. Pass host:port to run
+ * against a real cluster, in which case @Ping is invoked.
+ *
+ * Usage: ClientThreadScalingBenchmark [host:port] [seconds per run]
+ */
+public class ClientThreadScalingBenchmark {
+
+    private static final int THREAD_COUNTS[] = new int[] { 1, 2, 4, 8, 16, 32 };
+
+    /**
+     * Answers every invocation with an empty success response
+     */
+    static class ResponderHandler extends VoltProtocolHandler {
+        @Override
+        public int getMaxRead() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void handleMessage(ByteBuffer message, Connection c) {
+            try {
+                FastDeserializer fds = new FastDeserializer(message);
+                StoredProcedureInvocation spi = fds.readObject(StoredProcedureInvocation.class);
+                ClientResponseImpl response =
+                    new ClientResponseImpl(ClientResponseImpl.SUCCESS, new VoltTable[0], null, spi.getClientHandle());
+                ByteBuffer buf = ByteBuffer.allocate(4 + response.getSerializedSize());
+                buf.putInt(buf.capacity() - 4);
+                response.flattenToBuffer(buf);
+                buf.clear();
+                c.writeStream().enqueue(buf);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public Runnable offBackPressure() {
+            return new Runnable() {
+                @Override
+                public void run() {}
+            };
+        }
+
+        @Override
+        public Runnable onBackPressure() {
+            return new Runnable() {
+                @Override
+                public void run() {}
+            };
+        }
+
+        @Override
+        public QueueMonitor writestreamMonitor() {
+            return null;
+        }
+    }
+
+    /**
+     * Accepts client connections, performs the login handshake and hands them to a network pool
+     */
+    static class ResponderServer extends Thread {
+        private final ServerSocketChannel m_socket;
+        private final VoltNetworkPool m_network;
+        private final AtomicBoolean m_shutdown = new AtomicBoolean(false);
+
+        ResponderServer(int port) throws IOException {
+            super("Benchmark responder");
+            m_network = new VoltNetworkPool(4, null);
+            m_network.start();
+            m_socket = ServerSocketChannel.open();
+            m_socket.configureBlocking(false);
+            m_socket.socket().bind(new InetSocketAddress(port));
+        }
+
+        private static void readFully(SocketChannel client, ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining()) {
+                if (client.read(buf) == -1) {
+                    throw new IOException("Connection closed during login");
+                }
+            }
+            buf.flip();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!m_shutdown.get()) {
+                    SocketChannel client = m_socket.accept();
+                    if (client == null) {
+                        Thread.sleep(1);
+                        continue;
+                    }
+                    client.configureBlocking(true);
+                    //Length prefix and version, then the service, username and password hash
+                    readFully(client, ByteBuffer.allocate(5));
+                    ByteBuffer length = ByteBuffer.allocate(4);
+                    readFully(client, length);
+                    readFully(client, ByteBuffer.allocate(length.getInt()));
+                    length.clear();
+                    readFully(client, length);
+                    readFully(client, ByteBuffer.allocate(length.getInt()));
+                    readFully(client, ByteBuffer.allocate(20));
+
+                    final ByteBuffer responseBuffer = ByteBuffer.allocate(34);
+                    responseBuffer.putInt(30);
+                    responseBuffer.put((byte)0);//version
+                    responseBuffer.put((byte)0);//success response
+                    responseBuffer.putInt(0);//hostId
+                    responseBuffer.putLong(0);//connectionId
+                    responseBuffer.putLong(0);//instanceId
+                    responseBuffer.putInt(0);//instanceId pt 2
+                    responseBuffer.putInt(0);//build string length
+                    responseBuffer.flip();
+                    while (responseBuffer.hasRemaining()) {
+                        client.write(responseBuffer);
+                    }
+
+                    client.configureBlocking(false);
+                    m_network.registerChannel(client, new ResponderHandler());
+                }
+                m_network.shutdown();
+                m_socket.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        void shutdown() throws InterruptedException {
+            m_shutdown.set(true);
+            join();
+        }
+    }
+
+    private static double run(String host, int port, final String procName, int threadCount, long durationMs)
+    throws Exception {
+        ClientConfig config = new ClientConfig();
+        config.setMaxOutstandingTxns(threadCount * 2000);
+        final Client client = ClientFactory.createClient(config);
+        client.createConnection(host, port);
+
+        final AtomicLong responses = new AtomicLong();
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final ProcedureCallback callback = new ProcedureCallback() {
+            @Override
+            public void clientCallback(ClientResponse clientResponse) {
+                if (clientResponse.getStatus() != ClientResponse.SUCCESS) {
+                    System.err.println(clientResponse.getStatusString());
+                }
+                responses.incrementAndGet();
+            }
+        };
+
+        Thread callers[] = new Thread[threadCount];
+        for (int ii = 0; ii < threadCount; ii++) {
+            callers[ii] = new Thread("Benchmark caller " + ii) {
+                @Override
+                public void run() {
+                    try {
+                        while (!stop.get()) {
+                            client.callProcedure(callback, procName);
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+        }
+
+        //Warm up before measuring
+        for (Thread caller : callers) {
+            caller.start();
+        }
+        Thread.sleep(Math.min(2000, durationMs / 2));
+        final long startCount = responses.get();
+        final long start = System.nanoTime();
+        Thread.sleep(durationMs);
+        final long count = responses.get() - startCount;
+        final long elapsed = System.nanoTime() - start;
+
+        stop.set(true);
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        client.drain();
+        client.close();
+        return count / (elapsed / 1000000000.0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        int port = 21312;
+        String procName = "Benchmark";
+        ResponderServer server = null;
+        if (args.length > 0 && !args[0].equals("-")) {
+            String parts[] = args[0].split(":");
+            host = parts[0];
+            port = parts.length > 1 ? Integer.parseInt(parts[1]) : Client.VOLTDB_SERVER_PORT;
+            procName = "@Ping";
+        } else {
+            server = new ResponderServer(port);
+            server.start();
+        }
+        long durationMs = (args.length > 1 ? Long.parseLong(args[1]) : 5) * 1000;
+
+        try {
+            double baseline = 0;
+            for (int threadCount : THREAD_COUNTS) {
+                double tps = run(host, port, procName, threadCount, durationMs);
+                if (baseline == 0) {
+                    baseline = tps;
+                }
+                System.out.printf("%2d threads %12.0f invocations/s %6.2fx\n", threadCount, tps, tps / baseline);
+            }
+        } finally {
+            if (server != null) {
+                server.shutdown();
+            }
+        }
+    }
+}
@@ -155,6 +155,19 @@ public class MockVoltClient implements Client, ReplicaProcCaller{
         return false;
     }
 
+    @Override
+    public ClientResponse[] callProcedureBatch(String procName, List<Object[]> parameterSets) {
+        // TODO Auto-generated method stub
+        return null;
+    }
+
+    @Override
+    public boolean callProcedureBatch(ProcedureCallback callbacks[], String procName,
+            List<Object[]> parameterSets) {
+        // TODO Auto-generated method stub
+        return false;
+    }
+
     @Override
     public void drain() {
         // TODO Auto-generated method stub
@@ -28,6 +28,8 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -51,6 +53,8 @@ public class TestDistributer extends TestCase {
 
         volatile boolean gotPing = false;
         AtomicBoolean sendResponses = new AtomicBoolean(true);
+        // answer batches as if the invocations from this one on were malformed
+        volatile int dropBatchMembersFrom = -1;
 
         @Override
         public int getMaxRead() {
@@ -63,6 +67,33 @@ public class TestDistributer extends TestCase {
                 FastDeserializer fds = new FastDeserializer(message);
                 StoredProcedureInvocation spi = fds.readObject(StoredProcedureInvocation.class);
 
+                // unpack batches and respond to each invocation in them
+                if (spi.getProcName().equals("@Batch")) {
+                    batches.incrementAndGet();
+                    ByteBuffer batch = spi.getSerializedParams();
+                    int count = batch.getInt();
+                    for (int ii = 0; ii < count; ii++) {
+                        if (dropBatchMembersFrom >= 0 && ii >= dropBatchMembersFrom) {
+                            VoltTable dropped = new VoltTable(new VoltTable.ColumnInfo("FIRST_DROPPED", VoltType.INTEGER));
+                            dropped.addRow(ii);
+                            ClientResponseImpl response = new ClientResponseImpl(ClientResponseImpl.UNEXPECTED_FAILURE,
+                                    new VoltTable[] { dropped }, "Malformed invocation batch", spi.getClientHandle());
+                            ByteBuffer buf = ByteBuffer.allocate(4 + response.getSerializedSize());
+                            buf.putInt(buf.capacity() - 4);
+                            response.flattenToBuffer(buf);
+                            buf.clear();
+                            c.writeStream().enqueue(buf);
+                            return;
+                        }
+                        int length = batch.getInt();
+                        ByteBuffer invocation = batch.slice();
+                        invocation.limit(length);
+                        batch.position(batch.position() + length);
+                        handleMessage(invocation, c);
+                    }
+                    return;
+                }
+
                 // record if we got a ping
                 if (spi.getProcName().equals("@Ping"))
                     gotPing = true;
@@ -114,6 +145,7 @@ public class TestDistributer extends TestCase {
 
         }
         AtomicInteger roundTrips = new AtomicInteger();
+        AtomicInteger batches = new AtomicInteger();
 
         @Override
         public Runnable offBackPressure() {
@@ -371,6 +403,73 @@ public class TestDistributer extends TestCase {
     }
 
 
+    @Test
+    public void testConcurrentQueue() throws Exception {
+        // Many threads sharing one distributer all get routed without losing invocations
+        MockVolt volts[] = new MockVolt[3];
+        try {
+            for (int ii = 0; ii < volts.length; ii++) {
+                volts[ii] = new MockVolt(20000 + ii);
+                volts[ii].start();
+            }
+
+            final Distributer dist = new Distributer(false,
+                    ClientConfig.DEFAULT_PROCEDURE_TIMOUT_MS,
+                    ClientConfig.DEFAULT_CONNECTION_TIMOUT_MS,
+                    false);
+            for (int ii = 0; ii < volts.length; ii++) {
+                dist.createConnection("localhost", "", "", 20000 + ii);
+            }
+
+            final int threadCount = 8;
+            final int callsPerThread = 50;
+            final AtomicInteger handle = new AtomicInteger();
+            final AtomicBoolean failed = new AtomicBoolean(false);
+            Thread threads[] = new Thread[threadCount];
+            for (int ii = 0; ii < threadCount; ii++) {
+                threads[ii] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int jj = 0; jj < callsPerThread; jj++) {
+                                ProcedureInvocation pi =
+                                    new ProcedureInvocation(handle.incrementAndGet(), "i1", new Integer(1));
+                                if (!dist.queue(pi, new ProcCallback(), true)) {
+                                    failed.set(true);
+                                }
+                            }
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                            failed.set(true);
+                        }
+                    }
+                };
+                threads[ii].start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+            dist.drain();
+            assertFalse(failed.get());
+
+            int roundTrips = 0;
+            for (MockVolt volt : volts) {
+                assertTrue(volt.handler.roundTrips.get() > 0);
+                roundTrips += volt.handler.roundTrips.get();
+            }
+            assertEquals(threadCount * callsPerThread, roundTrips);
+            dist.shutdown();
+        }
+        finally {
+            for (MockVolt volt : volts) {
+                if (volt != null) {
+                    volt.shutdown();
+                    volt.join();
+                }
+            }
+        }
+    }
+
     /**
      * Test connection timeouts.
      * Create a fake voltdb that runs all happy for a while, but
@@ -522,6 +621,109 @@ public class TestDistributer extends TestCase {
        }
     }
 
+    public void testClientBatch() throws Exception {
+        MockVolt volt = null;
+
+        try {
+            // create a fake server and connect to it.
+            volt = new MockVolt(21212);
+            volt.start();
+
+            Client clt = ClientFactory.createClient();
+            clt.createConnection("localhost");
+            // topology and procedure info calls
+            final int systemRoundTrips = 2;
+
+            List<Object[]> parameterSets = new ArrayList<Object[]>();
+            for (int ii = 0; ii < 10; ii++) {
+                parameterSets.add(new Object[] { new Integer(ii) });
+            }
+
+            // this call blocks for all the results!
+            ClientResponse responses[] = clt.callProcedureBatch("Foo", parameterSets);
+            assertEquals(10, responses.length);
+            for (ClientResponse r : responses) {
+                assertEquals(ClientResponse.SUCCESS, r.getStatus());
+            }
+            assertEquals(1, volt.handler.batches.get());
+            assertEquals(systemRoundTrips + 10, volt.handler.roundTrips.get());
+
+            // this call doesn't block! (use drain)
+            final AtomicInteger callbacks = new AtomicInteger();
+            ProcedureCallback cbs[] = new ProcedureCallback[10];
+            for (int ii = 0; ii < cbs.length; ii++) {
+                cbs[ii] = new ProcedureCallback() {
+                    @Override
+                    public void clientCallback(ClientResponse clientResponse) {
+                        callbacks.incrementAndGet();
+                    }
+                };
+            }
+            assertTrue(clt.callProcedureBatch(cbs, "Bar", parameterSets));
+            clt.drain();
+            assertEquals(10, callbacks.get());
+            assertEquals(2, volt.handler.batches.get());
+            assertEquals(systemRoundTrips + 20, volt.handler.roundTrips.get());
+            clt.close();
+        }
+        finally {
+            if (volt != null) {
+                volt.shutdown();
+                volt.join();
+            }
+        }
+    }
+
+    public void testClientBatchSplitAndDropped() throws Exception {
+        MockVolt volt = null;
+        final int maxBatchMessageLength = Distributer.MAX_BATCH_MESSAGE_LENGTH;
+
+        try {
+            // create a fake server and connect to it.
+            volt = new MockVolt(21212);
+            volt.start();
+
+            Client clt = ClientFactory.createClient();
+            clt.createConnection("localhost");
+
+            List<Object[]> parameterSets = new ArrayList<Object[]>();
+            for (int ii = 0; ii < 10; ii++) {
+                parameterSets.add(new Object[] { new Integer(ii) });
+            }
+
+            // room for a few invocations per message
+            Distributer.MAX_BATCH_MESSAGE_LENGTH = 150;
+            ClientResponse responses[] = clt.callProcedureBatch("Foo", parameterSets);
+            for (ClientResponse r : responses) {
+                assertEquals(ClientResponse.SUCCESS, r.getStatus());
+            }
+            final int batches = volt.handler.batches.get();
+            assertTrue(batches > 1);
+
+            // the dropped invocations of every message get the message's failure
+            volt.handler.dropBatchMembersFrom = 1;
+            responses = clt.callProcedureBatch("Foo", parameterSets);
+            assertEquals(2 * batches, volt.handler.batches.get());
+            int failures = 0;
+            for (ClientResponse r : responses) {
+                if (r.getStatus() != ClientResponse.SUCCESS) {
+                    assertEquals(ClientResponse.UNEXPECTED_FAILURE, r.getStatus());
+                    assertEquals("Malformed invocation batch", r.getStatusString());
+                    failures++;
+                }
+            }
+            assertEquals(10 - batches, failures);
+            clt.close();
+        }
+        finally {
+            Distributer.MAX_BATCH_MESSAGE_LENGTH = maxBatchMessageLength;
+            if (volt != null) {
+                volt.shutdown();
+                volt.join();
+            }
+        }
+    }
+
     @Test
     public void testClientBlockedOnMaxOutstanding() throws Exception {
         // create a fake server and connect to it.
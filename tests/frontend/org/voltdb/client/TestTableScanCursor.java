@@ -0,0 +1,208 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.voltdb.ServerThread;
+import org.voltdb.VoltDB;
+import org.voltdb.VoltDB.Configuration;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.compiler.VoltProjectBuilder;
+import org.voltdb.types.TimestampType;
+import org.voltdb.utils.MiscUtils;
+
+public class TestTableScanCursor extends TestCase {
+
+    /*
+     * Answers asynchronous calls with the canned results and remembers the queries
+     */
+    private static class PagingClient extends MockVoltClient {
+        final List<String> queries = new ArrayList<String>();
+
+        @Override
+        public boolean callProcedure(ProcedureCallback callback, String procName, Object... parameters) {
+            queries.add((String)parameters[0]);
+            try {
+                callback.clientCallback(callProcedure(procName, parameters));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return true;
+        }
+    }
+
+    private static VoltTable page(long firstId, int rows) {
+        VoltTable t = new VoltTable(
+                new ColumnInfo("NAME", VoltType.STRING),
+                new ColumnInfo("ID", VoltType.BIGINT));
+        for (int ii = 0; ii < rows; ii++) {
+            t.addRow("it's", firstId + ii);
+        }
+        return t;
+    }
+
+    public void testPageQuery() {
+        assertEquals("SELECT * FROM \"T\" ORDER BY \"A\", \"B\" LIMIT 10;",
+                TableScanCursor.pageQuery("T", null, null, new String[] { "A", "B" }, null, 10));
+        assertEquals("SELECT * FROM \"T\" WHERE ((\"A\" > 'o''k') OR (\"A\" = 'o''k' AND \"B\" > 5)) " +
+                "ORDER BY \"A\", \"B\" LIMIT 10;",
+                TableScanCursor.pageQuery("T", null, null, new String[] { "A", "B" }, new Object[] { "o'k", 5L }, 10));
+        // the caller's predicate is kept apart from the key conditions
+        assertEquals("SELECT \"A\", \"B\" FROM \"T\" WHERE (B < 3 OR B > 7) AND ((\"A\" > 1)) " +
+                "ORDER BY \"A\" LIMIT 10;",
+                TableScanCursor.pageQuery("T", new String[] { "a", "b" }, "B < 3 OR B > 7",
+                        new String[] { "A" }, new Object[] { 1L }, 10));
+    }
+
+    public void testQuotedIdentifiers() {
+        assertEquals("\"ORDER\"", TableScanCursor.quoteIdentifier("order"));
+        assertEquals("\"A\"\" OR 1=1 --\"", TableScanCursor.quoteIdentifier("a\" or 1=1 --"));
+    }
+
+    public void testFloatKeys() {
+        assertEquals("SELECT * FROM \"T\" WHERE ((\"F\" > 1.5)) ORDER BY \"F\" LIMIT 1;",
+                TableScanCursor.pageQuery("T", null, null, new String[] { "F" }, new Object[] { 1.5 }, 1));
+        for (double d : new double[] { Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY }) {
+            try {
+                TableScanCursor.pageQuery("T", null, null, new String[] { "F" }, new Object[] { d }, 1);
+                fail("Non-finite key " + d + " was written as a literal");
+            } catch (IllegalArgumentException expected) {}
+        }
+    }
+
+    public void testTimestampKeys() {
+        // 2011-06-24 10:30:26.123012 GMT
+        TimestampType ts = new TimestampType(1308911426123012L);
+        assertEquals("SELECT * FROM \"T\" WHERE ((\"TS\" > '2011-06-24 10:30:26.123012')) ORDER BY \"TS\" LIMIT 1;",
+                TableScanCursor.pageQuery("T", null, null, new String[] { "TS" }, new Object[] { ts }, 1));
+        // before the epoch the microseconds still count up from the millisecond
+        assertEquals("SELECT * FROM \"T\" WHERE ((\"TS\" > '1969-12-31 23:59:59.999999')) ORDER BY \"TS\" LIMIT 1;",
+                TableScanCursor.pageQuery("T", null, null, new String[] { "TS" }, new Object[] { new TimestampType(-1) }, 1));
+    }
+
+    public void testPaging() throws Exception {
+        PagingClient client = new PagingClient();
+        client.nextResults.add(new VoltTable[] { page(0, 3) });
+        client.nextResults.add(new VoltTable[] { page(3, 3) });
+        client.nextResults.add(new VoltTable[] { page(6, 1) });
+
+        TableScanCursor cursor = new TableScanCursor(client, "T", 3, "NAME", "ID");
+        int rows = 0;
+        VoltTable page;
+        while ((page = cursor.nextPage()) != null) {
+            // the next page is requested before this one is consumed
+            assertEquals(rows == 6 ? 3 : (rows / 3) + 2, client.queries.size());
+            while (page.advanceRow()) {
+                assertEquals(rows++, page.getLong("ID"));
+            }
+        }
+        assertEquals(7, rows);
+        assertEquals(3, client.queries.size());
+        assertTrue(client.queries.get(1).contains("(\"NAME\" = 'it''s' AND \"ID\" > 2)"));
+        assertTrue(client.queries.get(2).contains("(\"NAME\" = 'it''s' AND \"ID\" > 5)"));
+        assertNull(cursor.nextPage());
+    }
+
+    public void testKeyColumnMustBeReturned() {
+        try {
+            new TableScanCursor(new PagingClient(), "T", new String[] { "A" }, null, 10, "B");
+            fail("Paged on a key column the pages wouldn't hold");
+        } catch (IllegalArgumentException expected) {}
+    }
+
+    public void testPagingThroughServer() throws Exception {
+        String pathToCatalog = Configuration.getPathToCatalogForTest("scancursor.jar");
+        String pathToDeployment = Configuration.getPathToCatalogForTest("scancursor.xml");
+        VoltProjectBuilder builder = new VoltProjectBuilder();
+        builder.addLiteralSchema("create table T (id integer not null, grp varchar(8) not null, " +
+                "val bigint, primary key (grp, id));");
+        builder.addPartitionInfo("T", "id");
+        assertTrue(builder.compile(pathToCatalog, 2, 1, 0));
+        MiscUtils.copyFile(builder.getPathToDeployment(), pathToDeployment);
+
+        VoltDB.Configuration config = new VoltDB.Configuration();
+        config.m_pathToCatalog = pathToCatalog;
+        config.m_pathToDeployment = pathToDeployment;
+        ServerThread localServer = new ServerThread(config);
+        Client client = null;
+        try {
+            localServer.start();
+            localServer.waitForInitialization();
+            client = ClientFactory.createClient();
+            client.createConnection("localhost");
+            for (int ii = 0; ii < 50; ii++) {
+                client.callProcedure("T.insert", ii, ii % 2 == 0 ? "even" : "odd", ii * 10L);
+            }
+
+            // every row, in (grp, id) order, across both partitions
+            TableScanCursor cursor = new TableScanCursor(client, "t", 7, "grp", "id");
+            List<String> keys = new ArrayList<String>();
+            int pages = 0;
+            VoltTable page;
+            while ((page = cursor.nextPage()) != null) {
+                assertTrue(page.getRowCount() <= 7);
+                assertEquals(3, page.getColumnCount());
+                pages++;
+                while (page.advanceRow()) {
+                    keys.add(page.getString("GRP") + page.getLong("ID"));
+                }
+            }
+            assertEquals(8, pages);
+            List<String> expected = new ArrayList<String>();
+            for (int ii = 0; ii < 50; ii += 2) {
+                expected.add("even" + ii);
+            }
+            for (int ii = 1; ii < 50; ii += 2) {
+                expected.add("odd" + ii);
+            }
+            assertEquals(expected, keys);
+
+            // some columns of the rows that match a predicate
+            cursor = new TableScanCursor(client, "T", new String[] { "id", "val" }, "val >= 200 AND val < 330",
+                    4, "id");
+            long next = 20;
+            while ((page = cursor.nextPage()) != null) {
+                assertEquals(2, page.getColumnCount());
+                while (page.advanceRow()) {
+                    assertEquals(next, page.getLong("ID"));
+                    assertEquals(next * 10, page.getLong("VAL"));
+                    next++;
+                }
+            }
+            assertEquals(33, next);
+        } finally {
+            if (client != null) {
+                client.close();
+            }
+            localServer.shutdown();
+            localServer.join();
+        }
+    }
+}
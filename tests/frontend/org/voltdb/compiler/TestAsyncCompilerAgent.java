@@ -25,6 +25,7 @@ package org.voltdb.compiler;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
@@ -32,6 +33,7 @@ import static org.mockito.Mockito.spy;
 
 import java.util.Arrays;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -42,6 +44,7 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.voltcore.messaging.HostMessenger;
 import org.voltcore.messaging.LocalObjectMessage;
+import org.voltdb.VoltTable;
 import org.voltdb.client.ProcedureInvocationType;
 import org.voltdb.compiler.AsyncCompilerWork.AsyncCompilerWorkCompletionHandler;
 
@@ -134,4 +137,63 @@ public class TestAsyncCompilerAgent {
         m_agent.shutdown();
         assertEquals(AsyncCompilerAgent.MAX_QUEUE_DEPTH + 2, completedRequests.get());
     }
+
+    /**
+     * Checks that ad hoc work is spread across the planner pool and that
+     * each worker reports its own stats row.
+     */
+    @Test
+    public void testPlannerPoolPlansConcurrently() throws InterruptedException {
+        m_agent.shutdown();
+        m_agent = spy(new AsyncCompilerAgent(2));
+
+        final Semaphore started = new Semaphore(0);
+        final Semaphore release = new Semaphore(0);
+        doAnswer(new Answer<AsyncCompilerResult>() {
+            @Override
+            public AsyncCompilerResult answer(InvocationOnMock invocation) throws Throwable {
+                started.release();
+                release.acquire();
+                return null;
+            }
+        }).when(m_agent).compileAdHocPlan(any(AdHocPlannerWork.class));
+
+        final AtomicInteger completedRequests = new AtomicInteger();
+        for (int i = 0; i < 2; ++i) {
+            AdHocPlannerWork work =
+                    new AdHocPlannerWork(100l, false, 0, 0, "localhost", false, null,
+                            "select * from a", Arrays.asList(new String[] {"select * from a"}), 0, null, false, true,
+                            ProcedureInvocationType.ORIGINAL, 0, 0,
+                            new AsyncCompilerWorkCompletionHandler() {
+                                @Override
+                                public void onCompletion(AsyncCompilerResult compilerResult) {
+                                    completedRequests.incrementAndGet();
+                                }
+                            });
+            m_agent.compileAdHocPlanForProcedure(work);
+        }
+
+        // both requests are being planned at once, one per worker
+        assertTrue(started.tryAcquire(2, 60, TimeUnit.SECONDS));
+        assertEquals(1, m_agent.m_workers[0].m_depth.get());
+        assertEquals(1, m_agent.m_workers[1].m_depth.get());
+
+        release.release(2);
+        m_agent.shutdown();
+        assertEquals(2, completedRequests.get());
+        assertEquals(0, m_agent.m_outstanding.get());
+
+        PlannerPoolStats stats = new PlannerPoolStats(m_agent.m_workers);
+        Object rows[][] = stats.getStatsRows(false, 0L);
+        assertEquals(2, rows.length);
+        VoltTable table = new VoltTable(stats.getColumnSchema().toArray(new VoltTable.ColumnInfo[0]));
+        for (Object row[] : rows) {
+            table.addRow(row);
+        }
+        while (table.advanceRow()) {
+            assertEquals(1, table.getLong("PLANS"));
+            assertEquals(0, table.getLong("QUEUE_DEPTH"));
+            assertEquals(1, table.getLong("MAX_QUEUE_DEPTH"));
+        }
+    }
 }
@@ -0,0 +1,82 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.compiler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class TestLiveDatabaseEstimates extends TestCase {
+
+    @Override
+    public void setUp() {
+        LiveDatabaseEstimates.clear();
+    }
+
+    @Override
+    public void tearDown() {
+        LiveDatabaseEstimates.clear();
+    }
+
+    private static Map<String, Long> counts(String table, long rows) {
+        Map<String, Long> counts = new HashMap<String, Long>();
+        counts.put(table, rows);
+        return counts;
+    }
+
+    public void testRoundRowCount() {
+        assertEquals(LiveDatabaseEstimates.MIN_ROWS, LiveDatabaseEstimates.roundRowCount(0));
+        assertEquals(LiveDatabaseEstimates.MIN_ROWS, LiveDatabaseEstimates.roundRowCount(16));
+        assertEquals(32, LiveDatabaseEstimates.roundRowCount(17));
+        assertEquals(1024, LiveDatabaseEstimates.roundRowCount(1024));
+        assertEquals(2048, LiveDatabaseEstimates.roundRowCount(1025));
+    }
+
+    public void testMaxAcrossSites() {
+        assertNull(LiveDatabaseEstimates.get());
+
+        LiveDatabaseEstimates.updateSiteRowCounts(1, counts("T", 100));
+        LiveDatabaseEstimates.updateSiteRowCounts(2, counts("T", 3000));
+        DatabaseEstimates estimates = LiveDatabaseEstimates.get();
+        assertNotNull(estimates);
+        assertEquals(4096, estimates.getEstimatesForTable("T").maxTuples);
+        assertEquals(4096, estimates.getEstimatesForTable("T").minTuples);
+    }
+
+    public void testSameInstanceUntilRoundedCountChanges() {
+        LiveDatabaseEstimates.updateSiteRowCounts(1, counts("T", 100));
+        DatabaseEstimates first = LiveDatabaseEstimates.get();
+        assertSame(first, LiveDatabaseEstimates.get());
+
+        // still rounds to 128
+        LiveDatabaseEstimates.updateSiteRowCounts(1, counts("T", 120));
+        assertSame(first, LiveDatabaseEstimates.get());
+
+        LiveDatabaseEstimates.updateSiteRowCounts(1, counts("T", 200));
+        DatabaseEstimates second = LiveDatabaseEstimates.get();
+        assertNotSame(first, second);
+        assertEquals(256, second.getEstimatesForTable("T").maxTuples);
+    }
+}
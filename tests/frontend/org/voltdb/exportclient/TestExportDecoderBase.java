@@ -23,6 +23,9 @@
 package org.voltdb.exportclient;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -36,6 +39,8 @@ public class TestExportDecoderBase extends TestCase
 {
     class StubExportDecoder extends ExportDecoderBase
     {
+        byte[] m_lastRow = null;
+
         public StubExportDecoder(AdvertisedDataSource source)
         {
             super(source);
@@ -44,6 +49,7 @@ public class TestExportDecoderBase extends TestCase
         @Override
         public boolean processRow(int rowSize, byte[] rowData)
         {
+            m_lastRow = rowData;
             return false;
         }
 
@@ -86,6 +92,80 @@ public class TestExportDecoderBase extends TestCase
         return source;
     }
 
+    /**
+     * Encode a row of the test schema the way the EE does, with the
+     * string column null.
+     */
+    static byte[] encodeTestRow()
+    {
+        byte[] decimal = "-12.340000000000".getBytes();
+        ByteBuffer buf = ByteBuffer.allocate(1 + 6 * 8 + 4 + decimal.length);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.put((byte) (0x80 >>> 6));
+        buf.putLong(-3);
+        buf.putLong(300);
+        buf.putLong(70000);
+        buf.putLong(Long.MAX_VALUE);
+        buf.putDouble(2.5);
+        buf.putLong(1234567891L);
+        buf.putInt(decimal.length);
+        buf.put(decimal);
+        return buf.array();
+    }
+
+    public void testRowCursor() throws Exception
+    {
+        byte[] row = encodeTestRow();
+        // read the row in place from the middle of a direct block
+        ByteBuffer block = ByteBuffer.allocateDirect(row.length + 10);
+        block.order(ByteOrder.LITTLE_ENDIAN);
+        block.position(5);
+        block.put(row);
+
+        ExportRowCursor cursor = new ExportRowCursor(Arrays.asList(COLUMN_TYPES));
+        cursor.reset(block, 5, row.length);
+        assertEquals(-3, cursor.getLong(0));
+        assertEquals(300, cursor.getLong(1));
+        assertEquals(70000, cursor.getLong(2));
+        assertEquals(Long.MAX_VALUE, cursor.getLong(3));
+        assertEquals(2.5, cursor.getDouble(4));
+        assertEquals(1234567891L, cursor.getLong(5));
+        assertTrue(cursor.isNull(6));
+        assertFalse(cursor.isNull(7));
+        assertEquals(new BigDecimal("-12.340000000000"), cursor.getDecimal(7));
+
+        // boxed values match the allocating decoder
+        StubExportDecoder dut = new StubExportDecoder(constructTestSource());
+        Object[] decoded = dut.decodeRow(row);
+        for (int i = 0; i < COLUMN_TYPES.length; i++) {
+            assertEquals(decoded[i], cursor.getObject(i));
+        }
+
+        // a length prefix running past the row is caught up front
+        try {
+            cursor.reset(block, 5, row.length - 1);
+            fail();
+        }
+        catch (IOException expected) {}
+    }
+
+    public void testProcessRowInBlock() throws Exception
+    {
+        byte[] row = encodeTestRow();
+        ByteBuffer block = ByteBuffer.allocate(row.length + 4);
+        block.order(ByteOrder.LITTLE_ENDIAN);
+        block.put(row);
+        block.putInt(42);
+        block.flip();
+
+        // decoders that only take byte arrays still get an exact copy
+        StubExportDecoder dut = new StubExportDecoder(constructTestSource());
+        dut.processRowInBlock(block, row.length);
+        assertTrue(Arrays.equals(row, dut.m_lastRow));
+        assertEquals(row.length, block.position());
+        assertEquals(42, block.getInt());
+    }
+
     public void testNullFlags() throws IOException
     {
         StubExportDecoder dut =
@@ -28,11 +28,15 @@ import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.TimeZone;
 
 import junit.framework.TestCase;
 
 import org.voltdb.BackendTarget;
+import org.voltdb.VoltDB;
 import org.voltdb.client.Client;
 import org.voltdb.client.ClientFactory;
 import org.voltdb.compiler.VoltProjectBuilder;
@@ -41,6 +45,9 @@ import org.voltdb.exportclient.ExportToFileClient.ExportToFileDecoder;
 import org.voltdb.regressionsuites.LocalCluster;
 import org.voltdb.utils.VoltFile;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
 public class TestExportToFileClient extends TestCase {
 
     public void testEng1088() throws Exception {
@@ -67,6 +74,147 @@ public class TestExportToFileClient extends TestCase {
         decoder0.sourceNoLongerAdvertised(source0);
     }
 
+    /**
+     * A row of the test schema with a string that needs escaping.
+     */
+    static ByteBuffer encodeRow(long value, String string) {
+        byte[] strBytes = string.getBytes(Charsets.UTF_8);
+        byte[] decimal = "-12.340000000000".getBytes(Charsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(1 + 6 * 8 + 8 + strBytes.length + decimal.length);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.put((byte) 0);
+        buf.putLong(value % 100);
+        buf.putLong(value);
+        buf.putLong(value);
+        buf.putLong(value);
+        buf.putDouble(value / 4.0);
+        buf.putLong(value * 1000000L);
+        buf.putInt(strBytes.length);
+        buf.put(strBytes);
+        buf.putInt(decimal.length);
+        buf.put(decimal);
+        buf.flip();
+        return buf;
+    }
+
+    static void writeBlock(ExportToFileDecoder decoder, ByteBuffer row) throws Exception {
+        decoder.onBlockStart();
+        decoder.processRowInBlock(row, row.remaining());
+        decoder.onBlockCompletion();
+    }
+
+    static File newEmptyDir(String name) {
+        File dir = new VoltFile("/tmp/" + System.getProperty("user.name") + "/" + name);
+        if (dir.exists()) {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+        }
+        dir.mkdirs();
+        return dir;
+    }
+
+    static ExportToFileClient fileClient(File dir, int writers, long maxFileBytes) {
+        return new ExportToFileClient(
+                ',', "shardtest", dir, 60, "yyyyMMddHHmmss", null, 0,
+                false, false, false, 0, false, VoltDB.GMT_TIMEZONE,
+                ExportToFileClient.BinaryEncoding.HEX, writers, maxFileBytes);
+    }
+
+    static String readFile(File f) throws Exception {
+        return new String(Files.toByteArray(f), Charsets.UTF_8);
+    }
+
+    public void testShardedWritersMatchCSVWriter() throws Exception {
+        File legacyDir = newEmptyDir("legacy");
+        File shardDir = newEmptyDir("sharded");
+        ExportToFileClient legacy = fileClient(legacyDir, 0, 0);
+        ExportToFileClient sharded = fileClient(shardDir, 2, 0);
+
+        ExportToFileDecoder legacyDecoder =
+                legacy.constructExportDecoder(TestExportDecoderBase.constructTestSource(0));
+        ExportToFileDecoder shard0 =
+                sharded.constructExportDecoder(TestExportDecoderBase.constructTestSource(0));
+        ExportToFileDecoder shard1 =
+                sharded.constructExportDecoder(TestExportDecoderBase.constructTestSource(1));
+        ExportToFileDecoder shard0Again =
+                sharded.constructExportDecoder(TestExportDecoderBase.constructTestSource(2));
+        assertNotSame(shard0, shard1);
+        assertSame(shard0, shard0Again);
+        assertNotSame(shard0.getExecutor(), shard1.getExecutor());
+
+        String[] strings = { "plain", "has \"quotes\", commas", "multi\nline \u00e9t\u00e9" };
+        for (int i = 0; i < strings.length; i++) {
+            writeBlock(legacyDecoder, encodeRow(-1234567 + i, strings[i]));
+            writeBlock(shard0, encodeRow(-1234567 + i, strings[i]));
+        }
+        writeBlock(shard1, encodeRow(42, "other shard"));
+        legacy.shutdown();
+        sharded.shutdown();
+
+        File[] legacyFiles = legacyDir.listFiles();
+        assertEquals(1, legacyFiles.length);
+        File[] shardFiles = shardDir.listFiles();
+        Arrays.sort(shardFiles);
+        assertEquals(2, shardFiles.length);
+        assertTrue(shardFiles[0].getName().contains("yankeelover-0-"));
+        assertTrue(shardFiles[1].getName().contains("yankeelover-1-"));
+        assertEquals(readFile(legacyFiles[0]), readFile(shardFiles[0]));
+        assertTrue(readFile(shardFiles[1]).contains("\"other shard\""));
+    }
+
+    public void testRollBySize() throws Exception {
+        File dir = newEmptyDir("rollbysize");
+        ExportToFileClient client = fileClient(dir, 1, 1);
+        ExportToFileDecoder decoder =
+                client.constructExportDecoder(TestExportDecoderBase.constructTestSource(0));
+
+        ExportToFileClient.PeriodicExportContext first = client.m_current;
+        writeBlock(decoder, encodeRow(1, "first"));
+        // the first file is already past one byte, so a roll is on its way
+        long deadline = System.currentTimeMillis() + 10000;
+        while (client.m_current == first && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotSame(first, client.m_current);
+        writeBlock(decoder, encodeRow(2, "second"));
+        client.shutdown();
+
+        // rolled within a second, the second file still gets its own name
+        File[] files = dir.listFiles();
+        assertEquals(2, files.length);
+        assertFalse(files[0].getName().equals(files[1].getName()));
+    }
+
+    public void testShutdownWithQueuedSourceRemoval() throws Exception {
+        File dir = newEmptyDir("shutdownqueued");
+        final ExportToFileClient client = fileClient(dir, 2, 0);
+        final AdvertisedDataSource source = TestExportDecoderBase.constructTestSource(0);
+        final ExportToFileDecoder decoder = client.constructExportDecoder(source);
+        writeBlock(decoder, encodeRow(1, "before shutdown"));
+
+        // what GuestProcessor.shutdown() does just before shutting down the client
+        decoder.getExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                decoder.sourceNoLongerAdvertised(source);
+            }
+        });
+        Thread shutdown = new Thread() {
+            @Override
+            public void run() {
+                client.shutdown();
+            }
+        };
+        shutdown.start();
+        shutdown.join(10000);
+        assertFalse(shutdown.isAlive());
+        assertTrue(decoder.getExecutor().isTerminated());
+        assertTrue(client.m_tableDecoders.isEmpty());
+        assertFalse(client.m_batchLock.isWriteLocked());
+        assertEquals(1, dir.listFiles().length);
+    }
+
     public void testNoAutoDiscovery() throws Exception {
         final FileFilter filter = new FileFilter() {
             @Override
@@ -0,0 +1,156 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import junit.framework.TestCase;
+
+import org.voltdb.SiteProcedureConnection;
+import org.voltdb.SiteQueueStats;
+import org.voltdb.StarvationTracker;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.rejoin.TaskLog;
+
+public class TestSiteTaskerQueue extends TestCase
+{
+    static class NumberedTask extends SiteTasker {
+        final int m_number;
+        NumberedTask(int number) {
+            m_number = number;
+        }
+        @Override
+        public void run(SiteProcedureConnection siteConnection) {}
+        @Override
+        public void runForRejoin(SiteProcedureConnection siteConnection, TaskLog rejoinTaskLog) {}
+    }
+
+    private SiteQueueStats m_stats;
+
+    private long stat(String column) {
+        VoltTable table = new VoltTable(m_stats.getColumnSchema().toArray(new ColumnInfo[0]));
+        table.addRow(m_stats.getStatsRows(false, 0L)[0]);
+        table.advanceRow();
+        return table.getLong(column);
+    }
+
+    private SiteTaskerQueue getQueue(int batchSize, long spinNanos) {
+        SiteTaskerQueue queue = new SiteTaskerQueue(batchSize, spinNanos);
+        queue.setStarvationTracker(new StarvationTracker(0));
+        m_stats = new SiteQueueStats(0);
+        queue.setQueueStats(m_stats);
+        return queue;
+    }
+
+    public void testBatchedDrainKeepsOrder() throws Exception {
+        SiteTaskerQueue queue = getQueue(4, 0);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(new NumberedTask(i));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertFalse(queue.isEmpty());
+            assertEquals(i, ((NumberedTask)queue.take()).m_number);
+            // tasks offered while a batch is in hand still run after it
+            if (i == 2) {
+                queue.offer(new NumberedTask(10));
+            }
+        }
+        assertEquals(10, ((NumberedTask)queue.poll()).m_number);
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+
+        assertEquals(11, stat("TASKS"));
+        // 11 tasks in batches of 4, the late task joins the last batch
+        assertEquals(3, stat("DRAINS"));
+        assertEquals(10, stat("MAX_DEPTH"));
+        assertEquals(0, stat("PARKS"));
+    }
+
+    public void testSpinFindsLateTask() throws Exception {
+        final SiteTaskerQueue queue = getQueue(64, 10L * 1000 * 1000 * 1000);
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {}
+                queue.offer(new NumberedTask(1));
+            }
+        };
+        producer.start();
+        assertEquals(1, ((NumberedTask)queue.take()).m_number);
+        producer.join();
+        assertEquals(1, stat("SPIN_WAKEUPS"));
+        assertEquals(0, stat("PARKS"));
+    }
+
+    public void testParkWithoutSpin() throws Exception {
+        final SiteTaskerQueue queue = getQueue(64, 0);
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {}
+                queue.offer(new NumberedTask(1));
+            }
+        };
+        producer.start();
+        assertEquals(1, ((NumberedTask)queue.take()).m_number);
+        producer.join();
+        assertEquals(0, stat("SPIN_WAKEUPS"));
+        assertEquals(1, stat("PARKS"));
+        assertEquals(1, stat("TASKS"));
+    }
+
+    public void testIsEmptyFromAnotherThread() throws Exception {
+        final SiteTaskerQueue queue = getQueue(4, 0);
+        for (int i = 0; i < 3; i++) {
+            queue.offer(new NumberedTask(i));
+        }
+        // the site has moved every task into its batch but not run them all
+        queue.take();
+        final boolean empty[] = new boolean[1];
+        Thread observer = new Thread() {
+            @Override
+            public void run() {
+                empty[0] = queue.isEmpty();
+            }
+        };
+        observer.start();
+        observer.join();
+        assertFalse(empty[0]);
+
+        queue.take();
+        queue.take();
+        observer = new Thread() {
+            @Override
+            public void run() {
+                empty[0] = queue.isEmpty();
+            }
+        };
+        observer.start();
+        observer.join();
+        assertTrue(empty[0]);
+    }
+}
@@ -29,12 +29,14 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.sql.BatchUpdateException;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Types;
 import java.util.Arrays;
 import java.util.List;
@@ -377,6 +379,62 @@ public class TestJDBCDriver {
         }
     }
 
+    @Test
+    public void testInsertBatch() throws SQLException {
+        Statement stmt = conn.createStatement();
+        for (int i = 0; i < 300; i++) {
+            stmt.addBatch("INSERT INTO NEW_ORDER VALUES (" + (1000 + i) + ", 1, 1)");
+        }
+        int[] counts = stmt.executeBatch();
+        assertEquals(300, counts.length);
+        for (int count : counts) {
+            assertEquals(1, count);
+        }
+    }
+
+    @Test
+    public void testCallBatch() throws SQLException {
+        // more calls than can be in flight at once
+        final int calls = JDBC4Statement.MAX_BATCH_IN_FLIGHT * 2 + 44;
+        CallableStatement cs = conn.prepareCall("{call InsertNewOrder(?, ?, ?)}");
+        for (int i = 0; i < calls; i++) {
+            cs.setInt(1, 3000 + i);
+            cs.setInt(2, 3);
+            cs.setInt(3, 3);
+            cs.addBatch();
+        }
+        int[] counts = cs.executeBatch();
+        assertEquals(calls, counts.length);
+        for (int count : counts) {
+            assertEquals(1, count);
+        }
+
+        ResultSet rs = conn.createStatement().executeQuery(
+                "SELECT COUNT(*) FROM NEW_ORDER WHERE NO_W_ID = 3");
+        assertTrue(rs.next());
+        assertEquals(calls, rs.getLong(1));
+    }
+
+    @Test
+    public void testInsertBatchFailure() throws SQLException {
+        Statement stmt = conn.createStatement();
+        stmt.addBatch("INSERT INTO NEW_ORDER VALUES (2000, 2, 2)");
+        stmt.addBatch("INSERT INTO NEW_ORDER VALUES (2000, 2, 2)");
+        stmt.addBatch("DELETE FROM NEW_ORDER WHERE NO_W_ID = 2");
+        stmt.addBatch("INSERT INTO NEW_ORDER VALUES (2001, 2, 2)");
+        try {
+            stmt.executeBatch();
+            fail("Expected a constraint violation");
+        } catch (BatchUpdateException e) {
+            // Nothing is sent after the failure, so the counts stop at the inserts.
+            int[] counts = e.getUpdateCounts();
+            assertEquals(2, counts.length);
+            assertEquals(1, counts[0]);
+            assertEquals(Statement.EXECUTE_FAILED, counts[1]);
+            assertTrue(e.getMessage().contains("violation of constraint"));
+        }
+    }
+
     public void testVersionMetadata() throws SQLException {
         int major = conn.getMetaData().getDatabaseMajorVersion();
         int minor = conn.getMetaData().getDatabaseMinorVersion();
@@ -25,6 +25,8 @@ package org.voltdb.planner;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 import junit.framework.TestCase;
 
@@ -32,6 +34,7 @@ import org.voltdb.CatalogContext;
 import org.voltdb.benchmark.tpcc.TPCCProjectBuilder;
 import org.voltdb.catalog.Catalog;
 import org.voltdb.compiler.AdHocPlannedStatement;
+import org.voltdb.compiler.LiveDatabaseEstimates;
 import org.voltdb.compiler.PlannerTool;
 import org.voltdb.compiler.VoltProjectBuilder;
 import org.voltdb.utils.CatalogUtil;
@@ -129,6 +132,56 @@ public class TestPlannerTool extends TestCase {
         System.out.println(result);
     }
 
+    public void testLiveRowCounts() throws IOException
+    {
+        VoltProjectBuilder builder = new VoltProjectBuilder();
+        builder.addLiteralSchema("create table small (id bigint not null, val bigint);");
+        builder.addLiteralSchema("create table big (id bigint not null, val bigint);");
+        builder.addStmtProcedure("MakeCompileHappy", "select * from small;");
+
+        final File jar = new File("testliverowcounts-oop.jar");
+        jar.deleteOnExit();
+        builder.compile("testliverowcounts-oop.jar");
+        byte[] bytes = CatalogUtil.toBytes(jar);
+        String serializedCatalog = CatalogUtil.loadCatalogFromJar(bytes, null);
+        Catalog c = new Catalog();
+        c.execute(serializedCatalog);
+        CatalogContext context = new CatalogContext(0, 0, c, bytes, 0, 0, 0);
+
+        LiveDatabaseEstimates.clear();
+        try {
+            m_pt = new PlannerTool(context.cluster, context.database, 0);
+            String sql = "select * from small, big where small.val = big.val;";
+
+            // without reported row counts the trivial model explains nothing
+            AdHocPlannedStatement result = m_pt.planSql(sql, false, true, false);
+            assertNull(result.core.costExplanation);
+
+            // the small table belongs on the outside of the nested loop
+            Map<String, Long> rowCounts = new HashMap<String, Long>();
+            rowCounts.put("SMALL", 10L);
+            rowCounts.put("BIG", 100000L);
+            LiveDatabaseEstimates.updateSiteRowCounts(0, rowCounts);
+            result = m_pt.planSql(sql, false, true, false);
+            String explanation = result.core.costExplanation;
+            assertNotNull(explanation);
+            assertTrue(explanation.startsWith("ESTIMATED COST"));
+            assertTrue(explanation.indexOf("SEQSCAN SMALL") < explanation.indexOf("SEQSCAN BIG"));
+
+            // once the tables swap sizes the cached plan is dropped and the order flips
+            rowCounts = new HashMap<String, Long>();
+            rowCounts.put("SMALL", 100000L);
+            rowCounts.put("BIG", 10L);
+            LiveDatabaseEstimates.updateSiteRowCounts(0, rowCounts);
+            result = m_pt.planSql(sql, false, true, false);
+            explanation = result.core.costExplanation;
+            assertTrue(explanation.indexOf("SEQSCAN BIG") < explanation.indexOf("SEQSCAN SMALL"));
+        }
+        finally {
+            LiveDatabaseEstimates.clear();
+        }
+    }
+
     public void testBadDDL() throws IOException
     {
         // semicolons in in-lined comments are bad
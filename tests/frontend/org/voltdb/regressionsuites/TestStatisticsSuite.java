@@ -247,7 +247,7 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         System.out.println("\n\nTESTING TABLE STATS\n\n\n");
         Client client  = getFullyConnectedClient();
 
-        ColumnInfo[] expectedSchema = new ColumnInfo[11];
+        ColumnInfo[] expectedSchema = new ColumnInfo[12];
         expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
         expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.BIGINT);
         expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
@@ -259,6 +259,7 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         expectedSchema[8] = new ColumnInfo("TUPLE_ALLOCATED_MEMORY", VoltType.INTEGER);
         expectedSchema[9] = new ColumnInfo("TUPLE_DATA_MEMORY", VoltType.INTEGER);
         expectedSchema[10] = new ColumnInfo("STRING_DATA_MEMORY", VoltType.INTEGER);
+        expectedSchema[11] = new ColumnInfo("TUPLE_HEADER_MEMORY", VoltType.INTEGER);
         VoltTable expectedTable = new VoltTable(expectedSchema);
 
         VoltTable[] results = null;
@@ -310,7 +311,7 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         System.out.println("\n\nTESTING MEMORY STATS\n\n\n");
         Client client  = getFullyConnectedClient();
 
-        ColumnInfo[] expectedSchema = new ColumnInfo[12];
+        ColumnInfo[] expectedSchema = new ColumnInfo[13];
         expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
         expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
         expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
@@ -323,6 +324,7 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         expectedSchema[9] = new ColumnInfo("STRINGMEMORY", VoltType.INTEGER);
         expectedSchema[10] = new ColumnInfo("TUPLECOUNT", VoltType.BIGINT);
         expectedSchema[11] = new ColumnInfo("POOLEDMEMORY", VoltType.BIGINT);
+        expectedSchema[12] = new ColumnInfo("TEMPTABLEMEMORY", VoltType.INTEGER);
         VoltTable expectedTable = new VoltTable(expectedSchema);
 
         VoltTable[] results = null;
@@ -347,7 +349,7 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         System.out.println("\n\nTESTING PROCEDURE STATS\n\n\n");
         Client client  = getFullyConnectedClient();
 
-        ColumnInfo[] expectedSchema = new ColumnInfo[19];
+        ColumnInfo[] expectedSchema = new ColumnInfo[23];
         expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
         expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
         expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
@@ -367,6 +369,10 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         expectedSchema[16] = new ColumnInfo("AVG_PARAMETER_SET_SIZE", VoltType.INTEGER);
         expectedSchema[17] = new ColumnInfo("ABORTS", VoltType.BIGINT);
         expectedSchema[18] = new ColumnInfo("FAILURES", VoltType.BIGINT);
+        expectedSchema[19] = new ColumnInfo("P50_EXECUTION_TIME", VoltType.BIGINT);
+        expectedSchema[20] = new ColumnInfo("P95_EXECUTION_TIME", VoltType.BIGINT);
+        expectedSchema[21] = new ColumnInfo("P99_EXECUTION_TIME", VoltType.BIGINT);
+        expectedSchema[22] = new ColumnInfo("P999_EXECUTION_TIME", VoltType.BIGINT);
         VoltTable expectedTable = new VoltTable(expectedSchema);
 
         VoltTable[] results = null;
@@ -415,6 +421,8 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         long min_parameter_set_size = (Long)stats.get("MIN_PARAMETER_SET_SIZE", VoltType.BIGINT);
         long max_parameter_set_size = (Long)stats.get("MAX_PARAMETER_SET_SIZE", VoltType.BIGINT);
         long avg_parameter_set_size = (Long)stats.get("AVG_PARAMETER_SET_SIZE", VoltType.BIGINT);
+        long p50_time = (Long)stats.get("P50_EXECUTION_TIME", VoltType.BIGINT);
+        long p999_time = (Long)stats.get("P999_EXECUTION_TIME", VoltType.BIGINT);
 
         // Check for overflow
         assertTrue("Failed MIN_EXECUTION_TIME > 0, value was: " + min_time,
@@ -437,6 +445,12 @@ public class TestStatisticsSuite extends SaveRestoreBase {
                    avg_parameter_set_size >= 0);
 
         // check for reasonable values
+        assertTrue("Failed P50_EXECUTION_TIME > 2,400,000,000ns, value was: " +
+                   p50_time,
+                   p50_time > 2400000000L);
+        assertTrue("Failed P999_EXECUTION_TIME <= MAX_EXECUTION_TIME, value was: " +
+                   p999_time,
+                   p50_time <= p999_time && p999_time <= max_time);
         assertTrue("Failed MIN_EXECUTION_TIME > 2,400,000,000ns, value was: " +
                    min_time,
                    min_time > 2400000000L);
@@ -758,6 +772,199 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         validateRowSeenAtAllHosts(results[0], "HOSTNAME", results[0].getString("HOSTNAME"), false);
     }
 
+    public void testQueueStatistics() throws Exception {
+        System.out.println("\n\nTESTING QUEUE STATS\n\n\n");
+        Client client  = getFullyConnectedClient();
+
+        ColumnInfo[] expectedSchema = new ColumnInfo[15];
+        expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
+        expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
+        expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
+        expectedSchema[3] = new ColumnInfo("SITE_ID", VoltType.INTEGER);
+        expectedSchema[4] = new ColumnInfo("TASKS", VoltType.BIGINT);
+        expectedSchema[5] = new ColumnInfo("DRAINS", VoltType.BIGINT);
+        expectedSchema[6] = new ColumnInfo("AVG_BATCH", VoltType.FLOAT);
+        expectedSchema[7] = new ColumnInfo("AVG_DEPTH", VoltType.FLOAT);
+        expectedSchema[8] = new ColumnInfo("MAX_DEPTH", VoltType.BIGINT);
+        expectedSchema[9] = new ColumnInfo("AVG_WAIT", VoltType.BIGINT);
+        expectedSchema[10] = new ColumnInfo("P50_WAIT", VoltType.BIGINT);
+        expectedSchema[11] = new ColumnInfo("P99_WAIT", VoltType.BIGINT);
+        expectedSchema[12] = new ColumnInfo("MAX_WAIT", VoltType.BIGINT);
+        expectedSchema[13] = new ColumnInfo("SPIN_WAKEUPS", VoltType.BIGINT);
+        expectedSchema[14] = new ColumnInfo("PARKS", VoltType.BIGINT);
+        VoltTable expectedTable = new VoltTable(expectedSchema);
+
+        VoltTable[] results = null;
+        //
+        // QUEUE
+        //
+        results = client.callProcedure("@Statistics", "QUEUE", 0).getResults();
+        // one aggregate table returned
+        assertEquals(1, results.length);
+        System.out.println("Test QUEUE table: " + results[0].toString());
+        validateSchema(results[0], expectedTable);
+        // One row per site, same as the starvation stats.
+        assertEquals(hosts * sites, results[0].getRowCount());
+        results[0].advanceRow();
+        validateRowSeenAtAllHosts(results[0], "HOSTNAME", results[0].getString("HOSTNAME"), false);
+    }
+
+    public void testPlannerPoolStatistics() throws Exception {
+        System.out.println("\n\nTESTING PLANNERPOOL STATS\n\n\n");
+        Client client  = getFullyConnectedClient();
+
+        ColumnInfo[] expectedSchema = new ColumnInfo[13];
+        expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
+        expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
+        expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
+        expectedSchema[3] = new ColumnInfo("WORKER_ID", VoltType.INTEGER);
+        expectedSchema[4] = new ColumnInfo("PLANS", VoltType.BIGINT);
+        expectedSchema[5] = new ColumnInfo("QUEUE_DEPTH", VoltType.INTEGER);
+        expectedSchema[6] = new ColumnInfo("MAX_QUEUE_DEPTH", VoltType.INTEGER);
+        expectedSchema[7] = new ColumnInfo("AVG_WAIT", VoltType.BIGINT);
+        expectedSchema[8] = new ColumnInfo("P99_WAIT", VoltType.BIGINT);
+        expectedSchema[9] = new ColumnInfo("AVG_PLAN_TIME", VoltType.BIGINT);
+        expectedSchema[10] = new ColumnInfo("P50_PLAN_TIME", VoltType.BIGINT);
+        expectedSchema[11] = new ColumnInfo("P99_PLAN_TIME", VoltType.BIGINT);
+        expectedSchema[12] = new ColumnInfo("MAX_PLAN_TIME", VoltType.BIGINT);
+        VoltTable expectedTable = new VoltTable(expectedSchema);
+
+        client.callProcedure("@AdHoc", "select * from warehouse;");
+
+        VoltTable[] results = null;
+        //
+        // PLANNERPOOL
+        //
+        results = client.callProcedure("@Statistics", "PLANNERPOOL", 0).getResults();
+        // one aggregate table returned
+        assertEquals(1, results.length);
+        System.out.println("Test PLANNERPOOL table: " + results[0].toString());
+        validateSchema(results[0], expectedTable);
+        // One row per planner worker per host.
+        assertTrue(results[0].getRowCount() > 0);
+        assertEquals(0, results[0].getRowCount() % hosts);
+        long plans = 0;
+        while (results[0].advanceRow()) {
+            plans += results[0].getLong("PLANS");
+        }
+        assertTrue(plans >= 1);
+    }
+
+    public void testHostMessagingStatistics() throws Exception {
+        System.out.println("\n\nTESTING HOSTMESSAGING STATS\n\n\n");
+        Client client  = getFullyConnectedClient();
+
+        ColumnInfo[] expectedSchema = new ColumnInfo[11];
+        expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
+        expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
+        expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
+        expectedSchema[3] = new ColumnInfo("CONNECTION_ID", VoltType.BIGINT);
+        expectedSchema[4] = new ColumnInfo("CONNECTION_HOSTNAME", VoltType.STRING);
+        expectedSchema[5] = new ColumnInfo("MESSAGES_SENT", VoltType.BIGINT);
+        expectedSchema[6] = new ColumnInfo("BYTES_SENT", VoltType.BIGINT);
+        expectedSchema[7] = new ColumnInfo("BUFFERS_SENT", VoltType.BIGINT);
+        expectedSchema[8] = new ColumnInfo("MESSAGES_COMPRESSED", VoltType.BIGINT);
+        expectedSchema[9] = new ColumnInfo("BYTES_BEFORE_COMPRESSION", VoltType.BIGINT);
+        expectedSchema[10] = new ColumnInfo("BYTES_AFTER_COMPRESSION", VoltType.BIGINT);
+        VoltTable expectedTable = new VoltTable(expectedSchema);
+
+        VoltTable[] results = null;
+        //
+        // HOSTMESSAGING
+        //
+        results = client.callProcedure("@Statistics", "HOSTMESSAGING", 0).getResults();
+        // one aggregate table returned
+        assertEquals(1, results.length);
+        System.out.println("Test HOSTMESSAGING table: " + results[0].toString());
+        validateSchema(results[0], expectedTable);
+        // Every host has at least one connection to each of the others
+        assertTrue(results[0].getRowCount() >= hosts * (hosts - 1));
+        Set<Long> hostsSeen = new HashSet<Long>();
+        while (results[0].advanceRow()) {
+            hostsSeen.add(results[0].getLong("HOST_ID"));
+            // messages are coalesced, never split across buffers
+            assertTrue(results[0].getLong("BUFFERS_SENT") <= results[0].getLong("MESSAGES_SENT"));
+            assertTrue(results[0].getLong("MESSAGES_COMPRESSED") <= results[0].getLong("MESSAGES_SENT"));
+            assertTrue(results[0].getLong("BYTES_AFTER_COMPRESSION") <=
+                       results[0].getLong("BYTES_BEFORE_COMPRESSION"));
+        }
+        assertEquals(hosts, hostsSeen.size());
+    }
+
+    public void testLatencyStatistics() throws Exception {
+        System.out.println("\n\nTESTING LATENCY STATS\n\n\n");
+        Client client  = getFullyConnectedClient();
+
+        ColumnInfo[] expectedSchema = new ColumnInfo[10];
+        expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
+        expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
+        expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
+        expectedSchema[3] = new ColumnInfo("INVOCATIONS", VoltType.BIGINT);
+        expectedSchema[4] = new ColumnInfo("AVG", VoltType.BIGINT);
+        expectedSchema[5] = new ColumnInfo("P50", VoltType.BIGINT);
+        expectedSchema[6] = new ColumnInfo("P95", VoltType.BIGINT);
+        expectedSchema[7] = new ColumnInfo("P99", VoltType.BIGINT);
+        expectedSchema[8] = new ColumnInfo("P999", VoltType.BIGINT);
+        expectedSchema[9] = new ColumnInfo("MAX", VoltType.BIGINT);
+        VoltTable expectedTable = new VoltTable(expectedSchema);
+
+        for (int i = 0; i < 10; i++) {
+            client.callProcedure("NEW_ORDER.insert", i);
+        }
+
+        VoltTable[] results = null;
+        //
+        // LATENCY
+        //
+        results = client.callProcedure("@Statistics", "LATENCY", 0).getResults();
+        // one aggregate table returned
+        assertEquals(1, results.length);
+        System.out.println("Test LATENCY table: " + results[0].toString());
+        validateSchema(results[0], expectedTable);
+        // One row per host.
+        assertEquals(hosts, results[0].getRowCount());
+        long invocations = 0;
+        while (results[0].advanceRow()) {
+            invocations += results[0].getLong("INVOCATIONS");
+            assertTrue(results[0].getLong("P50") <= results[0].getLong("P99"));
+            assertTrue(results[0].getLong("P99") <= results[0].getLong("MAX"));
+        }
+        assertTrue(invocations >= 10);
+    }
+
+    public void testRejoinStatistics() throws Exception {
+        System.out.println("\n\nTESTING REJOIN STATS\n\n\n");
+        Client client  = getFullyConnectedClient();
+
+        ColumnInfo[] expectedSchema = new ColumnInfo[13];
+        expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
+        expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
+        expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
+        expectedSchema[3] = new ColumnInfo("DESTINATION_SITE", VoltType.STRING);
+        expectedSchema[4] = new ColumnInfo("BLOCKS_SENT", VoltType.BIGINT);
+        expectedSchema[5] = new ColumnInfo("BLOCKS_OUTSTANDING", VoltType.INTEGER);
+        expectedSchema[6] = new ColumnInfo("WINDOW", VoltType.INTEGER);
+        expectedSchema[7] = new ColumnInfo("ROUND_TRIP_TIME", VoltType.BIGINT);
+        expectedSchema[8] = new ColumnInfo("BYTES_SENT", VoltType.BIGINT);
+        expectedSchema[9] = new ColumnInfo("DATA_ACKED", VoltType.BIGINT);
+        expectedSchema[10] = new ColumnInfo("DATA_EXPECTED", VoltType.BIGINT);
+        expectedSchema[11] = new ColumnInfo("DATA_RATE", VoltType.BIGINT);
+        expectedSchema[12] = new ColumnInfo("SECONDS_REMAINING", VoltType.BIGINT);
+        VoltTable expectedTable = new VoltTable(expectedSchema);
+
+        VoltTable[] results = null;
+        //
+        // REJOIN
+        //
+        results = client.callProcedure("@Statistics", "REJOIN", 0).getResults();
+        // one aggregate table returned
+        assertEquals(1, results.length);
+        System.out.println("Test REJOIN table: " + results[0].toString());
+        validateSchema(results[0], expectedTable);
+        // Nothing is rejoining, so no streams.
+        assertEquals(0, results[0].getRowCount());
+    }
+
     public void testSnapshotStatus() throws Exception {
         System.out.println("\n\nTESTING SNAPSHOTSTATUS\n\n\n");
         Client client  = getFullyConnectedClient();
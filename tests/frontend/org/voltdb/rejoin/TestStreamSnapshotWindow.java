@@ -0,0 +1,115 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.rejoin;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestStreamSnapshotWindow {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testFullUntilAcked() throws Exception {
+        final StreamSnapshotWindow window = new StreamSnapshotWindow(8, 0);
+        final int initial = window.getWindow();
+        for (int ii = 0; ii < initial; ii++) {
+            assertTrue(window.tryAcquire());
+        }
+        assertEquals(initial, window.getOutstanding());
+        assertFalse(window.tryAcquire());
+        assertEquals(initial, window.getOutstanding());
+
+        window.acked(0, MS, 100);
+        assertTrue(window.tryAcquire());
+        assertFalse(window.tryAcquire());
+    }
+
+    @Test
+    public void testAbort() throws Exception {
+        final StreamSnapshotWindow window = new StreamSnapshotWindow(8, 0);
+        assertTrue(window.tryAcquire());
+        window.abort();
+        assertFalse(window.tryAcquire());
+        window.acked(0, MS, 100);
+        assertFalse(window.tryAcquire());
+    }
+
+    @Test
+    public void testWindowFollowsBandwidthDelayProduct() throws Exception {
+        final StreamSnapshotWindow window = new StreamSnapshotWindow(64, 0);
+
+        // a block acked every millisecond with a 10ms round trip needs
+        // about 10 in flight, the window allows twice that
+        long now = 0;
+        for (int ii = 0; ii < 100; ii++) {
+            now += MS;
+            window.acked(now - 10 * MS, now, 1000);
+        }
+        assertEquals(10, window.getMinRttMillis());
+        assertEquals(20, window.getWindow());
+
+        // the rejoining site slows down, acks every 5ms
+        for (int ii = 0; ii < 100; ii++) {
+            now += 5 * MS;
+            window.acked(now - 10 * MS, now, 1000);
+        }
+        assertEquals(4, window.getWindow());
+
+        // never below the minimum or above the maximum
+        for (int ii = 0; ii < 100; ii++) {
+            now += 100 * MS;
+            window.acked(now - 10 * MS, now, 1000);
+        }
+        assertEquals(StreamSnapshotWindow.MIN_WINDOW, window.getWindow());
+        for (int ii = 0; ii < 1000; ii++) {
+            now += 1000;
+            window.acked(now - 10 * MS, now, 1000);
+        }
+        assertEquals(64, window.getWindow());
+    }
+
+    @Test
+    public void testRateAndRemaining() throws Exception {
+        final StreamSnapshotWindow window = new StreamSnapshotWindow(8, 0);
+        final long second = TimeUnit.SECONDS.toNanos(1);
+        assertEquals(-1, window.getSecondsRemaining(second));
+
+        window.acked(0, second, 1000);
+        window.sent(400);
+        assertEquals(400, window.getBytesSent());
+        assertEquals(1000, window.getDataAcked());
+        assertEquals(500, window.getDataRate(2 * second));
+        // no estimate of the size yet
+        assertEquals(-1, window.getSecondsRemaining(2 * second));
+
+        window.setExpectedData(11000);
+        assertEquals(20, window.getSecondsRemaining(2 * second));
+        window.setExpectedData(500);
+        assertEquals(0, window.getSecondsRemaining(2 * second));
+    }
+}
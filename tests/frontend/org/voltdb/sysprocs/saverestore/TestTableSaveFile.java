@@ -27,6 +27,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import junit.framework.TestCase;
 
@@ -280,4 +282,50 @@ public class TestTableSaveFile extends TestCase {
         }
         assertEquals(table, reaggregate_table);
     }
+
+    public void testChunkTableWithDecodePool() throws Exception {
+        Pair<VoltTable, File> generated = generateTestTable(100000);
+        VoltTable table = generated.getFirst();
+        File f = generated.getSecond();
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        FileInputStream fis = new FileInputStream(f);
+        TableSaveFile savefile = new TableSaveFile(fis.getChannel(), 8, null, false, pool);
+
+        // chunks come back in the order they finish decoding, so put them back in file order
+        VoltTable chunks[] = new VoltTable[100];
+        try {
+            while (savefile.hasMoreChunks()) {
+                final BBContainer c = savefile.getNextChunk();
+                if (c == null) {
+                    break;
+                }
+                TableSaveFile.Container cont = (TableSaveFile.Container)c;
+                assertNull(chunks[cont.partitionId]);
+                try {
+                    VoltTable test_table = PrivateVoltTableFactory.createVoltTableFromBuffer(c.b, false);
+                    chunks[cont.partitionId] = test_table.clone(10000);
+                    while (test_table.advanceRow()) {
+                        chunks[cont.partitionId].add(test_table);
+                    }
+                } finally {
+                    c.discard();
+                }
+            }
+        } finally {
+            savefile.close();
+            pool.shutdown();
+        }
+        assertEquals(100, savefile.getChunksRead());
+        assertTrue(savefile.getBytesRead() > 0);
+
+        VoltTable reaggregate_table = chunks[0].clone(10000);
+        for (VoltTable chunk : chunks) {
+            chunk.resetRowPosition();
+            while (chunk.advanceRow()) {
+                reaggregate_table.add(chunk);
+            }
+        }
+        assertEquals(table, reaggregate_table);
+    }
 }
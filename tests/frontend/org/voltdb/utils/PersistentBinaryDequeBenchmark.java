@@ -0,0 +1,150 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb.utils;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+
+/**
+ * Compares offer and poll throughput of PersistentBinaryDeque with file channel
+ * and memory mapped segments. Each object size is run offering everything before polling
+ * and with a producer and consumer running concurrently.
+ *
+ * Usage: PersistentBinaryDequeBenchmark [directory] [megabytes per run]
+ */
+public class PersistentBinaryDequeBenchmark {
+
+    private static final int SIZES[] = new int[] {
+        1024 * 2, 1024 * 16, 1024 * 128, 1024 * 512, 1024 * 1024 * 2 };
+
+    private static void clean(File dir) {
+        for (File f : dir.listFiles()) {
+            if (f.getName().endsWith(".pbd")) {
+                f.delete();
+            }
+        }
+    }
+
+    private static BBContainer[] object(ByteBuffer source) {
+        source.clear();
+        return new BBContainer[] { DBBPool.wrapBB(source.duplicate()) };
+    }
+
+    private static double mbPerSecond(long bytes, long nanos) {
+        return (bytes / (1024.0 * 1024.0)) / (nanos / 1000000000.0);
+    }
+
+    private static void runSequential(File dir, boolean mapped, int size, long totalBytes) throws Exception {
+        clean(dir);
+        final ByteBuffer source = ByteBuffer.allocateDirect(size);
+        final int count = (int)(totalBytes / size);
+        PersistentBinaryDeque pbd = new PersistentBinaryDeque("bench", dir, mapped);
+
+        long start = System.nanoTime();
+        for (int ii = 0; ii < count; ii++) {
+            pbd.offer(object(source));
+        }
+        pbd.sync();
+        long offerNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int polled = 0;
+        BBContainer cont;
+        while ((cont = pbd.poll()) != null) {
+            cont.discard();
+            polled++;
+        }
+        long pollNanos = System.nanoTime() - start;
+        pbd.close();
+        if (polled != count) {
+            throw new RuntimeException("Polled " + polled + " of " + count);
+        }
+
+        System.out.printf("%-6s %8d bytes  offer %8.1f MB/s %10.0f objects/s  poll %8.1f MB/s %10.0f objects/s\n",
+                mapped ? "mmap" : "fc", size,
+                mbPerSecond((long)count * size, offerNanos), count / (offerNanos / 1000000000.0),
+                mbPerSecond((long)count * size, pollNanos), count / (pollNanos / 1000000000.0));
+    }
+
+    private static void runConcurrent(File dir, boolean mapped, int size, long totalBytes) throws Exception {
+        clean(dir);
+        final ByteBuffer source = ByteBuffer.allocateDirect(size);
+        final int count = (int)(totalBytes / size);
+        final PersistentBinaryDeque pbd = new PersistentBinaryDeque("bench", dir, mapped);
+
+        Thread producer = new Thread("PBD benchmark producer") {
+            @Override
+            public void run() {
+                try {
+                    for (int ii = 0; ii < count; ii++) {
+                        pbd.offer(object(source));
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    System.exit(-1);
+                }
+            }
+        };
+
+        long start = System.nanoTime();
+        producer.start();
+        int polled = 0;
+        while (polled < count) {
+            BBContainer cont = pbd.poll();
+            if (cont == null) {
+                Thread.yield();
+                continue;
+            }
+            cont.discard();
+            polled++;
+        }
+        long nanos = System.nanoTime() - start;
+        producer.join();
+        pbd.close();
+
+        System.out.printf("%-6s %8d bytes  offer+poll %8.1f MB/s %10.0f objects/s\n",
+                mapped ? "mmap" : "fc", size,
+                mbPerSecond((long)count * size, nanos), count / (nanos / 1000000000.0));
+    }
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File(args.length > 0 ? args[0] : "/tmp/" + System.getProperty("user.name") + "/pbdbench");
+        long totalBytes = (args.length > 1 ? Long.parseLong(args[1]) : 512) * 1024 * 1024;
+        dir.mkdirs();
+
+        System.out.println("Offer then poll");
+        for (int size : SIZES) {
+            runSequential(dir, false, size, totalBytes);
+            runSequential(dir, true, size, totalBytes);
+        }
+        System.out.println("Concurrent producer and consumer");
+        for (int size : SIZES) {
+            runConcurrent(dir, false, size, totalBytes);
+            runConcurrent(dir, true, size, totalBytes);
+        }
+        clean(dir);
+    }
+}
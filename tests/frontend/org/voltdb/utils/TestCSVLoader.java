@@ -358,6 +358,87 @@ public class TestCSVLoader extends TestCase {
         test_Interface( mySchema, myOptions, myData, invalidLineCnt );
     }
 
+    public void testThreadsAndBatches() throws Exception
+    {
+        String mySchema =
+                "create table BLAH (" +
+                "clm_integer integer default 0 not null, " + // column that is partitioned on
+                "clm_bigint bigint default 0, " +
+                "clm_string varchar(20) default null " +
+                "); ";
+        String []myOptions = {
+                "-f" + path_csv,
+                "--reportdir=" + reportDir,
+                "--threads=4",
+                "--batch=7",
+                "BLAH"
+        };
+        // several chunks of input, spread over all the workers
+        String []myData = new String[3500];
+        for (int i = 0; i < myData.length; i++) {
+            myData[i] = i + "," + (i * 3L) + ",row " + i;
+        }
+        int invalidLineCnt = 0;
+        test_Interface( mySchema, myOptions, myData, invalidLineCnt );
+    }
+
+    public void testBatchesGroupedByPartition() throws Exception
+    {
+        String mySchema =
+                "create table BLAH (" +
+                "clm_integer integer default 0 not null, " + // column that is partitioned on
+                "clm_string varchar(20) default null, " +
+                "primary key (clm_integer)" +
+                "); ";
+        String []myOptions = {
+                "-f" + path_csv,
+                "--reportdir=" + reportDir,
+                "--threads=1",
+                "--batch=100",
+                "BLAH"
+        };
+        // keys for every partition interleaved, each batch only takes one partition's rows,
+        // a row sent with the wrong partition's batch fails as mispartitioned
+        String []myData = new String[1000];
+        for (int i = 0; i < myData.length; i++) {
+            myData[i] = i + ",row " + i;
+        }
+        int invalidLineCnt = 0;
+        test_Interface( mySchema, myOptions, myData, invalidLineCnt );
+    }
+
+    public void testConversionErrors() throws Exception
+    {
+        String mySchema =
+                "create table BLAH (" +
+                "clm_integer integer default 0 not null, " + // column that is partitioned on
+                "clm_tinyint tinyint default 0, " +
+                "clm_float float default null, " +
+                "clm_decimal decimal default null, " +
+                "clm_timestamp timestamp default null " +
+                "); ";
+        String []myOptions = {
+                "-f" + path_csv,
+                "--reportdir=" + reportDir,
+                "--threads=2",
+                "--batch=2",
+                "BLAH"
+        };
+        String []myData = {
+                "1,1,1.5,1.25,2013-01-01 00:00:00.000",
+                "2,2,2.5,2.25,2013-01-02 00:00:00.000",
+                "3,3,3.5,3.25,2013-01-03 00:00:00.000",
+                //invalid lines below
+                "4,300,4.5,4.25,2013-01-04 00:00:00.000",
+                "five,5,5.5,5.25,2013-01-05 00:00:00.000",
+                "6,6,six,6.25,2013-01-06 00:00:00.000",
+                "7,7,7.5,7.2.5,2013-01-07 00:00:00.000",
+                "8,8,8.5,8.25,yesterday"
+        };
+        int invalidLineCnt = 5;
+        test_Interface( mySchema, myOptions, myData, invalidLineCnt );
+    }
+
     public void test_Interface( String my_schema, String[] my_options, String[] my_data, int invalidLineCnt ) throws Exception {
         try{
             BufferedWriter out_csv = new BufferedWriter( new FileWriter( path_csv ) );
@@ -423,6 +504,7 @@ public class TestCSVLoader extends TestCase {
             System.out.println(String.format("The rows infected: (%d,%s)", lineCount, rowct));
             assertEquals(lineCount, rowct);
             assertEquals(invalidLineCnt, invalidlinecnt);
+            assertEquals(my_data.length - invalidLineCnt, rowct);
 
         }
         finally {
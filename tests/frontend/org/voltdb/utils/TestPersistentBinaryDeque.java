@@ -33,6 +33,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.After;
 import org.junit.Before;
@@ -43,17 +44,25 @@ import org.voltcore.utils.DBBPool.BBContainer;
 
 public class TestPersistentBinaryDeque {
 
-    private final static File TEST_DIR = new File("/tmp/" + System.getProperty("user.name"));
+    protected final static File TEST_DIR = new File("/tmp/" + System.getProperty("user.name"));
 
-    private static final String TEST_NONCE = "pbd_nonce";
+    protected static final String TEST_NONCE = "pbd_nonce";
 
     private static final ByteBuffer defaultBuffer = getFilledBuffer(42);
 
     private static final BBContainer defaultContainer[] = new BBContainer[] { DBBPool.wrapBB(defaultBuffer) };
 
-    private PersistentBinaryDeque m_pbd;
+    protected PersistentBinaryDeque m_pbd;
 
-    private static ByteBuffer getFilledBuffer(long fillValue) {
+    protected boolean useMemoryMappedSegments() {
+        return false;
+    }
+
+    protected PersistentBinaryDeque newDeque(String nonce) throws IOException {
+        return new PersistentBinaryDeque(nonce, TEST_DIR, useMemoryMappedSegments());
+    }
+
+    protected static ByteBuffer getFilledBuffer(long fillValue) {
         ByteBuffer buf = ByteBuffer.allocateDirect(1024 * 1024 * 2);
         while (buf.remaining() > 7) {
             buf.putLong(fillValue);
@@ -62,7 +71,7 @@ public class TestPersistentBinaryDeque {
         return buf;
     }
 
-    private static TreeSet<String> getSortedDirectoryListing() {
+    protected static TreeSet<String> getSortedDirectoryListing() {
         TreeSet<String> names = new TreeSet<String>();
         for (File f : TEST_DIR.listFiles()) {
             names.add(f.getName());
@@ -87,7 +96,7 @@ public class TestPersistentBinaryDeque {
         listing = getSortedDirectoryListing();
         assertEquals(listing.size(), 4);
 
-        m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR );
+        m_pbd = newDeque(TEST_NONCE);
 
 
         listing = getSortedDirectoryListing();
@@ -115,7 +124,7 @@ public class TestPersistentBinaryDeque {
         listing = getSortedDirectoryListing();
         assertEquals(listing.size(), 0);
 
-        m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR );
+        m_pbd = newDeque(TEST_NONCE);
 
 
         listing = getSortedDirectoryListing();
@@ -155,7 +164,7 @@ public class TestPersistentBinaryDeque {
 
         m_pbd.close();
 
-        m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR );
+        m_pbd = newDeque(TEST_NONCE);
 
         TreeSet<String> listing = getSortedDirectoryListing();
         assertEquals(listing.size(), 5);
@@ -219,7 +228,7 @@ public class TestPersistentBinaryDeque {
 
         m_pbd.close();
 
-        m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR );
+        m_pbd = newDeque(TEST_NONCE);
 
         TreeSet<String> listing = getSortedDirectoryListing();
         assertEquals(listing.size(), 5);
@@ -387,7 +396,7 @@ public class TestPersistentBinaryDeque {
         m_pbd.sync();
         m_pbd.close();
 
-        m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR );
+        m_pbd = newDeque(TEST_NONCE);
 
         //Now poll all of it and make sure the data is correct
         for (int ii = 0; ii < 64; ii++) {
@@ -425,7 +434,7 @@ public class TestPersistentBinaryDeque {
         assertTrue(toDelete.exists());
         assertTrue(toDelete.delete());
         try {
-            m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR);
+            m_pbd = newDeque(TEST_NONCE);
         } catch (IOException e) {
             return;
         }
@@ -519,28 +528,68 @@ public class TestPersistentBinaryDeque {
     @Test
     public void testOverlappingNonces() throws Exception {
         for (int i = 0; i < 20; i++) {
-            PersistentBinaryDeque pbd = new PersistentBinaryDeque(Integer.toString(i), TEST_DIR);
+            PersistentBinaryDeque pbd = newDeque(Integer.toString(i));
             pbd.offer(defaultContainer);
             pbd.close();
         }
 
-        PersistentBinaryDeque pbd = new PersistentBinaryDeque("1", TEST_DIR);
+        PersistentBinaryDeque pbd = newDeque("1");
         pbd.close();
     }
 
     @Test
     public void testNonceWithDots() throws Exception {
-        PersistentBinaryDeque pbd = new PersistentBinaryDeque("ha.ha", TEST_DIR);
+        PersistentBinaryDeque pbd = newDeque("ha.ha");
         pbd.offer(defaultContainer);
         pbd.close();
 
-        pbd = new PersistentBinaryDeque("ha.ha", TEST_DIR);
+        pbd = newDeque("ha.ha");
         BBContainer bb = pbd.poll();
         defaultBuffer.clear();
         assertEquals(defaultBuffer, bb.b);
         pbd.close();
     }
 
+    @Test
+    public void testConcurrentOfferAndPoll() throws Exception {
+        final int count = 200;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int ii = 0; ii < count; ii++) {
+                        ByteBuffer buf = ByteBuffer.allocateDirect(1024 * 64 + ii);
+                        buf.putInt(0, ii);
+                        m_pbd.offer(new BBContainer[] { DBBPool.wrapBB(buf) });
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+        producer.start();
+
+        int polled = 0;
+        long deadline = System.currentTimeMillis() + 60000;
+        while (polled < count && System.currentTimeMillis() < deadline && failure.get() == null) {
+            BBContainer cont = m_pbd.poll();
+            if (cont == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(1024 * 64 + polled, cont.b.remaining());
+            assertEquals(polled, cont.b.getInt(0));
+            cont.discard();
+            polled++;
+        }
+        producer.join();
+        assertNull(failure.get());
+        assertEquals(count, polled);
+        assertTrue(m_pbd.isEmpty());
+        assertEquals(0, m_pbd.sizeInBytes());
+    }
+
     @Before
     public void setUp() throws Exception {
         if (TEST_DIR.exists()) {
@@ -550,7 +599,7 @@ public class TestPersistentBinaryDeque {
             TEST_DIR.delete();
         }
         TEST_DIR.mkdir();
-        m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR );
+        m_pbd = newDeque(TEST_NONCE);
         defaultBuffer.clear();
     }
 
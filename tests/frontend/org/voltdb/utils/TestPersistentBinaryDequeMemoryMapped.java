@@ -0,0 +1,86 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+
+/**
+ * Runs the PersistentBinaryDeque tests against memory mapped segments
+ */
+public class TestPersistentBinaryDequeMemoryMapped extends TestPersistentBinaryDeque {
+
+    @Override
+    protected boolean useMemoryMappedSegments() {
+        return true;
+    }
+
+    @Test
+    public void testUnclosedSegmentIsTrimmed() throws Exception {
+        for (int ii = 0; ii < 3; ii++) {
+            m_pbd.offer(new BBContainer[] { DBBPool.wrapBB(getFilledBuffer(ii)) });
+        }
+        m_pbd.sync();
+
+        //Simulate a crash by copying the mapped segment at its full size
+        //before the deque gets a chance to trim it
+        File segment = new File(TEST_DIR, TEST_NONCE + ".0.pbd");
+        File copy = new File(TEST_DIR, "copy.0.pbd");
+        RandomAccessFile in = new RandomAccessFile(segment, "r");
+        RandomAccessFile out = new RandomAccessFile(copy, "rw");
+        byte buffer[] = new byte[1024 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        out.close();
+        assertEquals(1024 * 1024 * 64, copy.length());
+
+        PersistentBinaryDeque pbd = newDeque("copy");
+        assertEquals(((1024 * 1024 * 2) + 4) * 3, pbd.sizeInBytes());
+        assertEquals(((1024 * 1024 * 2) + 4) * 3 + 4, copy.length());
+        for (int ii = 0; ii < 3; ii++) {
+            BBContainer cont = pbd.poll();
+            assertTrue(getFilledBuffer(ii).equals(cont.b));
+            cont.discard();
+        }
+        assertTrue(pbd.isEmpty());
+        pbd.close();
+    }
+
+    @Test
+    public void testClosedSegmentIsTrimmed() throws Exception {
+        m_pbd.offer(new BBContainer[] { DBBPool.wrapBB(ByteBuffer.allocate(20)) });
+        m_pbd.close();
+        assertEquals(28, new File(TEST_DIR, TEST_NONCE + ".0.pbd").length());
+    }
+}